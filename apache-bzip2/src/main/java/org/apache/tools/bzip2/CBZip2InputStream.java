@@ -72,6 +72,12 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
     private InputStream in;
     private final boolean decompressConcatenated;
 
+    /**
+     * Whether a single block is decompressed, see {@link
+     * #CBZip2InputStream(InputStream, int, int)}.
+     */
+    private final boolean singleBlock;
+
     private int currentChar = -1;
 
     private static final int EOF               = 0;
@@ -158,12 +164,74 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
 
         this.in = in;
         this.decompressConcatenated = decompressConcatenated;
+        this.singleBlock = false;
 
         init(true);
         initBlock();
         setupBlock();
     }
 
+    /**
+     * Constructs a new CBZip2InputStream which decompresses a single
+     * block read from the specified stream, without stream header.
+     *
+     * <p>The block, starting with its magic, begins at the given bit
+     * of the first byte of the stream. The block is decoded by this
+     * constructor, after which {@link #getBufferedBits()} tells how
+     * many bits of the last byte read are past the end of the block.
+     * This lets {@link ParallelBZip2InputStream} decompress blocks
+     * independently.</p>
+     *
+     * @param in the InputStream from which the block is read
+     * @param blockSize100k the blocksize of the stream the block
+     *                      belongs to, as 100k units
+     * @param bitOffset the number of bits to skip in the first byte
+     *
+     * @throws IOException
+     *             if the block is malformed or an I/O error occurs.
+     */
+    CBZip2InputStream(final InputStream in, final int blockSize100k,
+                      final int bitOffset)
+            throws IOException {
+        super();
+
+        this.in = in;
+        this.decompressConcatenated = false;
+        this.singleBlock = true;
+        this.blockSize100k = blockSize100k;
+
+        if (bitOffset > 0) {
+            bsR(bitOffset);
+        }
+        initBlock();
+        setupBlock();
+    }
+
+    /**
+     * Returns the number of bits read from the underlying stream and
+     * not consumed yet.
+     *
+     * @return int
+     */
+    int getBufferedBits() {
+        return this.bsLive;
+    }
+
+    /**
+     * Ends the current block and moves on to the next one, unless
+     * decompressing a single block.
+     */
+    private void nextBlock() throws IOException {
+        endBlock();
+        if (this.singleBlock) {
+            this.currentState = EOF;
+            this.data = null;
+        } else {
+            initBlock();
+            setupBlock();
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public int read() throws IOException {
@@ -892,9 +960,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
             this.currentState = RAND_PART_B_STATE;
             this.crc.updateCRC(su_ch2Shadow);
         } else {
-            endBlock();
-            initBlock();
-            setupBlock();
+            nextBlock();
         }
     }
 
@@ -910,9 +976,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
             this.crc.updateCRC(su_ch2Shadow);
         } else {
             this.currentState = NO_RAND_PART_A_STATE;
-            endBlock();
-            initBlock();
-            setupBlock();
+            nextBlock();
         }
     }
 
@@ -1048,7 +1112,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
 
     }
 
-    private static void reportCRCError() {
+    static void reportCRCError() {
         // The clean way would be to throw an exception.
         //throw new IOException("crc error");
 
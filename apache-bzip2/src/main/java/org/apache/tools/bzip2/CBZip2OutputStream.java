@@ -559,6 +559,23 @@ public class CBZip2OutputStream extends OutputStream
 
     private OutputStream out;
 
+    /**
+     * Whether only blocks are written, without the stream header and
+     * end of stream marker.
+     */
+    private final boolean blocksOnly;
+
+    /**
+     * Number of blocks written so far.
+     */
+    private int blockCount;
+
+    /**
+     * Number of padding bits in the last byte written by {@link
+     * #finish()}, in blocks-only mode.
+     */
+    private int paddingBits;
+
     /**
      * Chooses a blocksize based on the given length of the data to compress.
      *
@@ -623,6 +640,34 @@ public class CBZip2OutputStream extends OutputStream
      */
     public CBZip2OutputStream(final OutputStream out, final int blockSize)
         throws IOException {
+        this(out, blockSize, false);
+    }
+
+    /**
+     * Constructs a new <code>CBZip2OutputStream</code> with specified
+     * blocksize, which may write the compressed blocks only.
+     *
+     * <p>In blocks-only mode, neither the <code>"h"</code> and
+     * blocksize header nor the end of stream marker are written, and
+     * the last byte is padded with zero bits. This lets {@link
+     * ParallelBZip2OutputStream} compress parts of a stream
+     * independently and concatenate their blocks.</p>
+     *
+     * @param out
+     *            the destination stream.
+     * @param blockSize
+     *            the blockSize as 100k units.
+     * @param blocksOnly
+     *            whether to write the compressed blocks only.
+     *
+     * @throws IOException
+     *             if an I/O error occurs in the specified stream.
+     * @throws IllegalArgumentException
+     *             if <code>(blockSize &lt; 1) || (blockSize &gt; 9)</code>.
+     */
+    CBZip2OutputStream(final OutputStream out, final int blockSize,
+                       final boolean blocksOnly)
+        throws IOException {
         super();
 
         if (blockSize < 1) {
@@ -636,6 +681,7 @@ public class CBZip2OutputStream extends OutputStream
 
         this.blockSize100k = blockSize;
         this.out = out;
+        this.blocksOnly = blocksOnly;
 
         /* 20 is just a paranoia constant */
         this.allowableBlockSize = (this.blockSize100k * BZip2Constants.baseBlockSize) - 20;
@@ -730,7 +776,12 @@ public class CBZip2OutputStream extends OutputStream
                 }
                 this.currentChar = -1;
                 endBlock();
-                endCompression();
+                if (this.blocksOnly) {
+                    this.paddingBits = (8 - (this.bsLive & 7)) & 7;
+                    bsFinishedWithStream();
+                } else {
+                    endCompression();
+                }
             } finally {
                 this.out = null;
                 this.data = null;
@@ -768,8 +819,10 @@ public class CBZip2OutputStream extends OutputStream
          * Write `magic' bytes h indicating file-format == huffmanised, followed
          * by a digit indicating blockSize100k.
          */
-        bsPutUByte('h');
-        bsPutUByte('0' + this.blockSize100k);
+        if (!this.blocksOnly) {
+            bsPutUByte('h');
+            bsPutUByte('0' + this.blockSize100k);
+        }
 
         this.combinedCRC = 0;
         initBlock();
@@ -797,6 +850,8 @@ public class CBZip2OutputStream extends OutputStream
             return;
         }
 
+        this.blockCount++;
+
         /* sort the block and establish posn of original string */
         blockSort();
 
@@ -855,6 +910,34 @@ public class CBZip2OutputStream extends OutputStream
         return this.blockSize100k;
     }
 
+    /**
+     * Returns the number of blocks written so far.
+     *
+     * @return int
+     */
+    int getBlockCount() {
+        return this.blockCount;
+    }
+
+    /**
+     * Returns the combined CRC of the blocks written so far.
+     *
+     * @return int
+     */
+    int getCombinedCRC() {
+        return this.combinedCRC;
+    }
+
+    /**
+     * Returns the number of padding bits in the last byte written by
+     * {@link #finish()} in blocks-only mode.
+     *
+     * @return int
+     */
+    int getPaddingBits() {
+        return this.paddingBits;
+    }
+
     @Override
     public void write(final byte[] buf, int offs, final int len)
         throws IOException {
@@ -0,0 +1,534 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.bzip2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * An input stream that decompresses from the BZip2 format (without the file
+ * header chars), decompressing blocks on several threads.
+ *
+ * <p>Blocks are not byte-aligned and their length is only known once they
+ * are decoded. The compressed data is thus scanned bit by bit for the
+ * 48-bit block magic, and each block found is decompressed by a {@link
+ * CBZip2InputStream} in single-block mode on a worker thread. Blocks are
+ * then returned in order, each one starting where the previous one ended:
+ * should the magic occur by chance inside a block, the bogus block is
+ * discarded, and a block that could not be decompressed in the background
+ * is decompressed again on the calling thread.</p>
+ *
+ * <p>Concatenated streams are decompressed until the end of the input, and
+ * data that does not start a new stream after the end of a stream is
+ * ignored.</p>
+ *
+ * <p>Although BZip2 headers are marked with the magic <code>"Bz"</code>,
+ * the constructor expects the next byte in the stream to be the first one
+ * after the magic, as with <code>CBZip2InputStream</code>. The compressed
+ * stream is read in large chunks, it need not be buffered.</p>
+ *
+ * <p>Instances of this class are not threadsafe.</p>
+ *
+ * @see ParallelBZip2OutputStream
+ */
+public class ParallelBZip2InputStream extends InputStream
+    implements BZip2Constants {
+
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long EOS_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = (1L << 48) - 1;
+
+    /**
+     * Number of bytes read at once from the compressed stream.
+     */
+    private static final int READ_SIZE = 64 * 1024;
+
+    /**
+     * Decompresses blocks in the background.
+     */
+    private static final ExecutorService DECOMPRESS_EXECUTOR =
+        Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "BZip2 decompressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private InputStream in;
+    private final int nbThreads;
+
+    /**
+     * Maximum number of blocks decompressed ahead.
+     */
+    private final int maxPendingBlocks;
+
+    /**
+     * Compressed data, starting at byte <code>windowOffset</code> of the
+     * stream.
+     */
+    private byte[] window = new byte[2 * READ_SIZE];
+    private long windowOffset;
+    private int windowLength;
+    private boolean endOfInput;
+
+    /**
+     * Position in bits of the next block or end of stream marker.
+     */
+    private long position;
+    private int blockSize100k;
+
+    /**
+     * Combined CRC of the blocks of the current stream, folded in from
+     * the CRCs stored in their headers.
+     */
+    private int computedCombinedCRC;
+
+    /**
+     * Position in bits up to which block magics have been looked for, and
+     * the last bits scanned.
+     */
+    private long scanPosition;
+    private long scanBits;
+
+    /**
+     * Position in bits of the last block magic found by the scan, whose
+     * end is not known yet. -1 if there is none.
+     */
+    private long candidate = -1;
+
+    /**
+     * Blocks being decompressed in the background, in order.
+     */
+    private final Queue<PendingBlock> pendingBlocks = new ArrayDeque<>();
+
+    private byte[] block = new byte[0];
+    private int blockOffset;
+    private boolean ended;
+
+    /**
+     * Constructs a new ParallelBZip2InputStream which decompresses bytes
+     * read from the specified stream, on as many threads as there are
+     * available processors.
+     *
+     * @param in the InputStream from which this object should be created
+     *
+     * @throws IOException
+     *             if the stream content is malformed or an I/O error occurs.
+     */
+    public ParallelBZip2InputStream(final InputStream in)
+        throws IOException {
+        this(in, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new ParallelBZip2InputStream which decompresses bytes
+     * read from the specified stream.
+     *
+     * @param in the InputStream from which this object should be created
+     * @param nbThreads the number of blocks decompressed concurrently
+     *
+     * @throws IOException
+     *             if the stream content is malformed or an I/O error occurs.
+     */
+    public ParallelBZip2InputStream(final InputStream in,
+                                    final int nbThreads)
+        throws IOException {
+        super();
+
+        this.in = in;
+        this.nbThreads = Math.max(1, nbThreads);
+        this.maxPendingBlocks = 2 * this.nbThreads;
+
+        if (getBits(0, 8) != 'h') {
+            throw new IOException("Stream is not in the BZip2 format");
+        }
+        final int blockSize = (int) getBits(8, 8);
+        if (blockSize < '1' || blockSize > '9') {
+            throw new IOException("Stream is not BZip2 formatted: illegal "
+                                  + "blocksize " + (char) blockSize);
+        }
+        this.blockSize100k = blockSize - '0';
+        this.position = 16;
+        this.scanPosition = 16;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] dest, final int offs, final int len)
+        throws IOException {
+        if (offs < 0 || len < 0 || offs + len > dest.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (this.in == null) {
+            throw new IOException("stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        while (this.blockOffset == this.block.length) {
+            if (this.ended || !nextBlock()) {
+                this.ended = true;
+                return -1;
+            }
+        }
+
+        final int n = Math.min(len, this.block.length - this.blockOffset);
+        System.arraycopy(this.block, this.blockOffset, dest, offs, n);
+        this.blockOffset += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return this.block.length - this.blockOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final InputStream inShadow = this.in;
+        if (inShadow != null) {
+            try {
+                inShadow.close();
+            } finally {
+                for (PendingBlock pending : this.pendingBlocks) {
+                    pending.decoded.cancel(false);
+                }
+                this.pendingBlocks.clear();
+                this.window = null;
+                this.block = new byte[0];
+                this.blockOffset = 0;
+                this.in = null;
+            }
+        }
+    }
+
+    /**
+     * Moves on to the block at the current position.
+     *
+     * @return false if the end of the compressed data was reached
+     */
+    private boolean nextBlock() throws IOException {
+        while (true) {
+            final long magic = getBits(this.position, 48);
+            if (magic == EOS_MAGIC) {
+                final long storedCombinedCRC = getBits(this.position + 48, 32);
+                if (storedCombinedCRC == -1) {
+                    throw new IOException("unexpected end of stream");
+                }
+                if ((int) storedCombinedCRC != this.computedCombinedCRC) {
+                    CBZip2InputStream.reportCRCError();
+                }
+                // skip the padding of the last byte
+                this.position = (this.position + 48 + 32 + 7) & ~7L;
+                if (!nextStream()) {
+                    return false;
+                }
+            } else if (magic == BLOCK_MAGIC) {
+                // the block CRC itself is checked by the block decoder
+                final int storedBlockCRC =
+                    (int) getBits(this.position + 48, 32);
+                this.block = takeBlock();
+                this.blockOffset = 0;
+                this.computedCombinedCRC = (this.computedCombinedCRC << 1)
+                    | (this.computedCombinedCRC >>> 31);
+                this.computedCombinedCRC ^= storedBlockCRC;
+                return true;
+            } else if (magic == -1) {
+                throw new IOException("unexpected end of stream");
+            } else {
+                throw new IOException("bad block header");
+            }
+        }
+    }
+
+    /**
+     * Reads the header of the stream concatenated at the current position.
+     *
+     * @return false if there is no stream at the current position
+     */
+    private boolean nextStream() throws IOException {
+        final long header = getBits(this.position, 32);
+        final int blockSize = (int) (header & 0xff) - '0';
+        if (header == -1 || (header >>> 8) != (('B' << 16) | ('Z' << 8) | 'h')
+            || blockSize < 1 || blockSize > 9) {
+            return false;
+        }
+
+        this.blockSize100k = blockSize;
+        this.computedCombinedCRC = 0;
+        this.position += 32;
+        return true;
+    }
+
+    /**
+     * Returns the decompressed data of the block at the current position,
+     * and moves the position to its end.
+     */
+    private byte[] takeBlock() throws IOException {
+        // let the scan get past the current position
+        dropStaleBlocks();
+        if (this.pendingBlocks.isEmpty()) {
+            scan();
+            dropStaleBlocks();
+        }
+
+        final PendingBlock pending = this.pendingBlocks.peek();
+        if (pending != null && pending.start == this.position) {
+            this.pendingBlocks.poll();
+            try {
+                final DecodedBlock decoded = pending.decoded.get();
+                this.position = decoded.end;
+                // keep decompressing ahead
+                scan();
+                return decoded.data;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                // the end of the block was likely mistaken for a magic
+                // occurring by chance, decompress it again below
+            }
+        }
+
+        // a block cannot take more than 20 bits per byte, plus its tables
+        final long from = this.position >>> 3;
+        final int maxLength =
+            this.blockSize100k * baseBlockSize * 20 / 8 + 65536;
+        ensureAvailable(from + maxLength);
+        final int to = (int) Math.min(from + maxLength - this.windowOffset,
+                                      this.windowLength);
+        final DecodedBlock decoded;
+        try {
+            decoded = decode(Arrays.copyOfRange(
+                this.window, (int) (from - this.windowOffset), to),
+                (int) (this.position & 7), this.blockSize100k);
+        } catch (RuntimeException e) {
+            throw new IOException("stream corrupted", e);
+        }
+        this.position = (from << 3) + decoded.end;
+
+        // resume the scan from the current position if it was behind
+        if (this.scanPosition < this.position) {
+            this.scanPosition = this.position & ~7L;
+            this.scanBits = 0;
+            this.candidate = -1;
+        }
+        return decoded.data;
+    }
+
+    /**
+     * Discards the blocks that start before the current position, which
+     * are magics occurring by chance.
+     */
+    private void dropStaleBlocks() {
+        while (!this.pendingBlocks.isEmpty()
+               && this.pendingBlocks.peek().start < this.position) {
+            this.pendingBlocks.poll().decoded.cancel(false);
+        }
+    }
+
+    /**
+     * Scans the compressed data for block magics, and submits the blocks
+     * found for decompression until enough blocks are pending.
+     */
+    private void scan() throws IOException {
+        while (this.pendingBlocks.size() < this.maxPendingBlocks) {
+            final int index =
+                (int) ((this.scanPosition >>> 3) - this.windowOffset);
+            if (index >= this.windowLength) {
+                if (this.endOfInput) {
+                    if (this.candidate >= 0) {
+                        submit(this.candidate, this.scanPosition);
+                        this.candidate = -1;
+                    }
+                    return;
+                }
+                readInput();
+                continue;
+            }
+
+            final int b = this.window[index] & 0xff;
+            long scanBitsShadow = this.scanBits;
+            for (int bit = (int) (this.scanPosition & 7); bit < 8; bit++) {
+                scanBitsShadow = (scanBitsShadow << 1) | ((b >> (7 - bit)) & 1);
+                final long bits = scanBitsShadow & MAGIC_MASK;
+                if (bits == BLOCK_MAGIC || bits == EOS_MAGIC) {
+                    final long start = (this.scanPosition & ~7L) + bit - 47;
+                    if (this.candidate >= 0) {
+                        submit(this.candidate, start);
+                    }
+                    this.candidate = bits == BLOCK_MAGIC ? start : -1;
+                }
+            }
+            this.scanBits = scanBitsShadow;
+            this.scanPosition = (this.scanPosition & ~7L) + 8;
+        }
+    }
+
+    /**
+     * Submits the block between the given positions for decompression.
+     */
+    private void submit(final long start, final long end) {
+        final long from = start >>> 3;
+        // the next magic is included, the block may end in its first byte
+        final long to = Math.min((end + 48 + 7) >>> 3,
+                                 this.windowOffset + this.windowLength);
+        final byte[] data = Arrays.copyOfRange(
+            this.window, (int) (from - this.windowOffset),
+            (int) (to - this.windowOffset));
+        final int bitOffset = (int) (start & 7);
+        final int blockSize = this.blockSize100k;
+
+        final FutureTask<DecodedBlock> task = new FutureTask<>(() -> {
+            final DecodedBlock decoded = decode(data, bitOffset, blockSize);
+            return new DecodedBlock(decoded.data, (from << 3) + decoded.end);
+        });
+        if (this.nbThreads == 1) {
+            task.run();
+        } else {
+            DECOMPRESS_EXECUTOR.execute(task);
+        }
+        this.pendingBlocks.add(new PendingBlock(start, task));
+    }
+
+    /**
+     * Decompresses the block starting at the given bit of the given data.
+     *
+     * @return the decompressed block and the position of its end in bits,
+     *         relative to the start of the data
+     */
+    private static DecodedBlock decode(final byte[] data, final int bitOffset,
+                                       final int blockSize100k)
+        throws IOException {
+        final ByteArrayInputStream bin = new ByteArrayInputStream(data);
+        final CBZip2InputStream decoder =
+            new CBZip2InputStream(bin, blockSize100k, bitOffset);
+        final long end = (data.length - bin.available()) * 8L
+            - decoder.getBufferedBits();
+
+        final ByteArrayOutputStream bout =
+            new ByteArrayOutputStream(blockSize100k * baseBlockSize);
+        final byte[] buf = new byte[8192];
+        for (int n; (n = decoder.read(buf, 0, buf.length)) != -1;) {
+            bout.write(buf, 0, n);
+        }
+
+        return new DecodedBlock(bout.toByteArray(), end);
+    }
+
+    /**
+     * Returns the <code>n</code> bits (at most 56) at the given position,
+     * -1 if the compressed data ends before.
+     */
+    private long getBits(final long bitPosition, final int n)
+        throws IOException {
+        final long from = bitPosition >>> 3;
+        final long to = (bitPosition + n + 7) >>> 3;
+        ensureAvailable(to);
+        if (to > this.windowOffset + this.windowLength) {
+            return -1;
+        }
+
+        long bits = 0;
+        for (long i = from; i < to; i++) {
+            bits = (bits << 8)
+                | (this.window[(int) (i - this.windowOffset)] & 0xff);
+        }
+        final int extraBits = (int) ((to << 3) - bitPosition - n);
+        return (bits >>> extraBits) & ((1L << n) - 1);
+    }
+
+    /**
+     * Reads compressed data until the window reaches the given byte
+     * position, or the end of the input.
+     */
+    private void ensureAvailable(final long to) throws IOException {
+        while (this.windowOffset + this.windowLength < to
+               && !this.endOfInput) {
+            readInput();
+        }
+    }
+
+    /**
+     * Reads the next chunk of compressed data, discarding the data before
+     * the current position and the scan.
+     */
+    private void readInput() throws IOException {
+        long keep = Math.min(this.position, this.scanPosition);
+        if (this.candidate >= 0) {
+            keep = Math.min(keep, this.candidate);
+        }
+        final int discarded = (int) ((keep >>> 3) - this.windowOffset);
+        if (discarded > 0) {
+            System.arraycopy(this.window, discarded, this.window, 0,
+                             this.windowLength - discarded);
+            this.windowOffset += discarded;
+            this.windowLength -= discarded;
+        }
+
+        if (this.window.length - this.windowLength < READ_SIZE) {
+            this.window = Arrays.copyOf(this.window,
+                                        2 * this.window.length);
+        }
+
+        final int n = this.in.read(this.window, this.windowLength, READ_SIZE);
+        if (n == -1) {
+            this.endOfInput = true;
+        } else {
+            this.windowLength += n;
+        }
+    }
+
+    private static final class DecodedBlock {
+        final byte[] data;
+        final long end;
+
+        DecodedBlock(final byte[] data, final long end) {
+            this.data = data;
+            this.end = end;
+        }
+    }
+
+    private static final class PendingBlock {
+        final long start;
+        final Future<DecodedBlock> decoded;
+
+        PendingBlock(final long start, final Future<DecodedBlock> decoded) {
+            this.start = start;
+            this.decoded = decoded;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.bzip2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * An output stream that compresses into the BZip2 format (without the file
+ * header chars) into another stream, compressing blocks on several threads.
+ *
+ * <p>BZip2 blocks are independent from each other: the data is split into
+ * parts of one block, which are compressed concurrently by {@link
+ * CBZip2OutputStream}s in blocks-only mode. The compressed blocks are not
+ * byte-aligned, they are concatenated bit by bit in order and followed by
+ * the end of stream marker and the combined CRC of all blocks, which
+ * results in a regular BZip2 stream.</p>
+ *
+ * <p>At most <code>nbThreads</code> parts are compressed at the same time,
+ * the calling thread waits for the oldest one to be compressed when that
+ * limit is reached. With a single thread, parts are compressed on the
+ * calling thread.</p>
+ *
+ * <p>
+ * <b>Attention: </b>As with <code>CBZip2OutputStream</code>, the caller is
+ * responsible to write the two BZip2 magic bytes <code>"BZ"</code> to the
+ * specified stream prior to calling the constructor.
+ * </p>
+ *
+ * <p>Instances of this class are not threadsafe.</p>
+ *
+ * @see ParallelBZip2InputStream
+ */
+public class ParallelBZip2OutputStream extends OutputStream
+    implements BZip2Constants {
+
+    /**
+     * Compresses parts in the background.
+     */
+    private static final ExecutorService COMPRESS_EXECUTOR =
+        Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "BZip2 compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private OutputStream out;
+    private final int blockSize100k;
+    private final int nbThreads;
+
+    /**
+     * Number of bytes in a part. Parts that run-length encoding makes
+     * larger than a block are compressed into two blocks.
+     */
+    private final int partSize;
+
+    /**
+     * Parts submitted for compression and not written yet, in order.
+     */
+    private final Queue<Future<CompressedPart>> pendingParts =
+        new ArrayDeque<>();
+
+    private byte[] part;
+    private int partLength;
+
+    private int combinedCRC;
+
+    /**
+     * Bits written and not flushed to the underlying stream yet, in the
+     * lowest <code>bitCount</code> bits.
+     */
+    private int bitBuffer;
+    private int bitCount;
+
+    /**
+     * Constructs a new <code>ParallelBZip2OutputStream</code> with a
+     * blocksize of 900k.
+     *
+     * @param out
+     *            the destination stream.
+     * @param nbThreads
+     *            the maximum number of parts compressed concurrently.
+     *
+     * @throws IOException
+     *             if an I/O error occurs in the specified stream.
+     */
+    public ParallelBZip2OutputStream(final OutputStream out,
+                                     final int nbThreads)
+        throws IOException {
+        this(out, CBZip2OutputStream.MAX_BLOCKSIZE, nbThreads);
+    }
+
+    /**
+     * Constructs a new <code>ParallelBZip2OutputStream</code> with
+     * specified blocksize.
+     *
+     * @param out
+     *            the destination stream.
+     * @param blockSize
+     *            the blockSize as 100k units.
+     * @param nbThreads
+     *            the maximum number of parts compressed concurrently.
+     *
+     * @throws IOException
+     *             if an I/O error occurs in the specified stream.
+     * @throws IllegalArgumentException
+     *             if <code>(blockSize &lt; 1) || (blockSize &gt; 9)</code>.
+     */
+    public ParallelBZip2OutputStream(final OutputStream out,
+                                     final int blockSize,
+                                     final int nbThreads)
+        throws IOException {
+        super();
+
+        if (blockSize < CBZip2OutputStream.MIN_BLOCKSIZE
+            || blockSize > CBZip2OutputStream.MAX_BLOCKSIZE) {
+            throw new IllegalArgumentException("blockSize(" + blockSize
+                                               + ") not in 1..9");
+        }
+
+        this.out = out;
+        this.blockSize100k = blockSize;
+        this.nbThreads = Math.max(1, nbThreads);
+        /* same paranoia constant as CBZip2OutputStream */
+        this.partSize = (blockSize * baseBlockSize) - 20;
+        this.part = new byte[this.partSize];
+
+        out.write('h');
+        out.write('0' + blockSize);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] buf, int offs, int len)
+        throws IOException {
+        if (offs < 0 || len < 0 || offs + len > buf.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (this.out == null) {
+            throw new IOException("stream closed");
+        }
+
+        while (len > 0) {
+            if (this.partLength == this.partSize) {
+                submitPart();
+            }
+
+            final int n = Math.min(len, this.partSize - this.partLength);
+            System.arraycopy(buf, offs, this.part, this.partLength, n);
+            this.partLength += n;
+            offs += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Compresses the remaining data and writes the end of stream marker,
+     * without closing the underlying stream.
+     *
+     * @throws IOException
+     *             if an I/O error occurs in the specified stream.
+     */
+    public void finish() throws IOException {
+        if (this.out != null) {
+            try {
+                if (this.partLength > 0) {
+                    submitPart();
+                }
+                while (!this.pendingParts.isEmpty()) {
+                    writeOldestPart();
+                }
+
+                // same end of stream marker as CBZip2OutputStream
+                writeBits(24, 0x177245);
+                writeBits(24, 0x385090);
+                writeBits(16, this.combinedCRC >>> 16);
+                writeBits(16, this.combinedCRC & 0xffff);
+                if (this.bitCount > 0) {
+                    writeBits(8 - this.bitCount, 0);
+                }
+            } finally {
+                this.out = null;
+                this.part = null;
+                this.pendingParts.clear();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.out != null) {
+            OutputStream outShadow = this.out;
+            try {
+                finish();
+            } finally {
+                outShadow.close();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        OutputStream outShadow = this.out;
+        if (outShadow != null) {
+            outShadow.flush();
+        }
+    }
+
+    /**
+     * Returns the blocksize parameter specified at construction time.
+     *
+     * @return int
+     */
+    public final int getBlockSize() {
+        return this.blockSize100k;
+    }
+
+    private void submitPart() throws IOException {
+        // write the parts that are ready, and wait for the oldest one if
+        // there is no free thread
+        while (!this.pendingParts.isEmpty()
+               && (this.pendingParts.peek().isDone()
+                   || this.pendingParts.size() >= this.nbThreads)) {
+            writeOldestPart();
+        }
+
+        final byte[] data = this.part;
+        final int length = this.partLength;
+        final FutureTask<CompressedPart> task = new FutureTask<>(
+            () -> compress(data, length, this.blockSize100k));
+        if (this.nbThreads == 1) {
+            task.run();
+        } else {
+            COMPRESS_EXECUTOR.execute(task);
+        }
+        this.pendingParts.add(task);
+
+        this.part = new byte[this.partSize];
+        this.partLength = 0;
+    }
+
+    private static CompressedPart compress(final byte[] data,
+                                           final int length,
+                                           final int blockSize100k)
+        throws IOException {
+        final ByteArrayOutputStream bout =
+            new ByteArrayOutputStream(length / 4);
+        final CBZip2OutputStream blocks =
+            new CBZip2OutputStream(bout, blockSize100k, true);
+        blocks.write(data, 0, length);
+        blocks.finish();
+
+        return new CompressedPart(bout.toByteArray(),
+                                  blocks.getPaddingBits(),
+                                  blocks.getBlockCount(),
+                                  blocks.getCombinedCRC());
+    }
+
+    private void writeOldestPart() throws IOException {
+        final CompressedPart compressed;
+        try {
+            compressed = this.pendingParts.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof IOException
+                ? (IOException) cause : new IOException(cause);
+        }
+
+        // the combined CRC is rotated left once per block
+        this.combinedCRC = Integer.rotateLeft(this.combinedCRC,
+                                              compressed.blockCount)
+            ^ compressed.combinedCRC;
+
+        final byte[] data = compressed.data;
+        final int last = data.length - 1;
+        if (this.bitCount == 0) {
+            this.out.write(data, 0, last);
+        } else {
+            // shift the whole bytes of the part by the bits written so far
+            final int shift = this.bitCount;
+            final int mask = (1 << shift) - 1;
+            int bitBufferShadow = this.bitBuffer;
+            final byte[] shifted = new byte[last];
+            for (int i = 0; i < last; i++) {
+                final int v = (bitBufferShadow << 8) | (data[i] & 0xff);
+                shifted[i] = (byte) (v >> shift);
+                bitBufferShadow = v & mask;
+            }
+            this.bitBuffer = bitBufferShadow;
+            this.out.write(shifted);
+        }
+        writeBits(8 - compressed.paddingBits,
+                  (data[last] & 0xff) >> compressed.paddingBits);
+    }
+
+    /**
+     * Writes the <code>n</code> lowest bits of the given value, at most 24.
+     */
+    private void writeBits(final int n, final int v) throws IOException {
+        int bitBufferShadow = (this.bitBuffer << n) | (v & ((1 << n) - 1));
+        int bitCountShadow = this.bitCount + n;
+        while (bitCountShadow >= 8) {
+            bitCountShadow -= 8;
+            this.out.write(bitBufferShadow >> bitCountShadow);
+        }
+        this.bitBuffer = bitBufferShadow & ((1 << bitCountShadow) - 1);
+        this.bitCount = bitCountShadow;
+    }
+
+    /**
+     * Blocks of a compressed part, the last byte padded with zero bits.
+     */
+    private static final class CompressedPart {
+        final byte[] data;
+        final int paddingBits;
+        final int blockCount;
+        final int combinedCRC;
+
+        CompressedPart(final byte[] data, final int paddingBits,
+                       final int blockCount, final int combinedCRC) {
+            this.data = data;
+            this.paddingBits = paddingBits;
+            this.blockCount = blockCount;
+            this.combinedCRC = combinedCRC;
+        }
+    }
+}
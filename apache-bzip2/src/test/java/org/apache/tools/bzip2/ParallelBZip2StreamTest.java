@@ -0,0 +1,432 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.bzip2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * This class is a TestNG test case for {@link ParallelBZip2OutputStream} and
+ * {@link ParallelBZip2InputStream}, and for the blocks-only and single-block
+ * modes of {@link CBZip2OutputStream} and {@link CBZip2InputStream} they rely
+ * on.
+ *
+ * <p>As with the serial streams, the compressed data is handled without the
+ * <code>"BZ"</code> file header chars.</p>
+ */
+public class ParallelBZip2StreamTest {
+
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long EOS_MAGIC = 0x177245385090L;
+
+    /**
+     * Bytes whose in-use bitmap, written in each block header, reads as the
+     * block magic: the groups of 16 bytes in use are 2, 3, 7, 9 and 15
+     * (<code>0x3141</code>), the bytes used in group 2 are marked by
+     * <code>0x5926</code> and those in group 3 by <code>0x5359</code>.
+     */
+    private static final byte[] MAGIC_ALPHABET = {
+        33, 35, 36, 39, 42, 45, 46,
+        49, 51, 54, 55, 57, 59, 60, 63,
+        112, (byte) 144, (byte) 240
+    };
+
+    /**
+     * Round trips data spanning several blocks with every block size, and
+     * checks the output can be read by the serial decoder as well.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (int blockSize = 1; blockSize <= 9; blockSize++) {
+            final byte[] data =
+                getTestData(blockSize * BZip2Constants.baseBlockSize * 2 + 12345,
+                            blockSize);
+            final byte[] compressed = compressParallel(data, blockSize, 4);
+
+            assertEquals(compressed[0], 'h');
+            assertEquals(compressed[1], '0' + blockSize);
+            assertEquals(findMagics(compressed, BLOCK_MAGIC).size(), 3);
+            assertTrue(Arrays.equals(decompressParallel(compressed, 4), data));
+            assertTrue(Arrays.equals(decompressParallel(compressed, 1), data));
+            assertTrue(Arrays.equals(decompressSerial(compressed), data));
+        }
+    }
+
+    /**
+     * Tests streams that are empty or hold a single byte.
+     */
+    @Test
+    public void testTinyStreams() throws IOException {
+        for (byte[] data : new byte[][] {new byte[0], new byte[] {42}}) {
+            final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            try (ParallelBZip2OutputStream out =
+                     new ParallelBZip2OutputStream(bout, 4)) {
+                for (byte b : data) {
+                    out.write(b);
+                }
+            }
+            final byte[] compressed = bout.toByteArray();
+
+            assertTrue(Arrays.equals(decompressParallel(compressed, 4), data));
+            assertTrue(Arrays.equals(decompressSerial(compressed), data));
+        }
+    }
+
+    /**
+     * Tests that the output of the serial encoder is decompressed in
+     * parallel.
+     */
+    @Test
+    public void testSerialToParallel() throws IOException {
+        final byte[] data = getTestData(5 * BZip2Constants.baseBlockSize, 7);
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (CBZip2OutputStream out = new CBZip2OutputStream(bout, 1)) {
+            out.write(data);
+        }
+        final byte[] compressed = bout.toByteArray();
+
+        assertTrue(Arrays.equals(decompressParallel(compressed, 4), data));
+        assertTrue(Arrays.equals(decompressParallel(compressed, 1), data));
+    }
+
+    /**
+     * Tests that parts whose compressed length is not a whole number of bytes
+     * are concatenated bit by bit.
+     */
+    @Test
+    public void testUnalignedParts() throws IOException {
+        final byte[] data = getTestData(8 * BZip2Constants.baseBlockSize, 11);
+        final byte[] compressed = compressParallel(data, 1, 3);
+
+        final List<Long> blocks = findMagics(compressed, BLOCK_MAGIC);
+        assertEquals(blocks.size(), 9);
+        assertEquals(blocks.get(0).longValue(), 16L);
+        boolean unaligned = false;
+        for (long position : blocks) {
+            unaligned |= (position & 7) != 0;
+        }
+        assertTrue(unaligned);
+
+        final List<Long> ends = findMagics(compressed, EOS_MAGIC);
+        assertEquals(ends.size(), 1);
+        // only the last byte is padded
+        assertEquals((ends.get(0) + 48 + 32 + 7) >>> 3, (long) compressed.length);
+
+        assertTrue(Arrays.equals(decompressSerial(compressed), data));
+        assertTrue(Arrays.equals(decompressParallel(compressed, 4), data));
+    }
+
+    /**
+     * Tests that concatenated streams with different block sizes are all
+     * decompressed, and that trailing garbage is ignored.
+     */
+    @Test
+    public void testConcatenatedStreams() throws IOException {
+        final byte[] data1 = getTestData(3 * BZip2Constants.baseBlockSize, 1);
+        final byte[] data2 = getTestData(BZip2Constants.baseBlockSize / 2, 2);
+        final byte[] data3 = getTestData(2 * BZip2Constants.baseBlockSize, 3);
+
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        bout.write(compressParallel(data1, 1, 4));
+        bout.write('B');
+        bout.write('Z');
+        final ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        try (CBZip2OutputStream out = new CBZip2OutputStream(serial, 9)) {
+            out.write(data2);
+        }
+        bout.write(serial.toByteArray());
+        bout.write('B');
+        bout.write('Z');
+        bout.write(compressParallel(data3, 2, 4));
+        bout.write(new byte[] {0, 0, 0});
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(data1);
+        expected.write(data2);
+        expected.write(data3);
+
+        assertTrue(Arrays.equals(decompressParallel(bout.toByteArray(), 4),
+                                 expected.toByteArray()));
+        assertTrue(Arrays.equals(decompressParallel(bout.toByteArray(), 1),
+                                 expected.toByteArray()));
+    }
+
+    /**
+     * Tests blocks in which the block magic occurs by chance: the blocks
+     * decompressed in the background end at the bogus magic and fail, and
+     * are decompressed again on the calling thread.
+     */
+    @Test
+    public void testMagicInsideBlock() throws IOException {
+        final Random random = new Random(5);
+        final byte[] data = new byte[5 * BZip2Constants.baseBlockSize / 2];
+        // no byte is repeated, so that no run length is written in the block
+        for (int i = 0, previous = 0; i < data.length; i++) {
+            previous = (previous + 1 + random.nextInt(MAGIC_ALPHABET.length - 1))
+                % MAGIC_ALPHABET.length;
+            data[i] = MAGIC_ALPHABET[previous];
+        }
+        final byte[] compressed = compressParallel(data, 1, 4);
+
+        final List<Long> blocks = findMagics(compressed, BLOCK_MAGIC);
+        assertEquals(blocks.size(), 6);
+        // the bogus magic follows the block header: magic, CRC, randomised
+        // bit and origPtr
+        for (int i = 0; i < blocks.size(); i += 2) {
+            assertEquals(blocks.get(i + 1) - blocks.get(i), 48L + 32 + 1 + 24);
+        }
+
+        assertTrue(Arrays.equals(decompressSerial(compressed), data));
+        assertTrue(Arrays.equals(decompressParallel(compressed, 4), data));
+        assertTrue(Arrays.equals(decompressParallel(compressed, 1), data));
+    }
+
+    /**
+     * Tests that a truncated stream fails rather than ending early.
+     */
+    @Test(expectedExceptions = IOException.class)
+    public void testTruncatedStream() throws IOException {
+        final byte[] compressed = compressParallel(
+            getTestData(3 * BZip2Constants.baseBlockSize, 13), 1, 4);
+
+        decompressParallel(Arrays.copyOf(compressed, compressed.length / 2), 4);
+    }
+
+    /**
+     * Tests that a stream truncated in its end of stream marker fails.
+     */
+    @Test(expectedExceptions = IOException.class)
+    public void testTruncatedEndOfStream() throws IOException {
+        final byte[] compressed = compressParallel(
+            getTestData(BZip2Constants.baseBlockSize / 2, 17), 1, 4);
+
+        decompressParallel(Arrays.copyOf(compressed, compressed.length - 3), 4);
+    }
+
+    /**
+     * Tests that a corrupt block header fails.
+     */
+    @Test(expectedExceptions = IOException.class)
+    public void testCorruptBlockHeader() throws IOException {
+        final byte[] compressed = compressParallel(
+            getTestData(2 * BZip2Constants.baseBlockSize, 19), 1, 4);
+        // the first block magic starts right after the stream header
+        compressed[4] ^= 0x10;
+
+        decompressParallel(compressed, 4);
+    }
+
+    /**
+     * Tests that a stream which is not in the BZip2 format is rejected.
+     */
+    @Test(expectedExceptions = IOException.class)
+    public void testNotBZip2() throws IOException {
+        new ParallelBZip2InputStream(
+            new ByteArrayInputStream(new byte[] {'x', '9', 0, 0}));
+    }
+
+    /**
+     * Tests that the combined CRC of each stream is verified, and reported as
+     * the serial decoder does.
+     */
+    @Test
+    public void testCombinedCRC() throws IOException {
+        final byte[] data = getTestData(3 * BZip2Constants.baseBlockSize, 23);
+        final byte[] compressed = compressParallel(data, 1, 4);
+
+        assertFalse(decompressReportingCRCError(compressed, data));
+
+        // flip the last bit of the combined CRC, which follows the end of
+        // stream magic
+        final long crcEnd = findMagics(compressed, EOS_MAGIC).get(0) + 48 + 32 - 1;
+        compressed[(int) (crcEnd >>> 3)] ^= 0x80 >>> (crcEnd & 7);
+
+        assertTrue(decompressReportingCRCError(compressed, data));
+    }
+
+    /**
+     * Tests that the blocks-only mode writes neither the stream header nor
+     * the end of stream marker.
+     */
+    @Test
+    public void testBlocksOnly() throws IOException {
+        final byte[] data = getTestData(3 * BZip2Constants.baseBlockSize / 2, 29);
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (CBZip2OutputStream out = new CBZip2OutputStream(bout, 1, true)) {
+            out.write(data);
+        }
+        final byte[] blocks = bout.toByteArray();
+
+        assertEquals(findMagics(blocks, BLOCK_MAGIC).get(0).longValue(), 0L);
+        assertTrue(findMagics(blocks, EOS_MAGIC).isEmpty());
+    }
+
+    /**
+     * Tests that the single-block mode decompresses one block starting at any
+     * bit, and tells where it ends.
+     */
+    @Test
+    public void testSingleBlock() throws IOException {
+        final byte[] data = getTestData(BZip2Constants.baseBlockSize / 2, 31);
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (CBZip2OutputStream out = new CBZip2OutputStream(bout, 1)) {
+            out.write(data);
+        }
+        final byte[] compressed = bout.toByteArray();
+        final long end = findMagics(compressed, EOS_MAGIC).get(0);
+
+        for (int shift = 0; shift < 8; shift++) {
+            // the block without the stream header, preceded by shift bits
+            final byte[] block = shiftRight(
+                Arrays.copyOfRange(compressed, 2, compressed.length), shift);
+            final ByteArrayInputStream bin = new ByteArrayInputStream(block);
+            final CBZip2InputStream in = new CBZip2InputStream(bin, 1, shift);
+            final long blockEnd = (block.length - bin.available()) * 8L
+                - in.getBufferedBits();
+
+            assertEquals(blockEnd, end - 16 + shift);
+            assertTrue(Arrays.equals(readAll(in), data));
+        }
+    }
+
+    /**
+     * Returns test data made of runs of random, repeated and text bytes.
+     */
+    private static byte[] getTestData(final int length, final long seed) {
+        final Random random = new Random(seed);
+        final byte[] data = new byte[length];
+        final byte[] text = "The quick brown fox jumps over the lazy dog. "
+            .getBytes();
+        for (int i = 0; i < length;) {
+            final int kind = random.nextInt(3);
+            final int n = Math.min(length - i, 1 + random.nextInt(5000));
+            for (int j = 0; j < n; j++) {
+                data[i + j] = kind == 0 ? (byte) random.nextInt(256)
+                    : kind == 1 ? (byte) 'a' : text[j % text.length];
+            }
+            i += n;
+        }
+        return data;
+    }
+
+    /**
+     * Compresses the given data in parallel, written in chunks of random
+     * sizes.
+     */
+    private static byte[] compressParallel(final byte[] data,
+                                           final int blockSize,
+                                           final int nbThreads)
+        throws IOException {
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ParallelBZip2OutputStream out =
+                 new ParallelBZip2OutputStream(bout, blockSize, nbThreads)) {
+            final Random random = new Random(data.length);
+            for (int offset = 0; offset < data.length;) {
+                final int n = Math.min(data.length - offset,
+                                       random.nextInt(300000));
+                out.write(data, offset, n);
+                offset += n;
+            }
+        }
+        return bout.toByteArray();
+    }
+
+    private static byte[] decompressParallel(final byte[] compressed,
+                                             final int nbThreads)
+        throws IOException {
+        return readAll(new ParallelBZip2InputStream(
+            new ByteArrayInputStream(compressed), nbThreads));
+    }
+
+    private static byte[] decompressSerial(final byte[] compressed)
+        throws IOException {
+        return readAll(new CBZip2InputStream(
+            new ByteArrayInputStream(compressed)));
+    }
+
+    /**
+     * Decompresses the given stream in parallel, checks the result and
+     * returns whether a CRC error was reported.
+     */
+    private static boolean decompressReportingCRCError(final byte[] compressed,
+                                                       final byte[] expected)
+        throws IOException {
+        final PrintStream err = System.err;
+        final ByteArrayOutputStream reported = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(reported, true));
+        try {
+            assertTrue(Arrays.equals(decompressParallel(compressed, 4),
+                                     expected));
+        } finally {
+            System.setErr(err);
+        }
+        return reported.toString().contains("BZip2 CRC error");
+    }
+
+    private static byte[] readAll(final InputStream in) throws IOException {
+        try (InputStream inShadow = in) {
+            final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            final byte[] buf = new byte[8192];
+            for (int n; (n = inShadow.read(buf, 0, buf.length)) != -1;) {
+                bout.write(buf, 0, n);
+            }
+            return bout.toByteArray();
+        }
+    }
+
+    /**
+     * Returns the positions in bits of the given 48-bit magic.
+     */
+    private static List<Long> findMagics(final byte[] data, final long magic) {
+        final List<Long> positions = new ArrayList<>();
+        long bits = 0;
+        for (long i = 0; i < data.length * 8L; i++) {
+            bits = (bits << 1) | ((data[(int) (i >>> 3)] >> (7 - (i & 7))) & 1);
+            if (i >= 47 && (bits & ((1L << 48) - 1)) == magic) {
+                positions.add(i - 47);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the given data preceded by the given number of zero bits.
+     */
+    private static byte[] shiftRight(final byte[] data, final int shift) {
+        final byte[] shifted = new byte[data.length + 1];
+        for (int i = 0; i < data.length; i++) {
+            shifted[i] |= (data[i] & 0xff) >>> shift;
+            shifted[i + 1] = (byte) (data[i] << (8 - shift));
+        }
+        return shifted;
+    }
+}
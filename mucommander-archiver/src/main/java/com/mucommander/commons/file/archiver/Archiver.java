@@ -21,9 +21,11 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 import org.apache.tools.bzip2.CBZip2OutputStream;
+import org.apache.tools.bzip2.ParallelBZip2OutputStream;
 import org.tukaani.xz.XZOutputStream;
 import org.tukaani.xz.LZMA2Options;
 
@@ -31,6 +33,7 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.io.BufferedRandomOutputStream;
+import com.mucommander.commons.io.ParallelGZIPOutputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 
 
@@ -248,6 +251,25 @@ public abstract class Archiver {
      * @throws UnsupportedFileOperationException if the underlying filesystem does not support write operations
      */
     public static Archiver getArchiver(AbstractFile file, int format) throws IOException, UnsupportedFileOperationException {
+        return getArchiver(file, format, Deflater.DEFAULT_COMPRESSION, 1);
+    }
+
+    /**
+     * Returns an Archiver for the specified format and that uses the given {@link AbstractFile} to write entries to,
+     * like {@link #getArchiver(AbstractFile, int)}. Formats that use the Deflate compression method, i.e. Zip, Gzip
+     * and Tar/Gzip, compress data with the given level and up to the given number of threads, as do the Bzip2 and
+     * Tar/Bzip2 formats with the number of threads only; the XZ and Tar formats ignore these parameters.
+     *
+     * @param file the AbstractFile which the returned Archiver will write entries to
+     * @param format an archive format
+     * @param level the Deflate compression level, from 1 to 9 or <code>Deflater.DEFAULT_COMPRESSION</code>
+     * @param nbThreads the maximum number of threads that compress data, <code>1</code> to compress on the calling thread
+     * @return an Archiver for the specified format and that uses the given {@link AbstractFile} to write entries to ;
+     * null if the specified format is not valid.
+     * @throws IOException if the file cannot be opened for write, or if an error occurred while intializing the archiver
+     * @throws UnsupportedFileOperationException if the underlying filesystem does not support write operations
+     */
+    public static Archiver getArchiver(AbstractFile file, int format, int level, int nbThreads) throws IOException, UnsupportedFileOperationException {
         OutputStream out = null;
 
         if(file.isFileOperationSupported(FileOperation.RANDOM_WRITE_FILE)) {
@@ -267,7 +289,7 @@ public abstract class Archiver {
         if(out==null)
             out = new BufferedOutputStream(file.getOutputStream());
 
-        return getArchiver(out, format);
+        return getArchiver(out, format, level, nbThreads);
     }
 
 
@@ -283,17 +305,35 @@ public abstract class Archiver {
      * @throws IOException if an error occurred while intializing the archiver
      */
     public static Archiver getArchiver(OutputStream out, int format) throws IOException {
+        return getArchiver(out, format, Deflater.DEFAULT_COMPRESSION, 1);
+    }
+
+    /**
+     * Returns an Archiver for the specified format and that uses the given <code>OutputStream</code> to write entries
+     * to, like {@link #getArchiver(OutputStream, int)}. Formats that use the Deflate compression method, i.e. Zip, Gzip
+     * and Tar/Gzip, compress data with the given level and up to the given number of threads, as do the Bzip2 and
+     * Tar/Bzip2 formats with the number of threads only; the XZ and Tar formats ignore these parameters.
+     *
+     * @param out the OutputStream which the returned Archiver will write entries to
+     * @param format an archive format
+     * @param level the Deflate compression level, from 1 to 9 or <code>Deflater.DEFAULT_COMPRESSION</code>
+     * @param nbThreads the maximum number of threads that compress data, <code>1</code> to compress on the calling thread
+     * @return an Archiver for the specified format and that uses the given {@link AbstractFile} to write entries to ;
+     * null if the specified format is not valid.
+     * @throws IOException if an error occurred while intializing the archiver
+     */
+    public static Archiver getArchiver(OutputStream out, int format, int level, int nbThreads) throws IOException {
         Archiver archiver;
 
         switch(format) {
             case ZIP_FORMAT:
-                archiver = new ZipArchiver(out);
+                archiver = new ZipArchiver(out, level, nbThreads);
                 break;
             case GZ_FORMAT:
-                archiver = new SingleFileArchiver(new GZIPOutputStream(out));
+                archiver = new SingleFileArchiver(createGzipOutputStream(out, level, nbThreads));
                 break;
             case BZ2_FORMAT:
-                archiver = new SingleFileArchiver(createBzip2OutputStream(out));
+                archiver = new SingleFileArchiver(createBzip2OutputStream(out, nbThreads));
                 break;
             case XZ_FORMAT:
                 archiver = new SingleFileArchiver(new XZOutputStream(out, new LZMA2Options()));
@@ -302,10 +342,10 @@ public abstract class Archiver {
                 archiver = new TarArchiver(out);
                 break;
             case TAR_GZ_FORMAT:
-                archiver = new TarArchiver(new GZIPOutputStream(out));
+                archiver = new TarArchiver(createGzipOutputStream(out, level, nbThreads));
                 break;
             case TAR_BZ2_FORMAT:
-                archiver = new TarArchiver(createBzip2OutputStream(out));
+                archiver = new TarArchiver(createBzip2OutputStream(out, nbThreads));
                 break;
             case TAR_XZ_FORMAT:
                 archiver = new TarArchiver(new XZOutputStream(out, new LZMA2Options()));
@@ -320,6 +360,27 @@ public abstract class Archiver {
         return archiver;
     }
 
+    /**
+     * Creates and returns a Gzip <code>OutputStream</code> using the given <code>OutputStream</code> as the underlying
+     * stream. With more than one thread, the data is compressed in blocks, concurrently.
+     *
+     * @param out the underlying stream
+     * @param level the Deflate compression level
+     * @param nbThreads the maximum number of threads that compress data
+     * @return a Gzip OutputStream
+     * @throws IOException if an error occurred while writing the Gzip header
+     */
+    protected static OutputStream createGzipOutputStream(OutputStream out, int level, int nbThreads) throws IOException {
+        if(nbThreads>1)
+            return new ParallelGZIPOutputStream(out, level, nbThreads);
+
+        return new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
     /**
      * Creates and returns a Bzip2 <code>OutputStream</code> using the given <code>OutputStream</code> as the underlying
      * stream.
@@ -329,6 +390,19 @@ public abstract class Archiver {
      * @throws IOException if an error occurred while initializing the Bzip2 OutputStream
      */
     protected static OutputStream createBzip2OutputStream(OutputStream out) throws IOException {
+        return createBzip2OutputStream(out, 1);
+    }
+
+    /**
+     * Creates and returns a Bzip2 <code>OutputStream</code> using the given <code>OutputStream</code> as the underlying
+     * stream. With more than one thread, blocks are compressed concurrently.
+     *
+     * @param out the underlying stream
+     * @param nbThreads the maximum number of threads that compress data
+     * @return a Bzip2 OutputStream
+     * @throws IOException if an error occurred while initializing the Bzip2 OutputStream
+     */
+    protected static OutputStream createBzip2OutputStream(OutputStream out, int nbThreads) throws IOException {
         // Writes the 2 magic bytes 'BZ', as required by CBZip2OutputStream. A quote from CBZip2OutputStream's Javadoc:
         // "Attention: The caller is resonsible to write the two BZip2 magic bytes "BZ" to the specified stream
         // prior to calling this constructor."
@@ -336,6 +410,9 @@ public abstract class Archiver {
         out.write('B');
         out.write('Z');
 
+        if(nbThreads>1)
+            return new ParallelBZip2OutputStream(out, nbThreads);
+
         return new CBZip2OutputStream(out);
     }
 
@@ -52,6 +52,17 @@ class ZipArchiver extends Archiver {
         this.zos = new ZipOutputStream(outputStream);
     }
 
+    /**
+     * Creates a Zip archiver that compresses entries with the given level, using up to the given number of threads
+     * per entry.
+     */
+    protected ZipArchiver(OutputStream outputStream, int level, int nbThreads) {
+        this(outputStream);
+
+        zos.setLevel(level);
+        zos.setCompressionThreads(nbThreads);
+    }
+
 
     /**
      * Overrides Archiver's no-op setComment method as Zip supports archive comment.
@@ -0,0 +1,102 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.archive.AbstractArchiveFile;
+import com.mucommander.commons.file.archive.ArchiveEntry;
+import com.mucommander.commons.file.archive.ArchiveEntryIterator;
+import com.mucommander.commons.file.archive.ArchiveEntryTree;
+import com.mucommander.commons.file.archive.tar.TarArchiveFile;
+import com.mucommander.commons.file.archive.zip.ZipArchiveFile;
+
+/**
+ * Measures building the {@link ArchiveEntryTree} of archives that contain {@link Fixtures#NB_ARCHIVE_ENTRIES}
+ * entries, from entries that are already read and from the archive file, and looking up all the entries in the tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArchiveEntryTreeBenchmark {
+
+    @Param({"zip", "tar"})
+    public String format;
+
+    private AbstractArchiveFile archive;
+
+    private List<ArchiveEntry> entries;
+
+    private ArchiveEntryTree tree;
+
+    @Setup
+    public void setUp() throws IOException {
+        if ("zip".equals(format)) {
+            AbstractFile file = Fixtures.toAbstractFile(Fixtures.getZipFile());
+            archive = new ZipArchiveFile(file);
+        } else {
+            AbstractFile file = Fixtures.toAbstractFile(Fixtures.getTarFile());
+            archive = new TarArchiveFile(file);
+        }
+        entries = Fixtures.readEntries(archive);
+        tree = buildTree();
+    }
+
+    @Benchmark
+    public ArchiveEntryTree buildTree() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        for (ArchiveEntry entry : entries)
+            tree.addArchiveEntry(entry);
+        return tree;
+    }
+
+    @Benchmark
+    public ArchiveEntryTree readAndBuildTree() throws IOException {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        try (ArchiveEntryIterator iterator = archive.getEntryIterator()) {
+            ArchiveEntry entry;
+            while ((entry = iterator.nextEntry()) != null)
+                tree.addArchiveEntry(entry);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public void findEntryNodes(Blackhole blackhole) {
+        for (ArchiveEntry entry : entries)
+            blackhole.consume(tree.findEntryNode(entry.getPath()));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mucommander.commons.io.BufferPool;
+
+/**
+ * Measures getting a buffer from {@link BufferPool} and releasing it, by one thread and by concurrent threads,
+ * compared to allocating a new buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferPoolBenchmark {
+
+    @Param({"8192", "65536"})
+    public int size;
+
+    @Benchmark
+    public byte[] allocateByteArray() {
+        return new byte[size];
+    }
+
+    @Benchmark
+    public byte[] getAndReleaseByteArray() {
+        byte[] buffer = BufferPool.getByteArray(size);
+        BufferPool.releaseByteArray(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] getAndReleaseByteArrayConcurrently() {
+        byte[] buffer = BufferPool.getByteArray(size);
+        BufferPool.releaseByteArray(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer getAndReleaseDirectByteBuffer() {
+        ByteBuffer buffer = BufferPool.getDirectByteBuffer(size);
+        BufferPool.releaseDirectByteBuffer(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ByteBuffer getAndReleaseDirectByteBufferConcurrently() {
+        ByteBuffer buffer = BufferPool.getDirectByteBuffer(size);
+        BufferPool.releaseDirectByteBuffer(buffer);
+        return buffer;
+    }
+}
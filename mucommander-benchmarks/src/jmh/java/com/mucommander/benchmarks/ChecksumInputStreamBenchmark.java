@@ -0,0 +1,76 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mucommander.commons.io.ChecksumInputStream;
+import com.mucommander.commons.io.security.MuProvider;
+
+/**
+ * Measures the throughput of {@link ChecksumInputStream}, for the checksum algorithms muCommander offers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChecksumInputStreamBenchmark {
+
+    /** Number of bytes read by each invocation */
+    private static final int SIZE = 16 * 1024 * 1024;
+
+    @Param({"CRC32", "Adler32", "MD5", "SHA-1", "SHA-256"})
+    public String algorithm;
+
+    private byte[] data;
+
+    private byte[] buffer;
+
+    @Setup
+    public void setUp() {
+        MuProvider.registerProvider();
+        data = Fixtures.getRandomBytes(SIZE);
+        buffer = new byte[65536];
+    }
+
+    @Benchmark
+    public byte[] readWithChecksum() throws IOException, NoSuchAlgorithmException {
+        try (ChecksumInputStream in = new ChecksumInputStream(new ByteArrayInputStream(data), MessageDigest.getInstance(algorithm))) {
+            while (in.read(buffer) != -1)
+                ;
+            return in.getChecksumBytes();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.benchmarks;
+
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.TestFile;
+import com.mucommander.commons.file.util.FileComparator;
+import com.mucommander.commons.file.util.FileComparator.CRITERION;
+import com.mucommander.commons.file.util.FileSortKeys;
+
+/**
+ * Measures sorting files with {@link FileComparator}, and with the {@link FileSortKeys} that file tables use, which
+ * sort files in the same order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileComparatorBenchmark {
+
+    private static final String[] NAME_PARTS = { "report", "IMG_", "Photo ", "notes", "Été", "backup-", "v", "." };
+
+    private static final String[] EXTENSIONS = { ".txt", ".jpg", ".JPG", ".zip", ".tar.gz", ".java", "" };
+
+    @Param({"1000", "100000"})
+    public int nbFiles;
+
+    @Param({"NAME", "SIZE", "DATE", "EXTENSION"})
+    public CRITERION criterion;
+
+    private AbstractFile[] files;
+
+    @Setup
+    public void setUp() throws MalformedURLException {
+        Random random = new Random(nbFiles);
+        files = new AbstractFile[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            // Names mix letters and numbers, like most folders do
+            String name = NAME_PARTS[random.nextInt(NAME_PARTS.length)] + random.nextInt(nbFiles)
+                    + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            files[i] = new TestFile("/folder/" + name, random.nextInt(10) == 0, random.nextInt(1 << 20),
+                    random.nextInt(1 << 30), null);
+        }
+    }
+
+    @Benchmark
+    public AbstractFile[] sortWithComparator() {
+        AbstractFile[] sortedFiles = files.clone();
+        Arrays.sort(sortedFiles, new FileComparator(criterion, true, true, AbstractFile::getName, Locale.ENGLISH));
+        return sortedFiles;
+    }
+
+    @Benchmark
+    public int[] sortWithSortKeys() {
+        int[] index = new int[nbFiles];
+        for (int i = 0; i < nbFiles; i++)
+            index[i] = i;
+        new FileSortKeys(files, AbstractFile::getName, Locale.ENGLISH).sort(index, criterion, true, true);
+        return index;
+    }
+}
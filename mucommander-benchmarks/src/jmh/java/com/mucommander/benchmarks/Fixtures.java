@@ -0,0 +1,185 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.archive.AbstractArchiveFile;
+import com.mucommander.commons.file.archive.ArchiveEntry;
+import com.mucommander.commons.file.archive.ArchiveEntryIterator;
+
+/**
+ * Generates the files the benchmarks run against. Fixtures are deterministic: they are generated once, in the folder
+ * designated by the <code>mucommander.benchmarks.dir</code> system property, and reused by the next runs.
+ */
+class Fixtures {
+
+    /** Number of entries of the generated archives */
+    static final int NB_ARCHIVE_ENTRIES = 100000;
+
+    /** Number of entries per folder of the generated archives */
+    private static final int ENTRIES_PER_FOLDER = 100;
+
+    /** Number of folders per parent folder of the generated archives */
+    private static final int FOLDERS_PER_FOLDER = 10;
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns the folder in which fixtures are generated.
+     */
+    static File getFolder() throws IOException {
+        String path = System.getProperty("mucommander.benchmarks.dir");
+        File folder = path != null ? new File(path) : new File(System.getProperty("java.io.tmpdir"), "mucommander-benchmarks");
+        Files.createDirectories(folder.toPath());
+        return folder;
+    }
+
+    /**
+     * Returns the path of the given entry of the generated archives, e.g. <code>dir3/dir7/file712.txt</code>:
+     * entries are spread in a two-level hierarchy of folders.
+     */
+    static String getEntryPath(int index) {
+        int folder = index / ENTRIES_PER_FOLDER;
+        return "dir" + folder / FOLDERS_PER_FOLDER + "/dir" + folder % FOLDERS_PER_FOLDER + "/file" + index + ".txt";
+    }
+
+    /**
+     * Returns the contents of the given entry of the generated archives.
+     */
+    private static byte[] getEntryContents(int index) {
+        return ("contents of entry " + index + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns a Zip file that contains {@link #NB_ARCHIVE_ENTRIES} entries, generating it if needed.
+     */
+    static File getZipFile() throws IOException {
+        return getFile("entries" + NB_ARCHIVE_ENTRIES + ".zip", out -> {
+            try (ZipOutputStream zip = new ZipOutputStream(out)) {
+                for (int i = 0; i < NB_ARCHIVE_ENTRIES; i++) {
+                    zip.putNextEntry(new ZipEntry(getEntryPath(i)));
+                    zip.write(getEntryContents(i));
+                    zip.closeEntry();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns a TAR file that contains {@link #NB_ARCHIVE_ENTRIES} entries, generating it if needed.
+     */
+    static File getTarFile() throws IOException {
+        return getFile("entries" + NB_ARCHIVE_ENTRIES + ".tar", out -> {
+            try (TarArchiveOutputStream tar = new TarArchiveOutputStream(out)) {
+                tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+                for (int i = 0; i < NB_ARCHIVE_ENTRIES; i++) {
+                    byte[] contents = getEntryContents(i);
+                    TarArchiveEntry entry = new TarArchiveEntry(getEntryPath(i));
+                    entry.setSize(contents.length);
+                    tar.putArchiveEntry(entry);
+                    tar.write(contents);
+                    tar.closeArchiveEntry();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns a file of the given size filled with random bytes, generating it if needed.
+     */
+    static File getRandomFile(int size) throws IOException {
+        return getFile("random" + size + ".bin", out -> out.write(getRandomBytes(size)));
+    }
+
+    /**
+     * Returns the given number of random bytes, always the same ones for a given size.
+     */
+    static byte[] getRandomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads all the entries of the given archive.
+     */
+    static List<ArchiveEntry> readEntries(AbstractArchiveFile archive) throws IOException {
+        List<ArchiveEntry> entries = new ArrayList<>();
+        try (ArchiveEntryIterator iterator = archive.getEntryIterator()) {
+            ArchiveEntry entry;
+            while ((entry = iterator.nextEntry()) != null)
+                entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Writes a fixture.
+     */
+    private interface Generator {
+        void generate(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Returns the fixture with the given name, generating it if it does not exist. Fixtures are generated in a
+     * temporary file that is then renamed, so that an interrupted generation does not leave an incomplete fixture.
+     */
+    private static File getFile(String name, Generator generator) throws IOException {
+        File folder = getFolder();
+        File file = new File(folder, name);
+        if (file.exists())
+            return file;
+
+        File tempFile = File.createTempFile(name, ".tmp", folder);
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+                generator.generate(out);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tempFile.delete();
+        }
+        return file;
+    }
+
+    /**
+     * Returns the {@link AbstractFile} that corresponds to the given fixture.
+     */
+    static AbstractFile toAbstractFile(File file) throws IOException {
+        return FileFactory.getFile(file.getAbsolutePath(), true);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.StreamUtils;
+
+/**
+ * Measures the throughput of {@link StreamUtils#copyStream(InputStream, OutputStream, int)}, from memory and from a
+ * local file, for several buffer sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamUtilsBenchmark {
+
+    /** Number of bytes copied by each invocation */
+    private static final int SIZE = 64 * 1024 * 1024;
+
+    @Param({"8192", "65536", "1048576"})
+    public int bufferSize;
+
+    private byte[] data;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = Fixtures.getRandomBytes(SIZE);
+        file = Fixtures.getRandomFile(SIZE);
+    }
+
+    @Benchmark
+    public long copyFromMemory() throws FileTransferException {
+        return StreamUtils.copyStream(new ByteArrayInputStream(data), OutputStream.nullOutputStream(), bufferSize);
+    }
+
+    @Benchmark
+    public long copyFromFile() throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return StreamUtils.copyStream(in, OutputStream.nullOutputStream(), bufferSize);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.benchmarks;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.archive.zip.provider.ZipEntry;
+import com.mucommander.commons.file.archive.zip.provider.ZipFile;
+
+/**
+ * Measures opening a Zip file that contains {@link Fixtures#NB_ARCHIVE_ENTRIES} entries, which parses its central
+ * directory, and looking up its entries by name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZipFileBenchmark {
+
+    private AbstractFile file;
+
+    private ZipFile zipFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Fixtures.toAbstractFile(Fixtures.getZipFile());
+        zipFile = new ZipFile(file);
+    }
+
+    @Benchmark
+    public ZipFile parseCentralDirectory() throws IOException {
+        return new ZipFile(file);
+    }
+
+    @Benchmark
+    public void iterateEntries(Blackhole blackhole) {
+        Iterator<ZipEntry> entries = zipFile.getEntries();
+        while (entries.hasNext())
+            blackhole.consume(entries.next());
+    }
+
+    @Benchmark
+    public void getEntries(Blackhole blackhole) {
+        for (int i = 0; i < Fixtures.NB_ARCHIVE_ENTRIES; i++)
+            blackhole.consume(zipFile.getEntry(Fixtures.getEntryPath(i)));
+    }
+}
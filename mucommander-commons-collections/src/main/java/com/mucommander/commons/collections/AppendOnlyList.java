@@ -0,0 +1,137 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.collections;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * AppendOnlyList is a thread-safe list to which elements can only be appended.
+ * <p>
+ * Elements are stored in fixed-size chunks, so that appending never copies the elements that are already in the
+ * list: only the (much smaller) array of chunks is grown. Appends are serialized, while reads are lock-free and can
+ * be carried out concurrently with appends: readers see all elements that were appended before {@link #size()} was
+ * called. Iterators never throw <code>ConcurrentModificationException</code> and include the elements that are
+ * appended while iterating.
+ * </p>
+ * <p>Elements cannot be removed or replaced: the corresponding methods throw <code>UnsupportedOperationException</code>.</p>
+ *
+ * @param <E> the type of the elements
+ */
+public class AppendOnlyList<E> extends AbstractList<E> implements RandomAccess {
+
+    /** Default number of elements per chunk */
+    private final static int DEFAULT_CHUNK_SIZE = 1024;
+
+    /** Number of elements per chunk, a power of 2 */
+    private final int chunkSize;
+
+    /** log2(chunkSize) */
+    private final int chunkShift;
+
+    /** The chunks of elements, replaced by a larger array when full */
+    private volatile Object[][] chunks = new Object[4][];
+
+    /** Number of elements, written after the elements themselves so that readers only see complete elements */
+    private volatile int size;
+
+
+    public AppendOnlyList() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new list that stores its elements in chunks of the given size, rounded up to a power of 2.
+     *
+     * @param chunkSize number of elements per chunk
+     */
+    public AppendOnlyList(int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+
+        this.chunkShift = 32 - Integer.numberOfLeadingZeros(chunkSize - 1);
+        this.chunkSize = 1 << chunkShift;
+    }
+
+    /**
+     * Stores the given element at the given index, without publishing it.
+     */
+    private void store(int index, Object element) {
+        int chunkIndex = index >>> chunkShift;
+        Object[][] chunks = this.chunks;
+        if (chunkIndex == chunks.length) {
+            Object[][] newChunks = new Object[chunks.length * 2][];
+            System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+            this.chunks = chunks = newChunks;
+        }
+
+        Object[] chunk = chunks[chunkIndex];
+        if (chunk == null)
+            chunks[chunkIndex] = chunk = new Object[chunkSize];
+
+        chunk[index & (chunkSize - 1)] = element;
+    }
+
+    @Override
+    public synchronized boolean add(E element) {
+        store(size, element);
+        size++;
+        return true;
+    }
+
+    /**
+     * Appends all elements of the given collection. Readers see either none or all of them.
+     */
+    @Override
+    public synchronized boolean addAll(Collection<? extends E> collection) {
+        Object[] elements = collection.toArray();
+        if (elements.length == 0)
+            return false;
+
+        int index = size;
+        for (Object element : elements)
+            store(index++, element);
+        size = index;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        return (E) chunks[index >>> chunkShift][index & (chunkSize - 1)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object[] toArray() {
+        int size = this.size;
+        Object[][] chunks = this.chunks;
+        Object[] array = new Object[size];
+        for (int i = 0, chunkIndex = 0; i < size; i += chunkSize, chunkIndex++)
+            System.arraycopy(chunks[chunkIndex], 0, array, i, Math.min(chunkSize, size - i));
+        return array;
+    }
+}
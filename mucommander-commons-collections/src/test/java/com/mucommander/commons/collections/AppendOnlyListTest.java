@@ -0,0 +1,87 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.collections;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test case for {@link AppendOnlyList}.
+ */
+public class AppendOnlyListTest {
+
+    @Test
+    public void testAppend() {
+        List<Integer> list = new AppendOnlyList<>(4);
+        for (int i = 0; i < 10; i++)
+            list.add(i);
+        Assert.assertTrue(list.addAll(Arrays.asList(10, 11, 12)));
+        Assert.assertFalse(list.addAll(Arrays.asList()));
+
+        Assert.assertEquals(list.size(), 13);
+        for (int i = 0; i < 13; i++)
+            Assert.assertEquals((int) list.get(i), i);
+        Assert.assertEquals(list.toArray(), new Object[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 });
+    }
+
+    @Test
+    public void testIterateWhileAppending() {
+        List<Integer> list = new AppendOnlyList<>(2);
+        list.add(0);
+        int count = 0;
+        for (Iterator<Integer> iterator = list.iterator(); iterator.hasNext(); count++) {
+            Assert.assertEquals((int) iterator.next(), count);
+            if (count < 100)
+                list.add(count + 1);
+        }
+        Assert.assertEquals(count, 101);
+    }
+
+    @Test
+    public void testConcurrentAppends() throws InterruptedException {
+        List<Integer> list = new AppendOnlyList<>(16);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++)
+                    list.add(i);
+            });
+            threads[t].start();
+        }
+
+        // Readers only see complete elements
+        while (list.size() < 40000)
+            for (int i = list.size() - 1; i >= 0 && i >= list.size() - 100; i--)
+                Assert.assertNotNull(list.get(i));
+
+        for (Thread thread : threads)
+            thread.join();
+        Assert.assertEquals(list.size(), 40000);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testRemove() {
+        List<Integer> list = new AppendOnlyList<>();
+        list.add(0);
+        list.remove(0);
+    }
+}
@@ -27,6 +27,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.function.Consumer;
 
 import javax.swing.Icon;
 
@@ -71,6 +72,9 @@ public abstract class AbstractFile implements FileAttributes {
     // 65536, no more gain (not sure why).
     public final static int IO_BUFFER_SIZE = 65536;
 
+    /** Maximum number of children passed in a batch by {@link #lsBatches(Consumer)} implementations */
+    public final static int LS_BATCH_SIZE = 1000;
+
     /** Extension that is specified by the user, not as part of the filename */
     private String customExtension;
 
@@ -564,6 +568,55 @@ public abstract class AbstractFile implements FileAttributes {
     }
 
 
+    /**
+     * Lists this file's children incrementally, passing them to the given consumer in batches as they are retrieved.
+     * This allows callers to start displaying or processing the first children of large folders while the rest of
+     * the listing is still in progress. For this operation to be successful, this file must be 'browsable', i.e.
+     * {@link #isBrowsable()} must return <code>true</code>.
+     *
+     * <p>The consumer is called in the calling thread, once for each non-empty batch, in listing order. It may be
+     * called while resources such as a connection to the server are held: it should hand the batches over to another
+     * thread rather than perform I/O on the same filesystem.</p>
+     *
+     * <p>This default implementation passes the result of {@link #ls()} as a single batch. This method should be
+     * overridden if children can be retrieved incrementally by subclasses.</p>
+     *
+     * @param batchConsumer receives the children of each batch, in listing order
+     * @throws IOException if this operation is not possible (file is not browsable) or if an error occurred.
+     * @throws UnsupportedFileOperationException if this method relies on a file operation that is not supported
+     * or not implemented by the underlying filesystem.
+     */
+    public void lsBatches(Consumer<AbstractFile[]> batchConsumer) throws IOException, UnsupportedFileOperationException {
+        AbstractFile[] children = ls();
+        if(children.length>0)
+            batchConsumer.accept(children);
+    }
+
+
+    /**
+     * Lists this file's children incrementally like {@link #lsBatches(Consumer)}, filtering out files that do not
+     * match the specified FileFilter. Batches that contain no matching files are not passed to the consumer.
+     *
+     * @param filter the FileFilter to be used to filter files out from the batches, may be <code>null</code>
+     * @param batchConsumer receives the children of each batch, in listing order
+     * @throws IOException if this operation is not possible (file is not browsable) or if an error occurred.
+     * @throws UnsupportedFileOperationException if this method relies on a file operation that is not supported
+     * or not implemented by the underlying filesystem.
+     */
+    public void lsBatches(FileFilter filter, Consumer<AbstractFile[]> batchConsumer) throws IOException, UnsupportedFileOperationException {
+        if(filter==null) {
+            lsBatches(batchConsumer);
+            return;
+        }
+
+        lsBatches(batch -> {
+            AbstractFile[] files = filter.filter(batch);
+            if(files.length>0)
+                batchConsumer.accept(files);
+        });
+    }
+
+
     /**
      * Changes this file's permissions to the specified permissions int.
      * The permissions int should be constructed using the permission types and accesses defined in
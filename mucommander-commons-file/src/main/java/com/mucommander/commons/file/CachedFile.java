@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import org.slf4j.Logger;
@@ -506,4 +507,16 @@ public class CachedFile extends ProxyFile {
 
         return files;
     }
+
+    @Override
+    public void lsBatches(Consumer<AbstractFile[]> batchConsumer) throws IOException, UnsupportedFileOperationException {
+        // Create a CachedFile instance around each of the files if recursion is enabled
+        file.lsBatches(recurseInstances ? files -> batchConsumer.accept(createCachedFiles(files)) : batchConsumer);
+    }
+
+    @Override
+    public void lsBatches(FileFilter filter, Consumer<AbstractFile[]> batchConsumer) throws IOException, UnsupportedFileOperationException {
+        // Create a CachedFile instance around each of the files if recursion is enabled
+        file.lsBatches(filter, recurseInstances ? files -> batchConsumer.accept(createCachedFiles(files)) : batchConsumer);
+    }
 }
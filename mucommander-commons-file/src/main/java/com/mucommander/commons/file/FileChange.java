@@ -0,0 +1,67 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file;
+
+/**
+ * A change made to a child of a monitored folder, as reported by {@link MonitoredFile#pollChanges()}.
+ * Changes only designate the child by its name: the child may have been changed again since the change was detected.
+ */
+public class FileChange {
+
+    /**
+     * The kinds of changes.
+     */
+    public enum Kind {
+        /** The child was created, or moved into the folder */
+        CREATED,
+        /** The child was deleted, or moved out of the folder */
+        DELETED,
+        /** The contents or attributes of the child were modified */
+        MODIFIED
+    }
+
+    private final Kind kind;
+    private final String name;
+
+    public FileChange(Kind kind, String name) {
+        this.kind = kind;
+        this.name = name;
+    }
+
+    /**
+     * Returns the kind of this change.
+     *
+     * @return the kind of this change
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the name of the changed child.
+     *
+     * @return the name of the changed child
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + name;
+    }
+}
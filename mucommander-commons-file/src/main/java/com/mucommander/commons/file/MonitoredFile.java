@@ -16,6 +16,9 @@
  */
 package com.mucommander.commons.file;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * This class is an implementation of {@link ProxyFile} that provides an interface
  * for detecting changes to the content of the specified file.
@@ -36,6 +39,31 @@ public abstract class MonitoredFile extends ProxyFile {
      */
     public abstract boolean isChanged(boolean periodicCheck);
 
+    /**
+     * Returns <code>true</code> if {@link #pollChanges()} reports the individual changes made to the children of this
+     * folder, <code>false</code> if it can only tell that the folder has changed. In the former case,
+     * {@link #pollChanges()} is cheap and can be called frequently.
+     * @return true if the changes made to the children of this folder are reported individually
+     */
+    public boolean canPollChanges() {
+        return false;
+    }
+
+    /**
+     * This method can be called after calling {@link #startWatch()} to retrieve the changes made to the children of
+     * this folder since the previous time this method was called or since starting to watch this folder for changes.
+     * <p>
+     * Returns <code>null</code> if the changes are not known individually, e.g. because too many changes were made
+     * for them to be tracked: the whole folder has to be listed again to take them into account. The default
+     * implementation returns <code>null</code> whenever {@link #isChanged(boolean)} detects a change.
+     * </p>
+     * @return the changes made to the children of this folder, in the order in which they were detected, an empty
+     * list if there were none, or <code>null</code> if the folder has changed in a way that is not known individually
+     */
+    public List<FileChange> pollChanges() {
+        return isChanged(true) ? null : Collections.emptyList();
+    }
+
     /**
      * Start watching for changes to the content of this file.
      */
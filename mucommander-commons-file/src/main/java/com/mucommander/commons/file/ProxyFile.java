@@ -32,6 +32,7 @@ import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.function.Consumer;
 
 /**
  * ProxyFile is an {@link AbstractFile} that acts as a proxy between the class that extends it
@@ -353,6 +354,16 @@ public abstract class ProxyFile extends AbstractFile {
         return file.ls(filter);
     }
 
+    @Override
+    public void lsBatches(Consumer<AbstractFile[]> batchConsumer) throws IOException, UnsupportedFileOperationException {
+        file.lsBatches(batchConsumer);
+    }
+
+    @Override
+    public void lsBatches(FileFilter filter, Consumer<AbstractFile[]> batchConsumer) throws IOException, UnsupportedFileOperationException {
+        file.lsBatches(filter, batchConsumer);
+    }
+
     @Override
     public void mkfile() throws IOException, UnsupportedFileOperationException {
         file.mkfile();
@@ -32,11 +32,12 @@ import com.mucommander.commons.file.filter.FilenameFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.tree.DefaultMutableTreeNode;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.WeakHashMap;
+import java.util.function.Consumer;
 
 /**
  * <code>AbstractArchiveFile</code> is the superclass of all archive files. It allows archive file to be browsed as if
@@ -87,11 +88,11 @@ public abstract class AbstractArchiveFile extends ProxyFile {
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractArchiveFile.class);
 
     /** Archive entries tree */
-    protected ArchiveEntryTree entryTreeRoot;
+    protected volatile ArchiveEntryTree entryTreeRoot;
 
     /** Date this file had when the entries tree was created. Used to detect if the archive file has changed and entries
      * need to be reloaded */
-    protected long entryTreeDate;
+    protected volatile long entryTreeDate;
 
     /** The password to use for a password-protected archive */
     protected String password;
@@ -99,7 +100,10 @@ public abstract class AbstractArchiveFile extends ProxyFile {
     /** Caches {@link AbstractArchiveEntryFile} instances so that there is only one AbstractArchiveEntryFile
      * corresponding to the same entry at any given time, to avoid attribute inconsistencies. The key is the
      * corresponding ArchiveEntry. */
-    protected WeakHashMap<ArchiveEntry, AbstractArchiveEntryFile> archiveEntryFiles;
+    protected volatile WeakHashMap<ArchiveEntry, AbstractArchiveEntryFile> archiveEntryFiles;
+
+    /** Lock held while the entries tree is being created, so that concurrent callers do not create it twice */
+    private final Object entriesTreeLock = new Object();
 
     /**
      * Creates an AbstractArchiveFile on top of the given file.
@@ -119,20 +123,21 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * underlying file protocol.
      */
     protected void createEntriesTree() throws IOException, UnsupportedFileOperationException {
-        // TODO: this method is not thread-safe and needs to be synchronized
-        ArchiveEntryTree treeRoot = new ArchiveEntryTree();
-        archiveEntryFiles = new WeakHashMap<ArchiveEntry, AbstractArchiveEntryFile>();
+        synchronized(entriesTreeLock) {
+            ArchiveEntryTree treeRoot = new ArchiveEntryTree();
+            archiveEntryFiles = new WeakHashMap<ArchiveEntry, AbstractArchiveEntryFile>();
 
-        long start = System.currentTimeMillis();
-        try (ArchiveEntryIterator entries = getEntryIterator()) {
-            ArchiveEntry entry;
-            while((entry=entries.nextEntry())!=null)
-                treeRoot.addArchiveEntry(entry);
+            long start = System.currentTimeMillis();
+            try (ArchiveEntryIterator entries = getEntryIterator()) {
+                ArchiveEntry entry;
+                while((entry=entries.nextEntry())!=null)
+                    treeRoot.addArchiveEntry(entry);
 
-            LOGGER.info("entries tree created in "+(System.currentTimeMillis()-start)+" ms");
+                LOGGER.info("entries tree created in "+(System.currentTimeMillis()-start)+" ms");
 
-            this.entryTreeRoot = treeRoot;
-            declareEntriesTreeUpToDate();
+                this.entryTreeRoot = treeRoot;
+                declareEntriesTreeUpToDate();
+            }
         }
     }
 
@@ -145,8 +150,14 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * underlying file protocol.
      */
     protected void checkEntriesTree() throws IOException, UnsupportedFileOperationException {
-        if (this.entryTreeRoot==null || getDate()!=this.entryTreeDate)
-            createEntriesTree();
+        if (this.entryTreeRoot!=null && getDate()==this.entryTreeDate)
+            return;
+
+        synchronized(entriesTreeLock) {
+            // The tree may have been created by another thread while waiting for the lock
+            if (this.entryTreeRoot==null || getDate()!=this.entryTreeDate)
+                createEntriesTree();
+        }
     }
 
     /**
@@ -184,12 +195,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      */
     protected void removeFromEntriesTree(ArchiveEntry entry) throws IOException, UnsupportedFileOperationException {
         checkEntriesTree();
-        DefaultMutableTreeNode entryNode = entryTreeRoot.findEntryNode(entry.getPath());
-
-        if(entryNode!=null) {
-            DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
-            parentNode.remove(entryNode);
-        }
+        entryTreeRoot.removeEntryNode(entry.getPath());
     }
 
     /**
@@ -215,7 +221,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         if(!entryFile.isBrowsable())
             throw new IOException();
 
-        DefaultMutableTreeNode matchNode = entryTreeRoot.findEntryNode(entryFile.getEntry().getPath());
+        ArchiveEntryNode matchNode = entryTreeRoot.findEntryNode(entryFile.getEntry().getPath());
         if(matchNode==null)
             throw new IOException();
 
@@ -228,31 +234,32 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
      * underlying file protocol.
      */
-    private AbstractFile[] ls(DefaultMutableTreeNode treeNode, AbstractFile parentFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException, UnsupportedFileOperationException {
+    private AbstractFile[] ls(ArchiveEntryNode treeNode, AbstractFile parentFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException, UnsupportedFileOperationException {
         AbstractFile files[];
-        int nbChildren = treeNode.getChildCount();
+        ArchiveEntryNode[] children = treeNode.getChildren();
+        int nbChildren = children.length;
 
         // No FilenameFilter, create entry files and store them directly into an array
         if(filenameFilter==null) {
             files = new AbstractFile[nbChildren];
 
             for(int c=0; c<nbChildren; c++) {
-                files[c] = getArchiveEntryFile((ArchiveEntry)(((DefaultMutableTreeNode)treeNode.getChildAt(c)).getUserObject()), parentFile);
+                files[c] = getArchiveEntryFile(children[c].getEntry(), parentFile);
             }
         }
-        // Use provided FilenameFilter and temporarily store created entry files that match the filter in a Vector
+        // Use provided FilenameFilter and temporarily store created entry files that match the filter in a list
         else {
-            Vector<AbstractFile> filesV = new Vector<AbstractFile>();
+            List<AbstractFile> filesL = new ArrayList<AbstractFile>();
             for(int c=0; c<nbChildren; c++) {
-                ArchiveEntry entry = (ArchiveEntry)(((DefaultMutableTreeNode)treeNode.getChildAt(c)).getUserObject());
+                ArchiveEntry entry = children[c].getEntry();
                 if(!filenameFilter.accept(entry.getName()))
                     continue;
 
-                filesV.add(getArchiveEntryFile(entry, parentFile));
+                filesL.add(getArchiveEntryFile(entry, parentFile));
             }
 
-            files = new AbstractFile[filesV.size()];
-            filesV.toArray(files);
+            files = new AbstractFile[filesL.size()];
+            filesL.toArray(files);
         }
 
         return fileFilter==null?files:fileFilter.filter(files);
@@ -278,28 +285,32 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         // Cache AbstractArchiveEntryFile instances so that there is only one AbstractArchiveEntryFile corresponding to 
         // the same entry at any given time, to avoid attribute inconsistencies.
 
-        AbstractArchiveEntryFile entryFile = archiveEntryFiles.get(entry);
-        if(entryFile==null) {
-            FileURL archiveURL = getURL();
-            FileURL entryURL = (FileURL)archiveURL.clone();
-            entryURL.setPath(addTrailingSeparator(archiveURL.getPath()) + entryPath);
-
-            // Create an RO and RW entry file, depending on whether this archive file is RO or RW
-            entryFile = this instanceof AbstractRWArchiveFile
-                ?new RWArchiveEntryFile(
-                  entryURL,
-                  this,
-                  entry
-                )
-                :new ROArchiveEntryFile(
+        AbstractArchiveEntryFile entryFile;
+        WeakHashMap<ArchiveEntry, AbstractArchiveEntryFile> archiveEntryFiles = this.archiveEntryFiles;
+        synchronized(archiveEntryFiles) {
+            entryFile = archiveEntryFiles.get(entry);
+            if(entryFile==null) {
+                FileURL archiveURL = getURL();
+                FileURL entryURL = (FileURL)archiveURL.clone();
+                entryURL.setPath(addTrailingSeparator(archiveURL.getPath()) + entryPath);
+
+                // Create an RO and RW entry file, depending on whether this archive file is RO or RW
+                entryFile = this instanceof AbstractRWArchiveFile
+                    ?new RWArchiveEntryFile(
                       entryURL,
                       this,
                       entry
-                );
+                    )
+                    :new ROArchiveEntryFile(
+                          entryURL,
+                          this,
+                          entry
+                    );
 
-            entryFile.setParent(parentFile);
+                entryFile.setParent(parentFile);
 
-            archiveEntryFiles.put(entry, entryFile);
+                archiveEntryFiles.put(entry, entryFile);
+            }
         }
         return FileFactory.wrapArchive(entryFile);
     }
@@ -335,7 +346,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * underlying file protocol.
      */
     public AbstractFile getArchiveEntryFile(String entryPath) throws IOException, UnsupportedFileOperationException {
-        DefaultMutableTreeNode entryNode = getArchiveEntryNode(entryPath);
+        ArchiveEntryNode entryNode = getArchiveEntryNode(entryPath);
 
         if (entryNode==null) {
             int depth = ArchiveEntry.getDepth(entryPath);
@@ -370,7 +381,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
      * underlying file protocol.
      */
-    public DefaultMutableTreeNode getArchiveEntryNode(String entryPath) throws IOException, UnsupportedFileOperationException {
+    public ArchiveEntryNode getArchiveEntryNode(String entryPath) throws IOException, UnsupportedFileOperationException {
         // Make sure the entries tree is created and up-to-date
         checkEntriesTree();
 
@@ -388,11 +399,11 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * @param entryNode tree node corresponding to the entry for which to return a file
      * @return an {@link AbstractFile} instance corresponding to the given entry node
      */
-    protected AbstractFile getArchiveEntryFile(DefaultMutableTreeNode entryNode) throws IOException {
-        DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
+    protected AbstractFile getArchiveEntryFile(ArchiveEntryNode entryNode) throws IOException {
+        ArchiveEntryNode parentNode = entryNode.getParent();
         return getArchiveEntryFile(
-                (ArchiveEntry)entryNode.getUserObject(),
-                parentNode==entryTreeRoot
+                entryNode.getEntry(),
+                parentNode.isRoot()
                     ?this
                     :getArchiveEntryFile(parentNode)
         );
@@ -406,6 +417,45 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         this.password = password;
     }
 
+    /**
+     * Returns <code>true</code> if this archive can extract a set of entries more efficiently at once than one by one,
+     * in which case {@link #getEntryIterator(List)} should be used to read the contents of several entries. This is
+     * typically the case of formats that support solid compression, where extracting an entry requires decoding all
+     * the entries that were compressed before it in the same block.
+     *
+     * <p>This implementation returns <code>false</code>.</p>
+     *
+     * @return <code>true</code> if this archive can extract a set of entries more efficiently at once than one by one
+     */
+    public boolean isBatchExtractionSupported() {
+        return false;
+    }
+
+    /**
+     * Returns an iterator over the given entries, which must be entries that were returned by the
+     * {@link ArchiveEntryIterator} returned by {@link #getEntryIterator()}. The iterator may return the entries in
+     * a different order than the given one.
+     * <p>
+     * The iterator is meant to be passed to {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)} to read
+     * the contents of the entry it has just returned, before moving to the next entry. Archives that support
+     * {@link #isBatchExtractionSupported() batch extraction} extract all the given entries in a single pass, and skip
+     * the contents of the entries that are not read.
+     * </p>
+     * <p>
+     * This implementation returns an iterator over the given entries, in the given order.
+     * </p>
+     *
+     * @param entries the entries to iterate over
+     * @return an iterator over the given entries
+     * @throws IOException if an error occurred while reading the archive, either because the archive is corrupt or
+     * because of an I/O error
+     * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
+     * underlying file protocol.
+     */
+    public ArchiveEntryIterator getEntryIterator(List<ArchiveEntry> entries) throws IOException, UnsupportedFileOperationException {
+        return new WrapperArchiveEntryIterator(entries.iterator());
+    }
+
     
     //////////////////////
     // Abstract methods //
@@ -497,7 +547,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         // Make sure the entries tree is created and up-to-date
         checkEntriesTree();
 
-        return ls(entryTreeRoot, this, null, null);
+        return ls(entryTreeRoot.getRoot(), this, null, null);
     }
 
     /**
@@ -520,7 +570,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         // Make sure the entries tree is created and up-to-date
         checkEntriesTree();
 
-        return ls(entryTreeRoot, this, filter, null);
+        return ls(entryTreeRoot.getRoot(), this, filter, null);
     }
 
     /**
@@ -542,7 +592,52 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         // Make sure the entries tree is created and up-to-date
         checkEntriesTree();
 
-        return ls(entryTreeRoot, this, null, filter);
+        return ls(entryTreeRoot.getRoot(), this, null, filter);
+    }
+
+    /**
+     * This method is overridden to pass the topmost entries contained by this archive as a single batch, as the
+     * entries are listed all at once.
+     *
+     * @param batchConsumer receives the topmost entries contained by this archive
+     * @throws IOException if the archive entries could not be listed
+     * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
+     * underlying file protocol.
+     */
+    @Override
+    public void lsBatches(Consumer<AbstractFile[]> batchConsumer) throws IOException, UnsupportedFileOperationException {
+        // Delegate to the ancestor if this file isn't actually an archive
+        if(!isArchive()) {
+            super.lsBatches(batchConsumer);
+            return;
+        }
+
+        AbstractFile[] children = ls();
+        if(children.length>0)
+            batchConsumer.accept(children);
+    }
+
+    /**
+     * This method is overridden to pass the topmost entries contained by this archive that match the specified
+     * {@link FileFilter} as a single batch, as the entries are listed all at once.
+     *
+     * @param filter the FileFilter to be used to filter files out from the list, may be <code>null</code>
+     * @param batchConsumer receives the topmost entries contained by this archive
+     * @throws IOException if the archive entries could not be listed
+     * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
+     * underlying file protocol.
+     */
+    @Override
+    public void lsBatches(FileFilter filter, Consumer<AbstractFile[]> batchConsumer) throws IOException, UnsupportedFileOperationException {
+        // Delegate to the ancestor if this file isn't actually an archive
+        if(!isArchive()) {
+            super.lsBatches(filter, batchConsumer);
+            return;
+        }
+
+        AbstractFile[] children = ls(filter);
+        if(children.length>0)
+            batchConsumer.accept(children);
     }
 
     @Override
@@ -0,0 +1,172 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A node of an {@link ArchiveEntryTree}. Each node holds an {@link ArchiveEntry} and its direct children.
+ *
+ * <p>Children are kept in insertion order, so that listing a directory returns entries in the order in which they
+ * appear in the archive. Directories with more than {@link #INDEX_THRESHOLD} children are additionally indexed by
+ * name in a hash map, which allows a child to be looked up in constant time regardless of the size of the directory.
+ * Small directories, which make up the bulk of most archives, are simply scanned.</p>
+ *
+ * <p>Accessors are synchronized on the node, so that a directory can safely be listed while the tree is modified.</p>
+ *
+ * @see ArchiveEntryTree
+ */
+public class ArchiveEntryNode {
+
+    /** Number of children above which a name index is maintained */
+    static final int INDEX_THRESHOLD = 8;
+
+    private static final ArchiveEntryNode[] NO_CHILDREN = new ArchiveEntryNode[0];
+
+    /** The entry held by this node, null for the root node */
+    private ArchiveEntry entry;
+
+    /** The parent node, null for the root node */
+    private final ArchiveEntryNode parent;
+
+    /** Name of this node within its parent, without trailing separator */
+    private final String name;
+
+    /** Children in insertion order, null until the first child is added */
+    private List<ArchiveEntryNode> children;
+
+    /** Children indexed by name, null until the number of children exceeds INDEX_THRESHOLD */
+    private Map<String, ArchiveEntryNode> childrenIndex;
+
+    ArchiveEntryNode(ArchiveEntryNode parent, String name, ArchiveEntry entry) {
+        this.parent = parent;
+        this.name = name;
+        this.entry = entry;
+    }
+
+    /**
+     * Returns the entry held by this node, <code>null</code> if this node is the root of the tree.
+     *
+     * @return the entry held by this node
+     */
+    public synchronized ArchiveEntry getEntry() {
+        return entry;
+    }
+
+    synchronized void setEntry(ArchiveEntry entry) {
+        this.entry = entry;
+    }
+
+    /**
+     * Returns the parent of this node, <code>null</code> if this node is the root of the tree.
+     *
+     * @return the parent of this node
+     */
+    public ArchiveEntryNode getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns <code>true</code> if this node is the root of the tree.
+     *
+     * @return <code>true</code> if this node is the root of the tree
+     */
+    public boolean isRoot() {
+        return parent==null;
+    }
+
+    /**
+     * Returns the name of this node within its parent, without any trailing separator.
+     *
+     * @return the name of this node within its parent
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of direct children of this node.
+     *
+     * @return the number of direct children of this node
+     */
+    public synchronized int getChildCount() {
+        return children==null?0:children.size();
+    }
+
+    /**
+     * Returns a snapshot of the direct children of this node, in insertion order.
+     *
+     * @return a snapshot of the direct children of this node
+     */
+    public synchronized ArchiveEntryNode[] getChildren() {
+        return children==null?NO_CHILDREN:children.toArray(NO_CHILDREN);
+    }
+
+    /**
+     * Returns the direct child with the given name, <code>null</code> if there is none.
+     *
+     * @param childName name of the child, without trailing separator
+     * @return the direct child with the given name, <code>null</code> if there is none
+     */
+    public synchronized ArchiveEntryNode getChild(String childName) {
+        if(childrenIndex!=null)
+            return childrenIndex.get(childName);
+
+        if(children!=null) {
+            for(ArchiveEntryNode child : children) {
+                if(child.name.equals(childName))
+                    return child;
+            }
+        }
+
+        return null;
+    }
+
+    synchronized void addChild(ArchiveEntryNode child) {
+        if(children==null)
+            children = new ArrayList<>(2);
+        children.add(child);
+
+        if(childrenIndex!=null) {
+            childrenIndex.put(child.name, child);
+        }
+        else if(children.size()>INDEX_THRESHOLD) {
+            childrenIndex = new HashMap<>(children.size()*2);
+            for(ArchiveEntryNode c : children)
+                childrenIndex.put(c.name, c);
+        }
+    }
+
+    synchronized boolean removeChild(ArchiveEntryNode child) {
+        if(children==null || !children.remove(child))
+            return false;
+
+        if(childrenIndex!=null)
+            childrenIndex.remove(child.name);
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return entry==null?"/":entry.getPath();
+    }
+}
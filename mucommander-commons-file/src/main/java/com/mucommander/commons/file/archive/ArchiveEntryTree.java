@@ -18,22 +18,27 @@
 
 package com.mucommander.commons.file.archive;
 
-import com.mucommander.commons.file.util.PathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.tree.DefaultMutableTreeNode;
-
 /**
  * Stores archive entries and organizes them in a tree structure that maps entries in the way they are organized
- * inside the archive. An instance of <code>ArchiveEntryTree</code> also acts as the root node: all entry nodes
- * are children of it (direct or indirect).
+ * inside the archive. The tree is made of {@link ArchiveEntryNode} instances, all of which are children (direct or
+ * indirect) of the {@link #getRoot() root node}.
+ *
+ * <p>Each path component is resolved with a name lookup in its parent node, so that adding and finding an entry
+ * takes time proportional to the entry's depth rather than to the number of entries in the archive.
+ * Modifications of the tree are synchronized, which makes it safe to list nodes while entries are being added or
+ * removed.</p>
  *
  * @author Maxence Bernard
  */
-public class ArchiveEntryTree extends DefaultMutableTreeNode {
+public class ArchiveEntryTree {
     private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveEntryTree.class);
 
+    /** The root node, which holds no entry */
+    private final ArchiveEntryNode root = new ArchiveEntryNode(null, "", null);
+
     /**
      * Creates a new empty tree.
      */
@@ -41,64 +46,71 @@ public class ArchiveEntryTree extends DefaultMutableTreeNode {
     }
 
     /**
-     * Adds the given entry to the archive tree, creating parent nodes as necessary.
+     * Returns the root node of this tree. The root node holds no entry, top-level entries are its direct children.
+     *
+     * @return the root node of this tree
+     */
+    public ArchiveEntryNode getRoot() {
+        return root;
+    }
+
+    /**
+     * Adds the given entry to the archive tree, creating parent nodes as necessary. If the tree already contains
+     * a node for the entry's path, the node's entry is replaced by the given one.
      *
      * @param entry the entry to add to the tree
      */
-    public void addArchiveEntry(ArchiveEntry entry) {
+    public synchronized void addArchiveEntry(ArchiveEntry entry) {
         String entryPath = entry.getPath();
-        int entryDepth = entry.getDepth();
-        int slashPos = 0;
-        DefaultMutableTreeNode node = this;
-        for(int d=1; d<=entryDepth; d++) {
-            if(d==entryDepth && !entry.isDirectory()) {
-                // Create a leaf node for the entry
-                entry.setExists(true);      // the entry has to exist
-                node.add(new DefaultMutableTreeNode(entry, true));
-                break;
+        int end = getPathEnd(entryPath);
+        int start = getPathStart(entryPath);
+        if(start>=end)
+            return;
+
+        ArchiveEntryNode node = root;
+        int slashPos;
+        while((slashPos=entryPath.indexOf('/', start))!=-1 && slashPos<end) {
+            String name = entryPath.substring(start, slashPos);
+            ArchiveEntryNode childNode = node.getChild(name);
+            if(childNode==null) {
+                String subPath = entryPath.substring(0, slashPos+1);
+                LOGGER.trace("Creating node for "+subPath);
+                childNode = new ArchiveEntryNode(node, name, new ArchiveEntry(subPath, true, entry.getDate(), 0, true));
+                node.addChild(childNode);
             }
+            node = childNode;
+            start = slashPos+1;
+        }
 
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
-
-            int nbChildren = node.getChildCount();
-            DefaultMutableTreeNode childNode = null;
-            boolean matchFound = false;
-            for(int c=0; c<nbChildren; c++) {
-                childNode = (DefaultMutableTreeNode)node.getChildAt(c);
-                // Path comparison is 'trailing slash insensitive'
-                if(PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found a match
-                    matchFound = true;
-                    break;
-                }
-            }
+        if(!entry.isDirectory())
+            entry.setExists(true);      // the entry has to exist
 
-            if(matchFound) {
-                if(d==entryDepth) {
-                    LOGGER.trace("Replacing entry for node "+childNode);
-                    // Replace existing entry
-                    childNode.setUserObject(entry);
-                }
-                else {
-                    node = childNode;
-                }
-            }
-            else {
-                if(d==entryDepth) {
-                    // Create a leaf node for the entry
-                    entry.setExists(true);      // the entry has to exist
-                    node.add(new DefaultMutableTreeNode(entry, true));
-                }
-                else {
-                    LOGGER.trace("Creating node for "+subPath);
-                    childNode = new DefaultMutableTreeNode(new ArchiveEntry(subPath, true, entry.getDate(), 0, true), true);
-                    node.add(childNode);
-                    node = childNode;
-                }
-            }
+        String name = entryPath.substring(start, end);
+        ArchiveEntryNode childNode = node.getChild(name);
+        if(childNode!=null) {
+            LOGGER.trace("Replacing entry for node "+childNode);
+            // Replace existing entry
+            childNode.setEntry(entry);
+        }
+        else {
+            // Create a node for the entry
+            node.addChild(new ArchiveEntryNode(node, name, entry));
         }
     }
 
+    /**
+     * Removes the node that corresponds to the specified entry path, along with all of its children.
+     *
+     * @param entryPath the path to the entry to remove from this tree
+     * @return <code>true</code> if a matching node was found and removed
+     */
+    public synchronized boolean removeEntryNode(String entryPath) {
+        ArchiveEntryNode node = findEntryNode(entryPath);
+        if(node==null || node.isRoot())
+            return false;
+
+        return node.getParent().removeChild(node);
+    }
 
     /**
      * Finds and returns the node that corresponds to the specified entry path, <code>null</code> if no entry matching
@@ -111,32 +123,35 @@ public class ArchiveEntryTree extends DefaultMutableTreeNode {
      * @param entryPath the path to the entry to look up in this tree
      * @return the node that corresponds to the specified entry path
      */
-    public DefaultMutableTreeNode findEntryNode(String entryPath) {
-        int entryDepth = ArchiveEntry.getDepth(entryPath);
-        int slashPos = 0;
-        DefaultMutableTreeNode currentNode = this;
-        for(int d=1; d<=entryDepth; d++) {
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
-
-            int nbChildren = currentNode.getChildCount();
-            DefaultMutableTreeNode matchNode = null;
-            for(int c=0; c<nbChildren; c++) {
-                DefaultMutableTreeNode childNode = (DefaultMutableTreeNode)currentNode.getChildAt(c);
-
-                // Path comparison is 'trailing slash insensitive'
-                if(PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found the node, let's return it
-                    matchNode = childNode;
-                    break;
-                }
-            }
+    public ArchiveEntryNode findEntryNode(String entryPath) {
+        int end = getPathEnd(entryPath);
+        int start = getPathStart(entryPath);
+
+        ArchiveEntryNode node = root;
+        while(node!=null && start<end) {
+            int slashPos = entryPath.indexOf('/', start);
+            if(slashPos==-1 || slashPos>end)
+                slashPos = end;
+
+            node = node.getChild(entryPath.substring(start, slashPos));
+            start = slashPos+1;
+        }
 
-            if(matchNode==null)
-                return null;    // No node maching the provided path, return null
+        return node;
+    }
 
-            currentNode = matchNode;
-        }
+    /**
+     * Returns the index at which the first path component of the given path starts, skipping any leading separator.
+     */
+    private static int getPathStart(String path) {
+        return path.startsWith("/")?1:0;
+    }
 
-        return currentNode;
+    /**
+     * Returns the index at which the last path component of the given path ends, ignoring any trailing separator.
+     */
+    private static int getPathEnd(String path) {
+        int len = path.length();
+        return len>0 && path.charAt(len-1)=='/'?len-1:len;
     }
 }
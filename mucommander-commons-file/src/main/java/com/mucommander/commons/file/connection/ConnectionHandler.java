@@ -145,7 +145,7 @@ public abstract class ConnectionHandler {
             isLocked = false;
         }
 
-        ConnectionPool.notifyConnectionHandlerLockReleased();
+        ConnectionPool.notifyConnectionHandlerLockReleased(this);
 
         return true;
     }
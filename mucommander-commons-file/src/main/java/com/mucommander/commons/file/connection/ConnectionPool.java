@@ -21,6 +21,16 @@ import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +40,18 @@ import com.mucommander.commons.file.FileURL;
 
 
 /**
+ * Shares {@link ConnectionHandler} instances across file operations.
+ *
+ * <p>Connection handlers are kept in one pool per realm, each with its own lock, so that operations on different
+ * servers never contend with each other. Within a realm, at most {@link #getMaxConnectionsPerRealm(FileURL)}
+ * connections are opened for the same credentials; threads that need a connection while the limit is reached wait
+ * in arrival order for one to be released. The limit, as well as the minimum number of connections that are kept
+ * open when idle, can be set for each protocol with {@link #setMaxConnections(String, int)} and
+ * {@link #setMinConnections(String, int)}.</p>
+ *
+ * <p>Connections are monitored periodically by a scheduled task, which keeps them alive and closes those that have
+ * been inactive for too long. Usage counters can be retrieved with {@link #getStatistics()}.</p>
+ *
  * @see com.mucommander.commons.file.connection.ConnectionHandler
  * @author Maxence Bernard
  */
@@ -39,63 +61,153 @@ public class ConnectionPool implements Runnable {
     /** Singleton instance */
     private static ConnectionPool instance = new ConnectionPool();
 
-    /** List of registered ConnectionHandler */
-    private final static List<ConnectionHandler> connectionHandlers = new ArrayList<ConnectionHandler>();
+    /** Realm pools, keyed by realm */
+    private final static Map<String, RealmPool> realmPools = new ConcurrentHashMap<>();
+
+    /** Runs the periodic connection monitoring */
+    private final static ScheduledExecutorService monitorExecutor = Executors.newSingleThreadScheduledExecutor(r -> createDaemonThread(r, "ConnectionPool monitor"));
 
-    /** The thread that monitors connections, null if there currently is no registered ConnectionHandler */
-    private static Thread monitorThread;
+    /** Closes and keeps connections alive, as these operations could block the monitor */
+    private final static ExecutorService connectionTaskExecutor = Executors.newCachedThreadPool(r -> createDaemonThread(r, "ConnectionPool task"));
 
-    /** Controls how of often the thread monitor checks connections */
+    /** The scheduled monitoring task, null if there currently is no registered ConnectionHandler */
+    private static ScheduledFuture<?> monitorTask;
+
+    /** Controls how of often the monitor checks connections, and how often waiting threads check the pool again */
     private final static int MONITOR_SLEEP_PERIOD = 1000;
 
-    /** Maximum number of simultaneous connections per realm/credentials combo */
-    private final static int MAX_CONNECTIONS_PER_REALM = 4;
+    /** Default maximum number of simultaneous connections per realm/credentials combo */
+    private final static int DEFAULT_MAX_CONNECTIONS_PER_REALM = 4;
+
+    /** Maximum number of simultaneous connections per realm/credentials combo, keyed by scheme */
+    private final static Map<String, Integer> maxConnections = new ConcurrentHashMap<>();
+
+    /** Number of connections per realm that are kept open when inactive, keyed by scheme */
+    private final static Map<String, Integer> minConnections = new ConcurrentHashMap<>();
+
+    /** Number of connection handlers that have been created */
+    private final static AtomicLong createdCount = new AtomicLong();
+
+    /** Number of connection handlers that have been removed from the pool */
+    private final static AtomicLong closedCount = new AtomicLong();
+
+    /** Number of connection handlers that have been returned by {@link #getConnectionHandler} */
+    private final static AtomicLong acquireCount = new AtomicLong();
+
+    /** Total time spent waiting in {@link #getConnectionHandler}, in nanoseconds */
+    private final static AtomicLong acquireWaitTime = new AtomicLong();
+
+    /** Longest time spent waiting in {@link #getConnectionHandler}, in nanoseconds */
+    private final static AtomicLong maxAcquireWaitTime = new AtomicLong();
+
+
+    /**
+     * Returns the maximum number of simultaneous connections that are opened to the realm of the given URL, with
+     * the same credentials. Callers that perform operations concurrently on a realm should not exceed this number,
+     * as additional callers would be blocked until a connection is released.
+     *
+     * @param url a URL in the realm to return the limit for
+     * @return the maximum number of simultaneous connections to the realm of the given URL
+     */
+    public static int getMaxConnectionsPerRealm(FileURL url) {
+        return maxConnections.getOrDefault(url.getScheme(), DEFAULT_MAX_CONNECTIONS_PER_REALM);
+    }
+
+    /**
+     * Sets the maximum number of simultaneous connections that are opened to a realm of the given protocol, with the
+     * same credentials. The new limit applies to the connections that are requested after this call.
+     *
+     * @param scheme the protocol's scheme, e.g. <code>ftp</code>
+     * @param max maximum number of simultaneous connections per realm, at least 1
+     */
+    public static void setMaxConnections(String scheme, int max) {
+        maxConnections.put(scheme, Math.max(1, max));
+    }
 
+    /**
+     * Returns the number of connections to a realm of the given URL's protocol that are kept open when they are
+     * inactive, <code>0</code> by default.
+     *
+     * @param url a URL in the realm to return the minimum for
+     * @return the number of connections per realm that are kept open when inactive
+     */
+    public static int getMinConnectionsPerRealm(FileURL url) {
+        return minConnections.getOrDefault(url.getScheme(), 0);
+    }
+
+    /**
+     * Sets the number of connections to a realm of the given protocol that are kept open when they are inactive,
+     * i.e. that are not closed once their {@link ConnectionHandler#getCloseOnInactivityPeriod() inactivity period}
+     * has elapsed. Connections that are not connected anymore are removed regardless of this value.
+     *
+     * @param scheme the protocol's scheme, e.g. <code>ftp</code>
+     * @param min number of connections per realm that are kept open when inactive, at least 0
+     */
+    public static void setMinConnections(String scheme, int min) {
+        minConnections.put(scheme, Math.max(0, min));
+    }
 
     public static ConnectionHandler getConnectionHandler(ConnectionHandlerFactory connectionHandlerFactory, FileURL url, boolean acquireLock) throws InterruptedIOException {
         FileURL realm = url.getRealm();
+        Credentials urlCredentials = url.getCredentials();
+        int maxConnectionsPerRealm = getMaxConnectionsPerRealm(realm);
+        long waitStart = System.nanoTime();
 
         while(true) {
-            synchronized(connectionHandlers) {      // Ensures that monitor thread is not currently changing the list while we access it
-                Credentials urlCredentials = url.getCredentials();
-                int matchingConnHandlers = 0;
-
-                // Try and find an appropriate existing ConnectionHandler
-                for(ConnectionHandler connHandler : connectionHandlers) {
-                	// ConnectionHandler must match the realm and credentials and must not be locked
-                	if(connHandler.equals(realm, urlCredentials)) {
-                		matchingConnHandlers++;
-                		synchronized(connHandler) {     // Ensures that lock remains unchanged while we access/update it
-                			if(!connHandler.isLocked()) {
-                				// Try to acquire lock if a lock was requested
-                				if(!acquireLock || connHandler.acquireLock()) {
-                					LOGGER.info("returning ConnectionHandler {}, realm = {}", connHandler, realm);
-
-                					// Update last activity timestamp to now
-                					connHandler.updateLastActivityTimestamp();
-
-                					return connHandler;
-                				}
-                			}
-                		}
-                	}
-                    
-                    if(matchingConnHandlers==MAX_CONNECTIONS_PER_REALM) {
-                        LOGGER.info("Maximum number of connection per realm reached, waiting for one to be removed or released...");
-                        try {
-                            // Wait for a ConnectionHandler to be released or removed from the pool
-                            connectionHandlers.wait();      // relinquishes the lock on connectionHandlers
-                            break;
-                        }
-                        catch(InterruptedException e) {
-                            LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
-                            throw new InterruptedIOException();
+            RealmPool pool = realmPools.computeIfAbsent(getRealmKey(realm), key -> new RealmPool());
+
+            try {
+                pool.lock.lockInterruptibly();
+            }
+            catch(InterruptedException e) {
+                LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
+                throw new InterruptedIOException();
+            }
+
+            try {
+                // The pool was discarded by the monitor in the meantime, use the new one
+                if(pool.discarded)
+                    continue;
+
+                while(true) {
+                    int matchingConnHandlers = 0;
+
+                    // Try and find an appropriate existing ConnectionHandler
+                    for(ConnectionHandler connHandler : pool.connectionHandlers) {
+                        // ConnectionHandler must match the realm and credentials and must not be locked
+                        if(connHandler.equals(realm, urlCredentials)) {
+                            matchingConnHandlers++;
+                            synchronized(connHandler) {     // Ensures that lock remains unchanged while we access/update it
+                                if(!connHandler.isLocked()) {
+                                    // Try to acquire lock if a lock was requested
+                                    if(!acquireLock || connHandler.acquireLock()) {
+                                        LOGGER.info("returning ConnectionHandler {}, realm = {}", connHandler, realm);
+
+                                        // Update last activity timestamp to now
+                                        connHandler.updateLastActivityTimestamp();
+
+                                        countAcquire(waitStart);
+                                        return connHandler;
+                                    }
+                                }
+                            }
                         }
                     }
-                }
 
-                if(matchingConnHandlers==MAX_CONNECTIONS_PER_REALM)
-                    continue;
+                    if(matchingConnHandlers<maxConnectionsPerRealm)
+                        break;
+
+                    LOGGER.info("Maximum number of connection per realm reached, waiting for one to be removed or released...");
+                    try {
+                        // Wait for a ConnectionHandler to be released or removed from the pool. Waiting threads are
+                        // woken up in arrival order, the timeout guards against missed signals.
+                        pool.connectionReleased.await(MONITOR_SLEEP_PERIOD, TimeUnit.MILLISECONDS);
+                    }
+                    catch(InterruptedException e) {
+                        LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
+                        throw new InterruptedIOException();
+                    }
+                }
 
                 // No suitable ConnectionHandler found, create a new one
                 ConnectionHandler connHandler = connectionHandlerFactory.createConnectionHandler(url);
@@ -107,20 +219,21 @@ public class ConnectionPool implements Runnable {
                 LOGGER.info("adding new ConnectionHandler {}, realm = {}", connHandler, connHandler.getRealm());
 
                 // Insert new ConnectionHandler at first position as if it has more chances to be accessed again soon
-                connectionHandlers.add(0, connHandler);
+                pool.connectionHandlers.add(0, connHandler);
+                createdCount.incrementAndGet();
 
-                // Start monitor thread if it is not currently running (if there previously was no registered ConnectionHandler)
-                if(monitorThread==null) {
-                    LOGGER.info("starting monitor thread");
-                    monitorThread = new Thread(instance);
-                    monitorThread.start();
-                }
+                // Start monitoring connections if there previously was no registered ConnectionHandler
+                startMonitor();
 
                 // Update last activity timestamp to now
                 connHandler.updateLastActivityTimestamp();
 
+                countAcquire(waitStart);
                 return connHandler;
             }
+            finally {
+                pool.lock.unlock();
+            }
         }
     }
 
@@ -128,116 +241,229 @@ public class ConnectionPool implements Runnable {
     /**
      * Returns a list of registered ConnectionHandler instances. As the name of this method implies, the returned
      * list is only a snapshot and will not reflect the modifications that are made after this method has been called.
-     * The Vector is a cloned one and thus can be safely modified. 
+     * The list is a new one and thus can be safely modified.
      *
      * @return a list of registered ConnectionHandler instances
      */
     public static List<ConnectionHandler> getConnectionHandlersSnapshot() {
-    	synchronized (connectionHandlers) {
-    		return new ArrayList<ConnectionHandler>(connectionHandlers);
-    	}
+        List<ConnectionHandler> connectionHandlers = new ArrayList<>();
+        for(RealmPool pool : realmPools.values()) {
+            pool.lock.lock();
+            try {
+                connectionHandlers.addAll(pool.connectionHandlers);
+            }
+            finally {
+                pool.lock.unlock();
+            }
+        }
+
+        return connectionHandlers;
+    }
+
+    /**
+     * Returns a snapshot of the pool's usage counters.
+     *
+     * @return a snapshot of the pool's usage counters
+     */
+    public static ConnectionPoolStatistics getStatistics() {
+        int active = 0;
+        int idle = 0;
+        for(ConnectionHandler connHandler : getConnectionHandlersSnapshot()) {
+            if(connHandler.isLocked())
+                active++;
+            else
+                idle++;
+        }
+
+        return new ConnectionPoolStatistics(active, idle, createdCount.get(), closedCount.get(),
+                acquireCount.get(), acquireWaitTime.get(), maxAcquireWaitTime.get());
     }
-    
+
     /**
-     * Called by {@link ConnectionHandler#releaseLock()} to notify the <code>ConnectionHandler</code> that a
+     * Called by {@link ConnectionHandler#releaseLock()} to notify the <code>ConnectionPool</code> that a
      * <code>ConnectionHandler</code> has been released.
+     *
+     * @param connHandler the ConnectionHandler that has been released
      */
-    static void notifyConnectionHandlerLockReleased() {
-        synchronized(connectionHandlers) {
-            // Notify any thread waiting for a ConnectionHandler to be released
-            connectionHandlers.notify();
+    static void notifyConnectionHandlerLockReleased(ConnectionHandler connHandler) {
+        RealmPool pool = realmPools.get(getRealmKey(connHandler.getRealm()));
+        if(pool==null)
+            return;
+
+        pool.lock.lock();
+        try {
+            // Notify the thread that has been waiting the longest for a ConnectionHandler to be released
+            pool.connectionReleased.signal();
+        }
+        finally {
+            pool.lock.unlock();
         }
     }
 
     /**
-     * Monitors connections and periodically:
+     * Monitors connections and:
      * <ul>
      *   <li>keeps connections alive
      *   <li>closes and removes connections that have expired
      * </ul>
+     * This method is run periodically by the monitor executor while there are registered ConnectionHandler instances.
      */
     public void run() {
+        long now = System.currentTimeMillis();
 
-        while(monitorThread!=null) {        // Thread will be interrupted by CloseConnectionThread if there are no more ConnectionHandler
-            long now = System.currentTimeMillis();
+        for(Map.Entry<String, RealmPool> poolEntry : realmPools.entrySet()) {
+            RealmPool pool = poolEntry.getValue();
+            pool.lock.lock();
+            try {
+                checkConnections(pool, now);
 
-            synchronized(connectionHandlers) {      // Ensures that getConnectionHandler is not currently changing the list while we access it
-                for (Iterator<ConnectionHandler> it = connectionHandlers.iterator(); it.hasNext(); ) {
-                	ConnectionHandler connHandler = it.next();
-                    synchronized(connHandler) {     // Ensures that no one is trying to acquire a lock on the connection while we access it 
-                        if(!connHandler.isLocked()) {   // Do not touch ConnectionHandler if it is currently locked
+                // Discard pools that have no more ConnectionHandler and no waiting thread
+                if(pool.connectionHandlers.isEmpty() && !pool.lock.hasWaiters(pool.connectionReleased)) {
+                    pool.discarded = true;
+                    realmPools.remove(poolEntry.getKey(), pool);
+                }
+            }
+            finally {
+                pool.lock.unlock();
+            }
+        }
 
-                            // Remove ConnectionHandler instance from the list of registered ConnectionHandler
-                            // if it is not connected
-                            if(!connHandler.isConnected()) {
-                                LOGGER.info("Removing unconnected ConnectionHandler {}", connHandler);
+        // Stop monitoring if there are no more ConnectionHandler
+        synchronized(monitorExecutor) {
+            if(realmPools.isEmpty() && monitorTask!=null) {
+                LOGGER.info("No more ConnectionHandler, stopping monitor");
+                monitorTask.cancel(false);
+                monitorTask = null;
+            }
+        }
+    }
 
-                                it.remove();
-                                // Notify any thread waiting for a ConnectionHandler to be released
-                                connectionHandlers.notify();
+    /**
+     * Checks the connections of the given pool. Must be called with the pool's lock held.
+     */
+    private static void checkConnections(RealmPool pool, long now) {
+        int nbConnections = pool.connectionHandlers.size();
+        int minConnectionsPerRealm = nbConnections==0?0:getMinConnectionsPerRealm(pool.connectionHandlers.get(0).getRealm());
+
+        for (Iterator<ConnectionHandler> it = pool.connectionHandlers.iterator(); it.hasNext(); ) {
+            ConnectionHandler connHandler = it.next();
+            synchronized(connHandler) {     // Ensures that no one is trying to acquire a lock on the connection while we access it
+                if(connHandler.isLocked())      // Do not touch ConnectionHandler if it is currently locked
+                    continue;
 
-                                continue;       // Skips close on inactivity and keep alive checks
-                            }
+                // Remove ConnectionHandler instance from the list of registered ConnectionHandler
+                // if it is not connected
+                if(!connHandler.isConnected()) {
+                    LOGGER.info("Removing unconnected ConnectionHandler {}", connHandler);
 
-                            long lastUsed = connHandler.getLastActivityTimestamp();
+                    it.remove();
+                    nbConnections--;
+                    closedCount.incrementAndGet();
+                    // Notify any thread waiting for a ConnectionHandler to be released
+                    pool.connectionReleased.signal();
 
-                            // If time-to-live has been reached without any connection activity, remove ConnectionHandler
-                            // from the list of registered ConnectionHandler and close the connection in a separate thread
-                            long closePeriod = connHandler.getCloseOnInactivityPeriod();
-                            if(closePeriod!=-1 && now-lastUsed>closePeriod*1000) {
-                                LOGGER.info("Removing timed-out ConnectionHandler {}",connHandler);
+                    continue;       // Skips close on inactivity and keep alive checks
+                }
 
-                                it.remove();
-                                // Notify any thread waiting for a ConnectionHandler to be released
-                                connectionHandlers.notify();
+                long lastUsed = connHandler.getLastActivityTimestamp();
 
-                                // Close connection in a separate thread as it could lock this thread
-                                new CloseConnectionThread(connHandler).start();
+                // If time-to-live has been reached without any connection activity, remove ConnectionHandler
+                // from the list of registered ConnectionHandler and close the connection in a separate thread,
+                // unless the minimum number of connections of the realm would not be kept open anymore
+                long closePeriod = connHandler.getCloseOnInactivityPeriod();
+                if(closePeriod!=-1 && now-lastUsed>closePeriod*1000 && nbConnections>minConnectionsPerRealm) {
+                    LOGGER.info("Removing timed-out ConnectionHandler {}",connHandler);
 
-                                continue;       // Skips keep alive check
-                            }
+                    it.remove();
+                    nbConnections--;
+                    closedCount.incrementAndGet();
+                    // Notify any thread waiting for a ConnectionHandler to be released
+                    pool.connectionReleased.signal();
 
-                            // If keep-alive period has been reached without any connection activity or a keep alive,
-                            // keep connection alive in a separate thread
-                            long keepAlivePeriod = connHandler.getKeepAlivePeriod(); 
-                            if(keepAlivePeriod!=-1 && now-Math.max(lastUsed, connHandler.getLastKeepAliveTimestamp())>keepAlivePeriod*1000) {
-                                // Update last keep alive timestamp to now
-                                connHandler.updateLastKeepAliveTimestamp();
+                    // Close connection in a separate thread as it could lock this thread
+                    connectionTaskExecutor.execute(new CloseConnectionTask(connHandler));
 
-                                // Keep connection alive in a separate thread as it could lock this thread
-                                new KeepAliveConnectionThread(connHandler).start();
-                            }
-                        }
-                    }
+                    continue;       // Skips keep alive check
                 }
 
-                // Stop monitor thread if there are no more ConnectionHandler
-                if(connectionHandlers.isEmpty()) {
-                    LOGGER.info("No more ConnectionHandler, stopping monitor thread");
-                    monitorThread = null;
+                // If keep-alive period has been reached without any connection activity or a keep alive,
+                // keep connection alive in a separate thread
+                long keepAlivePeriod = connHandler.getKeepAlivePeriod();
+                if(keepAlivePeriod!=-1 && now-Math.max(lastUsed, connHandler.getLastKeepAliveTimestamp())>keepAlivePeriod*1000) {
+                    // Update last keep alive timestamp to now
+                    connHandler.updateLastKeepAliveTimestamp();
+
+                    // Keep connection alive in a separate thread as it could lock this thread
+                    connectionTaskExecutor.execute(new KeepAliveConnectionTask(connHandler));
                 }
             }
+        }
+    }
 
-            // Sleep for MONITOR_SLEEP_PERIOD milliseconds, minus the processing time of this loop
-            try {
-                Thread.sleep(Math.max(0, MONITOR_SLEEP_PERIOD-(System.currentTimeMillis()-now)));
-            }
-            catch(InterruptedException e) {
-                // Will loop again
+    /**
+     * Schedules the monitoring task if it is not currently scheduled.
+     */
+    private static void startMonitor() {
+        synchronized(monitorExecutor) {
+            if(monitorTask==null) {
+                LOGGER.info("starting monitor");
+                monitorTask = monitorExecutor.scheduleWithFixedDelay(instance, MONITOR_SLEEP_PERIOD, MONITOR_SLEEP_PERIOD, TimeUnit.MILLISECONDS);
             }
         }
     }
 
+    /**
+     * Accounts a ConnectionHandler that is returned to a caller that started waiting at the given time.
+     */
+    private static void countAcquire(long waitStart) {
+        long waitTime = System.nanoTime()-waitStart;
+        acquireCount.incrementAndGet();
+        acquireWaitTime.addAndGet(waitTime);
+        maxAcquireWaitTime.accumulateAndGet(waitTime, Math::max);
+    }
+
+    /**
+     * Returns the key of the pool that holds the connections to the given realm.
+     */
+    private static String getRealmKey(FileURL realm) {
+        return realm.toString(false);
+    }
+
+    private static Thread createDaemonThread(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+
+    /**
+     * The ConnectionHandler instances of a realm, along with the lock that guards them.
+     */
+    private static class RealmPool {
+
+        /** Guards this pool, fair so that waiting threads get connections in arrival order */
+        private final ReentrantLock lock = new ReentrantLock(true);
+
+        /** Signaled when a ConnectionHandler is released or removed from this pool */
+        private final Condition connectionReleased = lock.newCondition();
+
+        /** ConnectionHandler instances of this realm, most recently created first */
+        private final List<ConnectionHandler> connectionHandlers = new ArrayList<>();
+
+        /** True once this pool has been removed from the map of pools, in which case it must not be used anymore */
+        private boolean discarded;
+    }
+
 
     /**
-     * Closes a specified ConnectionHandler's connection in a separate thread and removes the ConnectionHandler from
-     * the list of registered ConnectionHandler instances.
+     * Closes a specified ConnectionHandler's connection, after it has been removed from the list of registered
+     * ConnectionHandler instances.
      */
-    private static class CloseConnectionThread extends Thread {
+    private static class CloseConnectionTask implements Runnable {
 
         private ConnectionHandler connHandler;
 
-        private CloseConnectionThread(ConnectionHandler connHandler) {
+        private CloseConnectionTask(ConnectionHandler connHandler) {
             this.connHandler = connHandler;
         }
 
@@ -253,14 +479,14 @@ public class ConnectionPool implements Runnable {
 
 
     /**
-     * Keeps alive a specified ConnectionHandler's connection in a separate thread. If the connection is not currently
+     * Keeps alive a specified ConnectionHandler's connection. If the connection is not currently
      * active, {@link com.mucommander.commons.file.connection.ConnectionHandler#keepAlive()} will not be called.
      */
-    private static class KeepAliveConnectionThread extends Thread {
+    private static class KeepAliveConnectionTask implements Runnable {
 
         private final ConnectionHandler connHandler;
 
-        private KeepAliveConnectionThread(ConnectionHandler connHandler) {
+        private KeepAliveConnectionTask(ConnectionHandler connHandler) {
             this.connHandler = connHandler;
         }
 
@@ -0,0 +1,124 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.connection;
+
+/**
+ * A snapshot of the usage counters of {@link ConnectionPool}, as returned by {@link ConnectionPool#getStatistics()}.
+ * Counts are accumulated since the pool was first used.
+ */
+public final class ConnectionPoolStatistics {
+
+    private final int activeConnections;
+    private final int idleConnections;
+    private final long createdConnections;
+    private final long closedConnections;
+    private final long acquireCount;
+    private final long acquireWaitTime;
+    private final long maxAcquireWaitTime;
+
+    ConnectionPoolStatistics(int activeConnections, int idleConnections, long createdConnections, long closedConnections,
+                             long acquireCount, long acquireWaitTime, long maxAcquireWaitTime) {
+        this.activeConnections = activeConnections;
+        this.idleConnections = idleConnections;
+        this.createdConnections = createdConnections;
+        this.closedConnections = closedConnections;
+        this.acquireCount = acquireCount;
+        this.acquireWaitTime = acquireWaitTime;
+        this.maxAcquireWaitTime = maxAcquireWaitTime;
+    }
+
+    /**
+     * Returns the number of registered connections that are currently locked by a caller.
+     *
+     * @return the number of registered connections that are currently locked
+     */
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    /**
+     * Returns the number of registered connections that are currently not locked.
+     *
+     * @return the number of registered connections that are currently not locked
+     */
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    /**
+     * Returns the number of connection handlers that have been created.
+     *
+     * @return the number of connection handlers that have been created
+     */
+    public long getCreatedConnections() {
+        return createdConnections;
+    }
+
+    /**
+     * Returns the number of connection handlers that have been removed from the pool, either because they were not
+     * connected anymore or because they had been inactive for too long.
+     *
+     * @return the number of connection handlers that have been removed from the pool
+     */
+    public long getClosedConnections() {
+        return closedConnections;
+    }
+
+    /**
+     * Returns the number of connection handlers that have been handed out by the pool.
+     *
+     * @return the number of connection handlers that have been handed out by the pool
+     */
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    /**
+     * Returns the total time callers have spent waiting for a connection handler, in nanoseconds.
+     *
+     * @return the total time callers have spent waiting for a connection handler, in nanoseconds
+     */
+    public long getAcquireWaitTime() {
+        return acquireWaitTime;
+    }
+
+    /**
+     * Returns the average time callers have spent waiting for a connection handler, in nanoseconds.
+     *
+     * @return the average time callers have spent waiting for a connection handler, in nanoseconds
+     */
+    public long getAverageAcquireWaitTime() {
+        return acquireCount==0?0:acquireWaitTime/acquireCount;
+    }
+
+    /**
+     * Returns the longest time a caller has spent waiting for a connection handler, in nanoseconds.
+     *
+     * @return the longest time a caller has spent waiting for a connection handler, in nanoseconds
+     */
+    public long getMaxAcquireWaitTime() {
+        return maxAcquireWaitTime;
+    }
+
+    @Override
+    public String toString() {
+        return "active="+activeConnections+" idle="+idleConnections+" created="+createdConnections
+                +" closed="+closedConnections+" acquired="+acquireCount
+                +" avgWaitNs="+getAverageAcquireWaitTime()+" maxWaitNs="+maxAcquireWaitTime;
+    }
+}
@@ -30,19 +30,25 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileOwnerAttributeView;
 import java.nio.file.attribute.PosixFileAttributeView;
 import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -877,18 +883,57 @@ public class LocalFile extends ProtocolFile {
         AbstractFile children[] = new AbstractFile[nbFiles];
 
         for (int i = 0; i < nbFiles; i++) {
-            // Clone the FileURL of this file and set the child's path, this is more efficient than creating a new
-            // FileURL instance from scratch.
-            FileURL childURL = (FileURL) fileURL.clone();
+            children[i] = createChild(files[i]);
+        }
 
-            childURL.setPath(absPath + SEPARATOR + files[i].getName());
+        return children;
+    }
 
-            // Retrieves an AbstractFile (LocalFile or AbstractArchiveFile) instance that's potentially already in
-            // the cache, reuse this file as the file's parent, and the already-created java.io.File instance.
-            children[i] = FileFactory.getFile(childURL, this, Collections.singletonMap("createdFile", files[i]));
+    /**
+     * Overridden to read the directory entries with a {@link DirectoryStream}, which does not load all the entries of
+     * the directory in memory before returning the first ones.
+     */
+    @Override
+    public void lsBatches(Consumer<AbstractFile[]> batchConsumer) throws IOException {
+        Path path;
+        try {
+            path = file.toPath();
+        } catch (InvalidPathException e) {
+            super.lsBatches(batchConsumer);
+            return;
         }
 
-        return children;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            List<AbstractFile> batch = new ArrayList<>(LS_BATCH_SIZE);
+            for (Path childPath : stream) {
+                batch.add(createChild(new File(file, childPath.getFileName().toString())));
+                if (batch.size() == LS_BATCH_SIZE) {
+                    batchConsumer.accept(batch.toArray(new AbstractFile[0]));
+                    batch.clear();
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                batchConsumer.accept(batch.toArray(new AbstractFile[0]));
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the child of this directory that corresponds to the given <code>java.io.File</code> instance.
+     */
+    private AbstractFile createChild(File childFile) throws IOException {
+        // Clone the FileURL of this file and set the child's path, this is more efficient than creating a new
+        // FileURL instance from scratch.
+        FileURL childURL = (FileURL) fileURL.clone();
+
+        childURL.setPath(absPath + SEPARATOR + childFile.getName());
+
+        // Retrieves an AbstractFile (LocalFile or AbstractArchiveFile) instance that's potentially already in
+        // the cache, reuse this file as the file's parent, and the already-created java.io.File instance.
+        return FileFactory.getFile(childURL, this, Collections.singletonMap("createdFile", childFile));
     }
 
     @Override
@@ -991,7 +1036,7 @@ public class LocalFile extends ProtocolFile {
 
         public LocalRandomAccessInputStream(FileChannel channel) {
             this.channel = channel;
-            this.bb = BufferPool.getByteBuffer();
+            this.bb = BufferPool.getDirectByteBuffer();
         }
 
         @Override
@@ -1025,9 +1070,26 @@ public class LocalFile extends ProtocolFile {
             }
         }
 
+        /**
+         * Reads from the channel at the given position, without using its position nor this stream's buffer, so that
+         * several threads can read from this stream at the same time.
+         */
+        @Override
+        public int read(long position, byte b[], int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+
+            return channel.read(ByteBuffer.wrap(b, off, len), position);
+        }
+
+        @Override
+        public boolean isConcurrentReadSupported() {
+            return true;
+        }
+
         @Override
         public void close() throws IOException {
-            BufferPool.releaseByteBuffer(bb);
+            BufferPool.releaseDirectByteBuffer(bb);
             channel.close();
         }
 
@@ -1097,7 +1159,7 @@ public class LocalFile extends ProtocolFile {
 
         public LocalRandomAccessOutputStream(FileChannel channel) {
             this.channel = channel;
-            this.bb = BufferPool.getByteBuffer();
+            this.bb = BufferPool.getDirectByteBuffer();
         }
 
         @Override
@@ -1165,7 +1227,7 @@ public class LocalFile extends ProtocolFile {
 
         @Override
         public void close() throws IOException {
-            BufferPool.releaseByteBuffer(bb);
+            BufferPool.releaseDirectByteBuffer(bb);
             channel.close();
         }
 
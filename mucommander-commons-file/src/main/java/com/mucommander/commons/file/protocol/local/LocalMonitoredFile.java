@@ -24,11 +24,15 @@ import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileChange;
 import com.mucommander.commons.file.ModificationDateBasedMonitoredFile;
 import com.mucommander.commons.file.MonitoredFile;
 
@@ -37,6 +41,10 @@ import com.mucommander.commons.file.MonitoredFile;
  * if it is supported or falls back to the mechanism of {@link ModificationDateBasedMonitoredFile} otherwise.
  * This is useful for local files that reside in file systems in which the modification date of a folder
  * doesn't change upon changes to its content.
+ * <p>
+ * The events of the {@link WatchService} are reported individually by {@link #pollChanges()}, until the
+ * {@link StandardWatchEventKinds#OVERFLOW overflow} event signals that some events were lost.
+ * </p>
  * @author Arik Hadas
  */
 public class LocalMonitoredFile extends ModificationDateBasedMonitoredFile {
@@ -45,6 +53,12 @@ public class LocalMonitoredFile extends ModificationDateBasedMonitoredFile {
     private WatchService watchService;
     private WatchKey watchKey;
 
+    /** Changes that were polled from the WatchService and not retrieved yet */
+    private List<FileChange> changes = new ArrayList<>();
+
+    /** True if changes were made that are not known individually */
+    private boolean changesLost;
+
     private static WatchEvent.Kind<?>[] kinds = new WatchEvent.Kind<?>[] {
         StandardWatchEventKinds.ENTRY_CREATE,
         StandardWatchEventKinds.ENTRY_DELETE,
@@ -95,14 +109,12 @@ public class LocalMonitoredFile extends ModificationDateBasedMonitoredFile {
             // the modification date of the file as it appears to be faster
             // than getting events from WatchService on macOS
             if (!periodicCheck && super.isChanged(false)) {
+                synchronized (this) {
+                    changesLost = true;
+                }
                 return true;
             }
-            WatchKey watchKey = watchService.poll();
-            if (watchKey != null) {
-                watchKey.reset();
-                return true;
-            }
-            return false;
+            return pollEvents();
         } catch (Exception e) {
             LOGGER.warn("unable to check changes in {}", this);
             LOGGER.error("exception while polling WatchService", e);
@@ -110,4 +122,67 @@ public class LocalMonitoredFile extends ModificationDateBasedMonitoredFile {
         }
     }
 
+    @Override
+    public boolean canPollChanges() {
+        return watchService != null;
+    }
+
+    @Override
+    public synchronized List<FileChange> pollChanges() {
+        if (watchService == null) {
+            return super.pollChanges();
+        }
+
+        try {
+            pollEvents();
+        } catch (Exception e) {
+            LOGGER.warn("unable to check changes in {}", this);
+            LOGGER.error("exception while polling WatchService", e);
+            changesLost = true;
+        }
+
+        if (changes.isEmpty() && !changesLost) {
+            return Collections.emptyList();
+        }
+
+        List<FileChange> polledChanges = changesLost ? null : changes;
+        // The changes are about to be taken into account, the date of the folder is no longer a sign of change
+        originalModificationDate = getDate();
+        changes = new ArrayList<>();
+        changesLost = false;
+        return polledChanges;
+    }
+
+    /**
+     * Moves the pending events of the WatchService to the list of changes.
+     * @return true if changes were made since they were last retrieved
+     */
+    private synchronized boolean pollEvents() {
+        WatchKey watchKey;
+        while ((watchKey = watchService.poll()) != null) {
+            for (WatchEvent<?> event : watchKey.pollEvents()) {
+                WatchEvent.Kind<?> kind = event.kind();
+                if (kind == StandardWatchEventKinds.OVERFLOW) {
+                    changesLost = true;
+                    continue;
+                }
+
+                FileChange.Kind changeKind;
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE)
+                    changeKind = FileChange.Kind.CREATED;
+                else if (kind == StandardWatchEventKinds.ENTRY_DELETE)
+                    changeKind = FileChange.Kind.DELETED;
+                else
+                    changeKind = FileChange.Kind.MODIFIED;
+                changes.add(new FileChange(changeKind, event.context().toString()));
+            }
+
+            // The key is no longer valid if the folder has been deleted
+            if (!watchKey.reset())
+                changesLost = true;
+        }
+
+        return changesLost || !changes.isEmpty();
+    }
+
 }
@@ -61,8 +61,8 @@ public class FileComparator implements Comparator<AbstractFile> {
     private boolean directoriesFirst;
     /** Returns the value for the 'name' column for a file */
     private Function<AbstractFile, String> nameFunc;
-    /** Locale that is used to sort by filenames */
-    private Locale locale;
+    /** Collator that is used to sort by filenames */
+    private Collator collator;
 
     public enum CRITERION {
         /** Criterion for filename comparison. */
@@ -82,7 +82,7 @@ public class FileComparator implements Comparator<AbstractFile> {
     }
 
     /** Matches filenames that contain a number, like "01 - Do the Joy.mp3" */
-    private final static Pattern FILENAME_WITH_NUMBER_PATTERN = Pattern.compile("\\d+");
+    final static Pattern FILENAME_WITH_NUMBER_PATTERN = Pattern.compile("\\d+");
 
     /**
      * Creates a new FileComparator using the specified comparison criterion, order (ascending or descending) and
@@ -99,7 +99,19 @@ public class FileComparator implements Comparator<AbstractFile> {
         this.ascending = ascending;
         this.directoriesFirst = directoriesFirst;
         this.nameFunc = nameFunc;
-        this.locale = locale;
+        this.collator = createCollator(locale);
+    }
+
+    /**
+     * Returns a collator that compares filenames in the given locale.
+     *
+     * @param locale the locale by which filenames are sorted
+     * @return a collator that compares filenames in the given locale
+     */
+    static Collator createCollator(Locale locale) {
+        Collator collator = Collator.getInstance(locale);
+        collator.setStrength(Collator.TERTIARY);
+        return collator;
     }
 
 
@@ -134,7 +146,7 @@ public class FileComparator implements Comparator<AbstractFile> {
      * @param s the string from which to remove leading zeros
      * @return a string without leading zeros
      */
-    private String removeLeadingZeros(String s) {
+    static String removeLeadingZeros(String s) {
         int len = s.length();
         int i=0;
         while(i<len && s.charAt(i)=='0')
@@ -192,20 +204,9 @@ public class FileComparator implements Comparator<AbstractFile> {
             }
         }
 
-        var collator = Collator.getInstance(locale);
-        collator.setStrength(Collator.TERTIARY);
-        int diff = collator.compare(s1, s2);
-        if (diff == 0) {
-            // This should never happen unless the current filesystem allows a directory to have
-            // several files with different case variations of the same name.
-            // AFAIK, no OS/filesystem allows this, but just to be safe.
-
-            // Case-sensitive name comparison
-            collator.setStrength(Collator.PRIMARY);
-            diff = collator.compare(s1, s2);
-        }
-
-        return diff;
+        // Note: names that are equal at the tertiary strength are also equal at weaker strengths, so there is no
+        // need to compare them again.
+        return collator.compare(s1, s2);
     }
 
 
@@ -259,6 +260,18 @@ public class FileComparator implements Comparator<AbstractFile> {
         if (diff == 0)	// If both files have the same criterion's value, compare names
             diff = compareByFilename(f1, f2);
 
+        return toResult(diff, ascending);
+    }
+
+    /**
+     * Turns the difference between two files into the result of a comparison in the given order.
+     *
+     * @param diff a negative value, zero, or a positive value as the first file is less than, equal to, or greater
+     * than the second in ascending order
+     * @param ascending if true, ascending order is used, descending order otherwise
+     * @return the result of the comparison, following the contract of {@link Comparator#compare(Object, Object)}
+     */
+    static int toResult(long diff, boolean ascending) {
         // Cast long value to int, without overflowing the int if the long value exceeds the min or max int value
         int intValue;
         
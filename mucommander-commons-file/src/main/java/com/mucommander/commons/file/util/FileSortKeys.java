@@ -0,0 +1,361 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.FileComparator.CRITERION;
+
+/**
+ * FileSortKeys sorts a fixed array of files in the same order as {@link FileComparator}, without querying the files
+ * or collating their names during the sort.
+ *
+ * <p>The sort keys of the files are derived once and stored in arrays that are parallel to the files array:
+ * {@link CollationKey collation keys} and numeric parts of filenames, and the values of the other criteria, which
+ * are derived the first time the files are sorted by that criterion. Sorting then only compares keys, and sorting
+ * again by another criterion or order reuses the keys that have already been derived.</p>
+ *
+ * <p>Files are sorted through an index array, with a stable merge sort that runs in parallel for large arrays.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ *
+ * @see FileComparator
+ */
+public class FileSortKeys {
+
+    /** Number of files below which files are sorted by a single thread */
+    private final static int PARALLEL_SORT_THRESHOLD = 8192;
+
+    /** Number of files below which files are sorted by insertion */
+    private final static int INSERTION_SORT_THRESHOLD = 32;
+
+    /** Number of files whose keys are derived by a single task */
+    private final static int KEYS_BATCH_SIZE = 4096;
+
+    /** The files to sort */
+    private final AbstractFile[] files;
+
+    /** Returns the value for the 'name' column for a file */
+    private final Function<AbstractFile, String> nameFunc;
+
+    /** Filename keys, derived on creation */
+    private boolean[] directories;
+    private String[] names;
+    private CollationKey[] nameKeys;
+    /** Index of the first number in each filename, -1 if the filename contains no number */
+    private int[] numberStarts;
+    /** First number in each filename, without leading zeros */
+    private String[] numbers;
+
+    /** Criterion keys, derived when first sorting by the criterion */
+    private long[] sizes;
+    private long[] dates;
+    private int[] permissions;
+    private String[] extensions;
+    private String[] owners;
+    private String[] groups;
+
+    /**
+     * Compares two files designated by their index.
+     */
+    private interface IndexComparator {
+        int compare(int i, int j);
+    }
+
+    /**
+     * Creates sort keys for the given files, and derives the keys of their names.
+     *
+     * @param files the files to sort, must not be modified while this instance is used
+     * @param nameFunc function that returns the value for the 'name' column for a file
+     * @param locale the local by which filenames are sorted
+     */
+    public FileSortKeys(AbstractFile[] files, Function<AbstractFile, String> nameFunc, Locale locale) {
+        this.files = files;
+        this.nameFunc = nameFunc;
+
+        int nbFiles = files.length;
+        directories = new boolean[nbFiles];
+        names = new String[nbFiles];
+        nameKeys = new CollationKey[nbFiles];
+        numberStarts = new int[nbFiles];
+        numbers = new String[nbFiles];
+
+        // Collators synchronize their methods: give each task its own instance
+        Collator collator = FileComparator.createCollator(locale);
+        int nbBatches = (nbFiles + KEYS_BATCH_SIZE - 1) / KEYS_BATCH_SIZE;
+        IntStream.range(0, nbBatches).parallel().forEach(batch -> {
+            Collator batchCollator = (Collator) collator.clone();
+            int to = Math.min(nbFiles, (batch + 1) * KEYS_BATCH_SIZE);
+            for (int i = batch * KEYS_BATCH_SIZE; i < to; i++)
+                deriveNameKeys(i, batchCollator);
+        });
+    }
+
+    private void deriveNameKeys(int i, Collator collator) {
+        AbstractFile file = files[i];
+        String name = nameFunc.apply(file);
+
+        directories[i] = file.isDirectory();
+        names[i] = name;
+        nameKeys[i] = collator.getCollationKey(name);
+
+        Matcher matcher = FileComparator.FILENAME_WITH_NUMBER_PATTERN.matcher(name);
+        if (matcher.find()) {
+            numberStarts[i] = matcher.start();
+            numbers[i] = FileComparator.removeLeadingZeros(matcher.group());
+        } else {
+            numberStarts[i] = -1;
+        }
+    }
+
+    /**
+     * Derives the keys of the given criterion, if they have not been derived yet.
+     */
+    private void deriveKeys(CRITERION criterion) {
+        int nbFiles = files.length;
+        switch (criterion) {
+        case SIZE:
+            if (sizes == null) {
+                long[] keys = new long[nbFiles];
+                for (int i = 0; i < nbFiles; i++) {
+                    // Consider that directories have a size of 0, and that unavailable sizes (-1) are enormous
+                    long size = directories[i] ? 0 : files[i].getSize();
+                    keys[i] = size == -1 ? Long.MAX_VALUE : size;
+                }
+                sizes = keys;
+            }
+            break;
+        case DATE:
+            if (dates == null) {
+                long[] keys = new long[nbFiles];
+                for (int i = 0; i < nbFiles; i++)
+                    keys[i] = files[i].getDate();
+                dates = keys;
+            }
+            break;
+        case PERMISSIONS:
+            if (permissions == null) {
+                int[] keys = new int[nbFiles];
+                for (int i = 0; i < nbFiles; i++)
+                    keys[i] = files[i].getPermissions().getIntValue();
+                permissions = keys;
+            }
+            break;
+        case EXTENSION:
+            if (extensions == null) {
+                String[] keys = new String[nbFiles];
+                for (int i = 0; i < nbFiles; i++)
+                    keys[i] = files[i].getExtension();
+                extensions = keys;
+            }
+            break;
+        case OWNER:
+            if (owners == null) {
+                String[] keys = new String[nbFiles];
+                for (int i = 0; i < nbFiles; i++)
+                    keys[i] = files[i].getOwner();
+                owners = keys;
+            }
+            break;
+        case GROUP:
+            if (groups == null) {
+                String[] keys = new String[nbFiles];
+                for (int i = 0; i < nbFiles; i++)
+                    keys[i] = files[i].getGroup();
+                groups = keys;
+            }
+            break;
+        case NAME:
+        default:
+        }
+    }
+
+    /**
+     * Compares the names of two files, like {@link FileComparator} does.
+     */
+    private int compareNames(int i, int j) {
+        // Filenames that contain a number and have the same prefix are ordered by the number's value
+        int start = numberStarts[i];
+        if (start >= 0 && start == numberStarts[j] && (start == 0 || names[i].regionMatches(0, names[j], 0, start))) {
+            String n1 = numbers[i];
+            String n2 = numbers[j];
+            if (n1.length() != n2.length())
+                return n1.length() - n2.length();
+
+            for (int k = 0; k < n1.length(); k++) {
+                int diff = n1.charAt(k) - n2.charAt(k);
+                if (diff != 0)
+                    return diff;
+            }
+        }
+
+        return nameKeys[i].compareTo(nameKeys[j]);
+    }
+
+    /**
+     * Compares two files, following the contract of {@link FileComparator#compare(AbstractFile, AbstractFile)}.
+     */
+    int compare(int i, int j, CRITERION criterion, boolean ascending, boolean directoriesFirst) {
+        if (directoriesFirst) {
+            boolean is1Directory = directories[i];
+            boolean is2Directory = directories[j];
+            if (is1Directory && !is2Directory)
+                return -1;
+            if (is2Directory && !is1Directory)
+                return 1;
+        }
+
+        long diff;
+        switch (criterion) {
+        case SIZE:
+            diff = sizes[i] - sizes[j];
+            break;
+        case DATE:
+            diff = dates[i] - dates[j];
+            break;
+        case PERMISSIONS:
+            diff = permissions[i] - permissions[j];
+            break;
+        case EXTENSION:
+            diff = StringUtils.compareIgnoreCase(extensions[i], extensions[j]);
+            break;
+        case OWNER:
+            diff = StringUtils.compareIgnoreCase(owners[i], owners[j]);
+            break;
+        case GROUP:
+            diff = StringUtils.compareIgnoreCase(groups[i], groups[j]);
+            break;
+        case NAME:
+        default:
+            diff = 0;
+        }
+
+        if (diff == 0)
+            diff = compareNames(i, j);
+
+        return FileComparator.toResult(diff, ascending);
+    }
+
+    /**
+     * Sorts the given index array, which contains indexes of the files this instance was created with, in the order
+     * defined by the given criterion, order and directory handling rule. The sort is stable: files that are equal
+     * keep their relative order.
+     *
+     * @param index indexes of files, sorted in place
+     * @param criterion comparison criterion
+     * @param ascending if true, ascending order will be used, descending order otherwise
+     * @param directoriesFirst specifies whether directories should precede files or be handled as regular files
+     */
+    public void sort(int[] index, CRITERION criterion, boolean ascending, boolean directoriesFirst) {
+        deriveKeys(criterion);
+
+        IndexComparator comparator = (i, j) -> compare(i, j, criterion, ascending, directoriesFirst);
+        int[] buffer = new int[index.length];
+        if (index.length < PARALLEL_SORT_THRESHOLD)
+            mergeSort(index, buffer, 0, index.length, comparator);
+        else
+            ForkJoinPool.commonPool().invoke(new MergeSortTask(index, buffer, 0, index.length, comparator));
+    }
+
+    /**
+     * Sorts <code>index[from, to)</code> with a merge sort.
+     */
+    private static void mergeSort(int[] index, int[] buffer, int from, int to, IndexComparator comparator) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(index, from, to, comparator);
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        mergeSort(index, buffer, from, middle, comparator);
+        mergeSort(index, buffer, middle, to, comparator);
+        merge(index, buffer, from, middle, to, comparator);
+    }
+
+    private static void insertionSort(int[] index, int from, int to, IndexComparator comparator) {
+        for (int i = from + 1; i < to; i++) {
+            int value = index[i];
+            int j = i - 1;
+            while (j >= from && comparator.compare(index[j], value) > 0) {
+                index[j + 1] = index[j];
+                j--;
+            }
+            index[j + 1] = value;
+        }
+    }
+
+    /**
+     * Merges the sorted ranges <code>index[from, middle)</code> and <code>index[middle, to)</code>.
+     */
+    private static void merge(int[] index, int[] buffer, int from, int middle, int to, IndexComparator comparator) {
+        // Ranges that are already in order, e.g. when sorting again in the same order, need not be merged
+        if (comparator.compare(index[middle - 1], index[middle]) <= 0)
+            return;
+
+        System.arraycopy(index, from, buffer, from, middle - from);
+        int left = from, right = middle, dest = from;
+        while (left < middle && right < to) {
+            // Take from the left range when equal, to keep the sort stable
+            if (comparator.compare(buffer[left], index[right]) <= 0)
+                index[dest++] = buffer[left++];
+            else
+                index[dest++] = index[right++];
+        }
+        System.arraycopy(buffer, left, index, dest, middle - left);
+    }
+
+    /**
+     * Sorts a range of an index array, sorting its halves in parallel.
+     */
+    private static class MergeSortTask extends RecursiveAction {
+        private final int[] index, buffer;
+        private final int from, to;
+        private final IndexComparator comparator;
+
+        MergeSortTask(int[] index, int[] buffer, int from, int to, IndexComparator comparator) {
+            this.index = index;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.comparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < PARALLEL_SORT_THRESHOLD) {
+                mergeSort(index, buffer, from, to, comparator);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new MergeSortTask(index, buffer, from, middle, comparator),
+                    new MergeSortTask(index, buffer, middle, to, comparator));
+            merge(index, buffer, from, middle, to, comparator);
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package com.mucommander.commons.file;
 
 import com.mucommander.commons.file.archive.zip.ZipFormatProvider;
+import com.mucommander.commons.file.filter.AbstractFileFilter;
 import com.mucommander.commons.file.util.PathUtilsTest;
 import com.mucommander.commons.io.BoundedInputStream;
 import com.mucommander.commons.io.ChecksumInputStream;
@@ -46,12 +47,16 @@ import java.lang.reflect.Method;
 import java.net.URL;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Random;
+import java.util.Set;
 import java.util.Vector;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
@@ -2129,6 +2134,50 @@ public abstract class AbstractFileTest {
             testLsUnsupported();
     }
 
+    /**
+     * Tests {@link AbstractFile#lsBatches(Consumer)}: the batches must contain the same children as {@link AbstractFile#ls()}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testLsBatches() throws IOException {
+        if(!tempFile.isFileOperationSupported(FileOperation.LIST_CHILDREN))
+            return;
+
+        tempFile.mkdir();
+
+        // An empty directory yields no batch
+        List<AbstractFile[]> batches = new ArrayList<>();
+        tempFile.lsBatches(batches::add);
+        assert batches.isEmpty();
+
+        // Create more children than fit in a batch
+        int nbChildren = AbstractFile.LS_BATCH_SIZE + 1;
+        for(int i=0; i<nbChildren; i++)
+            tempFile.getChild("child"+i).mkfile();
+
+        tempFile.lsBatches(batches::add);
+        Set<AbstractFile> children = new HashSet<>();
+        for(AbstractFile[] batch : batches) {
+            assert batch.length > 0;
+            children.addAll(Arrays.asList(batch));
+        }
+        assert children.size() == nbChildren;
+        assert children.equals(new HashSet<>(Arrays.asList(tempFile.ls())));
+
+        // Only the children that match the filter are passed
+        batches.clear();
+        tempFile.lsBatches(new AbstractFileFilter() {
+            @Override
+            public boolean accept(AbstractFile file) {
+                return file.getName().equals("child0");
+            }
+        }, batches::add);
+        assert batches.size() == 1;
+        assert batches.get(0).length == 1;
+        assert batches.get(0)[0].getName().equals("child0");
+    }
+
     /**
      * Tests {@link AbstractFile#getFreeSpace()}.
      *
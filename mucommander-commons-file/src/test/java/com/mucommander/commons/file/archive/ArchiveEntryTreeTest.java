@@ -0,0 +1,117 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs tests on {@link ArchiveEntryTree}.
+ */
+public class ArchiveEntryTreeTest {
+
+    private static ArchiveEntry file(String path) {
+        return new ArchiveEntry(path, false, 0, 0, false);
+    }
+
+    private static ArchiveEntry dir(String path) {
+        return new ArchiveEntry(path, true, 0, 0, true);
+    }
+
+    @Test
+    public void testImplicitParents() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        ArchiveEntry entry = file("a/b/c.txt");
+        tree.addArchiveEntry(entry);
+
+        ArchiveEntryNode a = tree.findEntryNode("a");
+        assertNotNull(a);
+        assertTrue(a.getEntry().isDirectory());
+        assertEquals(a.getEntry().getPath(), "a/");
+        assertSame(a.getParent(), tree.getRoot());
+
+        ArchiveEntryNode c = tree.findEntryNode("a/b/c.txt");
+        assertNotNull(c);
+        assertSame(c.getEntry(), entry);
+        assertTrue(entry.exists());
+        assertSame(c.getParent(), tree.findEntryNode("a/b/"));
+    }
+
+    @Test
+    public void testTrailingSeparatorInsensitive() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        tree.addArchiveEntry(dir("temp/"));
+
+        assertNotNull(tree.findEntryNode("temp"));
+        assertSame(tree.findEntryNode("temp"), tree.findEntryNode("temp/"));
+        assertNull(tree.findEntryNode("tem"));
+        assertNull(tree.findEntryNode("temp/foo"));
+    }
+
+    @Test
+    public void testReplaceImplicitDirectory() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        tree.addArchiveEntry(file("dir/file"));
+        ArchiveEntry dirEntry = dir("dir/");
+        tree.addArchiveEntry(dirEntry);
+
+        assertEquals(tree.getRoot().getChildCount(), 1);
+        ArchiveEntryNode dirNode = tree.findEntryNode("dir");
+        assertSame(dirNode.getEntry(), dirEntry);
+        assertEquals(dirNode.getChildCount(), 1);
+    }
+
+    @Test
+    public void testLargeDirectoryKeepsOrder() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        int nbEntries = ArchiveEntryNode.INDEX_THRESHOLD * 10;
+        for(int i=0; i<nbEntries; i++)
+            tree.addArchiveEntry(file("big/entry"+i));
+
+        ArchiveEntryNode big = tree.findEntryNode("big");
+        ArchiveEntryNode[] children = big.getChildren();
+        assertEquals(children.length, nbEntries);
+        for(int i=0; i<nbEntries; i++) {
+            assertEquals(children[i].getName(), "entry"+i);
+            assertSame(tree.findEntryNode("big/entry"+i), children[i]);
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        int nbEntries = ArchiveEntryNode.INDEX_THRESHOLD * 2;
+        for(int i=0; i<nbEntries; i++)
+            tree.addArchiveEntry(file("dir/entry"+i));
+
+        assertTrue(tree.removeEntryNode("dir/entry3"));
+        assertNull(tree.findEntryNode("dir/entry3"));
+        assertEquals(tree.findEntryNode("dir").getChildCount(), nbEntries-1);
+        assertFalse(tree.removeEntryNode("dir/entry3"));
+
+        assertTrue(tree.removeEntryNode("dir"));
+        assertNull(tree.findEntryNode("dir/entry4"));
+        assertEquals(tree.getRoot().getChildCount(), 0);
+    }
+}
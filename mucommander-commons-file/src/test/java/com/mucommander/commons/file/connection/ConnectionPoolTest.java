@@ -0,0 +1,124 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.connection;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.FileURL;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs tests on {@link ConnectionPool}.
+ */
+public class ConnectionPoolTest {
+
+    private static class TestConnectionHandler extends ConnectionHandler {
+        private TestConnectionHandler(FileURL serverURL) {
+            super(serverURL);
+        }
+
+        @Override
+        public void startConnection() {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void closeConnection() {
+        }
+
+        @Override
+        public void keepAlive() {
+        }
+    }
+
+    private static final ConnectionHandlerFactory FACTORY = TestConnectionHandler::new;
+
+    @Test
+    public void testReleasedConnectionIsReused() throws Exception {
+        FileURL url = FileURL.getFileURL("testpool-reuse://host/path");
+
+        ConnectionHandler connHandler = ConnectionPool.getConnectionHandler(FACTORY, url, true);
+        assertTrue(connHandler.isLocked());
+        connHandler.releaseLock();
+
+        assertSame(ConnectionPool.getConnectionHandler(FACTORY, url, true), connHandler);
+        connHandler.releaseLock();
+    }
+
+    @Test
+    public void testMaxConnections() throws Exception {
+        ConnectionPool.setMaxConnections("testpool-max", 2);
+        FileURL url = FileURL.getFileURL("testpool-max://host/path");
+        assertEquals(ConnectionPool.getMaxConnectionsPerRealm(url), 2);
+
+        ConnectionHandler first = ConnectionPool.getConnectionHandler(FACTORY, url, true);
+        ConnectionHandler second = ConnectionPool.getConnectionHandler(FACTORY, url, true);
+        assertNotSame(first, second);
+
+        // A third caller must wait for one of the connections to be released
+        AtomicReference<ConnectionHandler> third = new AtomicReference<>();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                third.set(ConnectionPool.getConnectionHandler(FACTORY, url, true));
+                acquired.countDown();
+            }
+            catch(Exception e) {
+                // The latch is not counted down
+            }
+        });
+        thread.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        second.releaseLock();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertSame(third.get(), second);
+
+        first.releaseLock();
+        second.releaseLock();
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        ConnectionPoolStatistics before = ConnectionPool.getStatistics();
+
+        FileURL url = FileURL.getFileURL("testpool-stats://host/path");
+        ConnectionHandler connHandler = ConnectionPool.getConnectionHandler(FACTORY, url, true);
+
+        ConnectionPoolStatistics after = ConnectionPool.getStatistics();
+        assertEquals(after.getCreatedConnections(), before.getCreatedConnections()+1);
+        assertEquals(after.getAcquireCount(), before.getAcquireCount()+1);
+        assertTrue(ConnectionPool.getConnectionHandlersSnapshot().contains(connHandler));
+
+        connHandler.releaseLock();
+    }
+}
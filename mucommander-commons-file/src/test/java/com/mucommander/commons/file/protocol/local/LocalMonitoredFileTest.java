@@ -0,0 +1,95 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.protocol.local;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileChange;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.MonitoredFile;
+
+/**
+ * Test case for the changes reported by {@link LocalMonitoredFile}.
+ */
+public class LocalMonitoredFileTest {
+
+    /** Maximum number of milliseconds to wait for changes to be reported */
+    private final static long TIMEOUT = 10000;
+
+    private AbstractFile folder;
+
+    private MonitoredFile monitoredFolder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        folder = FileFactory.getTemporaryFile(getClass().getName(), false);
+        folder.mkdir();
+        monitoredFolder = folder.toMonitoredFile();
+        monitoredFolder.startWatch();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        monitoredFolder.stopWatch();
+        folder.deleteRecursively();
+    }
+
+    /**
+     * Polls changes until one is reported for the given name.
+     */
+    private List<FileChange> pollChanges(String name) throws InterruptedException {
+        List<FileChange> changes = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            List<FileChange> polledChanges = monitoredFolder.pollChanges();
+            Assert.assertNotNull(polledChanges);
+            changes.addAll(polledChanges);
+            if (changes.stream().anyMatch(change -> change.getName().equals(name)))
+                break;
+            Thread.sleep(50);
+        }
+        return changes;
+    }
+
+    @Test
+    public void testPollChanges() throws IOException, InterruptedException {
+        Assert.assertTrue(monitoredFolder.canPollChanges());
+        Assert.assertTrue(monitoredFolder.pollChanges().isEmpty());
+
+        AbstractFile file = folder.getDirectChild("file");
+        file.mkfile();
+        List<FileChange> changes = pollChanges("file");
+        Assert.assertEquals(changes.get(0).getKind(), FileChange.Kind.CREATED);
+        Assert.assertEquals(changes.get(0).getName(), "file");
+
+        file.delete();
+        changes = pollChanges("file");
+        Assert.assertEquals(changes.get(changes.size()-1).getKind(), FileChange.Kind.DELETED);
+
+        // Changes are only reported once
+        Assert.assertTrue(monitoredFolder.pollChanges().isEmpty());
+    }
+}
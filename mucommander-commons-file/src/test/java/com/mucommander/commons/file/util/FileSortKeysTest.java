@@ -0,0 +1,136 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.TestFile;
+import com.mucommander.commons.file.util.FileComparator.CRITERION;
+
+/**
+ * A test case for {@link FileSortKeys}: files must be sorted in the same order as {@link FileComparator} sorts them.
+ */
+public class FileSortKeysTest {
+
+    private final static String[] NAME_PARTS = { "a", "B", "b", "é", "File", "file", ".", "-", " " };
+
+    private final static String[] NUMBER_PARTS = { "1", "01", "2", "10" };
+
+    private final static CRITERION[] CRITERIA = { CRITERION.NAME, CRITERION.SIZE, CRITERION.DATE, CRITERION.EXTENSION };
+
+    /**
+     * Creates files with random names and attributes. Note that the order of filenames that contain numbers is not
+     * transitive, so sorting such files yields an order that depends on the sort algorithm.
+     */
+    private static AbstractFile[] createFiles(int nbFiles, long seed, boolean withNumbers) throws Exception {
+        Random random = new Random(seed);
+        AbstractFile[] files = new AbstractFile[nbFiles];
+        for (int i = 0; i < nbFiles; i++) {
+            StringBuilder name = new StringBuilder();
+            int nbParts = 1 + random.nextInt(4);
+            for (int p = 0; p < nbParts; p++) {
+                if (withNumbers && random.nextBoolean())
+                    name.append(NUMBER_PARTS[random.nextInt(NUMBER_PARTS.length)]);
+                else
+                    name.append(NAME_PARTS[random.nextInt(NAME_PARTS.length)]);
+            }
+            // Make names unique so that the expected order is total
+            name.append('#');
+            if (withNumbers)
+                name.append(i);
+            else
+                for (int n = i; n > 0; n /= 26)
+                    name.append((char) ('a' + n % 26));
+            files[i] = new TestFile(FileFactory.getTemporaryFolder() + name.toString(), random.nextInt(4) == 0,
+                    random.nextInt(5) == 0 ? -1 : random.nextInt(100), random.nextInt(10), null);
+        }
+        return files;
+    }
+
+    private static void assertSameOrder(AbstractFile[] files, CRITERION criterion, boolean ascending, boolean directoriesFirst) {
+        AbstractFile[] expected = files.clone();
+        Arrays.sort(expected, new FileComparator(criterion, ascending, directoriesFirst, AbstractFile::getName, Locale.ENGLISH));
+
+        int[] index = new int[files.length];
+        for (int i = 0; i < index.length; i++)
+            index[i] = i;
+        new FileSortKeys(files, AbstractFile::getName, Locale.ENGLISH).sort(index, criterion, ascending, directoriesFirst);
+
+        for (int i = 0; i < index.length; i++)
+            assert expected[i] == files[index[i]] : criterion + " ascending=" + ascending + " directoriesFirst=" + directoriesFirst + " at " + i;
+    }
+
+    @Test
+    public void testCompareLikeComparator() throws Exception {
+        AbstractFile[] files = createFiles(200, 1, true);
+        FileSortKeys sortKeys = new FileSortKeys(files, AbstractFile::getName, Locale.ENGLISH);
+        for (CRITERION criterion : CRITERIA) {
+            // Derive the criterion's keys
+            sortKeys.sort(new int[0], criterion, true, true);
+            for (boolean ascending : new boolean[] { true, false }) {
+                for (boolean directoriesFirst : new boolean[] { true, false }) {
+                    FileComparator comparator = new FileComparator(criterion, ascending, directoriesFirst, AbstractFile::getName, Locale.ENGLISH);
+                    for (int i = 0; i < files.length; i++)
+                        for (int j = 0; j < files.length; j++)
+                            assert Integer.signum(comparator.compare(files[i], files[j]))
+                                    == Integer.signum(sortKeys.compare(i, j, criterion, ascending, directoriesFirst));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSameOrderAsComparator() throws Exception {
+        AbstractFile[] files = createFiles(500, 1, false);
+        for (CRITERION criterion : CRITERIA)
+            for (boolean ascending : new boolean[] { true, false })
+                for (boolean directoriesFirst : new boolean[] { true, false })
+                    assertSameOrder(files, criterion, ascending, directoriesFirst);
+    }
+
+    @Test
+    public void testParallelSort() throws Exception {
+        AbstractFile[] files = createFiles(20000, 2, false);
+        assertSameOrder(files, CRITERION.NAME, true, true);
+        assertSameOrder(files, CRITERION.DATE, false, false);
+    }
+
+    @Test
+    public void testResort() throws Exception {
+        AbstractFile[] files = createFiles(1000, 3, false);
+        int[] index = new int[files.length];
+        for (int i = 0; i < index.length; i++)
+            index[i] = i;
+
+        // Sorting again reuses the keys and starts from the current order
+        FileSortKeys sortKeys = new FileSortKeys(files, AbstractFile::getName, Locale.ENGLISH);
+        sortKeys.sort(index, CRITERION.DATE, true, true);
+        sortKeys.sort(index, CRITERION.NAME, false, false);
+
+        AbstractFile[] expected = files.clone();
+        Arrays.sort(expected, new FileComparator(CRITERION.NAME, false, false, AbstractFile::getName, Locale.ENGLISH));
+        for (int i = 0; i < index.length; i++)
+            assert expected[i] == files[index[i]];
+    }
+}
@@ -22,7 +22,16 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.util.Vector;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class allows to share and reuse byte buffers to avoid excessive memory allocation and garbage collection.
@@ -45,6 +54,16 @@ import java.util.Vector;
  * </ul>
  * </p>
  *
+ * <p>Pooled buffers are grouped by factory and size, and each group is a lock-free stack: retrieving or releasing
+ * a buffer does not scan the pool nor block other threads. In addition, each thread keeps the last few buffers it
+ * released of each group in a magazine, and retrieves buffers from its magazine first; the buffers left in the
+ * magazines of threads that have terminated are returned to the stacks. Direct ByteBuffers for NIO channels can be
+ * retrieved with {@link #getDirectByteBuffer(int)}: their capacity is rounded up to a power-of-two size class, so
+ * that buffers of close sizes are shared, and their address is aligned on {@link #DIRECT_BUFFER_ALIGNMENT}.</p>
+ *
+ * <p>The hit rate of the pool, the combined size of the pooled buffers and the allocations are reported by
+ * {@link #getStatistics()}.</p>
+ *
  * <p>Note: this class is thread safe and thus can safely be used by concurrent threads.</p>
  *
  * @author Maxence Bernard, Nicolas Rinaudo
@@ -54,23 +73,52 @@ public class BufferPool {
     /** Logger used by this class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(BufferPool.class);
 
-    /** List of BufferContainer instances that wraps available buffers */
-    private static Vector<BufferContainer> bufferContainers = new Vector<BufferContainer>();
-
     /** The initial default buffer size */
     public final static int INITIAL_DEFAULT_BUFFER_SIZE = 65536;
 
     /** Size of buffers returned by get*Buffer methods without a size argument */
-    public static int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
+    public static volatile int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
 
     /** The initial max pool size */
     public final static long INITIAL_POOL_LIMIT = 10485760;
 
     /** Maximum combined size of all pooled buffers, in bytes */
-    public static long maxPoolSize = INITIAL_POOL_LIMIT;
+    public static volatile long maxPoolSize = INITIAL_POOL_LIMIT;
+
+    /** Alignment in bytes of the address of buffers returned by {@link #getDirectByteBuffer(int)} */
+    public final static int DIRECT_BUFFER_ALIGNMENT = 4096;
+
+    /** Maximum number of buffers of each factory and size that a thread keeps in its magazine */
+    private final static int MAGAZINE_CAPACITY = 2;
 
     /** Current combined size of all pooled buffers, in bytes */
-    public static long poolSize;
+    private static final AtomicLong poolSize = new AtomicLong();
+
+    /** Stacks of pooled buffers that are not in a magazine, by factory and size */
+    private static final Map<BufferKey, BufferStack> bufferStacks = new ConcurrentHashMap<>();
+
+    /** All the buffers that are in the pool, including those in magazines, used to detect buffers released twice */
+    private static final Set<BufferContainer> pooledBuffers = ConcurrentHashMap.newKeySet();
+
+    /** The magazine of each thread */
+    private static final ThreadLocal<Magazine> magazines = ThreadLocal.withInitial(BufferPool::newMagazine);
+
+    /** The magazines of all threads, so that the buffers of terminated threads can be returned to the stacks */
+    private static final Queue<Magazine> allMagazines = new ConcurrentLinkedQueue<>();
+
+    /** Factories used by the convenience methods */
+    private static final BufferFactory BYTE_ARRAY_FACTORY = new ByteArrayFactory();
+    private static final BufferFactory CHAR_ARRAY_FACTORY = new CharArrayFactory();
+    private static final BufferFactory BYTE_BUFFER_FACTORY = new ByteBufferFactory();
+    private static final BufferFactory CHAR_BUFFER_FACTORY = new CharBufferFactory();
+    private static final BufferFactory DIRECT_BYTE_BUFFER_FACTORY = new DirectByteBufferFactory();
+
+    /** Statistics counters */
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder releases = new LongAdder();
+    private static final LongAdder rejectedReleases = new LongAdder();
+    private static final LongAdder allocatedBytes = new LongAdder();
 
 
     /**
@@ -79,7 +127,7 @@ public class BufferPool {
      *
      * @return a byte array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized byte[] getByteArray() {
+    public static byte[] getByteArray() {
         return getByteArray(getDefaultBufferSize());
     }
 
@@ -97,8 +145,8 @@ public class BufferPool {
      * @param length length of the byte array
      * @return a byte array of the specified size
      */
-    public static synchronized byte[] getByteArray(int length) {
-        return (byte[])getBuffer(new ByteArrayFactory(), length);
+    public static byte[] getByteArray(int length) {
+        return (byte[])getBuffer(BYTE_ARRAY_FACTORY, length);
     }
 
     /**
@@ -107,7 +155,7 @@ public class BufferPool {
      *
      * @return a char array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized char[] getCharArray() {
+    public static char[] getCharArray() {
         return getCharArray(getDefaultBufferSize());
     }
 
@@ -125,8 +173,8 @@ public class BufferPool {
      * @param length length of the char array
      * @return a char array of the specified length
      */
-    public static synchronized char[] getCharArray(int length) {
-        return (char[])getBuffer(new CharArrayFactory(), length);
+    public static char[] getCharArray(int length) {
+        return (char[])getBuffer(CHAR_ARRAY_FACTORY, length);
     }
 
     /**
@@ -135,7 +183,7 @@ public class BufferPool {
      *
      * @return a ByteBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized ByteBuffer getByteBuffer() {
+    public static ByteBuffer getByteBuffer() {
         return getByteBuffer(getDefaultBufferSize());
     }
 
@@ -153,8 +201,53 @@ public class BufferPool {
      * @param capacity capacity of the ByteBuffer
      * @return a ByteBuffer with the specified capacity
      */
-    public static synchronized ByteBuffer getByteBuffer(int capacity) {
-        return (ByteBuffer)getBuffer(new ByteBufferFactory(), capacity);
+    public static ByteBuffer getByteBuffer(int capacity) {
+        return (ByteBuffer)getBuffer(BYTE_BUFFER_FACTORY, capacity);
+    }
+
+    /**
+     * Convenience method that has the same effect as calling {@link #getDirectByteBuffer(int)} with
+     * a minimum capacity of {@link #getDefaultBufferSize()}.
+     *
+     * @return a direct ByteBuffer with a limit equal to {@link #getDefaultBufferSize()}
+     */
+    public static ByteBuffer getDirectByteBuffer() {
+        return getDirectByteBuffer(getDefaultBufferSize());
+    }
+
+    /**
+     * Returns a direct ByteBuffer whose address is aligned on {@link #DIRECT_BUFFER_ALIGNMENT}, for I/O operations
+     * on NIO channels. The capacity of the buffer is the smallest power of two that is not less than the specified
+     * capacity and {@link #DIRECT_BUFFER_ALIGNMENT}, so that pooled buffers can be reused for close capacities. The
+     * position of the returned buffer is <code>0</code> and its limit is the specified capacity.
+     *
+     * <p>This method won't return the same buffer instance until it has been released with
+     * {@link #releaseDirectByteBuffer(ByteBuffer)}.</p>
+     *
+     * @param capacity minimum capacity of the ByteBuffer
+     * @return a direct ByteBuffer with a limit equal to the specified capacity
+     */
+    public static ByteBuffer getDirectByteBuffer(int capacity) {
+        ByteBuffer buffer = (ByteBuffer)getBuffer(DIRECT_BYTE_BUFFER_FACTORY, getSizeClass(capacity));
+        buffer.clear();
+        buffer.limit(capacity);
+        return buffer;
+    }
+
+    /**
+     * Returns the capacity of the direct buffers returned for the specified capacity: the smallest power of two that
+     * is not less than <code>capacity</code> and {@link #DIRECT_BUFFER_ALIGNMENT}, or <code>capacity</code> rounded
+     * up to a multiple of {@link #DIRECT_BUFFER_ALIGNMENT} if that power of two cannot be represented.
+     *
+     * @param capacity the requested capacity
+     * @return the capacity of the size class of the requested capacity
+     */
+    static int getSizeClass(int capacity) {
+        if(capacity <= DIRECT_BUFFER_ALIGNMENT)
+            return DIRECT_BUFFER_ALIGNMENT;
+        if(capacity > 1<<30)
+            return (capacity + DIRECT_BUFFER_ALIGNMENT - 1) & -DIRECT_BUFFER_ALIGNMENT;
+        return Integer.highestOneBit(capacity - 1) << 1;
     }
 
 
@@ -164,7 +257,7 @@ public class BufferPool {
      *
      * @return a CharBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized CharBuffer getCharBuffer() {
+    public static CharBuffer getCharBuffer() {
         return getCharBuffer(getDefaultBufferSize());
     }
 
@@ -182,8 +275,8 @@ public class BufferPool {
      * @param capacity capacity of the CharBuffer
      * @return a CharBuffer with the specified capacity
      */
-    public static synchronized CharBuffer getCharBuffer(int capacity) {
-        return (CharBuffer)getBuffer(new CharBufferFactory(), capacity);
+    public static CharBuffer getCharBuffer(int capacity) {
+        return (CharBuffer)getBuffer(CHAR_BUFFER_FACTORY, capacity);
     }
 
 
@@ -194,14 +287,14 @@ public class BufferPool {
      * @param factory BufferFactory used to identify the target buffer class and create a new buffer (if necessary)
      * @return a buffer with a size equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized Object getBuffer(BufferFactory factory) {
+    public static Object getBuffer(BufferFactory factory) {
         return getBuffer(factory, getDefaultBufferSize());
     }
 
     /**
      * Returns a byte array of the specified size. This method first checks if a buffer the same size as the specified
-     * one and a class compatible with the specified factory exists in the pool. If one is found, it is removed from the
-     * pool and returned.
+     * one and created by a factory of the same class as the specified one exists in the pool, in the magazine of the
+     * calling thread first. If one is found, it is removed from the pool and returned.
      * If not, a new instance is created and returned using {@link BufferFactory#newBuffer(int)}.
      *
      * <p>This method won't return the same buffer instance until it has been released with
@@ -211,28 +304,31 @@ public class BufferPool {
      * @param size size of the buffer
      * @return a buffer of the specified size
      */
-    public static synchronized Object getBuffer(BufferFactory factory, int size) {
-        int nbBuffers = bufferContainers.size();
-        BufferContainer bufferContainer;
-        Object buffer;
-
-        // Looks for a buffer container in the pool that matches the specified size and buffer class.
-        for(int i=0; i<nbBuffers; i++) {
-            bufferContainer = bufferContainers.elementAt(i);
-            buffer = bufferContainer.getBuffer();
+    public static Object getBuffer(BufferFactory factory, int size) {
+        BufferKey key = new BufferKey(factory, size);
+
+        BufferContainer bufferContainer = magazines.get().pop(key);
+        if(bufferContainer==null) {
+            BufferStack stack = bufferStacks.get(key);
+            if(stack!=null)
+                bufferContainer = stack.pop();
+        }
 
+        if(bufferContainer!=null) {
+            pooledBuffers.remove(bufferContainer);
             // Caution: mind the difference between BufferContainer#getLength() and BufferContainer#getSize()
-            if(bufferContainer.getLength()==size && (factory.matchesBufferClass(buffer.getClass()))) {
-                bufferContainers.removeElementAt(i);
-                poolSize -= bufferContainer.getSize();
-                return buffer;
-            }
+            poolSize.addAndGet(-bufferContainer.getSize());
+            hits.increment();
+            return bufferContainer.getBuffer();
         }
 
         LOGGER.trace("Creating new buffer with {} size= {}", factory, size);
 
-        // No buffer with the same class and size found in the pool, create a new one and return it
-        return factory.newBuffer(size);
+        // No buffer with the same factory and size found in the pool, create a new one and return it
+        Object buffer = factory.newBuffer(size);
+        misses.increment();
+        allocatedBytes.add(factory.newBufferContainer(buffer).getSize());
+        return buffer;
     }
 
 
@@ -248,8 +344,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteArray(byte buffer[]) {
-        return releaseBuffer(buffer, new ByteArrayFactory());
+    public static boolean releaseByteArray(byte buffer[]) {
+        return releaseBuffer(buffer, BYTE_ARRAY_FACTORY);
     }
 
     /**
@@ -264,8 +360,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharArray(char buffer[]) {
-        return releaseBuffer(buffer, new CharArrayFactory());
+    public static boolean releaseCharArray(char buffer[]) {
+        return releaseBuffer(buffer, CHAR_ARRAY_FACTORY);
     }
 
     /**
@@ -280,8 +376,25 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteBuffer(ByteBuffer buffer) {
-        return releaseBuffer(buffer, new ByteBufferFactory());
+    public static boolean releaseByteBuffer(ByteBuffer buffer) {
+        return releaseBuffer(buffer, BYTE_BUFFER_FACTORY);
+    }
+
+    /**
+     * Makes the given buffer, which was returned by {@link #getDirectByteBuffer(int)}, available for further calls
+     * to {@link #getDirectByteBuffer(int)} with a capacity of the same size class.
+     * Returns <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in
+     * the pool.
+     *
+     * <p>After calling this method, the given buffer instance <b>must not be used</b>, otherwise it could get
+     * corrupted if other threads were using it.</p>
+     *
+     * @param buffer the buffer instance to make available for further use
+     * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
+     * @throws IllegalArgumentException if specified buffer is null
+     */
+    public static boolean releaseDirectByteBuffer(ByteBuffer buffer) {
+        return releaseBuffer(buffer, DIRECT_BYTE_BUFFER_FACTORY);
     }
 
     /**
@@ -296,8 +409,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharBuffer(CharBuffer buffer) {
-        return releaseBuffer(buffer, new CharBufferFactory());
+    public static boolean releaseCharBuffer(CharBuffer buffer) {
+        return releaseBuffer(buffer, CHAR_BUFFER_FACTORY);
     }
 
     /**
@@ -314,26 +427,36 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool or the pool size limit has been reached
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseBuffer(Object buffer, BufferFactory factory) {
+    public static boolean releaseBuffer(Object buffer, BufferFactory factory) {
         if(buffer==null)
             throw new IllegalArgumentException("specified buffer is null");
 
         BufferContainer bufferContainer = factory.newBufferContainer(buffer);
 
-        if(bufferContainers.contains(bufferContainer)) {
+        if(!pooledBuffers.add(bufferContainer)) {
             LOGGER.info("Warning: specified buffer is already in the pool: {}", buffer);
             return false;
         }
 
         long bufferSize = bufferContainer.getSize();        // size in bytes (!= length)
 
-        if(maxPoolSize!=-1 && poolSize+bufferSize>maxPoolSize) {
-            LOGGER.info("Warning: maximum pool size reached, buffer not added to the pool: {}", buffer);
-            return false;
+        long currentPoolSize;
+        do {
+            currentPoolSize = poolSize.get();
+            long limit = maxPoolSize;
+            if(limit!=-1 && currentPoolSize+bufferSize>limit) {
+                pooledBuffers.remove(bufferContainer);
+                rejectedReleases.increment();
+                LOGGER.info("Warning: maximum pool size reached, buffer not added to the pool: {}", buffer);
+                return false;
+            }
         }
+        while(!poolSize.compareAndSet(currentPoolSize, currentPoolSize+bufferSize));
 
-        bufferContainers.add(bufferContainer);
-        poolSize += bufferSize;
+        BufferKey key = new BufferKey(factory, bufferContainer.getLength());
+        if(!magazines.get().push(key, bufferContainer))
+            bufferStacks.computeIfAbsent(key, k -> new BufferStack()).push(bufferContainer);
+        releases.increment();
 
         return true;
     }
@@ -341,7 +464,7 @@ public class BufferPool {
     /**
      * Returns <code>true</code> if the specified buffer is currently in the pool.
      *
-     * <p>Note that it is not necessary (and thus not recommended for performance reasons) to call this method before
+     * <p>Note that it is not necessary (and thus not recommended for performance reasons) to call this method before
      * calling <code>release*Buffer</code> as it already performs this test before adding a buffer to the pool.</p>
      *
      * @param buffer the buffer to look for in the pool
@@ -349,7 +472,7 @@ public class BufferPool {
      * @return <code>true</code> if the specified buffer is already in the pool
      */
     public static boolean containsBuffer(Object buffer, BufferFactory factory) {
-        return bufferContainers.contains(factory.newBufferContainer(buffer));
+        return pooledBuffers.contains(factory.newBufferContainer(buffer));
     }
 
 
@@ -360,7 +483,7 @@ public class BufferPool {
      * @return the number of buffers currently in the pool
      */
     public static int getBufferCount() {
-        return bufferContainers.size();
+        return pooledBuffers.size();
     }
 
     /**
@@ -371,10 +494,9 @@ public class BufferPool {
      * @return the number of buffers currently in the pool
      */
     public static int getBufferCount(BufferFactory factory) {
-        int count = 0;        
-        int nbBuffers = bufferContainers.size();
-        for(int i=0; i<nbBuffers; i++) {
-            if(factory.matchesBufferClass(bufferContainers.elementAt(i).getBuffer().getClass())) {
+        int count = 0;
+        for(BufferContainer bufferContainer : pooledBuffers) {
+            if(factory.matchesBufferClass(bufferContainer.getBuffer().getClass())) {
                 count ++;
             }
         }
@@ -399,7 +521,7 @@ public class BufferPool {
      *
      * @param bufferSize the new buffer size
      */
-    public static synchronized void setDefaultBufferSize(int bufferSize) {
+    public static void setDefaultBufferSize(int bufferSize) {
         BufferPool.defaultBufferSize = bufferSize;
     }
 
@@ -410,7 +532,7 @@ public class BufferPool {
      * @return the combined size in bytes of all buffers that are currenty in the pool
      */
     public static long getPoolSize() {
-        return poolSize;
+        return poolSize.get();
     }
 
     /**
@@ -433,10 +555,41 @@ public class BufferPool {
      *
      * @param maxPoolSize the maximum combined size in bytes for all buffers in the pool
      */
-    public static synchronized void setMaxPoolSize(long maxPoolSize) {
+    public static void setMaxPoolSize(long maxPoolSize) {
         BufferPool.maxPoolSize = maxPoolSize;
     }
 
+    /**
+     * Returns a snapshot of the statistics of the pool since the application started: the number of buffers that
+     * were retrieved from the pool or allocated, the number of releases, and the combined size of the buffers that
+     * are in the pool.
+     *
+     * @return a snapshot of the statistics of the pool
+     */
+    public static Statistics getStatistics() {
+        return new Statistics(hits.sum(), misses.sum(), releases.sum(), rejectedReleases.sum(), allocatedBytes.sum(),
+                getBufferCount(), getPoolSize());
+    }
+
+    /**
+     * Creates the magazine of the calling thread, and returns the buffers of the magazines of terminated threads to
+     * the stacks.
+     */
+    private static Magazine newMagazine() {
+        for(Magazine magazine : allMagazines) {
+            // Thread termination happens-before isAlive() returns false: the magazine can safely be read, by the
+            // thread that removes it
+            if(!magazine.owner.isAlive() && allMagazines.remove(magazine)) {
+                magazine.buffers.forEach((key, bufferContainers) ->
+                    bufferContainers.forEach(bufferContainer -> bufferStacks.computeIfAbsent(key, k -> new BufferStack()).push(bufferContainer)));
+            }
+        }
+
+        Magazine magazine = new Magazine(Thread.currentThread());
+        allMagazines.add(magazine);
+        return magazine;
+    }
+
 
     ///////////////////
     // Inner classes //
@@ -472,10 +625,17 @@ public class BufferPool {
          * Implements a shallow equal comparison.
          */
         public boolean equals(Object o) {
-            // Note: this method is used by Vector.contains()
+            // Note: this method is used to find out if a buffer is in the pool
             return (o instanceof BufferContainer) && buffer == ((BufferContainer)o).buffer;
         }
 
+        /**
+         * Returns the identity hash code of the wrapped buffer, consistently with {@link #equals(Object)}.
+         */
+        public int hashCode() {
+            return System.identityHashCode(buffer);
+        }
+
         /**
          * Returns the length of the wrapped buffer instance.
          *
@@ -629,6 +789,21 @@ public class BufferPool {
         }
     }
 
+    /**
+     * This class is a {@link BufferFactory} implementation for direct <code>java.nio.ByteBuffer</code> buffers whose
+     * address is aligned on {@link BufferPool#DIRECT_BUFFER_ALIGNMENT}, as returned by
+     * {@link BufferPool#getDirectByteBuffer(int)}. The size of the buffers should be a multiple of the alignment.
+     */
+    public static class DirectByteBufferFactory extends ByteBufferFactory {
+        @Override
+        public Object newBuffer(int size) {
+            // Allocate enough memory for the aligned slice to hold the requested size
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size + DIRECT_BUFFER_ALIGNMENT).alignedSlice(DIRECT_BUFFER_ALIGNMENT);
+            buffer.limit(size);
+            return buffer.slice();
+        }
+    }
+
     /**
      * This class is a {@link BufferFactory} implementation for <code>java.nio.CharBuffer</code> buffers.
      */
@@ -658,4 +833,199 @@ public class BufferPool {
             return CharBuffer.class;
         }
     }
+
+    /**
+     * A snapshot of the statistics of the pool, as returned by {@link BufferPool#getStatistics()}.
+     */
+    public static class Statistics {
+        private final long hits;
+        private final long misses;
+        private final long releases;
+        private final long rejectedReleases;
+        private final long allocatedBytes;
+        private final int retainedBuffers;
+        private final long retainedBytes;
+
+        private Statistics(long hits, long misses, long releases, long rejectedReleases, long allocatedBytes,
+                           int retainedBuffers, long retainedBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.releases = releases;
+            this.rejectedReleases = rejectedReleases;
+            this.allocatedBytes = allocatedBytes;
+            this.retainedBuffers = retainedBuffers;
+            this.retainedBytes = retainedBytes;
+        }
+
+        /**
+         * Returns the number of buffers that were retrieved from the pool.
+         *
+         * @return the number of buffers that were retrieved from the pool
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Returns the number of buffers that were allocated because no matching buffer was in the pool.
+         *
+         * @return the number of buffers that were allocated
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Returns the ratio of requested buffers that were retrieved from the pool, between <code>0</code> and
+         * <code>1</code>.
+         *
+         * @return the ratio of requested buffers that were retrieved from the pool, <code>0</code> if no buffer was requested
+         */
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests==0 ? 0 : (double)hits/requests;
+        }
+
+        /**
+         * Returns the number of buffers that were added to the pool.
+         *
+         * @return the number of buffers that were added to the pool
+         */
+        public long getReleases() {
+            return releases;
+        }
+
+        /**
+         * Returns the number of buffers that were not added to the pool because the pool size limit was reached.
+         *
+         * @return the number of buffers that were not added to the pool because the pool size limit was reached
+         */
+        public long getRejectedReleases() {
+            return rejectedReleases;
+        }
+
+        /**
+         * Returns the combined size in bytes of the buffers that were allocated.
+         *
+         * @return the combined size in bytes of the buffers that were allocated
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * Returns the number of buffers that are in the pool.
+         *
+         * @return the number of buffers that are in the pool
+         */
+        public int getRetainedBuffers() {
+            return retainedBuffers;
+        }
+
+        /**
+         * Returns the combined size in bytes of the buffers that are in the pool.
+         *
+         * @return the combined size in bytes of the buffers that are in the pool
+         */
+        public long getRetainedBytes() {
+            return retainedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d hitRate=%.2f releases=%d rejectedReleases=%d allocatedBytes=%d retainedBuffers=%d retainedBytes=%d",
+                    hits, misses, getHitRate(), releases, rejectedReleases, allocatedBytes, retainedBuffers, retainedBytes);
+        }
+    }
+
+    /**
+     * Identifies the buffers that can be returned for a request: buffers created by factories of the same class,
+     * with the same length.
+     */
+    private static final class BufferKey {
+        private final Class<?> factoryClass;
+        private final int length;
+
+        private BufferKey(BufferFactory factory, int length) {
+            this.factoryClass = factory.getClass();
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof BufferKey))
+                return false;
+            BufferKey key = (BufferKey)o;
+            return length==key.length && factoryClass==key.factoryClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31*factoryClass.hashCode() + length;
+        }
+    }
+
+    /**
+     * A lock-free stack of pooled buffers.
+     */
+    private static final class BufferStack {
+        private final AtomicReference<Node> top = new AtomicReference<>();
+
+        private static final class Node {
+            private final BufferContainer bufferContainer;
+            private Node next;
+
+            private Node(BufferContainer bufferContainer) {
+                this.bufferContainer = bufferContainer;
+            }
+        }
+
+        private void push(BufferContainer bufferContainer) {
+            Node node = new Node(bufferContainer);
+            do {
+                node.next = top.get();
+            }
+            while(!top.compareAndSet(node.next, node));
+        }
+
+        private BufferContainer pop() {
+            Node node;
+            do {
+                node = top.get();
+                if(node==null)
+                    return null;
+            }
+            while(!top.compareAndSet(node, node.next));
+            return node.bufferContainer;
+        }
+    }
+
+    /**
+     * The last buffers of each factory and size that a thread released, which only this thread retrieves until it
+     * terminates.
+     */
+    private static final class Magazine {
+        private final Thread owner;
+        private final Map<BufferKey, ArrayDeque<BufferContainer>> buffers = new HashMap<>();
+
+        private Magazine(Thread owner) {
+            this.owner = owner;
+        }
+
+        /**
+         * Adds the given buffer to this magazine, returns <code>false</code> if this magazine is full for its key.
+         */
+        private boolean push(BufferKey key, BufferContainer bufferContainer) {
+            ArrayDeque<BufferContainer> bufferContainers = buffers.computeIfAbsent(key, k -> new ArrayDeque<>(MAGAZINE_CAPACITY));
+            if(bufferContainers.size()>=MAGAZINE_CAPACITY)
+                return false;
+            bufferContainers.push(bufferContainer);
+            return true;
+        }
+
+        private BufferContainer pop(BufferKey key) {
+            ArrayDeque<BufferContainer> bufferContainers = buffers.get(key);
+            return bufferContainers==null ? null : bufferContainers.poll();
+        }
+    }
 }
@@ -102,7 +102,7 @@ public class CounterInputStream extends InputStream {
     @Override
     public int read() throws IOException {
         int i = in.read();
-        if(i>0)
+        if(i>=0)
             counter.add(1);
 
         return i;
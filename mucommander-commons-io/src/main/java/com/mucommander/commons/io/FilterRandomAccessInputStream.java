@@ -51,6 +51,16 @@ public class FilterRandomAccessInputStream extends RandomAccessInputStream {
         return rais.read(b, off, len);
     }
 
+    @Override
+    public int read(long position, byte[] b, int off, int len) throws IOException {
+        return rais.read(position, b, off, len);
+    }
+
+    @Override
+    public boolean isConcurrentReadSupported() {
+        return rais.isConcurrentReadSupported();
+    }
+
     @Override
     public void close() throws IOException {
         rais.close();
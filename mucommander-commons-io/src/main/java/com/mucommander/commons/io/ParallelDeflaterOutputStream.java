@@ -0,0 +1,351 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.commons.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * <code>ParallelDeflaterOutputStream</code> compresses data in the raw DEFLATE format (RFC 1951, without zlib header
+ * or checksum) using several threads, in the manner of <i>pigz</i>.
+ *
+ * <p>The data is split into blocks of {@link #DEFAULT_BLOCK_SIZE} bytes that are compressed concurrently. Each block
+ * is primed with the last 32KB of the previous block as a preset dictionary, so that matches can reach back across
+ * block boundaries, and all blocks but the last one end with a sync flush, which aligns them on a byte boundary
+ * without ending the stream. The compressed blocks are written in order, and their concatenation is a regular DEFLATE
+ * stream that any inflater can decompress.</p>
+ *
+ * <p>At most <code>nbThreads</code> blocks are compressed at the same time, and the thread writing to this stream
+ * waits for the oldest block to be compressed when that limit is reached. With a single thread, blocks are
+ * compressed on the writing thread.</p>
+ *
+ * <p>{@link #finish()} completes the compressed data without closing the underlying stream, {@link #close()} does
+ * both.</p>
+ *
+ * @see ParallelGZIPOutputStream
+ */
+public class ParallelDeflaterOutputStream extends OutputStream {
+
+    /** Default number of uncompressed bytes in a block */
+    public final static int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    /** Size of the DEFLATE window, i.e. maximum distance of a match */
+    private final static int DICTIONARY_SIZE = 32 * 1024;
+
+    /** Compresses blocks in the background */
+    private final static ExecutorService DEFLATE_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Parallel deflater");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The underlying stream where the compressed data is sent */
+    protected OutputStream out;
+
+    private final int level;
+    private final int nbThreads;
+    private final int blockSize;
+
+    /** Deflaters that are not used by a block at the moment, ended when this stream is finished */
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+    /** Blocks that have been submitted for compression and not written yet, in order */
+    private final Queue<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+    /** The block being filled */
+    private byte[] block;
+    /** Number of bytes in the block being filled */
+    private int blockLength;
+    /** The previous block, its end is the dictionary of the block being filled. null for the first block. */
+    private byte[] previousBlock;
+
+    private long bytesRead;
+    private long bytesWritten;
+
+    private volatile boolean finished;
+
+    /**
+     * Creates a new <code>ParallelDeflaterOutputStream</code> that compresses data with the given level and number of
+     * threads, and writes it to the given stream.
+     *
+     * @param out the underlying stream where the compressed data is sent
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or
+     * {@link Deflater#DEFAULT_COMPRESSION}
+     * @param nbThreads the maximum number of blocks that are compressed concurrently
+     * @throws IllegalArgumentException if the compression level is not valid
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, int level, int nbThreads) {
+        this(out, level, nbThreads, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a new <code>ParallelDeflaterOutputStream</code> that compresses data with the given level and number of
+     * threads, in blocks of the given size, and writes it to the given stream.
+     *
+     * @param out the underlying stream where the compressed data is sent
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or
+     * {@link Deflater#DEFAULT_COMPRESSION}
+     * @param nbThreads the maximum number of blocks that are compressed concurrently
+     * @param blockSize the number of uncompressed bytes in a block, at least 32KB
+     * @throws IllegalArgumentException if the compression level or block size is not valid
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, int level, int nbThreads, int blockSize) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        if (blockSize < DICTIONARY_SIZE)
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+
+        this.out = out;
+        this.level = level;
+        this.nbThreads = Math.max(1, nbThreads);
+        this.blockSize = blockSize;
+
+        block = new byte[blockSize];
+    }
+
+    /**
+     * Returns the number of uncompressed bytes written to this stream so far.
+     *
+     * @return the number of uncompressed bytes written to this stream so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the number of compressed bytes written to the underlying stream so far. Blocks that are being
+     * compressed are not accounted for until they are written, the value is final once {@link #finish()} has been
+     * called.
+     *
+     * @return the number of compressed bytes written to the underlying stream so far
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns <code>true</code> if {@link #finish()} has been called.
+     *
+     * @return true if the compressed data has been completed
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Compresses the remaining data and writes all pending blocks, completing the compressed data <b>without</b>
+     * closing the underlying stream. This method has no effect if it has already been called.
+     *
+     * @throws IOException if an I/O error occurred, or if a block could not be compressed
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+
+        finished = true;
+        try {
+            submitBlock(true);
+            while (!pendingBlocks.isEmpty())
+                writeOldestBlock();
+        }
+        finally {
+            // Let blocks that are still being compressed after an error complete on their own
+            pendingBlocks.clear();
+            block = null;
+            previousBlock = null;
+
+            Deflater deflater;
+            while ((deflater = deflaters.poll()) != null)
+                deflater.end();
+        }
+    }
+
+    /**
+     * Submits the block being filled for compression, writing the oldest pending blocks first if the maximum number
+     * of blocks are being compressed already.
+     *
+     * @param last <code>true</code> if this is the last block of the stream
+     * @throws IOException if an I/O error occurred, or if a pending block could not be compressed
+     */
+    private void submitBlock(boolean last) throws IOException {
+        // Write the blocks that are ready without waiting, and wait for the oldest one if there is no free thread
+        while (!pendingBlocks.isEmpty() && (pendingBlocks.peek().isDone() || pendingBlocks.size() >= nbThreads))
+            writeOldestBlock();
+
+        BlockDeflater task = new BlockDeflater(block, blockLength, previousBlock, last);
+        if (nbThreads == 1)
+            writeBlock(task.call());
+        else
+            pendingBlocks.add(DEFLATE_EXECUTOR.submit(task));
+
+        if (!last) {
+            previousBlock = block;
+            block = new byte[blockSize];
+            blockLength = 0;
+        }
+    }
+
+    private void writeOldestBlock() throws IOException {
+        Future<byte[]> pendingBlock = pendingBlocks.poll();
+        try {
+            writeBlock(pendingBlock.get());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private void writeBlock(byte[] compressedBlock) throws IOException {
+        out.write(compressedBlock);
+        bytesWritten += compressedBlock.length;
+    }
+
+    private Deflater acquireDeflater() {
+        Deflater deflater = deflaters.poll();
+        return deflater == null ? new Deflater(level, true) : deflater;
+    }
+
+    private void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        deflaters.add(deflater);
+        // The deflater may have been released after this stream was finished
+        if (finished && deflaters.remove(deflater))
+            deflater.end();
+    }
+
+
+    /////////////////////////////////
+    // OutputStream implementation //
+    /////////////////////////////////
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished)
+            throw new IOException("Stream finished");
+
+        while (len > 0) {
+            if (blockLength == blockSize)
+                submitBlock(false);
+
+            int nbBytes = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, nbBytes);
+            blockLength += nbBytes;
+            bytesRead += nbBytes;
+            off += nbBytes;
+            len -= nbBytes;
+        }
+    }
+
+    /**
+     * Flushes the underlying stream. Data that has not been compressed yet is not flushed, as that would end the
+     * block being filled prematurely.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Completes the compressed data and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+
+    /**
+     * Compresses a block, returning the compressed data.
+     */
+    private class BlockDeflater implements Callable<byte[]> {
+
+        private final byte[] data;
+        private final int length;
+        private final byte[] dictionary;
+        private final boolean last;
+
+        private BlockDeflater(byte[] data, int length, byte[] dictionary, boolean last) {
+            this.data = data;
+            this.length = length;
+            this.dictionary = dictionary;
+            this.last = last;
+        }
+
+        @Override
+        public byte[] call() {
+            Deflater deflater = acquireDeflater();
+            try {
+                // The previous block is full, its last bytes are the window the decompressor has when reaching this block
+                if (dictionary != null)
+                    deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+                deflater.setInput(data, 0, length);
+
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+                byte[] buf = new byte[Math.max(length / 4, 4096)];
+                int nbBytes;
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        nbBytes = deflater.deflate(buf);
+                        compressed.write(buf, 0, nbBytes);
+                    }
+                }
+                else {
+                    // A sync flush is complete once the deflater does not fill the whole buffer
+                    do {
+                        nbBytes = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                        compressed.write(buf, 0, nbBytes);
+                    }
+                    while (nbBytes == buf.length);
+                }
+
+                return compressed.toByteArray();
+            }
+            finally {
+                releaseDeflater(deflater);
+            }
+        }
+    }
+}
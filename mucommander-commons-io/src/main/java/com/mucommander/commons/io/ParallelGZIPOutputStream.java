@@ -0,0 +1,84 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <code>ParallelGZIPOutputStream</code> compresses data in the GZIP format (RFC 1952) using several threads. The
+ * compressed data is produced by {@link ParallelDeflaterOutputStream}, and is framed with the same header and
+ * trailer as <code>java.util.zip.GZIPOutputStream</code>.
+ *
+ * <p>The CRC32 checksum of the trailer is calculated on the writing thread as data gets written to the stream.</p>
+ */
+public class ParallelGZIPOutputStream extends ParallelDeflaterOutputStream {
+
+    /** GZIP header: magic number, DEFLATE method, no flag, no modification time, no extra flag, FAT OS */
+    private final static byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Creates a new <code>ParallelGZIPOutputStream</code> that compresses data with the given level and number of
+     * threads, and writes the GZIP header to the given stream.
+     *
+     * @param out the underlying stream where the compressed data is sent
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or
+     * {@link Deflater#DEFAULT_COMPRESSION}
+     * @param nbThreads the maximum number of blocks that are compressed concurrently
+     * @throws IOException if the header could not be written
+     * @throws IllegalArgumentException if the compression level is not valid
+     */
+    public ParallelGZIPOutputStream(OutputStream out, int level, int nbThreads) throws IOException {
+        super(out, level, nbThreads);
+
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        super.write(b, off, len);
+        crc.update(b, off, len);
+    }
+
+    /**
+     * Completes the compressed data and writes the GZIP trailer, <b>without</b> closing the underlying stream.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (isFinished())
+            return;
+
+        super.finish();
+
+        // CRC32 and size modulo 2^32 of the uncompressed data, little-endian
+        byte[] trailer = new byte[8];
+        writeInt(crc.getValue(), trailer, 0);
+        writeInt(getBytesRead(), trailer, 4);
+        out.write(trailer);
+    }
+
+    private static void writeInt(long value, byte[] b, int off) {
+        for (int i = 0; i < 4; i++)
+            b[off + i] = (byte) (value >> (8 * i));
+    }
+}
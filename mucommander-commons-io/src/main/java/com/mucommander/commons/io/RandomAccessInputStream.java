@@ -20,6 +20,7 @@ package com.mucommander.commons.io;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -84,6 +85,73 @@ public abstract class RandomAccessInputStream extends InputStream implements Ran
         StreamUtils.readFully(this, b, off, len);
     }
 
+    /**
+     * Reads up to <code>len</code> bytes of data located at the given position of the file into an array of bytes,
+     * without using or changing the current file pointer, in the manner of the <code>pread</code> system call.
+     * This method blocks until at least one byte of input is available.
+     *
+     * <p>This implementation seeks to the given position, reads and seeks back to the previous offset while holding
+     * this stream's lock, so that positional reads performed by several threads are serialized. Implementations that
+     * can read at a given position without moving the file pointer override this method, as well as
+     * {@link #isConcurrentReadSupported()}.</p>
+     *
+     * @param position the position in the file of the first byte to read
+     * @param b the buffer into which the data is read
+     * @param off the start offset of the data
+     * @param len the maximum number of bytes read
+     * @return the total number of bytes read into the buffer, or -1 if the position is at or after the end of the file
+     * @throws IOException if an I/O error occurs
+     */
+    public int read(long position, byte b[], int off, int len) throws IOException {
+        synchronized (this) {
+            long offset = getOffset();
+            try {
+                seek(position);
+                return read(b, off, len);
+            } finally {
+                seek(offset);
+            }
+        }
+    }
+
+    /**
+     * Reads exactly <code>len</code> bytes of data located at the given position of the file into an array of bytes,
+     * without using or changing the current file pointer. This method reads repeatedly from the file until the
+     * requested number of bytes are read, the end of the stream is detected, or an exception is thrown.
+     *
+     * @param position the position in the file of the first byte to read
+     * @param b the buffer into which the data is read
+     * @param off the start offset of the data
+     * @param len the number of bytes to read
+     * @throws java.io.EOFException if this file reaches the end before reading all the bytes
+     * @throws IOException if an I/O error occurs
+     * @see #read(long, byte[], int, int)
+     */
+    public void readFully(long position, byte b[], int off, int len) throws IOException {
+        while (len > 0) {
+            int nbRead = read(position, b, off, len);
+            if (nbRead < 0)
+                throw new EOFException();
+
+            position += nbRead;
+            off += nbRead;
+            len -= nbRead;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if {@link #read(long, byte[], int, int)} can be called by several threads at the same
+     * time without them waiting for each other, in which case a single stream can be shared by several readers of
+     * different parts of the file.
+     *
+     * <p>This implementation returns <code>false</code>.</p>
+     *
+     * @return <code>true</code> if positional reads can be performed concurrently
+     */
+    public boolean isConcurrentReadSupported() {
+        return false;
+    }
+
 
     ////////////////////////
     // Overridden methods //
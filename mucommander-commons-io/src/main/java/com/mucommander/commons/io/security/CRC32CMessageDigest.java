@@ -0,0 +1,40 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io.security;
+
+import java.util.zip.CRC32C;
+
+/**
+ * Provides a <code>ChecksumMessageDigest</code> implementation of the <i>CRC32C</i> (Castagnoli) algorithm, using the
+ * <code>java.util.zip.CRC32C</code> class. The JRE computes it with dedicated CPU instructions where available, which
+ * makes it one of the fastest checksums at hand.
+ */
+public class CRC32CMessageDigest extends ChecksumMessageDigest {
+
+    public CRC32CMessageDigest() {
+        super(new CRC32C(), getAlgorithmName());
+    }
+
+    /**
+     * Returns the name of the algorithm implemented by this MessageDigest.
+     *
+     * @return the name of the algorithm implemented by this MessageDigest
+     */
+    protected static String getAlgorithmName() {
+        return "CRC32C";
+    }
+}
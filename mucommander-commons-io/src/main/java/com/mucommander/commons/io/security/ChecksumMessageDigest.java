@@ -31,6 +31,9 @@ public class ChecksumMessageDigest extends MessageDigest {
     /** The Checksum instance that performs all of the checksumming work */
     private Checksum checksum;
 
+    /** Number of low-order bytes of the checksum value that make up the digest */
+    private int digestLength;
+
     /**
      * Creates a new <code>ChecksumMessageDigest</code> that delegates all the checksumming work to the given
      * <code>Checksum</code> instance. 
@@ -39,9 +42,23 @@ public class ChecksumMessageDigest extends MessageDigest {
      * @param algorithm the name of the checksum algorithm implemented by the Checksum
      */
     public ChecksumMessageDigest(Checksum checksum, String algorithm) {
+        this(checksum, algorithm, 4);
+    }
+
+    /**
+     * Creates a new <code>ChecksumMessageDigest</code> that delegates all the checksumming work to the given
+     * <code>Checksum</code> instance, and whose digest is made of the given number of low-order bytes of the checksum
+     * value, most significant byte first.
+     *
+     * @param checksum the Checksum responsible for calculating the checksum
+     * @param algorithm the name of the checksum algorithm implemented by the Checksum
+     * @param digestLength the length of the digest in bytes, between 1 and 8
+     */
+    public ChecksumMessageDigest(Checksum checksum, String algorithm, int digestLength) {
         super(algorithm);
 
         this.checksum = checksum;
+        this.digestLength = digestLength;
     }
 
 
@@ -80,12 +97,18 @@ public class ChecksumMessageDigest extends MessageDigest {
     protected byte[] engineDigest() {
         long crcLong = checksum.getValue();
 
-        byte[] crcBytes = new byte[4];
-        crcBytes[0] = (byte)((crcLong>>24) & 0xFF);
-        crcBytes[1] = (byte)((crcLong>>16) & 0xFF);
-        crcBytes[2] = (byte)((crcLong>>8) & 0xFF);
-        crcBytes[3] = (byte)(crcLong & 0xFF);
+        byte[] crcBytes = new byte[digestLength];
+        for(int i=0; i<digestLength; i++)
+            crcBytes[i] = (byte)((crcLong>>(8*(digestLength-1-i))) & 0xFF);
+
+        // The checksum is reset after the digest is computed, as per the MessageDigest contract
+        checksum.reset();
 
         return crcBytes;
     }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return digestLength;
+    }
 }
@@ -54,6 +54,8 @@ public class MuProvider extends Provider {
         // Add our own MessageDigest implementations
         provider.put("MessageDigest."+Adler32MessageDigest.getAlgorithmName(), Adler32MessageDigest.class.getName());
         provider.put("MessageDigest."+CRC32MessageDigest.getAlgorithmName(), CRC32MessageDigest.class.getName());
+        provider.put("MessageDigest."+CRC32CMessageDigest.getAlgorithmName(), CRC32CMessageDigest.class.getName());
+        provider.put("MessageDigest."+XXHash64MessageDigest.getAlgorithmName(), XXHash64MessageDigest.class.getName());
 
         // Register the provider with java.security.Security
         Security.addProvider(provider);
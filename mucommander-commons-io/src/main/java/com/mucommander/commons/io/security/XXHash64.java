@@ -0,0 +1,171 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io.security;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * A <code>java.util.zip.Checksum</code> implementation of the 64-bit <i>xxHash</i> algorithm (XXH64), with a seed of
+ * <code>0</code>.
+ *
+ * <p>XXH64 is a non-cryptographic hash that processes data several times faster than cryptographic digests such as
+ * MD5 or SHA-1, with a much lower collision rate than 32-bit checksums. It is suited to verifying that data has been
+ * transferred correctly, not to detecting malicious changes.</p>
+ *
+ * <p>Data is consumed in stripes of 32 bytes; bytes that do not fill a stripe are kept until the next update or until
+ * the value is requested.</p>
+ */
+public class XXHash64 implements Checksum {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE_LENGTH = 32;
+
+    private static final VarHandle LONG_HANDLE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_HANDLE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** Accumulators of the stripes */
+    private long v1, v2, v3, v4;
+
+    /** Bytes that do not fill a stripe yet */
+    private final byte[] buffer = new byte[STRIPE_LENGTH];
+
+    /** Number of bytes in {@link #buffer} */
+    private int bufferLength;
+
+    /** Total number of bytes processed */
+    private long totalLength;
+
+    public XXHash64() {
+        reset();
+    }
+
+    @Override
+    public void update(int b) {
+        buffer[bufferLength++] = (byte)b;
+        totalLength++;
+        if(bufferLength==STRIPE_LENGTH) {
+            processStripe(buffer, 0);
+            bufferLength = 0;
+        }
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        if(off<0 || len<0 || off>b.length-len)
+            throw new ArrayIndexOutOfBoundsException();
+
+        totalLength += len;
+
+        // Complete the pending stripe first
+        if(bufferLength>0) {
+            int n = Math.min(len, STRIPE_LENGTH-bufferLength);
+            System.arraycopy(b, off, buffer, bufferLength, n);
+            bufferLength += n;
+            off += n;
+            len -= n;
+            if(bufferLength<STRIPE_LENGTH)
+                return;
+
+            processStripe(buffer, 0);
+            bufferLength = 0;
+        }
+
+        int end = off+len;
+        for(; off<=end-STRIPE_LENGTH; off+=STRIPE_LENGTH)
+            processStripe(b, off);
+
+        bufferLength = end-off;
+        System.arraycopy(b, off, buffer, 0, bufferLength);
+    }
+
+    private void processStripe(byte[] b, int off) {
+        v1 = round(v1, (long)LONG_HANDLE.get(b, off));
+        v2 = round(v2, (long)LONG_HANDLE.get(b, off+8));
+        v3 = round(v3, (long)LONG_HANDLE.get(b, off+16));
+        v4 = round(v4, (long)LONG_HANDLE.get(b, off+24));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input*PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc*PRIME1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc*PRIME1 + PRIME4;
+    }
+
+    @Override
+    public long getValue() {
+        long hash;
+        if(totalLength>=STRIPE_LENGTH) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        }
+        else {
+            hash = PRIME5;
+        }
+
+        hash += totalLength;
+
+        // Remaining bytes, which do not fill a stripe
+        int off = 0;
+        for(; off<=bufferLength-8; off+=8) {
+            hash ^= round(0, (long)LONG_HANDLE.get(buffer, off));
+            hash = Long.rotateLeft(hash, 27)*PRIME1 + PRIME4;
+        }
+        if(off<=bufferLength-4) {
+            hash ^= ((int)INT_HANDLE.get(buffer, off) & 0xFFFFFFFFL)*PRIME1;
+            hash = Long.rotateLeft(hash, 23)*PRIME2 + PRIME3;
+            off += 4;
+        }
+        for(; off<bufferLength; off++) {
+            hash ^= (buffer[off] & 0xFF)*PRIME5;
+            hash = Long.rotateLeft(hash, 11)*PRIME1;
+        }
+
+        // Final mix
+        hash ^= hash>>>33;
+        hash *= PRIME2;
+        hash ^= hash>>>29;
+        hash *= PRIME3;
+        hash ^= hash>>>32;
+        return hash;
+    }
+
+    @Override
+    public void reset() {
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        bufferLength = 0;
+        totalLength = 0;
+    }
+}
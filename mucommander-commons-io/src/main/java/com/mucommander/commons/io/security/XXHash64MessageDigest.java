@@ -0,0 +1,38 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io.security;
+
+/**
+ * Provides a <code>ChecksumMessageDigest</code> implementation of the <i>XXH64</i> algorithm, using the
+ * {@link XXHash64} class. The digest is the 64-bit hash value, most significant byte first, as output by the
+ * <code>xxhsum</code> command.
+ */
+public class XXHash64MessageDigest extends ChecksumMessageDigest {
+
+    public XXHash64MessageDigest() {
+        super(new XXHash64(), getAlgorithmName(), 8);
+    }
+
+    /**
+     * Returns the name of the algorithm implemented by this MessageDigest.
+     *
+     * @return the name of the algorithm implemented by this MessageDigest
+     */
+    protected static String getAlgorithmName() {
+        return "XXH64";
+    }
+}
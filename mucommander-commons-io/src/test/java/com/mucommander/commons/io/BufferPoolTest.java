@@ -17,6 +17,11 @@
 
 package com.mucommander.commons.io;
 
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.testng.annotations.Test;
 
 /**
@@ -29,6 +34,8 @@ public class BufferPoolTest {
     public final static int TEST_BUFFER_SIZE_1 = 27;
     public final static int TEST_BUFFER_SIZE_2 = 28;
     public final static int TEST_MAX_POOL_SIZE = 1000;
+    public final static int TEST_BUFFER_SIZE_3 = 29;
+    public final static int TEST_BUFFER_SIZE_4 = 30;
 
     /**
      * Tests <code>BufferPool</code> with byte array (<code>byte[]</code>) buffers.
@@ -74,6 +81,120 @@ public class BufferPoolTest {
         testBuffer(new BufferPool.CharBufferFactory());
     }
 
+    /**
+     * Tests direct <code>ByteBuffer</code> buffers: their capacity is rounded up to a size class and their address
+     * is aligned.
+     */
+    @Test
+    public void testDirectByteBuffer() {
+        assert BufferPool.DIRECT_BUFFER_ALIGNMENT == BufferPool.getSizeClass(1);
+        assert 8192 == BufferPool.getSizeClass(5000);
+        assert 8192 == BufferPool.getSizeClass(8192);
+        assert 16384 == BufferPool.getSizeClass(8193);
+
+        ByteBuffer buffer = BufferPool.getDirectByteBuffer(5000);
+        assert buffer.isDirect();
+        assert 8192 == buffer.capacity();
+        assert 0 == buffer.position();
+        assert 5000 == buffer.limit();
+        assert 0 == buffer.alignmentOffset(0, BufferPool.DIRECT_BUFFER_ALIGNMENT);
+
+        // A buffer of the same size class is reused, with the requested limit
+        buffer.position(100);
+        assert BufferPool.releaseDirectByteBuffer(buffer);
+        assert !BufferPool.releaseDirectByteBuffer(buffer);
+        ByteBuffer buffer2 = BufferPool.getDirectByteBuffer(6000);
+        assert buffer2 == buffer;
+        assert 0 == buffer2.position();
+        assert 6000 == buffer2.limit();
+    }
+
+    /**
+     * Asserts that the buffers left in the magazine of a terminated thread are returned to the pool.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void testTerminatedThreadBuffers() throws InterruptedException {
+        BufferPool.BufferFactory factory = new BufferPool.ByteArrayFactory();
+        Object buffer = BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_3);
+
+        Thread releasingThread = new Thread(() -> BufferPool.releaseBuffer(buffer, factory));
+        releasingThread.start();
+        releasingThread.join();
+        assert BufferPool.containsBuffer(buffer, factory);
+
+        // The magazine of the terminated thread is emptied when another thread starts using the pool
+        AtomicReference<Object> retrievedBuffer = new AtomicReference<>();
+        Thread retrievingThread = new Thread(() -> retrievedBuffer.set(BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_3)));
+        retrievingThread.start();
+        retrievingThread.join();
+        assert retrievedBuffer.get() == buffer;
+        assert !BufferPool.containsBuffer(buffer, factory);
+    }
+
+    /**
+     * Asserts that a buffer is never returned to two threads at the same time.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        BufferPool.BufferFactory factory = new BufferPool.ByteArrayFactory();
+        int originalBufferCount = BufferPool.getBufferCount(factory);
+        Set<Object> usedBuffers = ConcurrentHashMap.newKeySet();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread[] threads = new Thread[8];
+        for(int t=0; t<threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for(int i=0; i<10000; i++) {
+                        Object buffer = BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_4);
+                        assert usedBuffers.add(buffer);
+                        assert usedBuffers.remove(buffer);
+                        assert BufferPool.releaseBuffer(buffer, factory);
+                    }
+                    // Leave the magazine of this thread empty
+                    for(int i=0; i<2; i++)
+                        BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_4);
+                }
+                catch(Throwable e) {
+                    failure.set(e);
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads)
+            thread.join();
+        assert failure.get() == null : failure.get();
+
+        // Retrieve the buffers that remain, to leave BufferPool as it was before the test
+        while(BufferPool.getBufferCount(factory) > originalBufferCount)
+            BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_4);
+    }
+
+    /**
+     * Tests the statistics reported by {@link BufferPool#getStatistics()}.
+     */
+    @Test
+    public void testStatistics() {
+        BufferPool.Statistics before = BufferPool.getStatistics();
+
+        byte[] buffer = BufferPool.getByteArray(TEST_BUFFER_SIZE_3);
+        BufferPool.releaseByteArray(buffer);
+        assert BufferPool.getStatistics().getRetainedBytes() - before.getRetainedBytes() == TEST_BUFFER_SIZE_3;
+        BufferPool.getByteArray(TEST_BUFFER_SIZE_3);
+
+        BufferPool.Statistics after = BufferPool.getStatistics();
+        assert after.getMisses() - before.getMisses() == 1;
+        assert after.getHits() - before.getHits() == 1;
+        assert after.getReleases() - before.getReleases() == 1;
+        assert after.getAllocatedBytes() - before.getAllocatedBytes() == TEST_BUFFER_SIZE_3;
+        assert after.getRetainedBytes() == before.getRetainedBytes();
+        assert after.getHitRate() > 0 && after.getHitRate() <= 1;
+    }
+
     /**
      * Tests <code>BufferPool</code> with <code>ByteBuffer</code> buffers.
      *
@@ -0,0 +1,133 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.commons.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * This class is a TestNG test case for {@link ParallelDeflaterOutputStream} and {@link ParallelGZIPOutputStream}.
+ */
+public class ParallelDeflaterOutputStreamTest {
+
+    /**
+     * Returns data made of random bytes, with repeated parts.
+     */
+    private static byte[] getTestData(int length) {
+        Random random = new Random(0);
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        for (int off = 0; off + 50000 < length; off += 100000)
+            System.arraycopy(data, off, data, off + 20000, 30000);
+        return data;
+    }
+
+    private static byte[] deflate(byte[] data, int level, int nbThreads) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ParallelDeflaterOutputStream out = new ParallelDeflaterOutputStream(bout, level, nbThreads)) {
+            // Writes of various sizes, some of them larger than a block
+            Random random = new Random(1);
+            for (int off = 0; off < data.length; ) {
+                int len = Math.min(data.length - off, random.nextInt(3 * ParallelDeflaterOutputStream.DEFAULT_BLOCK_SIZE));
+                out.write(data, off, len);
+                off += len;
+            }
+            out.finish();
+            Assert.assertEquals(out.getBytesRead(), data.length);
+            Assert.assertEquals(out.getBytesWritten(), bout.size());
+        }
+        return bout.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed), new Inflater(true))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void testDeflate() throws IOException {
+        int[] lengths = {0, 1, ParallelDeflaterOutputStream.DEFAULT_BLOCK_SIZE, 2 * 1024 * 1024 + 17};
+        for (int length : lengths) {
+            byte[] data = getTestData(length);
+            for (int nbThreads : new int[] {1, 4}) {
+                Assert.assertEquals(inflate(deflate(data, Deflater.DEFAULT_COMPRESSION, nbThreads)), data);
+                Assert.assertEquals(inflate(deflate(data, Deflater.BEST_SPEED, nbThreads)), data);
+            }
+        }
+    }
+
+    @Test
+    public void testDictionary() throws IOException {
+        // Random bytes that repeat with a period shorter than the window but not much shorter than a block: each block
+        // is mostly made of literals unless it is primed with the end of the previous block
+        int period = 24 * 1024;
+        byte[] pattern = new byte[period];
+        new Random(0).nextBytes(pattern);
+        byte[] data = new byte[32 * period];
+        for (int off = 0; off < data.length; off += period)
+            System.arraycopy(pattern, 0, data, off, period);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ParallelDeflaterOutputStream out = new ParallelDeflaterOutputStream(bout, Deflater.DEFAULT_COMPRESSION, 4, 32 * 1024)) {
+            out.write(data);
+        }
+        Assert.assertEquals(inflate(bout.toByteArray()), data);
+        Assert.assertTrue(bout.size() < 2 * period);
+    }
+
+    @Test
+    public void testGZIP() throws IOException {
+        byte[] data = getTestData(1024 * 1024 + 5);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(bout, Deflater.BEST_COMPRESSION, 3)) {
+            out.write(data);
+        }
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bout.toByteArray()))) {
+            Assert.assertEquals(in.readAllBytes(), data);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        byte[] compressed = bout.toByteArray();
+        int trailerOffset = compressed.length - 8;
+        long storedCrc = (compressed[trailerOffset] & 0xFFL) | (compressed[trailerOffset + 1] & 0xFFL) << 8
+                | (compressed[trailerOffset + 2] & 0xFFL) << 16 | (compressed[trailerOffset + 3] & 0xFFL) << 24;
+        Assert.assertEquals(storedCrc, crc.getValue());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testWriteAfterFinish() throws IOException {
+        ParallelDeflaterOutputStream out = new ParallelDeflaterOutputStream(new ByteArrayOutputStream(), Deflater.DEFAULT_COMPRESSION, 2);
+        out.finish();
+        out.write(0);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.io.ByteUtils;
+
+/**
+ * This class is a TestNG test case for {@link XXHash64} and the <code>MessageDigest</code> implementations provided by
+ * {@link MuProvider}.
+ */
+public class XXHash64Test {
+
+    private static long hash(byte[] data) {
+        XXHash64 xxHash = new XXHash64();
+        xxHash.update(data, 0, data.length);
+        return xxHash.getValue();
+    }
+
+    /**
+     * Compares the hash of a few strings with the values of the reference implementation.
+     */
+    @Test
+    public void testReferenceValues() {
+        Assert.assertEquals(hash(new byte[0]), 0xEF46DB3751D8E999L);
+        Assert.assertEquals(hash("abc".getBytes(StandardCharsets.US_ASCII)), 0x44BC2CF5AD770999L);
+        Assert.assertEquals(hash("Nobody inspects the spammish repetition".getBytes(StandardCharsets.US_ASCII)), 0xFBCEA83C8A378BF1L);
+    }
+
+    /**
+     * Asserts that the hash does not depend on how the data is split into updates.
+     */
+    @Test
+    public void testUpdates() {
+        Random random = new Random(0);
+        for(int length : new int[]{1, 3, 4, 7, 8, 31, 32, 33, 63, 64, 100, 1000, 100000}) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            long expected = hash(data);
+
+            XXHash64 xxHash = new XXHash64();
+            int off = 0;
+            while(off<length) {
+                if(random.nextInt(4)==0) {
+                    xxHash.update(data[off++]);
+                }
+                else {
+                    int len = Math.min(random.nextInt(70), length-off);
+                    xxHash.update(data, off, len);
+                    off += len;
+                }
+            }
+            Assert.assertEquals(xxHash.getValue(), expected);
+
+            xxHash.reset();
+            xxHash.update(data, 0, length);
+            Assert.assertEquals(xxHash.getValue(), expected);
+        }
+    }
+
+    /**
+     * Asserts that the additional digests are registered and return the expected values.
+     */
+    @Test
+    public void testMessageDigests() throws NoSuchAlgorithmException {
+        MuProvider.registerProvider();
+        byte[] data = "abc".getBytes(StandardCharsets.US_ASCII);
+
+        MessageDigest digest = MessageDigest.getInstance("XXH64");
+        Assert.assertEquals(digest.getDigestLength(), 8);
+        Assert.assertEquals(ByteUtils.toHexString(digest.digest(data)), "44bc2cf5ad770999");
+        // The digest is reset after it has been computed
+        Assert.assertEquals(ByteUtils.toHexString(digest.digest(data)), "44bc2cf5ad770999");
+
+        digest = MessageDigest.getInstance("CRC32C");
+        Assert.assertEquals(ByteUtils.toHexString(digest.digest("123456789".getBytes(StandardCharsets.US_ASCII))), "e3069283");
+    }
+}
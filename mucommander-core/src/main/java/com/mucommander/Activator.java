@@ -168,6 +168,10 @@ public class Activator implements BundleActivator {
         return Boolean.parseBoolean(context.getProperty("mucommander.fatalWarnings"));
     }
 
+    public boolean startupProfile() {
+        return Boolean.parseBoolean(context.getProperty("mucommander.startupProfile"));
+    }
+
     public String assoc() {
         return context.getProperty("mucommander.assoc");
     }
@@ -200,6 +200,7 @@ public class Application {
 
     private void run() {
         ExecutorService executor = Executors.newFixedThreadPool(12);
+        StartupTaskGraph startup = new StartupTaskGraph(executor);
 
         try {
             // Associations handling.
@@ -305,19 +306,23 @@ public class Application {
 
             // Load snapshot data before loading configuration as until version 0.9 the snapshot properties
             // were stored as preferences so when loading such preferences they could overload snapshot properties
-            try {
-                MuSnapshot.loadSnapshot();
-            } catch (Exception e) {
-                printFileError("Could not load snapshot", e, activator.fatalWarnings());
-            }
+            startup.run("Loading snapshot", () -> {
+                try {
+                    MuSnapshot.loadSnapshot();
+                } catch (Exception e) {
+                    printFileError("Could not load snapshot", e, activator.fatalWarnings());
+                }
+            });
 
             // Configuration needs to be loaded before any sort of GUI creation is performed : under Mac OS X, if we're
             // to use the metal look, we need to know about it right about now.
-            try {
-                MuConfigurations.check();
-            } catch (Exception e) {
-                printFileError("Could not load configuration", e, activator.fatalWarnings());
-            }
+            startup.run("Loading configuration", () -> {
+                try {
+                    MuConfigurations.check();
+                } catch (Exception e) {
+                    printFileError("Could not load configuration", e, activator.fatalWarnings());
+                }
+            });
 
             // - Logging configuration ------------------------------------
             // ------------------------------------------------------------
@@ -330,11 +335,13 @@ public class Application {
             // - muCommander boot -----------------------------------------
             // ------------------------------------------------------------
             // Adds all extensions to the classpath.
-            try {
-                ExtensionManager.addExtensionsToClasspath();
-            } catch (Exception e) {
-                LOGGER.debug("Failed to add extensions to the classpath", e);
-            }
+            startup.run("Loading extensions", () -> {
+                try {
+                    ExtensionManager.addExtensionsToClasspath();
+                } catch (Exception e) {
+                    LOGGER.debug("Failed to add extensions to the classpath", e);
+                }
+            });
 
             // This the property is supposed to have the java.net package use the proxy defined in the system settings
             // to establish HTTP connections. This property is supported only under Java 1.5 and up.
@@ -357,30 +364,30 @@ public class Application {
             configureFilesystems();
 
             if (isFirstBoot) {
-                try {
-                    com.mucommander.ui.main.WindowManager.setDefaultLookAndFeel();
-                } catch (Exception e) {
-                    printError("Could not initialize look & feel", e, true);
-                }
+                startup.run("Setting look & feel", () -> {
+                    try {
+                        com.mucommander.ui.main.WindowManager.setDefaultLookAndFeel();
+                    } catch (Exception e) {
+                        printError("Could not initialize look & feel", e, true);
+                    }
+                });
             }
 
 
             var firstBoot = isFirstBoot;
 
+            // The phases below run concurrently, only phases that depend on others wait for them
 
-            executor.execute(() -> {
-                // Loads the themes.
+            startup.submit("Loading theme", () -> {
                 printStartupMessage(splashScreenProvider, "Loading theme...");
                 try {
                     SwingUtilities.invokeAndWait(() -> com.mucommander.ui.theme.ThemeManager.loadCurrentTheme());
-                    LOGGER.debug("Loading theme DONE");
                 } catch (InterruptedException | InvocationTargetException e) {
                     LOGGER.error("Error loading current theme, continuing without it", e);
                 }
             });
 
-            executor.execute(() -> {
-                // Initializes the desktop.
+            CompletableFuture<Void> desktopInitialized = startup.submit("Initializing desktop", () -> {
                 try {
                     com.mucommander.core.desktop.DesktopManager.init(firstBoot);
                 } catch (Exception e) {
@@ -388,8 +395,7 @@ public class Application {
                 }
             });
 
-            executor.execute(() -> {
-                // Loads custom commands
+            CompletableFuture<Void> commandsLoaded = startup.submit("Loading custom commands", () -> {
                 printStartupMessage(splashScreenProvider, "Loading file associations..."); // TODO Localize those messages.....
                 try {
                     CommandManager.loadCommands();
@@ -408,7 +414,7 @@ public class Application {
                 }
             });
 
-            executor.execute(() -> {
+            startup.submit("Loading associations", () -> {
                 try {
                     com.mucommander.command.CommandManager.loadAssociations();
                 } catch (Exception e) {
@@ -416,8 +422,7 @@ public class Application {
                 }
             });
 
-            executor.execute(() -> {
-                // Loads bookmarks
+            startup.submit("Loading bookmarks", () -> {
                 printStartupMessage(splashScreenProvider, "Loading bookmarks...");
                 try {
                     com.mucommander.bookmark.BookmarkManager.loadBookmarks();
@@ -426,8 +431,7 @@ public class Application {
                 }
             });
 
-            executor.execute(() -> {
-                // Loads credentials
+            startup.submit("Loading credentials", () -> {
                 printStartupMessage(splashScreenProvider, "Loading credentials...");
                 try {
                     com.mucommander.auth.CredentialsManager.loadCredentials();
@@ -436,7 +440,7 @@ public class Application {
                 }
             });
 
-            executor.execute(() -> {
+            startup.submit("Loading icons", () -> {
                 // Inits CustomDateFormat to make sure that its ConfigurationListener is added
                 // before FileTable, so CustomDateFormat gets notified of date format changes first
                 com.mucommander.text.CustomDateFormat.init();
@@ -450,37 +454,42 @@ public class Application {
                 setSystemIconsPolicy();
             });
 
-            long pre = System.currentTimeMillis();
-            executor.shutdown();
-            executor.awaitTermination(1, TimeUnit.MINUTES);
+            // Custom commands are registered as actions, and the descriptors of some actions query the desktop
+            CompletableFuture<Void> actionsRegistered = startup.submit("Registering actions", () -> {
+                printStartupMessage(splashScreenProvider, "Registering actions...");
+                ActionManager.registerActions();
+            }, commandsLoaded, desktopInitialized);
 
-            // Register actions
-            printStartupMessage(splashScreenProvider, "Registering actions...");
-            ActionManager.registerActions();
+            // The keymap, toolbar and command bar only refer to registered actions
+            startup.submit("Loading actions shortcuts", () -> {
+                printStartupMessage(splashScreenProvider, "Loading actions shortcuts...");
+                try {
+                    com.mucommander.ui.action.ActionKeymapIO.loadActionKeymap();
+                } catch (Exception e) {
+                    printFileError("Could not load actions shortcuts", e, activator.fatalWarnings());
+                }
+            }, actionsRegistered);
 
-            // Loads the ActionKeymap file
-            printStartupMessage(splashScreenProvider, "Loading actions shortcuts...");
-            try {
-                com.mucommander.ui.action.ActionKeymapIO.loadActionKeymap();
-            } catch (Exception e) {
-                printFileError("Could not load actions shortcuts", e, activator.fatalWarnings());
-            }
+            startup.submit("Loading toolbar description", () -> {
+                printStartupMessage(splashScreenProvider, "Loading toolbar description...");
+                try {
+                    ToolBarIO.loadDescriptionFile();
+                } catch (Exception e) {
+                    printFileError("Could not load toolbar description", e, activator.fatalWarnings());
+                }
+            }, actionsRegistered);
 
-            // Loads the ToolBar's description file
-            printStartupMessage(splashScreenProvider, "Loading toolbar description...");
-            try {
-                ToolBarIO.loadDescriptionFile();
-            } catch (Exception e) {
-                printFileError("Could not load toolbar description", e, activator.fatalWarnings());
-            }
+            startup.submit("Loading command bar description", () -> {
+                printStartupMessage(splashScreenProvider, "Loading command bar description...");
+                try {
+                    CommandBarIO.loadCommandBar();
+                } catch (Exception e) {
+                    printFileError("Could not load commandbar description", e, activator.fatalWarnings());
+                }
+            }, actionsRegistered);
 
-            // Loads the CommandBar's description file
-            printStartupMessage(splashScreenProvider, "Loading command bar description...");
-            try {
-                CommandBarIO.loadCommandBar();
-            } catch (Exception e) {
-                printFileError("Could not load commandbar description", e, activator.fatalWarnings());
-            }
+            startup.await(1, TimeUnit.MINUTES);
+            executor.shutdown();
 
             // Invoke in a different thread: https://www.oracle.com/technical-resources/articles/javase/swingworker.html
             Thread mainThread = new Thread(() -> {
@@ -490,12 +499,16 @@ public class Application {
                 LOGGER.debug("folders init");
                 List<String> folders = activator.getInitialFolders();
                 LOGGER.debug("muC new main frame to start");
-                if (CollectionUtils.isNotEmpty(folders)) {
-                    WindowManager.createNewMainFrame(new CommandLineMainFrameBuilder(folders));
-                } else {
-                    WindowManager.createNewMainFrame(new DefaultMainFramesBuilder());
-                }
+                startup.run("Initializing window", () -> {
+                    if (CollectionUtils.isNotEmpty(folders)) {
+                        WindowManager.createNewMainFrame(new CommandLineMainFrameBuilder(folders));
+                    } else {
+                        WindowManager.createNewMainFrame(new DefaultMainFramesBuilder());
+                    }
+                });
                 LOGGER.info("muC UI presented after: {} ms", ManagementFactory.getRuntimeMXBean().getUptime());
+                if (activator.startupProfile())
+                    System.out.print(startup.getReport());
 
                 // Done launching, wake up threads waiting for the application being launched.
                 // Important: this must be done before disposing the splash screen, as this would otherwise create a
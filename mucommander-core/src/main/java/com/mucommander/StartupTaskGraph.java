@@ -0,0 +1,192 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Runs the phases that initialize the application, each phase as soon as the phases it depends on are done, and
+ * records the wall-clock time and the memory allocated by each phase.
+ *
+ * <p>Phases that do not depend on each other run concurrently in the given executor. A phase that fails is logged and
+ * is considered done, so that the phases that depend on it still run.</p>
+ *
+ * @see Activator#startupProfile()
+ */
+class StartupTaskGraph {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupTaskGraph.class);
+
+    /** Executor in which the phases run */
+    private final Executor executor;
+    /** Time at which the graph was created, in nanoseconds */
+    private final long startTime = System.nanoTime();
+    /** Phases submitted to the executor */
+    private final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+    /** Phases that are done */
+    private final List<Phase> phases = new ArrayList<>();
+    /** Used to measure the memory allocated by phases, null if not supported by the JVM */
+    private final ThreadMXBean threadMXBean;
+
+    /**
+     * A phase that is done.
+     */
+    private static class Phase {
+        private final String name;
+        private final String thread;
+        private final long start;
+        private final long duration;
+        private final long allocatedBytes;
+
+        private Phase(String name, String thread, long start, long duration, long allocatedBytes) {
+            this.name = name;
+            this.thread = thread;
+            this.start = start;
+            this.duration = duration;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    /**
+     * Creates a graph whose phases run in the given executor.
+     *
+     * @param executor the executor in which phases run
+     */
+    StartupTaskGraph(Executor executor) {
+        this.executor = executor;
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof ThreadMXBean && ((ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                && ((ThreadMXBean) bean).isThreadAllocatedMemoryEnabled())
+            threadMXBean = (ThreadMXBean) bean;
+        else
+            threadMXBean = null;
+    }
+
+    /**
+     * Runs the given phase in the executor, once the given phases are done.
+     *
+     * @param name name of the phase, used in the report
+     * @param phase the code of the phase
+     * @param dependencies phases that must be done before this phase runs
+     * @return a future that completes when the phase is done, whether it succeeded or failed
+     */
+    CompletableFuture<Void> submit(String name, Runnable phase, CompletableFuture<?>... dependencies) {
+        Runnable task = () -> {
+            try {
+                run(name, phase);
+            } catch (Throwable t) {
+                LOGGER.error("Startup phase '" + name + "' failed", t);
+            }
+        };
+
+        CompletableFuture<Void> future = dependencies.length == 0 ?
+                CompletableFuture.runAsync(task, executor) :
+                CompletableFuture.allOf(dependencies).thenRunAsync(task, executor);
+        synchronized (tasks) {
+            tasks.add(future);
+        }
+        return future;
+    }
+
+    /**
+     * Runs the given phase in the current thread.
+     *
+     * @param name name of the phase, used in the report
+     * @param phase the code of the phase
+     */
+    void run(String name, Runnable phase) {
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean != null ? threadMXBean.getThreadAllocatedBytes(threadId) : -1;
+        long start = System.nanoTime();
+        try {
+            phase.run();
+        } finally {
+            long duration = System.nanoTime() - start;
+            long allocatedBytes = threadMXBean != null ? threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore : -1;
+            synchronized (phases) {
+                phases.add(new Phase(name, Thread.currentThread().getName(), start - startTime, duration, allocatedBytes));
+            }
+            LOGGER.debug("{} done in {} ms", name, TimeUnit.NANOSECONDS.toMillis(duration));
+        }
+    }
+
+    /**
+     * Waits until all the submitted phases are done, or until the given timeout elapses.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout argument
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    void await(long timeout, TimeUnit unit) throws InterruptedException {
+        CompletableFuture<?>[] futures;
+        synchronized (tasks) {
+            futures = tasks.toArray(new CompletableFuture<?>[0]);
+        }
+
+        try {
+            CompletableFuture.allOf(futures).get(timeout, unit);
+        } catch (TimeoutException e) {
+            LOGGER.warn("Startup phases not done after {} {}, continuing", timeout, unit);
+        } catch (ExecutionException e) {
+            // Should not happen: failures are caught by the phases
+            LOGGER.error("Startup phase failed", e);
+        }
+    }
+
+    /**
+     * Returns a report of the phases that are done, ordered by start time: when each phase started relatively to the
+     * creation of this graph, how long it took and how much memory it allocated.
+     *
+     * @return a report of the phases that are done
+     */
+    String getReport() {
+        List<Phase> sortedPhases;
+        synchronized (phases) {
+            sortedPhases = new ArrayList<>(phases);
+        }
+        sortedPhases.sort(Comparator.comparingLong(phase -> phase.start));
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-36s %10s %10s %12s  %s%n", "Startup phase", "Start(ms)", "Time(ms)", "Alloc(KB)", "Thread"));
+        for (Phase phase : sortedPhases) {
+            report.append(String.format("%-36s %10d %10d %12s  %s%n",
+                    phase.name,
+                    TimeUnit.NANOSECONDS.toMillis(phase.start),
+                    TimeUnit.NANOSECONDS.toMillis(phase.duration),
+                    phase.allocatedBytes < 0 ? "n/a" : Long.toString(phase.allocatedBytes / 1024),
+                    phase.thread));
+        }
+        report.append(String.format("Total: %d ms, JVM uptime: %d ms%n",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+                ManagementFactory.getRuntimeMXBean().getUptime()));
+        return report.toString();
+    }
+}
@@ -20,15 +20,20 @@ package com.mucommander.core;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowFocusListener;
 import java.awt.event.WindowListener;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileChange;
 import com.mucommander.commons.file.MonitoredFile;
 import com.mucommander.commons.file.filter.AbstractFileFilter;
 import com.mucommander.commons.file.filter.FileFilter;
@@ -55,6 +60,13 @@ import com.mucommander.ui.main.table.FileTable;
  * <p>Implementation note: the monitoring is done in one single thread for all folders, each folder being monitored
  * one after another. Current folder refreshes are performed in a separate thread.
  *
+ * <p>If the current folder reports the changes made to its children individually (see
+ * {@link MonitoredFile#canPollChanges()}), the changes are polled on every tick and applied to the file table as
+ * deltas, without listing the folder again. Bursts of changes are coalesced: pending changes are applied once the
+ * folder has been quiet for {@link #CHANGES_QUIET_PERIOD} milliseconds, or at the latest
+ * {@link #MAX_CHANGES_DELAY} milliseconds after the first of them. The folder is only refreshed entirely when the
+ * changes are not known individually, e.g. when the events that report them overflowed.</p>
+ *
  * @author Maxence Bernard
  * @see <a href="http://trac.mucommander.com/wiki/FolderAutoRefresh">FolderAutoRefresh wiki entry</a>
  */
@@ -81,6 +93,15 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** Number of checks in current folder */
     private int nbSamples = 0;
 
+    /** Names of the children of the current folder that changed and whose changes have not been applied yet */
+    private Set<String> pendingChanges = new LinkedHashSet<>();
+
+    /** Timestamp of the first pending change */
+    private long firstPendingChangeTimestamp;
+
+    /** Timestamp of the last pending change */
+    private long lastPendingChangeTimestamp;
+
 	
     //////////////////////
     // Static variables //
@@ -106,6 +127,15 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** Granularity of the thread check (number of milliseconds to sleep before next loop) */
     private final static int TICK = 300;
 
+    /** Number of milliseconds without changes after which pending changes are applied */
+    private final static int CHANGES_QUIET_PERIOD = 500;
+
+    /** Maximum number of milliseconds before pending changes are applied in a folder that keeps changing */
+    private final static int MAX_CHANGES_DELAY = 2000;
+
+    /** Number of pending changes above which the folder is refreshed entirely, rather than applying the changes */
+    private final static int MAX_PENDING_CHANGES = 1000;
+
     /** This forces refreshing the displayed locations immediately */
     private static boolean forceRefresh;
 
@@ -203,6 +233,12 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
                         monitor.waitBeforeCheckTime = checkPeriod;
                         continue;
                     }
+                    // Changes that are reported individually are cheap to poll, and are polled on every tick
+                    MonitoredFile currentFolder = monitor.folderPanel.getCurrentFolder();
+                    if (currentFolder.canPollChanges()) {
+                        monitor.checkAndApplyChanges(currentFolder, forceRefresh);
+                        continue;
+                    }
                     // By checking FolderPanel.getLastFolderChangeTime(), we ensure that we don't check right after
                     // the folder has been refreshed.
                     if (forceRefresh || System.currentTimeMillis()-Math.max(monitor.lastCheckTimestamp, monitor.folderPanel.getLastFolderChangeTime())>monitor.waitBeforeCheckTime) {
@@ -257,6 +293,78 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
                 : Math.max(checkPeriod, (int)(WAIT_MULTIPLIER*(totalCheckTime/(float)nbSamples)));
     }
 
+    /**
+     * Polls the changes made to the given current folder, and applies the pending changes to the file table once the
+     * folder has been quiet for long enough, if running file jobs could not change the folder. The folder is refreshed
+     * entirely if its changes are not known individually or are too many.
+     */
+    private synchronized void checkAndApplyChanges(MonitoredFile currentFolder, boolean forceRefresh) {
+        if (mayFolderChangeByFileJob() || !isFileTableAutoRefreshable())
+            return;
+
+        // If this is not a periodic check, let the folder check its date first as it may be faster
+        if (forceRefresh)
+            currentFolder.isChanged(false);
+
+        long now = System.currentTimeMillis();
+        List<FileChange> changes = currentFolder.pollChanges();
+        if (changes == null) {
+            LOGGER.debug(this+" ("+currentFolder.getName()+") Changes in current folder are unknown, refreshing table!");
+            refreshCurrentFolder();
+            return;
+        }
+
+        if (!changes.isEmpty()) {
+            if (pendingChanges.isEmpty())
+                firstPendingChangeTimestamp = now;
+            lastPendingChangeTimestamp = now;
+            for (FileChange change : changes)
+                pendingChanges.add(change.getName());
+
+            if (pendingChanges.size() > MAX_PENDING_CHANGES) {
+                LOGGER.debug(this+" ("+currentFolder.getName()+") Too many changes in current folder, refreshing table!");
+                refreshCurrentFolder();
+                return;
+            }
+        }
+
+        // Wait for bursts of changes to settle
+        if (pendingChanges.isEmpty()
+                || (!forceRefresh && now-lastPendingChangeTimestamp < CHANGES_QUIET_PERIOD && now-firstPendingChangeTimestamp < MAX_CHANGES_DELAY))
+            return;
+
+        LOGGER.debug(this+" ("+currentFolder.getName()+") Applying "+pendingChanges.size()+" changes to table");
+        AbstractFile folder = currentFolder.getProxiedFile();
+        FileFilter filter = folderPanel.getLocationManager().getFolderFilter();
+        List<AbstractFile> updatedFiles = new ArrayList<>();
+        Set<String> removedNames = new HashSet<>();
+        // Resolve the current state of each changed file, rather than replaying the events that reported its changes
+        for (String name : pendingChanges) {
+            try {
+                AbstractFile file = folder.getDirectChild(name);
+                if (file.exists() && filter.match(file))
+                    updatedFiles.add(file);
+                else
+                    removedNames.add(name);
+            } catch (IOException e) {
+                LOGGER.debug("Couldn't resolve changed file " + name + ", refreshing table", e);
+                refreshCurrentFolder();
+                return;
+            }
+        }
+        pendingChanges.clear();
+
+        folderPanel.getFileTable().applyFolderChanges(currentFolder, updatedFiles, removedNames);
+    }
+
+    /**
+     * Discards pending changes and refreshes the current folder in a separate thread.
+     */
+    private void refreshCurrentFolder() {
+        pendingChanges.clear();
+        folderPanel.tryRefreshCurrentFolder();
+    }
+
     /**
      * Check if the folder that presented in the {@link FileTable} can be refreshed upon a change.
      * It is not always the case since there are side effects for refreshing the presented folder,
@@ -301,6 +409,11 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         // Update new current folder info
         updateFolderInfo();
 
+        // Pending changes were made to the previous folder or are included in the refreshed folder
+        synchronized(this) {
+            pendingChanges.clear();
+        }
+
         folderChanging = false;
     }
 
@@ -21,6 +21,7 @@ package com.mucommander.job.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.zip.Deflater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,6 +63,12 @@ public class ArchiveJob extends TransferFileJob {
     /** Optional archive comment */
     private String archiveComment;
 	
+    /** Deflate compression level of the Zip, Gzip and Tar/Gzip formats */
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /** Maximum number of threads that compress data in the Zip, Gzip, Bzip2, Tar/Gzip and Tar/Bzip2 formats */
+    private int nbCompressionThreads = Runtime.getRuntime().availableProcessors();
+
     /** Lock to avoid Archiver.close() to be called while data is being written */
     private final Object ioLock = new Object();
 
@@ -76,6 +83,48 @@ public class ArchiveJob extends TransferFileJob {
         this.baseFolderPath = getBaseSourceFolder().getAbsolutePath(false);
     }
 
+    /**
+     * Sets the Deflate compression level used by the Zip, Gzip and Tar/Gzip formats, from 1 (fastest) to 9 (best
+     * compression), or <code>Deflater.DEFAULT_COMPRESSION</code> (the default). This method must be called before the
+     * job is started.
+     *
+     * @param compressionLevel the Deflate compression level
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns the Deflate compression level used by the Zip, Gzip and Tar/Gzip formats.
+     *
+     * @return the Deflate compression level
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the maximum number of threads that compress data in the Zip, Gzip, Bzip2, Tar/Gzip and Tar/Bzip2 formats.
+     * Data is compressed in blocks, concurrently, with more than one thread, and on the job's thread with
+     * <code>1</code>. Defaults to the number of available processors. This method must be called before the job is
+     * started.
+     *
+     * @param nbCompressionThreads the maximum number of threads that compress data
+     */
+    public void setCompressionThreads(int nbCompressionThreads) {
+        this.nbCompressionThreads = Math.max(1, nbCompressionThreads);
+    }
+
+    /**
+     * Returns the maximum number of threads that compress data in the Zip, Gzip, Bzip2, Tar/Gzip and Tar/Bzip2
+     * formats.
+     *
+     * @return the maximum number of threads that compress data
+     */
+    public int getCompressionThreads() {
+        return nbCompressionThreads;
+    }
+
 
     ////////////////////////////////////
     // TransferFileJob implementation //
@@ -185,7 +234,7 @@ public class ArchiveJob extends TransferFileJob {
         do {
             try {
                 // Tries to get an Archiver instance.
-                this.archiver = Archiver.getArchiver(destFile, archiveFormat);
+                this.archiver = Archiver.getArchiver(destFile, archiveFormat, compressionLevel, nbCompressionThreads);
                 this.archiver.setComment(archiveComment);
 
                 break;
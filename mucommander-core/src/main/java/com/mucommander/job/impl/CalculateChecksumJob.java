@@ -20,13 +20,18 @@ package com.mucommander.job.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.archive.AbstractArchiveEntryFile;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.job.FileCollisionChecker;
 import com.mucommander.job.FileJobAction;
@@ -63,6 +68,11 @@ import com.mucommander.ui.viewer.ViewerRegistrar;
  * </pre>
  * </p>
  *
+ * <p>When {@link #setConcurrentTransfers(int) concurrent transfers} are enabled, the checksums of several files are
+ * calculated at once, up to the number of connections that each file's realm allows. Lines are written to the
+ * checksum file in the order in which files are processed, whatever the order in which their checksums are
+ * calculated.</p>
+ *
  * @author Maxence Bernard
  */
 public class CalculateChecksumJob extends TransferFileJob {
@@ -82,6 +92,16 @@ public class CalculateChecksumJob extends TransferFileJob {
     /** The MessageDigest that serves to calculate the checksum */
     private MessageDigest digest;
 
+    /** Index of the next file whose checksum is requested, in processing order */
+    private int nbChecksumRequests;
+
+    /** Index of the next file whose line has to be written to the checksum file */
+    private int nextLineIndex;
+
+    /** Lines that cannot be written yet because the lines of previous files are pending, keyed by file index. A
+     * <code>null</code> value means that the file has no line, e.g. because it was skipped. */
+    private final Map<Integer, String> pendingLines = new TreeMap<>();
+
 
     public CalculateChecksumJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile checksumFile, MessageDigest digest) {
         super(progressDialog, mainFrame, files);
@@ -126,10 +146,29 @@ public class CalculateChecksumJob extends TransferFileJob {
             } while(true);
         }
 
+        int lineIndex = nbChecksumRequests++;
+
+        // Files located inside an archive are read by the job's thread, archives do not support concurrent access
+        if(isConcurrentTransferEnabled() && !file.hasAncestor(AbstractArchiveEntryFile.class)) {
+            return tryCalculateChecksumConcurrently(file, digest.getAlgorithm(), checksum -> {
+                try {
+                    writeLine(lineIndex, checksum==null?null:getChecksumLine(file, checksum));
+                }
+                catch(IOException e) {
+                    LOGGER.debug("Caught IOException", e);
+
+                    if(getState() != FileJobState.INTERRUPTED)
+                        showErrorDialog(Translator.get("error"),
+                                        Translator.get("cannot_write_file", checksumFile.getName()),
+                                        Collections.singletonList(FileJobAction.CANCEL));
+                    interrupt();
+                }
+            });
+        }
+
         // Calculate the file's checksum
         do {		// Loop for retry
             InputStream in = null;
-            String line;
             String checksum;
             try {
                 // Resets the digest before use
@@ -138,27 +177,12 @@ public class CalculateChecksumJob extends TransferFileJob {
                 in = null;
                 in = setCurrentInputStream(file.getInputStream());
 
-                // Determine the path relative to the base source folder
-                String relativePath = file.getAbsolutePath();
-                relativePath = relativePath.substring(baseSourcePath.length(), relativePath.length());
-
-                // Write a new line in the checksum file, in the appropriate format
                 checksum = AbstractFile.calculateChecksum(in, digest);
-                if(useSfvFormat) {
-                    // SFV format for CRC32 checksums
-                    line = relativePath + " " + checksum;     // 1 space character
-                }
-                else {
-                    // 'SUMS' format for other checksum algorithms
-                    line = checksum + "  " + relativePath;    // 2 space characters, that's how the format is
-                }
-
-                line += '\n';
 
                 // Close the InputStream, we're done with it
                 in.close();
 
-                checksumFileOut.write(line.getBytes("utf-8"));
+                writeLine(lineIndex, getChecksumLine(file, checksum));
 
                 return true;
             }
@@ -173,8 +197,10 @@ public class CalculateChecksumJob extends TransferFileJob {
                 // the IOException was caused by the stream being closed as a result of the user interruption.
                 // If that is the case, the exception should not be interpreted as an error.
                 // Same goes if the current file was skipped.
-                if (getState() == FileJobState.INTERRUPTED || wasCurrentFileSkipped())
+                if (getState() == FileJobState.INTERRUPTED || wasCurrentFileSkipped()) {
+                    skipLine(lineIndex);
                     return false;
+                }
 
                 LOGGER.debug("Caught IOException", e);
                 
@@ -188,11 +214,69 @@ public class CalculateChecksumJob extends TransferFileJob {
                 }
 
                 // Cancel, skip or close dialog return false
+                skipLine(lineIndex);
                 return false;
             }
         } while(true);
     }
 
+    /**
+     * Returns the line of the checksum file for the given file, in the appropriate format.
+     */
+    private String getChecksumLine(AbstractFile file, String checksum) {
+        // Determine the path relative to the base source folder
+        String relativePath = file.getAbsolutePath();
+        relativePath = relativePath.substring(baseSourcePath.length(), relativePath.length());
+
+        String line;
+        if(useSfvFormat) {
+            // SFV format for CRC32 checksums
+            line = relativePath + " " + checksum;     // 1 space character
+        }
+        else {
+            // 'SUMS' format for other checksum algorithms
+            line = checksum + "  " + relativePath;    // 2 space characters, that's how the format is
+        }
+
+        return line + '\n';
+    }
+
+    /**
+     * Records that the file with the given index has no line, so that the lines of the next files can be written.
+     * Errors are not reported here, but when the next line is written.
+     */
+    private void skipLine(int lineIndex) {
+        try {
+            writeLine(lineIndex, null);
+        }
+        catch(IOException e) {
+            LOGGER.debug("Caught IOException", e);
+        }
+    }
+
+    /**
+     * Writes the line of the file with the given index to the checksum file, along with the lines of the next files
+     * that were waiting for it. The line is kept pending if the lines of previous files have not been written yet.
+     *
+     * @param lineIndex the index of the file in processing order
+     * @param line the line to write, <code>null</code> if the file has no line
+     * @throws IOException if the checksum file could not be written, in which case the lines that were not written
+     * are kept pending
+     */
+    private void writeLine(int lineIndex, String line) throws IOException {
+        synchronized(pendingLines) {
+            pendingLines.put(lineIndex, line);
+            while(pendingLines.containsKey(nextLineIndex)) {
+                String pendingLine = pendingLines.get(nextLineIndex);
+                if(pendingLine!=null)
+                    checksumFileOut.write(pendingLine.getBytes(StandardCharsets.UTF_8));
+
+                pendingLines.remove(nextLineIndex);
+                nextLineIndex++;
+            }
+        }
+    }
+
     @Override
     protected boolean hasFolderChangedImpl(AbstractFile folder) {
         // This job modifies the folder where the checksum file is
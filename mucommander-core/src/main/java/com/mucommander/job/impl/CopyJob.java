@@ -19,6 +19,8 @@
 package com.mucommander.job.impl;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +53,9 @@ public class CopyJob extends AbstractCopyJob {
      * The value can be used by subclasses that override processFile should they need to work on the destination file. */
     protected AbstractFile currentDestFile;
 
+    /** Destination folders whose date is set once concurrent transfers are over, in the order they were processed */
+    private final Map<AbstractFile, Long> pendingFolderDates = new LinkedHashMap<>();
+
     /** Operating mode : COPY_MODE or DOWNLOAD_MODE */
     private TransferMode mode;
 
@@ -170,16 +175,12 @@ public class CopyJob extends AbstractCopyJob {
                     // needs to work with the folder after calling super.processFile.
                     currentDestFile = destFile;
 
-                    // Only when finished with folder, set destination folder's date to match the original folder one
-                    if (destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
-                        try {
-                            destFile.changeDate(file.getDate());
-                        }
-                        catch (IOException e) {
-                            LOGGER.debug("failed to change the date of "+destFile, e);
-                            // Fail silently
-                        }
-                    }
+                    // Only when finished with folder, set destination folder's date to match the original folder one.
+                    // Files that are still being copied concurrently would change the date again, so wait for them.
+                    if (isConcurrentTransferEnabled())
+                        pendingFolderDates.put(destFile, file.getDate());
+                    else
+                        tryChangeFolderDate(destFile, file.getDate());
 
                     return true;
                 }
@@ -197,7 +198,19 @@ public class CopyJob extends AbstractCopyJob {
         // File is a regular file, copy it
         else  {
             // Copy the file
-            return tryCopyFile(file, destFile, append, errorDialogTitle);
+            return tryCopyFileConcurrently(file, destFile, append, errorDialogTitle);
+        }
+    }
+
+    private void tryChangeFolderDate(AbstractFile destFolder, long date) {
+        if (destFolder.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
+            try {
+                destFolder.changeDate(date);
+            }
+            catch (IOException e) {
+                LOGGER.debug("failed to change the date of "+destFolder, e);
+                // Fail silently
+            }
         }
     }
 
@@ -214,6 +227,16 @@ public class CopyJob extends AbstractCopyJob {
     // Overridden methods //
     ////////////////////////
 
+    @Override
+    protected void waitForAsyncProcessing() {
+        super.waitForAsyncProcessing();
+
+        // Concurrent transfers are over, destination folders can be dated
+        for (Map.Entry<AbstractFile, Long> folderDate : pendingFolderDates.entrySet())
+            tryChangeFolderDate(folderDate.getKey(), folderDate.getValue());
+        pendingFolderDates.clear();
+    }
+
     @Override
     protected void jobCompleted() {
         super.jobCompleted();
@@ -115,6 +115,9 @@ public abstract class FileJob implements com.mucommander.job.FileJob {
 
     /** If set to true, processed files will be unmarked from current table */
     private boolean autoUnmark = true;
+
+    /** Table that was active when the job was started, processed files are unmarked from it */
+    private FileTable activeTable;
     
     /** File to be selected after job has finished (can be null if not set) */
     private AbstractFile fileToSelect;
@@ -469,6 +472,46 @@ public abstract class FileJob implements com.mucommander.job.FileJob {
     }
 
 
+    /**
+     * This method is called after the last call to {@link #processFile(AbstractFile,Object)} has returned, and before
+     * the job is stopped or completed. Jobs that process files asynchronously must override this method to wait for
+     * the processing to be over.
+     *
+     * <p>This method implementation does nothing.</p>
+     */
+    protected void waitForAsyncProcessing() {
+    }
+
+
+    /**
+     * This method is called by {@link #run()} when {@link #processFile(AbstractFile,Object)} has returned for one of the
+     * top-level files, unless the job was interrupted. Jobs that process files asynchronously may override this method
+     * to defer the call to {@link #unmarkFile(AbstractFile)} until the processing of the file is actually over.
+     *
+     * <p>This method implementation unmarks the file if it was processed successfully.</p>
+     *
+     * @param file the top-level file that was processed
+     * @param success the value returned by <code>processFile</code>
+     */
+    protected void fileProcessed(AbstractFile file, boolean success) {
+        if (success)
+            unmarkFile(file);
+    }
+
+    /**
+     * Unmarks the given top-level file in the table that was active when the job was started, if 'auto unmark' is
+     * enabled (see {@link #setAutoUnmark(boolean)}).
+     *
+     * @param file the top-level file to unmark
+     */
+    protected void unmarkFile(AbstractFile file) {
+        if (autoUnmark) {
+            // Do not repaint rows individually as it would be too expensive
+            activeTable.setFileMarked(file, false, false);
+        }
+    }
+
+
     /**
      * This method is called when this job has been paused, either by the user, or by the job when asking for user input.
      * 
@@ -702,7 +745,7 @@ public abstract class FileJob implements com.mucommander.job.FileJob {
      * This method is public as a side-effect of this class implementing <code>Runnable</code>.
      */
     public final void run() {
-        FileTable activeTable = getMainFrame().getActiveTable();
+        activeTable = getMainFrame().getActiveTable();
 
         // Notify that this job has started
         jobStarted();
@@ -723,12 +766,12 @@ public abstract class FileJob implements com.mucommander.job.FileJob {
 
             // Unmark file in active table if 'auto unmark' is enabled
             // and file was processed successfully
-            if (autoUnmark && success) {
-                // Do not repaint rows individually as it would be too expensive
-                activeTable.setFileMarked(currentFile, false, false);
-            }
+            fileProcessed(currentFile, success);
         }
 
+        // Let operations that processFile() carried out asynchronously complete
+        waitForAsyncProcessing();
+
         // If last file was reached without any user interruption, all files have been processed with or
         // without errors, switch to FINISHED state and notify listeners
         if (currentFileIndex == nbFiles && getState() != FileJobState.INTERRUPTED) {
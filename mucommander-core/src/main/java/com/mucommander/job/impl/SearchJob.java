@@ -17,22 +17,26 @@
 package com.mucommander.job.impl;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mucommander.commons.collections.AppendOnlyList;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.protocol.search.SearchListener;
 import com.mucommander.commons.file.util.FileSet;
-import com.mucommander.commons.util.Pair;
 import com.mucommander.job.FileJobState;
 import com.mucommander.ui.main.MainFrame;
 
@@ -40,24 +44,52 @@ import com.mucommander.ui.main.MainFrame;
  * This job executes a file search.
  * The search details are defined in SearchProperty via SearchBuilder.
  *
+ * <p>Folders are searched recursively in a fork-join pool: each folder is listed by its own task, so a folder that is
+ * slow to list does not hold back the others. The files of a folder are matched in parallel as well, and matching
+ * files are appended to the findings folder by folder. The listener is notified as soon as the first files are found,
+ * and then at most every {@link #NOTIFICATION_PERIOD} milliseconds: files found in between are notified at the end of
+ * the period. A file that cannot be matched is skipped, without failing the search.</p>
+ *
  * @author Arik Hadas
  */
 public class SearchJob extends FileJob implements com.mucommander.commons.file.protocol.search.SearchJob {
     private static final Logger LOGGER = LoggerFactory.getLogger(SearchJob.class);
 
+    /** Minimum number of milliseconds between two notifications of the listener */
+    private static final long NOTIFICATION_PERIOD = 200;
+
+    /** Number of files below which the files of a folder are matched by a single task */
+    private static final int MATCH_BATCH_SIZE = 16;
+
+    /** Notifies the listeners of files that were found too soon after the previous notification */
+    private static final ScheduledExecutorService NOTIFIER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "SearchJobNotifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private Predicate<AbstractFile> fileMatcher;
     private Predicate<AbstractFile> lsFilter;
     private List<AbstractFile> findings;
-    private SearchListener listener;
+    private volatile SearchListener listener;
     private int depth, threads;
 
-    private ExecutorService customThreadPool;
+    private volatile ForkJoinPool customThreadPool;
+
+    /** Time at which the listener was last notified, 0 if it was not notified yet */
+    private final AtomicLong lastNotification = new AtomicLong();
+
+    /** Whether files were found since the listener was last notified */
+    private volatile boolean findingsChanged;
+
+    /** Whether a notification of the listener is scheduled */
+    private final AtomicBoolean notificationScheduled = new AtomicBoolean();
 
     private static final SearchListener nullListener = () -> {};
 
     public SearchJob(MainFrame mainFrame, FileSet files) {
         super(mainFrame, files);
-        findings = new CopyOnWriteArrayList<>();
+        findings = new AppendOnlyList<>();
         setAutoUnmark(false);
     }
 
@@ -77,41 +109,140 @@ public class SearchJob extends FileJob implements com.mucommander.commons.file.p
         this.lsFilter = browseMatcher;
     }
 
-    private Pair<List<AbstractFile>, Boolean> search(List<AbstractFile> files, boolean lsFilter) {
+    private boolean isInterrupted() {
+        return getState() == FileJobState.INTERRUPTED;
+    }
+
+    private AbstractFile[] ls(AbstractFile file) {
+        if (!isInterrupted()) {
+            try {
+                return file.ls();
+            } catch (IOException e) {
+                LOGGER.debug("failed to list: " + file, e);
+            }
+        }
+        return new AbstractFile[0];
+    }
+
+    private boolean match(AbstractFile file) {
+        if (isInterrupted())
+            return false;
         try {
-            List<AbstractFile> children = customThreadPool.submit(() -> ls(files, lsFilter)).get();
-            List<AbstractFile> matches = customThreadPool.submit(() -> match(children)).get();
-            boolean searchChanged = findings.addAll(matches);
-            return new Pair<>(children, searchChanged);
-        } catch (Exception e) {
-            return new Pair<>(Collections.emptyList(), false);
+            return fileMatcher.test(file);
+        } catch (RuntimeException e) {
+            LOGGER.debug("failed to match: " + file, e);
+            return false;
         }
     }
 
-    private List<AbstractFile> ls(List<AbstractFile> files, boolean filter) {
-        Stream<AbstractFile> stream = files.parallelStream();
-        if (filter)
-            stream = stream.filter(lsFilter);
-        return stream.map(this::ls).flatMap(s -> s).collect(Collectors.toList());
+    /**
+     * Appends the given matches to the findings and notifies the listener. If the listener was notified less than
+     * {@link #NOTIFICATION_PERIOD} milliseconds ago, it is notified at the end of that period instead.
+     */
+    private void addFindings(List<AbstractFile> matches) {
+        if (!findings.addAll(matches))
+            return;
+
+        findingsChanged = true;
+        long last = lastNotification.get();
+        long now = System.currentTimeMillis();
+        long delay = last + NOTIFICATION_PERIOD - now;
+        if (delay <= 0) {
+            if (lastNotification.compareAndSet(last, now)) {
+                findingsChanged = false;
+                listener.searchChanged();
+                return;
+            }
+            // another thread has just notified the listener, possibly before these matches were added
+            delay = NOTIFICATION_PERIOD;
+        }
+
+        if (notificationScheduled.compareAndSet(false, true))
+            NOTIFIER.schedule(this::notifyPendingFindings, delay, TimeUnit.MILLISECONDS);
     }
 
-    private List<AbstractFile> match(List<AbstractFile> files) {
-        return files.parallelStream().filter(this::match).collect(Collectors.toList());
+    /**
+     * Notifies the listener of the files that were found since it was last notified, if any.
+     */
+    private void notifyPendingFindings() {
+        notificationScheduled.set(false);
+        if (!findingsChanged)
+            return;
+
+        lastNotification.set(System.currentTimeMillis());
+        findingsChanged = false;
+        listener.searchChanged();
     }
 
-    private Stream<AbstractFile> ls(AbstractFile file) {
-        if (getState() != FileJobState.INTERRUPTED) {
-            try {
-                return Stream.of(file.ls());
-            } catch (IOException e) {
-                LOGGER.debug("failed to list: " + file, e);
+    /**
+     * Lists a folder, matches its files and searches its subfolders.
+     */
+    private class FolderSearchTask extends RecursiveAction {
+        private final AbstractFile folder;
+        private final int level;
+
+        FolderSearchTask(AbstractFile folder, int level) {
+            this.folder = folder;
+            this.level = level;
+        }
+
+        @Override
+        protected void compute() {
+            AbstractFile[] children = ls(folder);
+            if (children.length == 0 || isInterrupted())
+                return;
+
+            List<FolderSearchTask> subfolderTasks = new ArrayList<>();
+            if (level + 1 < depth) {
+                for (AbstractFile child : children) {
+                    if (lsFilter.test(child)) {
+                        FolderSearchTask task = new FolderSearchTask(child, level + 1);
+                        task.fork();
+                        subfolderTasks.add(task);
+                    }
+                }
             }
+
+            MatchTask matchTask = new MatchTask(children, 0, children.length);
+            matchTask.invoke();
+            addFindings(matchTask.matches);
+
+            for (FolderSearchTask task : subfolderTasks)
+                task.join();
         }
-        return Stream.empty();
     }
 
-    private boolean match(AbstractFile file) {
-        return getState() != FileJobState.INTERRUPTED && fileMatcher.test(file);
+    /**
+     * Matches a range of files, splitting the range between subtasks when it is large.
+     */
+    private class MatchTask extends RecursiveAction {
+        private final AbstractFile[] files;
+        private final int from, to;
+        private List<AbstractFile> matches;
+
+        MatchTask(AbstractFile[] files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > MATCH_BATCH_SIZE) {
+                int middle = (from + to) >>> 1;
+                MatchTask left = new MatchTask(files, from, middle);
+                MatchTask right = new MatchTask(files, middle, to);
+                invokeAll(left, right);
+                matches = left.matches;
+                matches.addAll(right.matches);
+                return;
+            }
+
+            matches = new ArrayList<>();
+            for (int i = from; i < to && !isInterrupted(); i++)
+                if (match(files[i]))
+                    matches.add(files[i]);
+        }
     }
 
     public List<AbstractFile> getFindings() {
@@ -140,16 +271,15 @@ public class SearchJob extends FileJob implements com.mucommander.commons.file.p
         LOGGER.info("start searching {}", file);
         customThreadPool = threads > 0 ? new ForkJoinPool(threads) : new ForkJoinPool();
         try {
-            List<AbstractFile> files = Collections.singletonList(file);
-            for (int i=0; getState() != FileJobState.INTERRUPTED && i<depth && !files.isEmpty(); i++) {
-                Pair<List<AbstractFile>, Boolean> result = search(files, i != 0);
-                files = result.first;
-                if (result.second)
-                    listener.searchChanged();
-            }
+            if (depth > 0)
+                customThreadPool.invoke(new FolderSearchTask(file, 0));
+        } catch (CancellationException | RejectedExecutionException e) {
+            LOGGER.debug("search of {} was cancelled", file);
         } finally {
             LOGGER.info("completed searching {}", file);
-            listener = null;
+            if (findingsChanged)
+                listener.searchChanged();
+            listener = nullListener;
             customThreadPool.shutdown();
         }
         return true;
@@ -21,18 +21,39 @@ package com.mucommander.job.impl;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.FileURL;
 import com.mucommander.commons.file.FilePermissions;
+import com.mucommander.commons.file.archive.AbstractArchiveEntryFile;
+import com.mucommander.commons.file.connection.ConnectionPool;
+import com.mucommander.commons.file.protocol.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.io.ByteCounter;
 import com.mucommander.commons.io.ChecksumInputStream;
@@ -46,6 +67,7 @@ import com.mucommander.job.FileJobAction;
 import com.mucommander.job.FileJobState;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.DialogAction;
+import com.mucommander.job.ui.DialogResult;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
 
@@ -90,8 +112,47 @@ public abstract class TransferFileJob extends FileJob {
     private boolean isCheckingIntegrity;
 
     /** The checksum algorithm used for checking the integrity of transferred files. The algorithm has to be the fastest
-     * possible (to have the minimum impact on transfer speed) and does not need to have a good resitance to collision. */
-    private final static String CHECKSUM_VERIFICATION_ALGORITHM = "Adler32";
+     * possible (to have the minimum impact on transfer speed) and does not need to have a good resitance to collision.
+     * CRC32C is computed with dedicated CPU instructions where available, and detects more errors than Adler32. */
+    private final static String CHECKSUM_VERIFICATION_ALGORITHM = "CRC32C";
+
+    /** Calculates the checksum of destination files while the checksum of the source file is calculated by the
+     * transferring thread, see {@link #verifyIntegrity(InputStream, AbstractFile, AbstractFile, ConcurrentTransfer)}.
+     * Each calculation holds one of the job's transfer slots, see {@link IntegrityCheck}. */
+    private final static ExecutorService integrityCheckExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "IntegrityCheck");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Maximum number of bytes transferred at once when copying between local files, see
+     * {@link #copyLocalFile(File, File, boolean, ConcurrentTransfer)}. Progress, throughput limit, pause and stop are
+     * handled between chunks. */
+    private final static long LOCAL_TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /** Maximum number of files that are copied concurrently, see {@link #setConcurrentTransfers(int)} */
+    private int nbConcurrentTransfers = 1;
+
+    /** Runs concurrent transfers, created when the first one is submitted */
+    private ExecutorService transferExecutor;
+
+    /** Bounds the number of concurrent transfers that are queued or running */
+    private Semaphore transferSlots;
+
+    /** Bounds the number of concurrent transfers per realm, keyed by realm */
+    private final Map<String, Semaphore> realmSlots = new HashMap<>();
+
+    /** Concurrent transfers that are queued or in progress, also used to synchronize access to concurrent transfer state */
+    private final Set<ConcurrentTransfer> activeTransfers = new HashSet<>();
+
+    /** True while the job is paused, blocks the source streams of concurrent transfers */
+    private boolean transfersPaused;
+
+    /** Concurrent transfers of the top-level file being processed, null if none were submitted for it */
+    private PendingFile pendingFile;
+
+    /** Ensures that dialogs are shown to the user one at a time when files are copied concurrently */
+    private final Object dialogLock = new Object();
 
 
     static {
@@ -122,6 +183,17 @@ public abstract class TransferFileJob extends FileJob {
         // Reset this field in case it was set to true for the previous file
         isCheckingIntegrity = false;
 
+        copyFile(sourceFile, destFile, append, null);
+    }
+
+    /**
+     * Copies the given source file to the specified destination file, on behalf of the given concurrent transfer or
+     * of the job's thread. When a concurrent transfer is specified, bytes are accounted in the transfer's counters and
+     * the source stream is registered with the transfer rather than with the job.
+     *
+     * @param transfer the concurrent transfer that copies the file, null if the file is copied by the job's thread
+     */
+    private void copyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, ConcurrentTransfer transfer) throws FileTransferException {
         // Throw a specific FileTransferException if source and destination files are identical
         if(sourceFile.equalsCanonical(destFile))
             throw new FileTransferException(FileTransferError.SOURCE_AND_DESTINATION_IDENTICAL);
@@ -141,6 +213,13 @@ public abstract class TransferFileJob extends FileJob {
             }
         }
 
+        // Local to local copies are performed by the kernel, without moving the data through a user-space buffer.
+        // The data can't be checksummed on the fly, so the regular stream copy is used when integrity is checked.
+        if(!copied && !integrityCheckEnabled && isLocalRegularFile(sourceFile) && isLocalFile(destFile)) {
+            copyLocalFile((File)sourceFile.getUnderlyingFileObject(), (File)destFile.getUnderlyingFileObject(), append, transfer);
+            copied = true;
+        }
+
         // If the file wasn't copied using copyRemotelyTo(), or if copyRemotelyTo() failed
         InputStream in = null;
         if(!copied) {
@@ -157,17 +236,15 @@ public abstract class TransferFileJob extends FileJob {
 
                         inLength -= destFileSize;
                         // Increase current file ByteCounter by the number of bytes skipped
-                        currentFileByteCounter.add(destFileSize);
+                        (transfer==null?currentFileByteCounter:transfer.byteCounter).add(destFileSize);
                         // Increase skipped ByteCounter by the number of bytes skipped
-                        currentFileSkippedByteCounter.add(destFileSize);
+                        (transfer==null?currentFileSkippedByteCounter:transfer.skippedByteCounter).add(destFileSize);
                     }
                     else {
                         in = sourceFile.getInputStream();
                         if(integrityCheckEnabled)
                             in = new ChecksumInputStream(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
                     }
-
-                    setCurrentInputStream(in);
                 }
                 catch(Exception e) {
                     LOGGER.debug("IOException caught, throwing FileTransferException", e);
@@ -175,14 +252,18 @@ public abstract class TransferFileJob extends FileJob {
                 }
 
                 // Copy source stream to destination file
-                destFile.copyStream(tlin, append, inLength);
+                InputStream source = transfer==null?setCurrentInputStream(in):transfer.open(in, transfer.byteCounter);
+                destFile.copyStream(source, append, inLength);
             }
             finally {
                 // This block will always be executed, even if an exception
                 // was thrown in the catch block
 
                 // Tries to close the streams no matter what happened before
-                closeCurrentInputStream();
+                if(transfer==null)
+                    closeCurrentInputStream();
+                else
+                    transfer.close();
             }
         }
 
@@ -198,48 +279,226 @@ public abstract class TransferFileJob extends FileJob {
 
         // This block is executed only if integrity check has been enabled (disabled by default)
         if(integrityCheckEnabled) {
-            String sourceChecksum;
-            String destinationChecksum;
-
             // Indicate that integrity is being checked, the value is reset when the next file starts
-            isCheckingIntegrity = true;
+            if(transfer==null)
+                isCheckingIntegrity = true;
+
+            verifyIntegrity(in, sourceFile, destFile, transfer);
+        }
+    }
 
-            if(in!=null && (in instanceof ChecksumInputStream)) {
-                // The file was copied with a ChecksumInputStream, the checksum is already calculated, simply
-                // retrieve it
-                sourceChecksum = ((ChecksumInputStream)in).getChecksumString();
+    /**
+     * Verifies that the checksums of the given source and destination files match, throwing a
+     * {@link FileTransferError#CHECKSUM_MISMATCH} exception if they don't.
+     *
+     * <p>If the file was copied with a {@link ChecksumInputStream}, the source checksum was calculated as the file was
+     * read and only the destination file is read again. Otherwise, i.e. if the file was copied using
+     * {@link AbstractFile#copyRemotelyTo(AbstractFile)} or if the transfer was resumed, both files have to be read.
+     * If one of the job's transfer slots is free, the destination file is then read by another thread while the source
+     * file is read by this one, so that verifying the copy takes about as long as reading the larger of the two files.
+     * Otherwise, the files are read one after the other.</p>
+     *
+     * @param in the stream the source file was copied from, may be null
+     * @param transfer the concurrent transfer the file was copied by, null if it was copied by the job's thread
+     */
+    private void verifyIntegrity(InputStream in, AbstractFile sourceFile, AbstractFile destFile, ConcurrentTransfer transfer) throws FileTransferException {
+        String sourceChecksum;
+        String destinationChecksum;
+
+        if(in instanceof ChecksumInputStream) {
+            // The file was copied with a ChecksumInputStream, the checksum is already calculated, simply
+            // retrieve it
+            sourceChecksum = ((ChecksumInputStream)in).getChecksumString();
+
+            // Calculate the destination file's checksum
+            try {
+                destinationChecksum = transfer==null?calculateChecksum(destFile):calculateChecksum(destFile, transfer);
             }
-            else {
-                // The file was copied using AbstractFile#copyRemotelyTo(), or the transfer was resumed:
-                // we have to calculate the source file's checksum from scratch.
+            catch(Exception e) {
+                throw new FileTransferException(FileTransferError.READING_DESTINATION);
+            }
+        }
+        else {
+            // We have to calculate the source file's checksum from scratch: read the destination file meanwhile if
+            // a transfer slot is free
+            IntegrityCheck destinationCheck = startIntegrityCheck(destFile);
+            try {
                 try {
-                    sourceChecksum = calculateChecksum(sourceFile);
+                    sourceChecksum = transfer==null?calculateChecksum(sourceFile):calculateChecksum(sourceFile, transfer);
                 }
                 catch(Exception e) {
                     throw new FileTransferException(FileTransferError.READING_SOURCE);
                 }
+
+                try {
+                    if(destinationCheck!=null)
+                        destinationChecksum = destinationCheck.checksum.get();
+                    else
+                        destinationChecksum = transfer==null?calculateChecksum(destFile):calculateChecksum(destFile, transfer);
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new FileTransferException(FileTransferError.READING_DESTINATION);
+                }
+                catch(Exception e) {
+                    throw new FileTransferException(FileTransferError.READING_DESTINATION);
+                }
+            }
+            finally {
+                // Stops reading the destination file if the source file could not be read
+                if(destinationCheck!=null)
+                    destinationCheck.stop();
             }
+        }
 
-            LOGGER.debug("Source checksum= "+sourceChecksum);
+        LOGGER.debug("Source checksum= "+sourceChecksum);
+        LOGGER.debug("Destination checksum= "+destinationChecksum);
 
-            // Calculate the destination file's checksum
+        // Compare both checksums and throw an exception if they don't match
+        if(!sourceChecksum.equals(destinationChecksum)) {
+            throw new FileTransferException(FileTransferError.CHECKSUM_MISMATCH);
+        }
+    }
+
+
+    /**
+     * Returns <code>true</code> if the given file is a regular file, or a file that doesn't exist yet, on a local
+     * filesystem.
+     */
+    private static boolean isLocalFile(AbstractFile file) {
+        return file.getUnderlyingFileObject() instanceof File && !file.isDirectory() && !file.isSymlink();
+    }
+
+    /**
+     * Returns <code>true</code> if the given file is a non-empty regular file on a local filesystem. Files that report
+     * a size of 0 may still have contents (e.g. the ones in <code>/proc</code>), and special files such as FIFOs have
+     * no meaningful size: both are copied with streams, which read until the end of the data.
+     */
+    private static boolean isLocalRegularFile(AbstractFile file) {
+        Object underlyingFile = file.getUnderlyingFileObject();
+        return underlyingFile instanceof File
+                && !file.isSymlink()
+                && Files.isRegularFile(((File)underlyingFile).toPath())
+                && file.getSize()>0;
+    }
+
+    /**
+     * Returns <code>true</code> if a byte can still be read from the given channel at the given position. Used to find
+     * out which of the channels failed when a transfer between two channels fails.
+     */
+    private static boolean isReadable(FileChannel channel, long position) {
+        try {
+            channel.read(ByteBuffer.allocate(1), position);
+            return true;
+        }
+        catch(IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies the given local source file to the specified local destination file, optionally resuming the operation.
+     * The data is moved with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which
+     * lets the kernel copy it without going through a user-space buffer (<code>copy_file_range</code> or
+     * <code>sendfile</code>, depending on the platform and JRE).
+     *
+     * <p>The file is transferred in chunks of at most {@link #LOCAL_TRANSFER_CHUNK_SIZE} bytes. Before each chunk,
+     * the corresponding number of bytes is skipped in the {@link #setCurrentInputStream(InputStream) current input
+     * stream}, which is opened on the source channel: this accounts the chunk in the byte counters, blocks while the
+     * job is paused and enforces the throughput limit. Closing the current input stream when the job is stopped or
+     * the file is skipped closes the source channel and interrupts the transfer.</p>
+     *
+     * <p>When a concurrent transfer is specified, the source stream is registered with the transfer and bytes are
+     * accounted in the transfer's counters instead.</p>
+     */
+    private void copyLocalFile(File sourceFile, File destFile, boolean append, ConcurrentTransfer transfer) throws FileTransferException {
+        FileChannel sourceChannel;
+        try {
+            sourceChannel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ);
+        }
+        catch(IOException e) {
+            LOGGER.debug("IOException caught, throwing FileTransferException", e);
+            throw new FileTransferException(FileTransferError.OPENING_SOURCE);
+        }
+
+        try {
+            InputStream in = transfer==null
+                    ?setCurrentInputStream(Channels.newInputStream(sourceChannel))
+                    :transfer.open(Channels.newInputStream(sourceChannel), transfer.byteCounter);
+
+            FileChannel destChannel;
             try {
-                destinationChecksum = calculateChecksum(destFile);
+                destChannel = append
+                        ?FileChannel.open(destFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                        :FileChannel.open(destFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
             }
-            catch(Exception e) {
-                throw new FileTransferException(FileTransferError.READING_DESTINATION);
+            catch(IOException e) {
+                LOGGER.debug("IOException caught, throwing FileTransferException", e);
+                throw new FileTransferException(FileTransferError.OPENING_DESTINATION);
             }
 
-            LOGGER.debug("Destination checksum= "+destinationChecksum);
+            // The error that is reported if the current operation fails
+            FileTransferError error = FileTransferError.READING_SOURCE;
+            try {
+                long position = 0;
+                long size = sourceChannel.size();
+                if(append) {
+                    error = FileTransferError.WRITING_DESTINATION;
+                    position = Math.min(destChannel.size(), size);
+                    error = FileTransferError.READING_SOURCE;
+                    sourceChannel.position(position);
+                    // Increase current file ByteCounters by the number of bytes skipped
+                    (transfer==null?currentFileByteCounter:transfer.byteCounter).add(position);
+                    (transfer==null?currentFileSkippedByteCounter:transfer.skippedByteCounter).add(position);
+                }
+
+                while(position<size) {
+                    error = FileTransferError.READING_SOURCE;
+                    // Skipping advances the source channel and goes through the byte counter and throughput limiter
+                    long nbBytes = in.skip(Math.min(LOCAL_TRANSFER_CHUNK_SIZE, size-position));
+                    if(nbBytes<=0)
+                        break;
 
-            // Compare both checksums and throw an exception if they don't match
-            if(!sourceChecksum.equals(destinationChecksum)) {
-                throw new FileTransferException(FileTransferError.CHECKSUM_MISMATCH);
+                    long end = position+nbBytes;
+                    while(position<end) {
+                        long nbTransferred;
+                        try {
+                            nbTransferred = sourceChannel.transferTo(position, end-position, destChannel);
+                        }
+                        catch(IOException e) {
+                            // transferTo doesn't tell which channel failed: blame the source only if it can't be read
+                            error = isReadable(sourceChannel, position)?FileTransferError.WRITING_DESTINATION:FileTransferError.READING_SOURCE;
+                            throw e;
+                        }
+                        // The source file was truncated while being copied
+                        if(nbTransferred<=0)
+                            throw new IOException("Unexpected end of file: "+sourceFile);
+
+                        position += nbTransferred;
+                    }
+                }
+            }
+            catch(IOException e) {
+                LOGGER.debug("IOException caught, throwing FileTransferException", e);
+                throw new FileTransferException(error, (transfer==null?currentFileByteCounter:transfer.byteCounter).getByteCount());
             }
+            finally {
+                try {
+                    destChannel.close();
+                }
+                catch(IOException e) {
+                    throw new FileTransferException(FileTransferError.CLOSING_DESTINATION);
+                }
+            }
+        }
+        finally {
+            if(transfer==null)
+                closeCurrentInputStream();
+            else
+                transfer.close();
         }
     }
 
-
     private void tryCopyFilePermissions(AbstractFile sourceFile, AbstractFile destFile) {
         if(destFile.isFileOperationSupported(FileOperation.CHANGE_PERMISSION)) {
             try {
@@ -326,32 +585,7 @@ public abstract class TransferFileJob extends FileJob {
                 // Print the exception's stack trace
                 LOGGER.debug("Copy failed", e);
 
-                DialogAction choice;
-                switch(e.getReason()) {
-                    // Could not open source file for read
-                    case OPENING_SOURCE:
-                        choice = showErrorDialog(errorDialogTitle, Translator.get("cannot_read_file", sourceFile.getName()));
-                        break;
-                    // Could not open destination file for write
-                    case OPENING_DESTINATION:
-                        choice = showErrorDialog(errorDialogTitle, Translator.get("cannot_write_file", destFile.getName()));
-                        break;
-                    // Source and destination files are identical
-                    case SOURCE_AND_DESTINATION_IDENTICAL:
-                        choice = showErrorDialog(errorDialogTitle, Translator.get("same_source_destination"));
-                        break;
-                    // Checksum of source and destination files don't match
-                    case CHECKSUM_MISMATCH:
-                        choice = showErrorDialog(errorDialogTitle, Translator.get("integrity_check_error"));
-                        break;
-                    default:
-                        choice = showErrorDialog(errorDialogTitle,
-                                                 Translator.get("error_while_transferring", sourceFile.getName()),
-                                                 Arrays.asList(FileJobAction.SKIP, FileJobAction.SKIP_ALL,
-                                                         FileJobAction.APPEND, FileJobAction.RETRY,
-                                                         FileJobAction.CANCEL));
-                    break;
-                }
+                DialogAction choice = showTransferErrorDialog(e, sourceFile, destFile, errorDialogTitle);
 
                 // Retry action (append or retry)
                 if(choice==FileJobAction.RETRY || choice==FileJobAction.APPEND) {
@@ -369,6 +603,626 @@ public abstract class TransferFileJob extends FileJob {
         } while(true);
     }
 
+    /**
+     * Shows an error dialog that reports the given transfer error, and returns the action chosen by the user.
+     */
+    private DialogAction showTransferErrorDialog(FileTransferException e, AbstractFile sourceFile, AbstractFile destFile, String errorDialogTitle) {
+        DialogAction choice;
+        switch(e.getReason()) {
+            // Could not open source file for read
+            case OPENING_SOURCE:
+                choice = showErrorDialog(errorDialogTitle, Translator.get("cannot_read_file", sourceFile.getName()));
+                break;
+            // Could not open destination file for write
+            case OPENING_DESTINATION:
+                choice = showErrorDialog(errorDialogTitle, Translator.get("cannot_write_file", destFile.getName()));
+                break;
+            // Source and destination files are identical
+            case SOURCE_AND_DESTINATION_IDENTICAL:
+                choice = showErrorDialog(errorDialogTitle, Translator.get("same_source_destination"));
+                break;
+            // Checksum of source and destination files don't match
+            case CHECKSUM_MISMATCH:
+                choice = showErrorDialog(errorDialogTitle, Translator.get("integrity_check_error"));
+                break;
+            default:
+                choice = showErrorDialog(errorDialogTitle,
+                                         Translator.get("error_while_transferring", sourceFile.getName()),
+                                         Arrays.asList(FileJobAction.SKIP, FileJobAction.SKIP_ALL,
+                                                 FileJobAction.APPEND, FileJobAction.RETRY,
+                                                 FileJobAction.CANCEL));
+            break;
+        }
+
+        return choice;
+    }
+
+    /**
+     * Sets the maximum number of files that are copied concurrently by {@link #tryCopyFileConcurrently(AbstractFile, AbstractFile, boolean, String)}.
+     * A value of <code>1</code> (the default) copies files one after the other, on the job's thread. This method must
+     * be called before the job is started.
+     *
+     * @param nbConcurrentTransfers maximum number of files that are copied concurrently
+     */
+    public void setConcurrentTransfers(int nbConcurrentTransfers) {
+        this.nbConcurrentTransfers = Math.max(1, nbConcurrentTransfers);
+    }
+
+    /**
+     * Returns the maximum number of files that are copied concurrently, <code>1</code> if files are copied one after
+     * the other.
+     *
+     * @return the maximum number of files that are copied concurrently
+     */
+    public int getConcurrentTransfers() {
+        return nbConcurrentTransfers;
+    }
+
+    /**
+     * Returns <code>true</code> if {@link #tryCopyFileConcurrently(AbstractFile, AbstractFile, boolean, String)}
+     * copies files on worker threads, in which case the copy may not be complete when the method returns.
+     *
+     * @return true if files are copied on worker threads
+     */
+    protected boolean isConcurrentTransferEnabled() {
+        return nbConcurrentTransfers>1;
+    }
+
+    /**
+     * Same as {@link #tryCopyFile(AbstractFile, AbstractFile, boolean, String)}, except that the copy is handed over
+     * to a worker thread when {@link #setConcurrentTransfers(int) concurrent transfers} are enabled, so that the job
+     * can carry on with the next files while this one is being transferred.
+     *
+     * <p>This method blocks while the maximum number of transfers are queued or running. Transfers are further limited
+     * to the {@link ConnectionPool#getMaxConnectionsPerRealm(com.mucommander.commons.file.FileURL) number of
+     * connections} that can be opened to the source and destination realms. Errors are reported by the worker threads,
+     * one dialog at a time. Files that are located inside an archive are always copied on the job's thread, as
+     * archives do not support concurrent access to their entries.</p>
+     *
+     * <p>Pending transfers are waited for in {@link #waitForAsyncProcessing()}. A top-level file whose copy was queued
+     * is only unmarked once all the transfers submitted while processing it have succeeded, see
+     * {@link #fileProcessed(AbstractFile, boolean)}.</p>
+     *
+     * @return true if the file was properly copied or queued for copy, false if the transfer was interrupted / aborted by the user
+     */
+    protected boolean tryCopyFileConcurrently(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle) {
+        if(!isConcurrentTransferEnabled()
+                || sourceFile.hasAncestor(AbstractArchiveEntryFile.class)
+                || destFile.hasAncestor(AbstractArchiveEntryFile.class))
+            return tryCopyFile(sourceFile, destFile, append, errorDialogTitle);
+
+        return submitConcurrentTransfer(new ConcurrentTransfer(sourceFile, destFile, append, errorDialogTitle));
+    }
+
+    /**
+     * Calculates the checksum of the given file on a worker thread, so that the job can carry on with the next files
+     * while this one is being read. Like copies started by
+     * {@link #tryCopyFileConcurrently(AbstractFile, AbstractFile, boolean, String)}, checksums are calculated
+     * concurrently up to the number of {@link #setConcurrentTransfers(int) concurrent transfers} and of connections
+     * that the file's realm allows, and errors are reported by the worker threads.
+     *
+     * <p>This method must be called only if {@link #isConcurrentTransferEnabled() concurrent transfers are enabled},
+     * and not for files located inside an archive. Pending checksums are waited for in
+     * {@link #waitForAsyncProcessing()}.</p>
+     *
+     * @param file the file to calculate the checksum of
+     * @param algorithm the name of the <code>MessageDigest</code> algorithm to use
+     * @param listener called by the worker thread with the checksum of the file, or with <code>null</code> if it
+     * could not be calculated
+     * @return true if the calculation was queued, false if it was interrupted / aborted by the user
+     */
+    protected boolean tryCalculateChecksumConcurrently(AbstractFile file, String algorithm, Consumer<String> listener) {
+        if(!submitConcurrentTransfer(new ConcurrentChecksum(file, algorithm, listener))) {
+            listener.accept(null);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Hands the given transfer over to a worker thread, blocking while the maximum number of transfers are queued or
+     * running.
+     *
+     * @return true if the transfer was queued, false if the job was interrupted
+     */
+    private boolean submitConcurrentTransfer(ConcurrentTransfer transfer) {
+        synchronized(activeTransfers) {
+            if(transferExecutor==null) {
+                transferExecutor = Executors.newFixedThreadPool(nbConcurrentTransfers);
+                // Allow the next transfers to be queued while the current ones are running
+                transferSlots = new Semaphore(2*nbConcurrentTransfers);
+            }
+        }
+
+        try {
+            transferSlots.acquire();
+        }
+        catch(InterruptedException e) {
+            return false;
+        }
+
+        if(getState()==FileJobState.INTERRUPTED) {
+            transferSlots.release();
+            return false;
+        }
+
+        synchronized(activeTransfers) {
+            // Transfers are accounted to the top-level file being processed, which is unmarked once they are over
+            AbstractFile topLevelFile = files.elementAt(getCurrentFileIndex());
+            if(pendingFile==null || pendingFile.file!=topLevelFile)
+                pendingFile = new PendingFile(topLevelFile);
+            pendingFile.nbTransfers++;
+            transfer.pendingFile = pendingFile;
+
+            activeTransfers.add(transfer);
+        }
+        transferExecutor.execute(transfer);
+
+        return true;
+    }
+
+    /**
+     * Waits for the transfers started by {@link #tryCopyFileConcurrently(AbstractFile, AbstractFile, boolean, String)}
+     * to complete.
+     */
+    @Override
+    protected void waitForAsyncProcessing() {
+        super.waitForAsyncProcessing();
+
+        ExecutorService executor;
+        synchronized(activeTransfers) {
+            executor = transferExecutor;
+        }
+
+        if(executor==null)
+            return;
+
+        executor.shutdown();
+        try {
+            while(!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                LOGGER.trace("waiting for concurrent transfers to complete");
+            }
+        }
+        catch(InterruptedException e) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the throughput limit of each concurrent transfer: the job's limit is shared evenly among the maximum
+     * number of concurrent transfers, and transfers are blocked while the job is paused.
+     */
+    private long getConcurrentThroughputLimit() {
+        if(transfersPaused)
+            return 0;
+
+        return throughputLimit<=0?-1:Math.max(1, throughputLimit/nbConcurrentTransfers);
+    }
+
+    /**
+     * Updates the throughput limit of the concurrent transfers in progress.
+     */
+    private void updateConcurrentThroughputLimit(boolean paused) {
+        synchronized(activeTransfers) {
+            transfersPaused = paused;
+            long limit = getConcurrentThroughputLimit();
+            for(ConcurrentTransfer transfer : activeTransfers)
+                transfer.setThroughputLimit(limit);
+        }
+    }
+
+    /**
+     * Returns the number of bytes that have been processed by the concurrent transfers in progress.
+     */
+    private long getConcurrentByteCount(boolean skipped) {
+        synchronized(activeTransfers) {
+            long count = 0;
+            for(ConcurrentTransfer transfer : activeTransfers)
+                count += (skipped?transfer.skippedByteCounter:transfer.byteCounter).getByteCount();
+            return count;
+        }
+    }
+
+    /**
+     * Acquires a transfer slot for the realms of the given files, blocking until the number of concurrent transfers
+     * on each realm is below the number of connections that the realm allows. Slots are acquired in a consistent order,
+     * to prevent transfers that involve the same two realms from blocking each other.
+     *
+     * @param destFile the destination file, null if the transfer has no destination
+     * @return the acquired slots, to be released once the transfer is over
+     */
+    private List<Semaphore> acquireRealmSlots(AbstractFile sourceFile, AbstractFile destFile) throws InterruptedException {
+        Map<String, Semaphore> slots = new TreeMap<>();
+        for(AbstractFile file : new AbstractFile[]{sourceFile, destFile}) {
+            if(file==null)
+                continue;
+
+            slots.put(file.getURL().getRealm().toString(false), getRealmSlots(file));
+        }
+
+        List<Semaphore> acquired = new ArrayList<>(slots.size());
+        try {
+            for(Semaphore semaphore : slots.values()) {
+                semaphore.acquire();
+                acquired.add(semaphore);
+            }
+        }
+        catch(InterruptedException e) {
+            releaseRealmSlots(acquired);
+            throw e;
+        }
+
+        return acquired;
+    }
+
+    /**
+     * Returns the semaphore that bounds the number of concurrent transfers on the given file's realm.
+     */
+    private Semaphore getRealmSlots(AbstractFile file) {
+        FileURL realm = file.getURL().getRealm();
+        String key = realm.toString(false);
+        synchronized(realmSlots) {
+            Semaphore semaphore = realmSlots.get(key);
+            if(semaphore==null) {
+                // Local files do not go through a connection pool
+                int nbSlots = LocalFile.SCHEMA.equals(realm.getScheme())
+                        ?nbConcurrentTransfers
+                        :Math.max(1, Math.min(nbConcurrentTransfers, ConnectionPool.getMaxConnectionsPerRealm(realm)));
+                semaphore = new Semaphore(nbSlots);
+                realmSlots.put(key, semaphore);
+            }
+            return semaphore;
+        }
+    }
+
+    private static void releaseRealmSlots(List<Semaphore> slots) {
+        for(Semaphore semaphore : slots)
+            semaphore.release();
+    }
+
+    /**
+     * Calculates the checksum of the given file on behalf of a concurrent transfer. Bytes read to calculate the
+     * checksum are not accounted as transferred.
+     */
+    private String calculateChecksum(AbstractFile file, ConcurrentTransfer transfer) throws IOException, NoSuchAlgorithmException {
+        return calculateChecksum(file, transfer, new ByteCounter(), CHECKSUM_VERIFICATION_ALGORITHM);
+    }
+
+    /**
+     * Calculates the checksum of the given file with the given algorithm on behalf of a concurrent transfer, counting
+     * the bytes read with the given counter.
+     */
+    private String calculateChecksum(AbstractFile file, ConcurrentTransfer transfer, ByteCounter counter, String algorithm) throws IOException, NoSuchAlgorithmException {
+        InputStream in = transfer.open(file.getInputStream(), counter);
+        try {
+            return AbstractFile.calculateChecksum(in, MessageDigest.getInstance(algorithm));
+        }
+        finally {
+            transfer.close();
+        }
+    }
+
+
+    /**
+     * A file copy that is carried out by a worker thread, concurrently with the job's thread and other transfers.
+     * Each transfer has its own byte counters and source stream; streams are paused, throttled and closed along with
+     * the job.
+     */
+    private class ConcurrentTransfer implements Runnable {
+
+        final AbstractFile sourceFile;
+        private final AbstractFile destFile;
+        private final String errorDialogTitle;
+        private boolean append;
+
+        /** Number of bytes processed by this transfer so far */
+        final ByteCounter byteCounter = new ByteCounter();
+
+        /** Number of bytes skipped by this transfer so far (resumed file) */
+        private final ByteCounter skippedByteCounter = new ByteCounter();
+
+        /** Source stream currently in use, may be null */
+        private ThroughputLimitInputStream in;
+
+        /** The top-level file this transfer was submitted for */
+        private PendingFile pendingFile;
+
+        /** True once the transfer has succeeded */
+        private boolean succeeded;
+
+        /** True if the transfer was stopped, no stream can be opened anymore */
+        private boolean stopped;
+
+        private ConcurrentTransfer(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle) {
+            this.sourceFile = sourceFile;
+            this.destFile = destFile;
+            this.append = append;
+            this.errorDialogTitle = errorDialogTitle;
+        }
+
+        @Override
+        public void run() {
+            List<Semaphore> slots = null;
+            try {
+                slots = acquireRealmSlots(sourceFile, destFile);
+
+                do {  // Loop for retry
+                    if(getState()==FileJobState.INTERRUPTED)
+                        return;
+
+                    try {
+                        transfer();
+                        succeeded = true;
+                        return;
+                    }
+                    catch(FileTransferException e) {
+                        // The stream was most likely closed as a result of the job being interrupted
+                        if(getState()==FileJobState.INTERRUPTED)
+                            return;
+
+                        LOGGER.debug("Copy failed", e);
+
+                        DialogAction choice;
+                        synchronized(dialogLock) {
+                            if(getState()==FileJobState.INTERRUPTED)
+                                return;
+                            choice = reportError(e);
+                        }
+
+                        if(choice!=FileJobAction.RETRY && choice!=FileJobAction.APPEND)
+                            return;
+
+                        byteCounter.reset();
+                        skippedByteCounter.reset();
+                        append = choice==FileJobAction.APPEND;
+                    }
+                } while(true);
+            }
+            catch(InterruptedException e) {
+                // The job was stopped while waiting for a slot
+            }
+            finally {
+                if(slots!=null)
+                    releaseRealmSlots(slots);
+
+                // Account this transfer's bytes in the job's totals
+                boolean unmark;
+                synchronized(activeTransfers) {
+                    activeTransfers.remove(this);
+                    totalByteCounter.add(byteCounter, true);
+                    totalSkippedByteCounter.add(skippedByteCounter, true);
+                    unmark = pendingFile.transferDone(succeeded);
+                }
+                transferSlots.release();
+
+                if(unmark)
+                    unmarkFile(pendingFile.file);
+            }
+        }
+
+        /**
+         * Reports the given error to the user and returns the chosen action, which may be to retry or append.
+         */
+        DialogAction reportError(FileTransferException e) {
+            return showTransferErrorDialog(e, sourceFile, destFile, errorDialogTitle);
+        }
+
+        /**
+         * Carries out this transfer, called by {@link #run()} until it succeeds or the user gives up.
+         */
+        void transfer() throws FileTransferException {
+            copyFile(sourceFile, destFile, append, this);
+        }
+
+        /**
+         * Registers the given stream as this transfer's source stream, counting the bytes read from it with the
+         * given counter.
+         */
+        private InputStream open(InputStream stream, ByteCounter counter) throws FileTransferException {
+            synchronized(activeTransfers) {
+                // Don't start reading if the job or this transfer was stopped in the meantime
+                if(getState()==FileJobState.INTERRUPTED || stopped) {
+                    try { stream.close(); }
+                    catch(IOException e) {}
+                    throw new FileTransferException(FileTransferError.OPENING_SOURCE);
+                }
+
+                in = new ThroughputLimitInputStream(new CounterInputStream(stream, counter), getConcurrentThroughputLimit());
+                return in;
+            }
+        }
+
+        /**
+         * Closes this transfer's source stream, if any.
+         */
+        private void close() {
+            ThroughputLimitInputStream stream;
+            synchronized(activeTransfers) {
+                stream = in;
+                in = null;
+            }
+
+            if(stream!=null) {
+                try { stream.close(); }
+                catch(IOException e) {}
+            }
+        }
+
+        /**
+         * Stops this transfer: its source stream is closed and no other stream can be opened.
+         */
+        void stop() {
+            synchronized(activeTransfers) {
+                stopped = true;
+            }
+            close();
+        }
+
+        private void setThroughputLimit(long limit) {
+            if(in!=null)
+                in.setThroughputLimit(limit);
+        }
+    }
+
+    /**
+     * Starts calculating the checksum of the given destination file on another thread, if one of the job's transfer
+     * slots is free and the file's realm allows one more connection.
+     *
+     * @return the started calculation, null if none could be started
+     */
+    private IntegrityCheck startIntegrityCheck(AbstractFile destFile) {
+        Semaphore slots;
+        synchronized(activeTransfers) {
+            slots = transferSlots;
+        }
+
+        // Transfer slots only exist once concurrent transfers have been used
+        if(slots==null || !slots.tryAcquire())
+            return null;
+
+        Semaphore realmSlot = getRealmSlots(destFile);
+        if(!realmSlot.tryAcquire()) {
+            slots.release();
+            return null;
+        }
+
+        IntegrityCheck check = new IntegrityCheck(destFile, realmSlot);
+        synchronized(activeTransfers) {
+            activeTransfers.add(check);
+        }
+        integrityCheckExecutor.execute(check);
+
+        return check;
+    }
+
+    /**
+     * Calculates the checksum of a destination file on behalf of {@link #verifyIntegrity(InputStream, AbstractFile,
+     * AbstractFile, ConcurrentTransfer)}. The calculation holds a transfer slot and a slot of the file's realm, and its
+     * stream is paused, throttled and closed along with the job, like the ones of concurrent transfers.
+     */
+    private class IntegrityCheck extends ConcurrentTransfer {
+
+        private final Semaphore realmSlot;
+        private final CompletableFuture<String> checksum = new CompletableFuture<>();
+
+        private IntegrityCheck(AbstractFile file, Semaphore realmSlot) {
+            super(file, null, false, null);
+            this.realmSlot = realmSlot;
+        }
+
+        @Override
+        public void run() {
+            try {
+                checksum.complete(calculateChecksum(sourceFile, this));
+            }
+            catch(Throwable e) {
+                checksum.completeExceptionally(e);
+            }
+            finally {
+                synchronized(activeTransfers) {
+                    activeTransfers.remove(this);
+                }
+                realmSlot.release();
+                transferSlots.release();
+            }
+        }
+    }
+
+    /**
+     * Keeps track of the concurrent transfers that were submitted while processing a top-level file, so that the file
+     * is unmarked only once all of them have succeeded. Accessed while holding the lock on <code>activeTransfers</code>.
+     */
+    private static class PendingFile {
+
+        private final AbstractFile file;
+
+        /** Number of transfers that are queued or running */
+        private int nbTransfers;
+
+        /** True once {@link FileJob#processFile(AbstractFile, Object)} has returned for the file */
+        private boolean processed;
+
+        /** True if a transfer failed or if the file could not be processed */
+        private boolean failed;
+
+        private PendingFile(AbstractFile file) {
+            this.file = file;
+        }
+
+        /**
+         * Called when one of the file's transfers is over, returns <code>true</code> if the file must be unmarked.
+         */
+        private boolean transferDone(boolean success) {
+            nbTransfers--;
+            failed |= !success;
+
+            return processed && nbTransfers==0 && !failed;
+        }
+
+        /**
+         * Called when the file has been processed, returns <code>true</code> if the file must be unmarked.
+         */
+        private boolean processed(boolean success) {
+            processed = true;
+            failed |= !success;
+
+            return nbTransfers==0 && !failed;
+        }
+    }
+
+    /**
+     * A checksum calculation that is carried out by a worker thread, see
+     * {@link #tryCalculateChecksumConcurrently(AbstractFile, String, Consumer)}.
+     */
+    private class ConcurrentChecksum extends ConcurrentTransfer {
+
+        private final String algorithm;
+        private final Consumer<String> listener;
+        private String checksum;
+
+        private ConcurrentChecksum(AbstractFile file, String algorithm, Consumer<String> listener) {
+            super(file, null, false, null);
+            this.algorithm = algorithm;
+            this.listener = listener;
+        }
+
+        /**
+         * Reports a file that could not be read, offering to skip it, retry or cancel: there is no destination file
+         * to open or append to.
+         */
+        @Override
+        DialogAction reportError(FileTransferException e) {
+            return TransferFileJob.this.showErrorDialog(Translator.get("error"), Translator.get("error_while_transferring", sourceFile.getAbsolutePath()));
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            }
+            finally {
+                listener.accept(checksum);
+            }
+        }
+
+        @Override
+        void transfer() throws FileTransferException {
+            // Bytes read by a previous attempt are not accounted
+            byteCounter.reset();
+            try {
+                checksum = calculateChecksum(sourceFile, this, byteCounter, algorithm);
+            }
+            catch(FileTransferException e) {
+                throw e;
+            }
+            catch(Exception e) {
+                LOGGER.debug("IOException caught, throwing FileTransferException", e);
+                throw new FileTransferException(FileTransferError.READING_SOURCE);
+            }
+        }
+    }
+
 
     /**
      * Registers the given InputStream as currently in use, in order to:
@@ -520,7 +1374,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return the total number of bytes that have been processed by this job so far
      */
     public long getTotalByteCount() {
-        return totalByteCounter.getByteCount();
+        return totalByteCounter.getByteCount() + getConcurrentByteCount(false);
     }
 
     /**
@@ -530,7 +1384,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return the total number of bytes that have been skipped by this job so far
      */
     public long getTotalSkippedByteCount() {
-        return totalSkippedByteCounter.getByteCount();
+        return totalSkippedByteCounter.getByteCount() + getConcurrentByteCount(true);
     }
 
 
@@ -554,6 +1408,8 @@ public abstract class TransferFileJob extends FileJob {
             if(getState() != FileJobState.PAUSED && tlin !=null)
                 tlin.setThroughputLimit(throughputLimit);
         }
+
+        updateConcurrentThroughputLimit(getState() == FileJobState.PAUSED);
     }
 
     /**
@@ -585,6 +1441,17 @@ public abstract class TransferFileJob extends FileJob {
                 closeCurrentInputStream();
             }
         }
+
+        // Stop concurrent transfers
+        List<ConcurrentTransfer> transfers;
+        synchronized(activeTransfers) {
+            if(transferExecutor!=null)
+                transferExecutor.shutdownNow();
+            transfers = new ArrayList<>(activeTransfers);
+        }
+
+        for(ConcurrentTransfer transfer : transfers)
+            transfer.close();
     }
 
 
@@ -600,6 +1467,8 @@ public abstract class TransferFileJob extends FileJob {
             if(tlin !=null)
                 tlin.setThroughputLimit(0);
         }
+
+        updateConcurrentThroughputLimit(true);
     }
 
 
@@ -616,6 +1485,46 @@ public abstract class TransferFileJob extends FileJob {
             if(tlin !=null)
                 tlin.setThroughputLimit(throughputLimit);
         }
+
+        updateConcurrentThroughputLimit(false);
+    }
+
+
+    /**
+     * Overrides {@link FileJob#fileProcessed(AbstractFile, boolean)} so that a top-level file whose copy was handed over
+     * to concurrent transfers is unmarked only once these transfers have all succeeded, rather than when they were
+     * queued.
+     */
+    @Override
+    protected void fileProcessed(AbstractFile file, boolean success) {
+        boolean unmark;
+        synchronized(activeTransfers) {
+            PendingFile pending = pendingFile;
+            pendingFile = null;
+
+            if(pending==null || pending.file!=file) {
+                // No transfer was submitted for this file
+                unmark = success;
+            }
+            else {
+                unmark = pending.processed(success);
+            }
+        }
+
+        if(unmark)
+            unmarkFile(file);
+    }
+
+
+    /**
+     * Overrides {@link FileJob#waitForUserResponseObject(DialogResult)} so that dialogs shown by the job's thread and
+     * by concurrent transfers are shown one at a time.
+     */
+    @Override
+    protected Object waitForUserResponseObject(DialogResult dialog) {
+        synchronized(dialogLock) {
+            return super.waitForUserResponseObject(dialog);
+        }
     }
 
 
@@ -40,6 +40,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -48,7 +49,8 @@ import javax.swing.tree.DefaultMutableTreeNode;
 /**
  * This job unpacks a set of archive files to a base destination folder. Archive entries are extracted in their natural
  * order using {@link com.mucommander.commons.file.archive.AbstractArchiveFile#getEntryIterator()}, to traverse the archive only once
- * and achieve optimal performance.
+ * and achieve optimal performance. Archives that {@link AbstractArchiveFile#isBatchExtractionSupported() support batch
+ * extraction} are listed first, and the entries to unpack are then extracted together in a single pass.
  *
  * @author Maxence Bernard
  */
@@ -189,39 +191,20 @@ public class UnpackJob extends AbstractCopyJob {
         String destSeparator = destFolder.getSeparator();
 
         do {
+            // Selected regular file entries are removed from this list as they are found, to speed up subsequent searches
+            List<ArchiveEntry> remainingEntries = selectedEntries == null ? null : new ArrayList<>(selectedEntries);
+            boolean batchExtraction = archiveFile.isBatchExtractionSupported();
+
             // Unpack the archive, copying entries one by one, in the iterator's order
-            try (ArchiveEntryIterator iterator = archiveFile.getEntryIterator()) {
+            try (ArchiveEntryIterator iterator = batchExtraction
+                    ? archiveFile.getEntryIterator(getSelectedEntries(archiveFile, remainingEntries))
+                    : archiveFile.getEntryIterator()) {
                 ArchiveEntry entry;
                 while ((entry = iterator.nextEntry()) != null && getState() != FileJobState.INTERRUPTED) {
                     String entryPath = entry.getPath();
 
-                    boolean processEntry = false;
-                    if (selectedEntries == null) {    // Entries are processed
-                        processEntry = true;
-                    } else {                          // We need to determine if the entry should be processed or not
-                        // Process this entry if the selectedEntries set contains this entry, or a parent of this entry
-                        int nbSelectedEntries = selectedEntries.size();
-                        for (int i = 0; i < nbSelectedEntries; i++) {
-                            ArchiveEntry selectedEntry = selectedEntries.get(i);
-                            // Note: paths of directory entries must end with '/', so this compares whether
-                            // selectedEntry is a parent of the current entry.
-                            if (selectedEntry.isDirectory()) {
-                                if (entryPath.startsWith(selectedEntry.getPath())) {
-                                    processEntry = true;
-                                    break;
-                                    // Note: we can't remove selectedEntryPath from the set, we still need it
-                                }
-                            } else if (entryPath.equals(selectedEntry.getPath())) {
-                                // If the (regular file) entry is in the set, remove it as we no longer need it (will speed up
-                                // subsequent searches)
-                                processEntry = true;
-                                selectedEntries.remove(i);
-                                break;
-                            }
-                        }
-                    }
-
-                    if (!processEntry)
+                    // Entries extracted in a batch have already been selected
+                    if (!batchExtraction && !isSelected(entryPath, remainingEntries))
                         continue;
 
                     // Resolve the entry file
@@ -341,6 +324,59 @@ public class UnpackJob extends AbstractCopyJob {
         return false;
     }
 
+    /**
+     * Returns <code>true</code> if the entry with the given path is to be unpacked, i.e. if the given list contains this
+     * entry or one of its parents. Regular file entries are removed from the list when found, as they are no longer
+     * needed.
+     *
+     * @param entryPath the path of the entry
+     * @param remainingEntries the selected entries that remain to be found, <code>null</code> if all entries are to be
+     * unpacked
+     * @return <code>true</code> if the entry is to be unpacked
+     */
+    private static boolean isSelected(String entryPath, List<ArchiveEntry> remainingEntries) {
+        if (remainingEntries == null)
+            return true;
+
+        int nbSelectedEntries = remainingEntries.size();
+        for (int i = 0; i < nbSelectedEntries; i++) {
+            ArchiveEntry selectedEntry = remainingEntries.get(i);
+            // Note: paths of directory entries must end with '/', so this compares whether
+            // selectedEntry is a parent of the current entry.
+            if (selectedEntry.isDirectory()) {
+                if (entryPath.startsWith(selectedEntry.getPath()))
+                    return true;
+                // Note: we can't remove selectedEntryPath from the set, we still need it
+            } else if (entryPath.equals(selectedEntry.getPath())) {
+                // If the (regular file) entry is in the set, remove it as we no longer need it (will speed up
+                // subsequent searches)
+                remainingEntries.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lists the given archive and returns the entries to unpack, so that they can be extracted in a single batch.
+     *
+     * @param archiveFile the archive to list
+     * @param remainingEntries the selected entries, <code>null</code> if all entries are to be unpacked
+     * @return the entries to unpack
+     * @throws IOException if the archive could not be listed
+     */
+    private static List<ArchiveEntry> getSelectedEntries(AbstractArchiveFile archiveFile, List<ArchiveEntry> remainingEntries) throws IOException {
+        List<ArchiveEntry> entries = new ArrayList<>();
+        try (ArchiveEntryIterator iterator = archiveFile.getEntryIterator()) {
+            ArchiveEntry entry;
+            while ((entry = iterator.nextEntry()) != null) {
+                if (isSelected(entry.getPath(), remainingEntries))
+                    entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
     // This job modifies the base destination folder and its subfolders
     @Override
     protected boolean hasFolderChangedImpl(AbstractFile folder) {
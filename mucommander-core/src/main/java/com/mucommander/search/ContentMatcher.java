@@ -0,0 +1,297 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.BoundedInputStream;
+import com.mucommander.commons.io.BufferPool;
+
+/**
+ * Tells whether the contents of a file contain a given text.
+ *
+ * <p>Literal texts are searched at the byte level with the Boyer-Moore-Horspool algorithm, without decoding the file.
+ * The text is encoded in UTF-8 and in the platform's default charset, and a file matches if it contains either
+ * encoding. Case-insensitive searches of ASCII texts fold letters with a byte table, which is valid for all
+ * ASCII-compatible charsets; other case-insensitive searches, and regular expressions, decode the file in the default
+ * charset and search it through a bounded character window.</p>
+ *
+ * <p>Files are read until the first match, and at most {@link #setMaxBytes(long) max bytes} are read from each file.
+ * Instances are immutable once configured and can be shared by concurrent searches.</p>
+ */
+public abstract class ContentMatcher {
+
+    /** Size of the buffers files are read into */
+    private final static int BUFFER_SIZE = 65536;
+
+    /** Maximum number of bytes read from each file, -1 for no limit */
+    private long maxBytes = -1;
+
+    /**
+     * Creates a matcher for the given text.
+     *
+     * @param text the text to search for
+     * @param caseSensitive <code>true</code> to match the case of the text
+     * @param regex <code>true</code> if the text is a regular expression
+     * @return a matcher for the given text
+     */
+    public static ContentMatcher create(String text, boolean caseSensitive, boolean regex) {
+        if (regex)
+            return new RegexMatcher(Pattern.compile(text, Pattern.MULTILINE | (caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)));
+
+        if (!caseSensitive && !isAscii(text))
+            return new RegexMatcher(Pattern.compile(text, Pattern.LITERAL | Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+
+        return new LiteralMatcher(text, caseSensitive);
+    }
+
+    /**
+     * Sets the maximum number of bytes that are read from each file, the rest of the file is not searched.
+     *
+     * @param maxBytes maximum number of bytes read from each file, <code>0</code> or <code>-1</code> for no limit
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes <= 0 ? -1 : maxBytes;
+    }
+
+    /**
+     * Returns the maximum number of bytes that are read from each file, <code>-1</code> if there is no limit.
+     *
+     * @return the maximum number of bytes that are read from each file
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns <code>true</code> if the contents of the given file contain the text.
+     *
+     * @param file the file to search
+     * @return true if the contents of the given file contain the text
+     * @throws IOException if the file could not be read
+     */
+    public boolean matches(AbstractFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return matches(in);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given stream contains the text. The stream is not closed.
+     *
+     * @param in the stream to search
+     * @return true if the given stream contains the text
+     * @throws IOException if the stream could not be read
+     */
+    public boolean matches(InputStream in) throws IOException {
+        return find(maxBytes == -1 ? in : new BoundedInputStream(in, maxBytes, false));
+    }
+
+    protected abstract boolean find(InputStream in) throws IOException;
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++)
+            if (text.charAt(i) >= 0x80)
+                return false;
+        return true;
+    }
+
+
+    /**
+     * Searches literal texts with the Boyer-Moore-Horspool algorithm.
+     */
+    static class LiteralMatcher extends ContentMatcher {
+
+        /** Maps each byte to the byte it is compared as */
+        private final byte[] fold = new byte[256];
+
+        /** The encodings of the text, folded */
+        private final byte[][] patterns;
+
+        /** The shift tables of the patterns, indexed by folded byte */
+        private final int[][] shifts;
+
+        /** Length of the longest pattern */
+        private final int maxLength;
+
+        LiteralMatcher(String text, boolean caseSensitive) {
+            for (int i = 0; i < 256; i++)
+                fold[i] = (byte) (!caseSensitive && i >= 'A' && i <= 'Z' ? i + ('a' - 'A') : i);
+
+            List<byte[]> encodings = new ArrayList<>(2);
+            addEncoding(encodings, text, StandardCharsets.UTF_8);
+            addEncoding(encodings, text, Charset.defaultCharset());
+
+            patterns = new byte[encodings.size()][];
+            shifts = new int[encodings.size()][];
+            int max = 0;
+            for (int p = 0; p < patterns.length; p++) {
+                byte[] pattern = encodings.get(p);
+                for (int i = 0; i < pattern.length; i++)
+                    pattern[i] = fold[pattern[i] & 0xFF];
+                patterns[p] = pattern;
+                shifts[p] = createShiftTable(pattern);
+                max = Math.max(max, pattern.length);
+            }
+            maxLength = max;
+        }
+
+        private static void addEncoding(List<byte[]> encodings, String text, Charset charset) {
+            // The case of ASCII letters can only be folded at the byte level in ASCII-compatible charsets
+            if (!Arrays.equals("Aa".getBytes(charset), new byte[]{'A', 'a'}))
+                return;
+
+            byte[] encoding = text.getBytes(charset);
+            if (encoding.length == 0)
+                return;
+
+            for (byte[] e : encodings)
+                if (Arrays.equals(e, encoding))
+                    return;
+
+            encodings.add(encoding);
+        }
+
+        private static int[] createShiftTable(byte[] pattern) {
+            int length = pattern.length;
+            int[] shift = new int[256];
+            Arrays.fill(shift, length);
+            for (int i = 0; i < length - 1; i++)
+                shift[pattern[i] & 0xFF] = length - 1 - i;
+            return shift;
+        }
+
+        /**
+         * Returns the index of the first occurrence of the given folded pattern in the first <code>length</code>
+         * bytes of the buffer, <code>-1</code> if there is none.
+         */
+        private int indexOf(byte[] buffer, int length, byte[] pattern, int[] shift) {
+            int last = pattern.length - 1;
+            int i = 0;
+            while (i <= length - pattern.length) {
+                int j = last;
+                while (j >= 0 && fold[buffer[i + j] & 0xFF] == pattern[j])
+                    j--;
+                if (j < 0)
+                    return i;
+                i += shift[fold[buffer[i + last] & 0xFF] & 0xFF];
+            }
+            return -1;
+        }
+
+        @Override
+        protected boolean find(InputStream in) throws IOException {
+            if (maxLength == 0)
+                return true;
+
+            byte[] buffer = BufferPool.getByteArray(Math.max(BUFFER_SIZE, 2 * maxLength));
+            try {
+                int length = 0;
+                int nbRead;
+                while ((nbRead = in.read(buffer, length, buffer.length - length)) != -1) {
+                    length += nbRead;
+                    for (int p = 0; p < patterns.length; p++)
+                        if (indexOf(buffer, length, patterns[p], shifts[p]) != -1)
+                            return true;
+
+                    // Keep the end of the buffer, which may hold the beginning of a match
+                    int keep = Math.min(length, maxLength - 1);
+                    System.arraycopy(buffer, length - keep, buffer, 0, keep);
+                    length = keep;
+                }
+                return false;
+            } finally {
+                BufferPool.releaseByteArray(buffer);
+            }
+        }
+    }
+
+
+    /**
+     * Searches regular expressions in text decoded with the default charset. Like grep, matches are searched line by
+     * line: the text is searched through a window of complete lines, lines that are longer than the window are
+     * searched in overlapping parts.
+     */
+    static class RegexMatcher extends ContentMatcher {
+
+        /** Number of characters kept from the previous window when a line is longer than the window */
+        private final static int OVERLAP = 1024;
+
+        private final Pattern pattern;
+
+        RegexMatcher(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        private static int getLastLineEnd(CharBuffer window) {
+            for (int i = window.limit() - 1; i >= 0; i--)
+                if (window.get(i) == '\n')
+                    return i + 1;
+            return -1;
+        }
+
+        @Override
+        protected boolean find(InputStream in) throws IOException {
+            Reader reader = new InputStreamReader(in, Charset.defaultCharset());
+            CharBuffer window = BufferPool.getCharBuffer(BUFFER_SIZE);
+            try {
+                window.clear();
+                while (true) {
+                    boolean eof = reader.read(window) == -1;
+                    window.flip();
+
+                    int end = eof ? window.limit() : getLastLineEnd(window);
+                    boolean full = window.limit() == window.capacity();
+                    if (end == -1 && full)
+                        end = window.limit();
+
+                    if (end > 0) {
+                        Matcher matcher = pattern.matcher(window);
+                        matcher.region(0, end);
+                        if (matcher.find())
+                            return true;
+                    }
+
+                    if (eof)
+                        return false;
+
+                    // Keep the incomplete last line, or the end of a line that is longer than the window
+                    if (end == window.limit())
+                        window.position(Math.max(0, end - OVERLAP));
+                    else
+                        window.position(Math.max(0, end));
+                    window.compact();
+                }
+            } finally {
+                BufferPool.releaseCharBuffer(window);
+            }
+        }
+    }
+}
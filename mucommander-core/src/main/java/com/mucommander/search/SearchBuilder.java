@@ -24,10 +24,6 @@ import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.unix4j.Unix4j;
-import org.unix4j.unix.Grep;
-import org.unix4j.unix.grep.GrepOptionSet_Fcilnvx;
-import org.unix4j.unix.grep.GrepOptions;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.protocol.search.SearchListener;
@@ -62,6 +58,7 @@ public class SearchBuilder implements com.mucommander.commons.file.protocol.sear
     private String searchText;
     private boolean textCaseSensitive;
     private boolean textMatchRegex;
+    private long textMaxSize;
     private Predicate<AbstractFile> sizePredicate;
 
     private SearchJob searchJob;
@@ -184,10 +181,24 @@ public class SearchBuilder implements com.mucommander.commons.file.protocol.sear
             searchText = value;
             textCaseSensitive = Boolean.parseBoolean(SearchProperty.TEXT_CASESENSITIVE.get(properties));
             textMatchRegex = Boolean.parseBoolean(SearchProperty.TEXT_MATCH_REGEX.get(properties));
+            textMaxSize = parseLong(SearchProperty.TEXT_MAX_SIZE, properties);
         }
         return this;
     }
 
+    /**
+     * Returns the value of the given numeric property, or its default value if the value is malformed.
+     */
+    private static long parseLong(SearchProperty property, List<Pair<String, String>> properties) {
+        String value = property.get(properties);
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("invalid value for search property {}: {}", property.getKey(), value);
+            return Long.parseLong(property.getDefaultValue());
+        }
+    }
+
     @Override
     public SearchBuilder searchSize(List<Pair<String, String>> properties) {
         var sizeKeys = new String[] { SearchProperty.SEARCH_SIZE.getKey(), SearchProperty.SEARCH_SIZE2.getKey() };
@@ -279,15 +290,11 @@ public class SearchBuilder implements com.mucommander.commons.file.protocol.sear
     }
 
     private Predicate<AbstractFile> createFileContentPredicate() {
-        GrepOptionSet_Fcilnvx grepOptions = Grep.Options.l;
-        if (!textCaseSensitive)
-            grepOptions = grepOptions.i;
-        if (!textMatchRegex)
-            grepOptions = grepOptions.F;
-        final GrepOptions options = grepOptions;
+        ContentMatcher contentMatcher = ContentMatcher.create(searchText, textCaseSensitive, textMatchRegex);
+        contentMatcher.setMaxBytes(textMaxSize);
         return file -> {
             try {
-                return !file.isDirectory() && !Unix4j.from(file.getInputStream()).grep(options, searchText).toStringResult().isEmpty();
+                return !file.isDirectory() && contentMatcher.matches(file);
             } catch (IOException e) {
                 LOGGER.debug("failed to search content of " + file.getAbsolutePath(), e);
                 return false;
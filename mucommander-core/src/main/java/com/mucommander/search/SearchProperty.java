@@ -38,6 +38,7 @@ public enum SearchProperty {
     MATCH_REGEX("regex", "search_dialog.matches_regexp", Boolean.FALSE.toString()),
     TEXT_CASESENSITIVE("text-case_sensitive", "search_dialog.text_case_sensitive", Boolean.FALSE.toString()),
     TEXT_MATCH_REGEX("text-regex", "search_dialog.text_matches_regexp", Boolean.FALSE.toString()),
+    TEXT_MAX_SIZE("text-max-size", "search_dialog.text_max_size", "0"),
     SEARCH_SIZE("size", "search_dialog.size", null),
     SEARCH_SIZE2("size-2", "search_dialog.size", null),
     SEARCH_TEXT("text", "search_dialog.search_text", ""),
@@ -48,6 +48,9 @@ import com.mucommander.commons.file.util.PathUtils;
 import com.mucommander.commons.io.security.MuProvider;
 import com.mucommander.commons.util.ui.dialog.DialogToolkit;
 import com.mucommander.commons.util.ui.layout.YBoxPanel;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.desktop.ActionType;
 import com.mucommander.job.impl.CalculateChecksumJob;
 import com.mucommander.text.Translator;
@@ -268,6 +271,8 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
                 // Start processing files
                 ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get("properties_dialog.calculating"));
                 CalculateChecksumJob job = new CalculateChecksumJob(progressDialog, mainFrame, files, checksumFile, digest);
+                // Files are read concurrently as they are when copied
+                job.setConcurrentTransfers(MuConfigurations.getPreferences().getVariable(MuPreference.CONCURRENT_TRANSFERS, MuPreferences.DEFAULT_CONCURRENT_TRANSFERS));
                 progressDialog.start(job);
             }
             catch(IOException ex) {
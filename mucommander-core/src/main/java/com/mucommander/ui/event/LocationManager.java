@@ -27,11 +27,13 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.commons.file.MonitoredFile;
 import com.mucommander.commons.file.archive.AbstractArchiveFile;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.core.FolderChangeMonitor;
 import com.mucommander.core.GlobalLocationHistory;
 import com.mucommander.ui.dialog.file.ArchivePasswordDialog;
 import com.mucommander.ui.main.ConfigurableFolderFilter;
 import com.mucommander.ui.main.FolderPanel;
+import com.mucommander.ui.main.table.FileTable.FolderLoader;
 
 /**
  * @author Maxence Bernard
@@ -56,8 +58,6 @@ public class LocationManager {
 	// TODO: replace this with a proper solution
 	private boolean firstRun = true;
 
-	private static final AbstractFile[] emptyAbstractFilesArray = new AbstractFile[0];
-
     /**
      * Creates a new LocationManager that manages location events listeners and broadcasts for the specified FolderPanel.
      *
@@ -81,17 +81,23 @@ public class LocationManager {
     }
 
     public void setCurrentFolder(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab, boolean fire) {
-        LOGGER.trace("calling ls() on {}", folder);
+        LOGGER.trace("calling lsBatches() on {}", folder);
         MonitoredFile newCurrentFile = folder.toMonitoredFile();
         newCurrentFile.startWatch();
 
-        AbstractFile[] children = emptyAbstractFilesArray;
+        // The table shows the children as they are listed
+        FolderLoader loader = folderPanel.getFileTable().loadFolder(folder, fileToSelect);
         do {
             try {
-                children = folder.ls(configurableFolderFilter);
+                folder.lsBatches(configurableFolderFilter, loader);
                 firstRun = false;
             } catch (Exception e) {
                 LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
+                if (loader.hasChildren()) {
+                    // Keep the children that have been shown rather than leaving the folder half-loaded
+                    LOGGER.warn("Listing of " + folder.getAbsolutePath() + " was interrupted, error: " + e.getMessage());
+                    break;
+                }
                 if (folder.isArchive()) {
                     ArchivePasswordDialog dialog = new ArchivePasswordDialog(folderPanel.getMainFrame());
                     String password = (String) dialog.getUserInput();
@@ -107,7 +113,7 @@ public class LocationManager {
             break;
         } while (true);
 
-    	folderPanel.setCurrentFolder(folder, children, fileToSelect, changeLockedTab);
+        loader.finish();
 
     	if (currentFolder != null)
     	    currentFolder.stopWatch();
@@ -131,6 +137,15 @@ public class LocationManager {
     	return currentFolder;
     }
 
+    /**
+     * Returns the filter that files must match to be presented in the {@link FolderPanel}.
+     *
+     * @return the filter that files must match to be presented in the {@link FolderPanel}
+     */
+    public FileFilter getFolderFilter() {
+        return configurableFolderFilter;
+    }
+
     /**
      * Registers a LocationListener to receive notifications whenever the current folder of the associated FolderPanel
      * has or is being changed.
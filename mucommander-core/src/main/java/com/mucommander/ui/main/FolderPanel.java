@@ -401,22 +401,6 @@ public class FolderPanel implements FocusListener, QuickListContainer, ActiveTab
         return locationManager.getCurrentFolder();
     }
 
-    /**
-     * This method updates the UI with the given folder 
-     * If the currently selected tab is locked and the given flag "changeLockedTab" is off, 
-     * then a new tab is opened with the given folder,
-     * otherwise, the currently presented folder is replaces with the given folder
-     * 
-     * @param folder - the folder to be set
-     * @param children - the children of the given folder
-     * @param fileToSelect - the file that would be selected after changing the folder
-     * @param changeLockedTab - flag that indicates whether to change the presented folder in 
-     * the currently selected tab although it's locked (used when switching tabs)
-     */
-    public void setCurrentFolder(AbstractFile folder, AbstractFile children[], AbstractFile fileToSelect, boolean changeLockedTab) {
-        fileTable.setCurrentFolder(folder, children, fileToSelect);
-    }
-
     /**
      * Shows the pop up which is located the given index in fileTablePopups.
      * 
@@ -30,8 +30,21 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import javax.swing.BorderFactory;
 import javax.swing.DefaultCellEditor;
@@ -109,6 +122,18 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
     private final static int MIN_COLUMN_AUTO_WIDTH = 20;
 
 
+    // - Folder loading ------------------------------------------------------------------
+    // -----------------------------------------------------------------------------------
+    /** Number of threads that fetch the attributes of the children of the folders being loaded */
+    private final static int FOLDER_LOADING_THREADS = 4;
+    /** Fetches the attributes of the children of the folders being loaded, while they are being listed */
+    private final static ExecutorService folderLoadingExecutor = Executors.newFixedThreadPool(FOLDER_LOADING_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "FolderLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+
     // - Containers ----------------------------------------------------------------------
     // -----------------------------------------------------------------------------------
     /** Frame containing this file table. */
@@ -514,7 +539,27 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
      * @param fileToSelect the file to select, <code>null</code> for the default selection.
      */
     public void setCurrentFolder(AbstractFile folder, AbstractFile children[], AbstractFile fileToSelect) {
-    	overlayTable.setOverlayVisible(!folder.exists());
+        FolderLoader loader = loadFolder(folder, fileToSelect);
+        if(children.length>0)
+            loader.accept(children);
+        loader.finish();
+    }
+
+    /**
+     * Starts changing the current folder to the specified one, and returns a {@link FolderLoader} that the folder's
+     * children must be passed to as they are listed, and whose {@link FolderLoader#finish()} method must be called
+     * once the listing is complete. The table shows the new folder as soon as the first children have been passed,
+     * and the following children are inserted at their sorted position. The selection and marked files are handled
+     * as described in {@link #setCurrentFolder(AbstractFile, AbstractFile[], AbstractFile)}.
+     *
+     * <p><b>Important:</b> This method should only be called by {@link FolderPanel} and in any case MUST be
+     * synchronized externally to ensure that a folder is never loaded while another one is being loaded.</p>
+     *
+     * @param folder the new current folder
+     * @param fileToSelect the file to select, <code>null</code> for the default selection.
+     * @return the loader that receives the children of the folder
+     */
+    public FolderLoader loadFolder(AbstractFile folder, AbstractFile fileToSelect) {
         // Stop quick search in case it was being used before folder change
         quickSearch.stop();
 
@@ -535,28 +580,76 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
                 fileToSelect = currentFolder;
         }
 
-        // Changes the current folder in the swing thread to make sure that repaints cannot
-        // happen in the middle of the operation - this is used to prevent flickering, badly
-        // refreshed frames and such unpleasant graphical artifacts.
-        Runnable folderChangeThread = new FolderChangeThread(folder, children, markedFiles, fileToSelect);
-
-        // Wait for the task to complete, so that we return only when the folder has actually been changed and the
-        // table updated to reflect the new folder.
-        // Note: we use a wait/notify scheme rather than calling SwingUtilities#invokeAndWait to avoid deadlocks
-        // due to AWT thread synchronization issues.
-        synchronized(folderChangeThread) {
-            SwingUtilities.invokeLater(folderChangeThread);
-            while(true) {
-                try {
-                    // FolderChangeThread will call notify when done
-                    folderChangeThread.wait();
-                    break;
-                }
-                catch(InterruptedException e) {
-                    // will keep looping
-                }
+        return new FolderLoader(folder, folder.exists(), markedFiles, fileToSelect);
+    }
+
+    /**
+     * Applies changes made to the children of the current folder, without listing the folder again: the rows of
+     * removed files are removed, and the rows of updated files are inserted or moved to their sorted position.
+     * The current selection and the marked files are kept.
+     *
+     * <p>The attributes of the updated files are fetched in the calling thread, which should not be the event
+     * dispatch thread, and the files whose attributes cannot be fetched are left out. The table is then updated in
+     * the event dispatch thread, unless the current folder has changed in the meantime. This method returns without
+     * waiting for the table to be updated.</p>
+     *
+     * @param folder the folder that the changes were made to
+     * @param updatedFiles children of the folder that were created or modified
+     * @param removedNames names of children of the folder that were deleted
+     */
+    public void applyFolderChanges(AbstractFile folder, Collection<AbstractFile> updatedFiles, Set<String> removedNames) {
+        AbstractFile[] cachedFiles = createCachedFiles(updatedFiles);
+
+        SwingUtilities.invokeLater(() -> {
+            // The changes are obsolete if the folder has been changed or refreshed since they were detected
+            if (!folder.equals(tableModel.getCurrentFolder()))
+                return;
+
+            AbstractFile selectedFile = getSelectedFile(true, true);
+            int nbMarkedFiles = tableModel.getNbMarkedFiles();
+            long markedTotalSize = tableModel.getTotalMarkedSize();
+
+            tableModel.applyChanges(cachedFiles, removedNames);
+
+            // Select the file that was selected before, or the closest row if it was removed
+            int rowToSelect = -1;
+            if (selectedFile != null) {
+                // The selected file may have been replaced by an updated one, which may be sorted elsewhere
+                for (AbstractFile file : cachedFiles)
+                    if (file.getName().equals(selectedFile.getName()))
+                        selectedFile = file;
+                rowToSelect = tableModel.getFileRow(selectedFile);
+            }
+            if (rowToSelect == -1) {
+                int rowCount = tableModel.getRowCount();
+                rowToSelect = currentRow < rowCount ? currentRow : rowCount - 1;
+            }
+            selectRow(rowToSelect);
+            fireSelectedFileChangedEvent();
+
+            if (nbMarkedFiles != tableModel.getNbMarkedFiles() || markedTotalSize != tableModel.getTotalMarkedSize())
+                fireMarkedFilesChangedEvent();
+
+            resizeAndRepaint();
+        });
+    }
+
+    /**
+     * Creates the {@link com.mucommander.commons.file.CachedFile} instances of the given files, leaving out the files whose attributes
+     * cannot be fetched.
+     */
+    private static AbstractFile[] createCachedFiles(Collection<AbstractFile> files) {
+        List<AbstractFile> cachedFiles = new ArrayList<>(files.size());
+        for(AbstractFile file : files) {
+            try {
+                cachedFiles.add(FileTableModel.createCachedFile(file));
+            }
+            catch(RuntimeException e) {
+                LOGGER.warn("Caught exception while fetching the attributes of {}", file, e);
             }
         }
+
+        return cachedFiles.toArray(new AbstractFile[0]);
     }
 
     /**
@@ -1849,93 +1942,250 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
     }
 
     /**
-     * This thread performs the change of current folder.
+     * Loads a folder into this table as its children are listed. The attributes of each batch of children are
+     * fetched by {@link #folderLoadingExecutor}, while the next batch is being listed, and the batches are added to
+     * the table in the order they were listed. Batches that are ready by the time the table gets to them are added
+     * at once. The table is changed in the Swing thread to make sure that repaints cannot happen in the middle of the
+     * operation - this is used to prevent flickering, badly refreshed frames and such unpleasant graphical artifacts.
      *
-     * @author Nicolas Rinaudo, Maxence Bernard
+     * <p>A file whose attributes cannot be fetched is left out, and a failed step does not prevent the next batches
+     * from being added nor the table from being changed to the folder.</p>
      */
-    private class FolderChangeThread implements Runnable {
+    public class FolderLoader implements Consumer<AbstractFile[]> {
         private AbstractFile   folder;
-        private AbstractFile[] children;
-        private FileSet        markedFiles;
+        private boolean        folderExists;
+        /** Files to mark as they are added, null if none */
+        private Set<AbstractFile> markedFiles;
+        /** File to select once it is added, null if it has been selected or if the user has selected another file */
+        private AbstractFile   fileToSelect;
+        /** File selected by this loader, to find out if the user has selected another file since then */
         private AbstractFile   selectedFile;
-
-        private FolderChangeThread(AbstractFile folder, AbstractFile[] children, FileSet markedFiles, AbstractFile selectedFile) {
+        /** Completes once the last batch passed to this loader has been added to the table */
+        private CompletableFuture<Void> lastBatch = CompletableFuture.completedFuture(null);
+        /** Batches that have not been added to the table yet, in the order they were listed */
+        private final Queue<CompletableFuture<AbstractFile[]>> pendingBatches = new ConcurrentLinkedQueue<>();
+        /** True until the table has been changed to the new folder */
+        private boolean firstBatch = true;
+        /** Number of batches passed to this loader */
+        private int nbBatches;
+
+        private FolderLoader(AbstractFile folder, boolean folderExists, FileSet markedFiles, AbstractFile fileToSelect) {
             this.folder       = folder;
-            this.children     = children;
-            this.markedFiles  = markedFiles;
-            this.selectedFile = selectedFile;
+            this.folderExists = folderExists;
+            this.markedFiles  = markedFiles==null || markedFiles.isEmpty() ? null : new HashSet<>(markedFiles);
+            this.fileToSelect = fileToSelect;
         }
 
-        public void run() {
-            try {
-                // Set the new current folder.
-                tableModel.setCurrentFolder(folder, children);
-
-                // Update the visibility state of conditional columns
-                FileTableColumnModel columnModel = getFileTableColumnModel();
-                updateColumnsVisibility();
-
-                // The column corresponding to the current 'sort by' criterion may have become invisible.
-                // If that is the case, change the criterion to NAME.
-                if(!columnModel.isColumnVisible(sortInfo.getCriterion())) {
-                    sortInfo.setCriterion(Column.NAME);
-                    setTableHeaderRenderingProperties();
-                }
+        /**
+         * Adds the given children of the folder to the table. This method returns without waiting for the children
+         * to be added.
+         *
+         * @param children a batch of children of the folder
+         */
+        @Override
+        public void accept(AbstractFile[] children) {
+            CompletableFuture<AbstractFile[]> cachedChildren = CompletableFuture
+                    .supplyAsync(() -> createCachedFiles(Arrays.asList(children)), folderLoadingExecutor)
+                    .exceptionally(e -> {
+                        LOGGER.warn("Caught exception while loading folder {}", folder, e);
+                        return new AbstractFile[0];
+                    });
+            pendingBatches.add(cachedChildren);
+
+            nbBatches++;
+            // Each step runs whether or not the previous one failed, so that a failure does not stall the loading
+            lastBatch = lastBatch.thenCombine(cachedChildren, (previous, batch) -> batch)
+                    .thenRunAsync(this::addPendingBatches, SwingUtilities::invokeLater)
+                    .exceptionally(e -> {
+                        LOGGER.warn("Caught exception while loading folder {}", folder, e);
+                        return null;
+                    });
+        }
 
-                // Sort the new folder using the current sort criteria, ascending/descending order and
-                // 'show folders first' values.
-                tableModel.sortRows();
-
-                // Computes the index of the new row selection.
-                int rowToSelect;
-                if(selectedFile!=null) {
-                    // Tries to find the index of the file to select. If it cannot be found (the file might not
-                    // exist anymore, for example), use the closest possible row.
-                    if((rowToSelect = tableModel.getFileRow(selectedFile)) == -1) {
-                        int rowCount = tableModel.getRowCount();
-                        rowToSelect = currentRow < rowCount ? currentRow : rowCount - 1;
+        /**
+         * Adds the batches that are ready to the table, up to the first one that is not. Must be called from the event
+         * dispatch thread.
+         */
+        private void addPendingBatches() {
+            List<AbstractFile[]> batches = new ArrayList<>();
+            int nbFiles = 0;
+            CompletableFuture<AbstractFile[]> batch;
+            while((batch = pendingBatches.peek())!=null && batch.isDone()) {
+                pendingBatches.poll();
+                AbstractFile[] files = batch.join();
+                batches.add(files);
+                nbFiles += files.length;
+            }
+
+            // The batches were added by a previous call
+            if(batches.isEmpty())
+                return;
+
+            AbstractFile[] children = new AbstractFile[nbFiles];
+            int offset = 0;
+            for(AbstractFile[] files : batches) {
+                System.arraycopy(files, 0, children, offset, files.length);
+                offset += files.length;
+            }
+
+            addBatch(children);
+        }
+
+        /**
+         * Returns <code>true</code> if children have been passed to this loader.
+         *
+         * @return true if children have been passed to this loader
+         */
+        public boolean hasChildren() {
+            return nbBatches>0;
+        }
+
+        /**
+         * Completes the loading of the folder, and returns only when all the children that were passed have been
+         * added to the table.
+         */
+        public void finish() {
+            lastBatch = lastBatch.handle((result, e) -> result).thenRunAsync(() -> {
+                try {
+                    // Change to the folder even if it has no children
+                    if(firstBatch)
+                        addBatch(new AbstractFile[0]);
+
+                    if (consecutiveRename) {
+                        editCurrentFilename();
+                        consecutiveRename = false;
                     }
+                    resizeAndRepaint();
                 }
-                // If no file was marked as needing to be selected, selects the first line.
-                else {
-                    rowToSelect = 0;
+                catch(Throwable e) {
+                    // While no such thing should happen, we want to make absolutely sure no exception
+                    // is propagated to the AWT event dispatch thread.
+                    LOGGER.warn("Caught exception while changing folder, this should not happen!", e);
                 }
+            }, SwingUtilities::invokeLater);
 
-                selectRow(currentRow = rowToSelect);
-                fireSelectedFileChangedEvent();
+            // Wait for the table to be updated, so that we return only when the folder has actually been changed.
+            // Note: CompletableFuture#join is not interrupted, and is used rather than SwingUtilities#invokeAndWait
+            // to avoid deadlocks due to AWT thread synchronization issues.
+            try {
+                lastBatch.join();
+            }
+            catch(CompletionException e) {
+                LOGGER.warn("Caught exception while loading folder {}", folder, e.getCause());
+            }
+        }
+
+        /**
+         * Adds a batch of children to the table, changing the table to the folder for the first batch.
+         * Must be called from the event dispatch thread.
+         */
+        private void addBatch(AbstractFile[] children) {
+            try {
+                if(firstBatch) {
+                    firstBatch = false;
+                    setFolder(children);
+                }
+                else {
+                    addChildren(children);
+                }
 
                 // Restore previously marked files (if any / current folder hasn't changed)
                 if(markedFiles != null) {
-                    // Restore previously marked files
-                    int nbMarkedFiles = markedFiles.size();
-                    int fileRow;
-                    for(int i  =0; i < nbMarkedFiles; i++) {
-                        fileRow = tableModel.getFileRow(markedFiles.elementAt(i));
-                        if(fileRow != -1)
-                            tableModel.setRowMarked(fileRow, true);
+                    boolean marked = false;
+                    for(AbstractFile child : children) {
+                        if(markedFiles.contains(child)) {
+                            int fileRow = tableModel.getFileRow(child);
+                            if(fileRow != -1) {
+                                tableModel.setRowMarked(fileRow, true);
+                                marked = true;
+                            }
+                        }
                     }
 
                     // Notify registered listeners that currently marked files have changed on this FileTable
-                    fireMarkedFilesChangedEvent();
-                }
-                if (consecutiveRename) {
-                    editCurrentFilename();
-                    consecutiveRename = false;
+                    if(marked)
+                        fireMarkedFilesChangedEvent();
                 }
-                resizeAndRepaint();
             }
-
             catch(Throwable e) {
                 // While no such thing should happen, we want to make absolutely sure no exception
                 // is propagated to the AWT event dispatch thread.
                 LOGGER.warn("Caught exception while changing folder, this should not happen!", e);
             }
-            finally {
-                // Notify #setCurrentFolder that we're done changing the folder.
-                synchronized(this) {
-                    notify();
+        }
+
+        /**
+         * Changes the table to the folder, with the children of the first batch.
+         */
+        private void setFolder(AbstractFile[] children) {
+            overlayTable.setOverlayVisible(!folderExists);
+
+            // Set the new current folder.
+            tableModel.setCurrentFolder(folder, children);
+
+            // Update the visibility state of conditional columns
+            FileTableColumnModel columnModel = getFileTableColumnModel();
+            updateColumnsVisibility();
+
+            // The column corresponding to the current 'sort by' criterion may have become invisible.
+            // If that is the case, change the criterion to NAME.
+            if(!columnModel.isColumnVisible(sortInfo.getCriterion())) {
+                sortInfo.setCriterion(Column.NAME);
+                setTableHeaderRenderingProperties();
+            }
+
+            // Sort the new folder using the current sort criteria, ascending/descending order and
+            // 'show folders first' values.
+            tableModel.sortRows();
+
+            // Computes the index of the new row selection.
+            int rowToSelect;
+            if(fileToSelect!=null) {
+                // Tries to find the index of the file to select. If it cannot be found (the file might not
+                // exist anymore, or not be listed yet), use the closest possible row.
+                if((rowToSelect = tableModel.getFileRow(fileToSelect)) == -1) {
+                    int rowCount = tableModel.getRowCount();
+                    rowToSelect = currentRow < rowCount ? currentRow : rowCount - 1;
+                }
+                else {
+                    fileToSelect = null;
                 }
             }
+            // If no file was marked as needing to be selected, selects the first line.
+            else {
+                rowToSelect = 0;
+            }
+
+            selectRow(currentRow = rowToSelect);
+            selectedFile = getSelectedFile(true, true);
+            fireSelectedFileChangedEvent();
+            resizeAndRepaint();
+        }
+
+        /**
+         * Inserts the children of a subsequent batch at their sorted position, keeping the current selection
+         * unless the file to select has been added.
+         */
+        private void addChildren(AbstractFile[] children) {
+            AbstractFile currentFile = getSelectedFile(true, true);
+            // The file to select is no longer selected once the user has selected another file
+            if(fileToSelect!=null && currentFile!=selectedFile)
+                fileToSelect = null;
+
+            tableModel.addFiles(children);
+
+            int rowToSelect = -1;
+            if(fileToSelect!=null && (rowToSelect = tableModel.getFileRow(fileToSelect)) != -1)
+                fileToSelect = null;
+            else if(currentFile!=null)
+                rowToSelect = tableModel.getFileRow(currentFile);
+
+            if(rowToSelect != -1 && rowToSelect != currentRow) {
+                selectRow(rowToSelect);
+                fireSelectedFileChangedEvent();
+            }
+            selectedFile = getSelectedFile(true, true);
+            resizeAndRepaint();
         }
     }
 
@@ -18,6 +18,7 @@
 package com.mucommander.ui.main.table;
 
 import java.awt.Cursor;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -36,6 +37,7 @@ import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.protocol.search.SearchFile;
 import com.mucommander.commons.file.util.FileComparator;
+import com.mucommander.commons.file.util.FileSortKeys;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
@@ -86,6 +88,9 @@ public class FileTableModel extends AbstractTableModel {
     /** Locale that is used when sorting filenames */
     private Locale filenameLocale;
 
+    /** Sort keys of the current folder's files, derived the first time they are sorted */
+    private FileSortKeys sortKeys;
+
     /** True if the name column is temporarily editable */
     private boolean nameColumnEditable;
 
@@ -174,8 +179,9 @@ public class FileTableModel extends AbstractTableModel {
         this.sortInfo = sortInfo;
     }
 
-    void setFilenameLocale(Locale filenameLocale) {
+    synchronized void setFilenameLocale(Locale filenameLocale) {
         this.filenameLocale = filenameLocale;
+        this.sortKeys = null;
     }
 
     /**
@@ -229,7 +235,7 @@ public class FileTableModel extends AbstractTableModel {
      * Sets the current folder and its children.
      *
      * @param folder the current folder
-     * @param children the current folder's children
+     * @param children the current folder's children, created by {@link #createCachedFile(AbstractFile)}
      */
     synchronized void setCurrentFolder(AbstractFile folder, AbstractFile children[]) {
         int nbFiles = children.length;
@@ -243,19 +249,12 @@ public class FileTableModel extends AbstractTableModel {
         }
         stopSizeCalculation();
 
-        // Initialize file indexes and create CachedFile instances to speed up table display and navigation
+        // Initialize file indexes, the CachedFile instances have already been created to speed up table display and navigation
         this.cachedFiles = children;
         this.fileArrayIndex = new int[nbFiles];
-        AbstractFile file;
-        for(int i=0; i<nbFiles; i++) {
-            file = new CachedFile(children[i], true);
-
-            // Pre-fetch the attributes that are used by the table renderer and some actions.
-            prefetchCachedFileAttributes(file);
-
-            cachedFiles[i] = file;
+        this.sortKeys = null;
+        for(int i=0; i<nbFiles; i++)
             fileArrayIndex[i] = i;
-        }
 
         // Reset marked files
         int nbRows = getRowCount();
@@ -325,36 +324,229 @@ public class FileTableModel extends AbstractTableModel {
 		}
             }
             int cellIndex = fileArrayIndex[fileIndex] + indexOffset;
-            Object sizeValue;
-            if (file.isDirectory()) {
-                if (hasCalculatedDirectories) {
-                    Long dirSize;
-                    synchronized (directorySizes) {
-                        dirSize = directorySizes.get(file);
-                    }
-                    if (dirSize != null) {
-                        sizeValue = SizeFormat.format(dirSize, sizeFormat);
-                    } else {
-                        synchronized (calculateSizeQueue) {
-                            sizeValue = calculateSizeQueue.contains(file) ? QUEUED_DIRECTORY_SIZE_STRING : DIRECTORY_SIZE_STRING;
-                        }
-                    }
+            fillCellValues(cellValuesCache[cellIndex], file, nameFunc, canGetOwner, canGetGroup);
+
+            fileIndex++;
+        }
+    }
+
+    /**
+     * Retrieves the cell values of the given file and stores them in the given array.
+     */
+    private void fillCellValues(Object[] cellValues, AbstractFile file, Function<AbstractFile, String> nameFunc,
+                                boolean canGetOwner, boolean canGetGroup) {
+        Object sizeValue;
+        if (file.isDirectory()) {
+            if (hasCalculatedDirectories) {
+                Long dirSize;
+                synchronized (directorySizes) {
+                    dirSize = directorySizes.get(file);
+                }
+                if (dirSize != null) {
+                    sizeValue = SizeFormat.format(dirSize, sizeFormat);
                 } else {
-                    sizeValue = DIRECTORY_SIZE_STRING;
+                    synchronized (calculateSizeQueue) {
+                        sizeValue = calculateSizeQueue.contains(file) ? QUEUED_DIRECTORY_SIZE_STRING : DIRECTORY_SIZE_STRING;
+                    }
                 }
             } else {
-                sizeValue = SizeFormat.format(file.getSize(), sizeFormat);
+                sizeValue = DIRECTORY_SIZE_STRING;
+            }
+        } else {
+            sizeValue = SizeFormat.format(file.getSize(), sizeFormat);
+        }
+
+        cellValues[Column.NAME.ordinal()-1] = nameFunc.apply(file);
+        cellValues[Column.SIZE.ordinal()-1] = sizeValue;
+        cellValues[Column.DATE.ordinal()-1] = CustomDateFormat.format(new Date(file.getDate()));
+        cellValues[Column.PERMISSIONS.ordinal()-1] = file.getPermissionsString();
+        cellValues[Column.OWNER.ordinal()-1] = canGetOwner ? file.getOwner() : null;
+        cellValues[Column.GROUP.ordinal()-1] = canGetGroup ? file.getGroup() : null;
+    }
+
+    /**
+     * Creates a {@link CachedFile} instance for the given child of the current folder, and pre-fetches the attributes
+     * that are used by the table renderer. This method is I/O-bound and should not be called from the event
+     * dispatch thread.
+     *
+     * @param file a child of the current folder
+     * @return a CachedFile instance of the file, to pass to {@link #setCurrentFolder(AbstractFile, AbstractFile[])},
+     * {@link #addFiles(AbstractFile[])} or {@link #applyChanges(AbstractFile[], Set)}
+     */
+    static AbstractFile createCachedFile(AbstractFile file) {
+        AbstractFile cachedFile = new CachedFile(file, true);
+        prefetchCachedFileAttributes(cachedFile);
+        // Pre-fetch the attributes that are displayed, as #fillCellCache would
+        cachedFile.getSize();
+        cachedFile.getDate();
+        cachedFile.getPermissionsString();
+        return cachedFile;
+    }
+
+    /**
+     * Applies changes made to the children of the current folder without listing it again: the files that have the
+     * name of a removed or updated file are removed, and the updated files are inserted at their sorted position.
+     * The rows of the other files are moved along with their cell values and marks, and updated files keep the mark
+     * of the file they replace.
+     *
+     * @param updatedFiles files that were created or modified, created by {@link #createCachedFile(AbstractFile)}
+     * @param removedNames names of files that were deleted, or that no longer match the folder's filter
+     */
+    synchronized void applyChanges(AbstractFile[] updatedFiles, Set<String> removedNames) {
+        Set<String> replacedNames = new HashSet<>(removedNames);
+        for (AbstractFile file : updatedFiles)
+            replacedNames.add(file.getName());
+
+        // Collect the files that remain, in row order
+        final int indexOffset = parent == null ? 0 : 1;
+        int nbFiles = fileArrayIndex.length;
+        AbstractFile[] keptFiles = new AbstractFile[nbFiles];
+        Object[][] keptCellValues = new Object[nbFiles][];
+        boolean[] keptMarks = new boolean[nbFiles];
+        Set<String> markedNames = new HashSet<>();
+        int nbKeptFiles = 0;
+        for (int row = 0; row < nbFiles; row++) {
+            int fileIndex = fileArrayIndex[row];
+            AbstractFile file = cachedFiles[fileIndex];
+            if (replacedNames.contains(file.getName())) {
+                if (rowMarked[fileIndex])
+                    markedNames.add(file.getName());
+                continue;
             }
+            keptFiles[nbKeptFiles] = file;
+            keptCellValues[nbKeptFiles] = cellValuesCache[fileIndex + indexOffset];
+            keptMarks[nbKeptFiles] = rowMarked[fileIndex];
+            nbKeptFiles++;
+        }
 
-            cellValuesCache[cellIndex][Column.NAME.ordinal()-1] = nameFunc.apply(file);
-            cellValuesCache[cellIndex][Column.SIZE.ordinal()-1] = sizeValue;
-            cellValuesCache[cellIndex][Column.DATE.ordinal()-1] = CustomDateFormat.format(new Date(file.getDate()));
-            cellValuesCache[cellIndex][Column.PERMISSIONS.ordinal()-1] = file.getPermissionsString();
-            cellValuesCache[cellIndex][Column.OWNER.ordinal()-1] = canGetOwner ? file.getOwner() : null;
-            cellValuesCache[cellIndex][Column.GROUP.ordinal()-1] = canGetGroup ? file.getGroup() : null;
+        // Merge the updated files into the remaining files, which are already sorted
+        AbstractFile[] insertedFiles = updatedFiles.clone();
+        FileComparator comparator = getFileComparator(sortInfo, filenameLocale);
+        Arrays.sort(insertedFiles, comparator);
+
+        int newNbFiles = nbKeptFiles + insertedFiles.length;
+        AbstractFile[] newCachedFiles = new AbstractFile[newNbFiles];
+        Object[][] newCellValuesCache = new Object[newNbFiles + indexOffset][];
+        boolean[] newRowMarked = new boolean[newNbFiles + indexOffset];
+        if (indexOffset == 1)
+            newCellValuesCache[0] = cellValuesCache[0];
+
+        Function<AbstractFile, String> nameFunc = getNameFunc();
+        boolean canGetOwner = false, canGetGroup = false;
+        if (insertedFiles.length > 0) {
+            AbstractFile file = parent != null ? parent : insertedFiles[0];
+            canGetOwner = file.canGetOwner();
+            canGetGroup = file.canGetGroup();
+        }
 
-            fileIndex++;
+        int keptIndex = 0, insertedIndex = 0;
+        for (int fileIndex = 0; fileIndex < newNbFiles; fileIndex++) {
+            if (insertedIndex == insertedFiles.length
+                    || (keptIndex < nbKeptFiles && comparator.compare(keptFiles[keptIndex], insertedFiles[insertedIndex]) <= 0)) {
+                newCachedFiles[fileIndex] = keptFiles[keptIndex];
+                newCellValuesCache[fileIndex + indexOffset] = keptCellValues[keptIndex];
+                newRowMarked[fileIndex] = keptMarks[keptIndex];
+                keptIndex++;
+            }
+            else {
+                AbstractFile file = insertedFiles[insertedIndex++];
+                Object[] cellValues = new Object[Column.values().length-1];
+                fillCellValues(cellValues, file, nameFunc, canGetOwner, canGetGroup);
+                newCachedFiles[fileIndex] = file;
+                newCellValuesCache[fileIndex + indexOffset] = cellValues;
+                newRowMarked[fileIndex] = markedNames.contains(file.getName());
+            }
+        }
+
+        // Files are now stored in row order
+        this.cachedFiles = newCachedFiles;
+        this.cellValuesCache = newCellValuesCache;
+        this.rowMarked = newRowMarked;
+        this.fileArrayIndex = new int[newNbFiles];
+        for (int i = 0; i < newNbFiles; i++)
+            fileArrayIndex[i] = i;
+        this.sortKeys = null;
+
+        // Recalculate the marked files' combined size, as marked files may have been removed or modified
+        this.nbRowsMarked = 0;
+        this.markedTotalSize = 0;
+        for (int i = 0; i < newNbFiles; i++) {
+            if (!rowMarked[i])
+                continue;
+
+            nbRowsMarked++;
+            AbstractFile file = cachedFiles[i];
+            // File size can equal -1 if not available, do not count that in total
+            if (!file.isDirectory() && file.getSize() > 0)
+                markedTotalSize += file.getSize();
+        }
+    }
+
+    /**
+     * Adds files to the children of the current folder, at their sorted position. This is much cheaper than
+     * {@link #applyChanges(AbstractFile[], Set)} when files are only added, as when a folder is loaded in batches: the
+     * added files are stored after the current ones, and the row order is merged by moving blocks of rows between
+     * the insertion points, which are found by binary search. The current rows keep their cell values and marks.
+     *
+     * @param addedFiles files that are not children of the current folder yet, created by {@link #createCachedFile(AbstractFile)}
+     */
+    synchronized void addFiles(AbstractFile[] addedFiles) {
+        if (addedFiles.length == 0)
+            return;
+
+        AbstractFile[] insertedFiles = addedFiles.clone();
+        FileComparator comparator = getFileComparator(sortInfo, filenameLocale);
+        Arrays.sort(insertedFiles, comparator);
+
+        final int indexOffset = parent == null ? 0 : 1;
+        int nbFiles = fileArrayIndex.length;
+        int newNbFiles = nbFiles + insertedFiles.length;
+        this.cachedFiles = Arrays.copyOf(cachedFiles, newNbFiles);
+        this.cellValuesCache = Arrays.copyOf(cellValuesCache, newNbFiles + indexOffset);
+        this.rowMarked = Arrays.copyOf(rowMarked, newNbFiles + indexOffset);
+
+        Function<AbstractFile, String> nameFunc = getNameFunc();
+        AbstractFile ownerFile = parent != null ? parent : insertedFiles[0];
+        boolean canGetOwner = ownerFile.canGetOwner();
+        boolean canGetGroup = ownerFile.canGetGroup();
+
+        int[] newFileArrayIndex = new int[newNbFiles];
+        int row = 0, newRow = 0;
+        for (int i = 0; i < insertedFiles.length; i++) {
+            AbstractFile file = insertedFiles[i];
+            int fileIndex = nbFiles + i;
+            cachedFiles[fileIndex] = file;
+            Object[] cellValues = new Object[Column.values().length-1];
+            fillCellValues(cellValues, file, nameFunc, canGetOwner, canGetGroup);
+            cellValuesCache[fileIndex + indexOffset] = cellValues;
+
+            // Current rows that sort before the file, or equally, are kept before it
+            int insertionRow = getInsertionRow(file, row, nbFiles, comparator);
+            System.arraycopy(fileArrayIndex, row, newFileArrayIndex, newRow, insertionRow - row);
+            newRow += insertionRow - row;
+            row = insertionRow;
+            newFileArrayIndex[newRow++] = fileIndex;
+        }
+        System.arraycopy(fileArrayIndex, row, newFileArrayIndex, newRow, nbFiles - row);
+
+        this.fileArrayIndex = newFileArrayIndex;
+        this.sortKeys = null;
+    }
+
+    /**
+     * Returns the first row between <code>fromRow</code> (inclusive) and <code>toRow</code> (exclusive), not counting
+     * the parent folder, whose file sorts after the given file, <code>toRow</code> if there is none.
+     */
+    private int getInsertionRow(AbstractFile file, int fromRow, int toRow, FileComparator comparator) {
+        while (fromRow < toRow) {
+            int mid = (fromRow + toRow) >>> 1;
+            if (comparator.compare(cachedFiles[fileArrayIndex[mid]], file) <= 0)
+                fromRow = mid + 1;
+            else
+                toRow = mid;
         }
+
+        return fromRow;
     }
 
     public Function<AbstractFile, String> getNameFunc() {
@@ -706,70 +898,16 @@ public class FileTableModel extends AbstractTableModel {
 
     /**
      * Sorts rows by the current criterion, ascending/descending order and 'folders first' value.
+     * The sort keys of the files are derived the first time the current folder is sorted, and are reused afterwards.
      */
     synchronized void sortRows()  {
-        sort(getFileComparator(sortInfo, filenameLocale), 0, fileArrayIndex.length-1);
-    }
-
-
-    /**
-     * Quick sort implementation, based on James Gosling's implementation.
-     */
-    private void sort(FileComparator fc, int lo0, int hi0) {
-        int lo = lo0;
-        int hi = hi0;
+        if (sortKeys == null)
+            sortKeys = new FileSortKeys(cachedFiles, getNameFunc(), filenameLocale);
 
-        int temp;
-
-        if (lo >= hi) {
-            return;
-        }
-        else if( lo == hi - 1 ) {
-            // sort a two element list by swapping if necessary
-            if (fc.compare(cachedFiles[fileArrayIndex[lo]],cachedFiles[fileArrayIndex[hi]])>0) {
-                temp = fileArrayIndex[lo];
-                fileArrayIndex[lo] = fileArrayIndex[hi];
-                fileArrayIndex[hi] = temp;
-            }
-            return;
-        }
-
-        // Pick a pivot and move it out of the way
-        int pivotIndex = fileArrayIndex[(lo + hi) / 2];
-        fileArrayIndex[(lo + hi) / 2] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-        AbstractFile pivot = cachedFiles[pivotIndex];
-
-        while( lo < hi ) {
-            // Search forward from files[lo] until an element is found that
-            // is greater than the pivot or lo >= hi
-            while (fc.compare(cachedFiles[fileArrayIndex[lo]], pivot)<=0 && lo < hi) {
-                lo++;
-            }
-
-            // Search backward from files[hi] until element is found that
-            // is less than the pivot, or lo >= hi
-            while (fc.compare(pivot, cachedFiles[fileArrayIndex[hi]])<=0 && lo < hi ) {
-                hi--;
-            }
-
-            // Swap elements files[lo] and files[hi]
-            if( lo < hi ) {
-                temp = fileArrayIndex[lo];
-                fileArrayIndex[lo] = fileArrayIndex[hi];
-                fileArrayIndex[hi] = temp;
-            }
-        }
-
-        // Put the median in the "center" of the list
-        fileArrayIndex[hi0] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-
-        // Recursive calls, elements files[lo0] to files[lo-1] are less than or
-        // equal to pivot, elements files[hi+1] to files[hi0] are greater than
-        // pivot.
-        sort(fc, lo0, lo-1);
-        sort(fc, hi+1, hi0);
+        sortKeys.sort(fileArrayIndex,
+                sortInfo.getCriterion().getFileComparatorCriterion(),
+                sortInfo.getAscendingOrder(),
+                sortInfo.getFoldersFirst());
     }
 
 
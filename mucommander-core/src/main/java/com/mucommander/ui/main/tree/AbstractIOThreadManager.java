@@ -26,10 +26,10 @@ import org.slf4j.LoggerFactory;
 
 
 /**
- * A class that monitors IOThread if it is running or has been blocked.
- * This class maintains a list of tasks to execute and a thread that 
- * executes these tasks. It checks periodically if the IOThread is running.
- * If IOThread has been blocked then it's killed and a new IOThread is 
+ * A class that monitors IOThreads if they are running or have been blocked.
+ * This class maintains a list of tasks to execute and one or more threads that 
+ * execute these tasks concurrently. It checks periodically if the IOThreads are running.
+ * If an IOThread has been blocked then it's killed and a new IOThread is 
  * instantiated. Then the next task from the list will be executed.
  * @author Mariusz Jakubowski
  *
@@ -40,8 +40,8 @@ public class AbstractIOThreadManager extends Thread {
     /** a queue with tasks to execute */
     protected final List<Runnable> queue = Collections.synchronizedList(new ArrayList<Runnable>());
 
-    /** a thread that executes tasks */
-    protected IOThread ioThread;
+    /** threads that execute tasks */
+    protected IOThread[] ioThreads;
     
     /** a time after i/o thread is marked as blocked */
     protected long blockThreshold;
@@ -53,10 +53,23 @@ public class AbstractIOThreadManager extends Thread {
      * @param blockThreshold a time after an i/o task is marked as blocked [ms]
      */
     public AbstractIOThreadManager(String name, long blockThreshold) {
+        this(name, blockThreshold, 1);
+    }
+
+    /**
+     * Creates a new monitoring thread.
+     * @param name a name of this thread
+     * @param blockThreshold a time after an i/o task is marked as blocked [ms]
+     * @param nbThreads number of threads that execute tasks concurrently
+     */
+    public AbstractIOThreadManager(String name, long blockThreshold, int nbThreads) {
         super(name);
         this.blockThreshold = blockThreshold;
-        ioThread = new IOThread(queue, blockThreshold);
-        ioThread.start();
+        ioThreads = new IOThread[nbThreads];
+        for (int i = 0; i < nbThreads; i++) {
+            ioThreads[i] = new IOThread(queue, blockThreshold);
+            ioThreads[i].start();
+        }
     }
 
     /**
@@ -67,8 +80,12 @@ public class AbstractIOThreadManager extends Thread {
      */
     public void addTask(Runnable task) {
         queue.add(task);
-        synchronized(ioThread) {
-            ioThread.notify();
+        synchronized (queue) {
+            for (IOThread ioThread : ioThreads) {
+                synchronized (ioThread) {
+                    ioThread.notify();
+                }
+            }
         }
     }
     
@@ -78,11 +95,13 @@ public class AbstractIOThreadManager extends Thread {
     public void run() {
         while (!interrupted()) {
             synchronized (queue) {
-                if (ioThread.isBlocked()) {
-                	LOGGER.debug("Killing IOThread " + ioThread);
-                    ioThread.interrupt();
-                    ioThread = new IOThread(queue, blockThreshold);
-                    ioThread.start();
+                for (int i = 0; i < ioThreads.length; i++) {
+                    if (ioThreads[i].isBlocked()) {
+                        LOGGER.debug("Killing IOThread " + ioThreads[i]);
+                        ioThreads[i].interrupt();
+                        ioThreads[i] = new IOThread(queue, blockThreshold);
+                        ioThreads[i].start();
+                    }
                 }
             }
             try {
@@ -91,7 +110,10 @@ public class AbstractIOThreadManager extends Thread {
                 break;
             }
         }
-        ioThread.interrupt();
+        synchronized (queue) {
+            for (IOThread ioThread : ioThreads)
+                ioThread.interrupt();
+        }
     }
     
     
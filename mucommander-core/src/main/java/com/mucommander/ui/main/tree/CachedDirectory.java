@@ -58,6 +58,12 @@ public class CachedDirectory extends ProxyFile {
 
     /** a cached icon */
     private Icon cachedIcon;
+
+    /** the folder this directory has been listed in, null if unknown */
+    private AbstractFile parentFolder;
+
+    /** the size of this directory as accounted by the cache, guarded by the cache */
+    private long estimatedSize;
     
 
     /**
@@ -75,23 +81,27 @@ public class CachedDirectory extends ProxyFile {
      * cache thread is started.
      * @return true if directory is cached, false otherwise
      */
-    public synchronized boolean isCached() {
-        // check if caching thread is running
-        if (isReadingChildren()) {
-            return false;
-        }
-        // check if directory contents changed
-        if (lsTimeStamp != file.getDate()) {
-            setReadingChildren(true);
-            // read children in caching thread
-            TreeIOThreadManager.getInstance().addTask(new Runnable() {
-                public void run() {
-                    lsAsync();
-                }
-            });
-            return false;
+    public boolean isCached() {
+        synchronized (this) {
+            // check if caching thread is running
+            if (readingChildren) {
+                return false;
+            }
+            // check if directory contents didn't change
+            if (lsTimeStamp == file.getDate()) {
+                return true;
+            }
+            readingChildren = true;
         }
-        return true;
+        // listeners are notified without holding the lock, as they may lock the cache
+        cache.fireChildrenCached(this, true);
+        // read children in caching thread
+        TreeIOThreadManager.getInstance().addTask(new Runnable() {
+            public void run() {
+                lsAsync();
+            }
+        });
+        return false;
     }
 
     /**
@@ -121,6 +131,7 @@ public class CachedDirectory extends ProxyFile {
             for (int i = 0; i < children.length; i++) {
                 CachedDirectory cachedChild = cache.getOrAdd(children[i]);
                 cachedChild.setCachedIcon(icons[i]);
+                cachedChild.setParentFolder(file);
             }
         }
         
@@ -134,6 +145,7 @@ public class CachedDirectory extends ProxyFile {
         } catch (Exception e) {
             LOGGER.debug("Caught exception", e);
         }
+        cache.childrenCached(this);
     }
 
     /**
@@ -141,27 +153,29 @@ public class CachedDirectory extends ProxyFile {
      * @param children array of children of this directory
      * @param lsTimeStamp timestamp of cache
      */
-    private synchronized void setLsCache(AbstractFile[] children, long lsTimeStamp) {
-        this.lsTimeStamp = lsTimeStamp;
-        this.cachedChildren = children;
-        setReadingChildren(false);
+    void setLsCache(AbstractFile[] children, long lsTimeStamp) {
+        synchronized (this) {
+            this.lsTimeStamp = lsTimeStamp;
+            this.cachedChildren = children;
+            this.readingChildren = false;
+        }
+        // listeners are notified without holding the lock, as they may lock the cache
+        cache.fireChildrenCached(this, false);
     }
 
     /**
-     * Returns true if caching thread is running.
+     * Marks the cached children as outdated, so that they are read again the next time
+     * they are requested.
      */
-    public synchronized boolean isReadingChildren() {
-        return readingChildren;
+    synchronized void invalidate() {
+        lsTimeStamp = -1;
     }
 
     /**
-     * Sets a flag that indicates if caching thread is running. This method also
-     * initializes spinning icon.
-     * @param readingChildren
+     * Returns true if caching thread is running.
      */
-    private synchronized void setReadingChildren(boolean readingChildren) {
-        this.readingChildren = readingChildren;
-        cache.fireChildrenCached(this, readingChildren);
+    public synchronized boolean isReadingChildren() {
+        return readingChildren;
     }
 
     /**
@@ -188,4 +202,28 @@ public class CachedDirectory extends ProxyFile {
         this.cachedIcon = cachedIcon;
     }
 
+    /**
+     * Gets the folder in which this folder has been listed.
+     * @return the parent folder in the tree, null if unknown
+     */
+    public AbstractFile getParentFolder() {
+        return parentFolder;
+    }
+
+    /**
+     * Sets the folder in which this folder has been listed.
+     * @param parentFolder the parent folder in the tree
+     */
+    void setParentFolder(AbstractFile parentFolder) {
+        this.parentFolder = parentFolder;
+    }
+
+    long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    void setEstimatedSize(long estimatedSize) {
+        this.estimatedSize = estimatedSize;
+    }
+
 }
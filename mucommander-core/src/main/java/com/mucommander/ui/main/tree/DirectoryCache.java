@@ -20,42 +20,102 @@ package com.mucommander.ui.main.tree;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.util.FileComparator;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 
 import javax.swing.event.EventListenerList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class holds cached directories. 
  * It maps AbstractFiles to DirectoryCache instances.
+ * <p>
+ * The cache is bounded both by its number of entries and by the estimated memory retained by the cached
+ * children. When either bound is exceeded, the least recently used entries are evicted, except for the ones that
+ * are shown by the tree: expanded folders and their children. Evicted folders are listed again when they are
+ * expanded.
+ * </p>
  * @author Mariusz Jakubowski
  *
  */
 public class DirectoryCache {
     
-    /** a map that holds cached folders */
+    /** Estimated number of bytes retained by a cached folder, without its children */
+    private final static long ENTRY_SIZE = 512;
+
+    /** Estimated number of bytes retained by each cached child of a folder */
+    private final static long CHILD_SIZE = 256;
+
+    /** Percentage of the bounds the cache is brought down to when it is trimmed */
+    private final static int TRIM_PERCENTAGE = 90;
+
+    /** a map that holds cached folders, in least-recently-used order */
     private Map<AbstractFile, CachedDirectory> cache;
     
+    /** folders that are expanded in the tree */
+    private Set<AbstractFile> expanded = new HashSet<AbstractFile>();
+
     /** Comparator used to sort folders */
     private FileComparator sort;
 
     /** A file filter */
     private FileFilter filter;
 
+    /** Maximum number of cached folders */
+    private int maxEntries;
+
+    /** Maximum estimated size of the cache, in bytes */
+    private long maxSize;
+
+    /** Estimated size of the cache, in bytes */
+    private long size;
+
+    /**
+     * Number of entries and estimated size above which the cache is trimmed. These are the bounds of the cache,
+     * unless the folders that cannot be evicted exceed them: trimming is then put off until a folder is unpinned or
+     * the cache grows further, rather than scanning the whole cache again on every put.
+     */
+    private int trimEntries;
+    private long trimSize;
+
+    /** Statistics */
+    private long hitCount, missCount, evictionCount;
+
     /** Listeners. */
     protected EventListenerList listenerList = new EventListenerList();
 
 
     /**
-     * Creates a new directory cache.
+     * Creates a new directory cache, bounded as specified by the preferences.
      * @param filter filter used to filter children directories.
      * @param sort a comparator used to sort children
      */
     public DirectoryCache(FileFilter filter, FileComparator sort) {
-        //this.cache = Collections.synchronizedMap(new HashMap());
-        this.cache = new HashMap<AbstractFile, CachedDirectory>();
+        this(filter, sort,
+                MuConfigurations.getPreferences().getVariable(MuPreference.TREE_CACHE_MAX_ENTRIES, MuPreferences.DEFAULT_TREE_CACHE_MAX_ENTRIES),
+                1024L * MuConfigurations.getPreferences().getVariable(MuPreference.TREE_CACHE_MAX_SIZE, MuPreferences.DEFAULT_TREE_CACHE_MAX_SIZE));
+    }
+
+    /**
+     * Creates a new directory cache.
+     * @param filter filter used to filter children directories.
+     * @param sort a comparator used to sort children
+     * @param maxEntries maximum number of cached folders
+     * @param maxSize maximum estimated size of the cache, in bytes
+     */
+    public DirectoryCache(FileFilter filter, FileComparator sort, int maxEntries, long maxSize) {
+        this.cache = new LinkedHashMap<AbstractFile, CachedDirectory>(16, 0.75f, true);
         this.filter = filter;
         this.sort = sort;
+        this.maxEntries = maxEntries;
+        this.maxSize = maxSize;
+        this.trimEntries = maxEntries;
+        this.trimSize = maxSize;
     }
 
     /**
@@ -100,23 +160,37 @@ public class DirectoryCache {
 
     public synchronized void clear() {
         cache.clear();
+        expanded.clear();
+        size = 0;
+        resetTrimBounds();
     }
 
     public synchronized CachedDirectory get(AbstractFile key) {
-        return cache.get(key);
+        CachedDirectory cachedDir = cache.get(key);
+        if (cachedDir != null)
+            hitCount++;
+        else
+            missCount++;
+        return cachedDir;
     }
 
     public synchronized void put(AbstractFile key, CachedDirectory value) {
-        cache.put(key, value);
+        CachedDirectory previous = cache.put(key, value);
+        if (previous != null)
+            size -= previous.getEstimatedSize();
+        value.setEstimatedSize(estimateSize(value.get()));
+        size += value.getEstimatedSize();
+        trim(value);
     }
     
     /**
      * Deletes entry and all children from the cache.
      */
     public synchronized void removeWithChildren(AbstractFile key) {
-        CachedDirectory cachedDir = cache.get(key);
+        CachedDirectory cachedDir = cache.remove(key);
         if (cachedDir != null) {
-            cache.remove(key);
+            size -= cachedDir.getEstimatedSize();
+            resetTrimBounds();
             AbstractFile[] children = cachedDir.get();
             if (children != null) {
                 for (AbstractFile child : children) {
@@ -135,11 +209,150 @@ public class DirectoryCache {
     public synchronized CachedDirectory getOrAdd(AbstractFile key) {
         CachedDirectory cachedDir = cache.get(key);
         if (cachedDir == null) {
+            missCount++;
             cachedDir = new CachedDirectory(key, this);
-            cache.put(key, cachedDir);
+            put(key, cachedDir);
+        } else {
+            hitCount++;
         }
         return cachedDir;
     }
-   
 
+    /**
+     * Records that the children of a cached folder have been read, so that they are accounted in the size of the
+     * cache.
+     * @param cachedDir a cached folder
+     */
+    synchronized void childrenCached(CachedDirectory cachedDir) {
+        if (cache.get(cachedDir.getProxiedFile()) != cachedDir)
+            return;
+
+        size -= cachedDir.getEstimatedSize();
+        cachedDir.setEstimatedSize(estimateSize(cachedDir.get()));
+        size += cachedDir.getEstimatedSize();
+        // the folder is no longer being read, so it may be evicted
+        resetTrimBounds();
+        trim(cachedDir);
+    }
+
+    /**
+     * Marks a folder as expanded or collapsed in the tree. Expanded folders and their children are not evicted
+     * from the cache. If some children of a folder that is expanded have been evicted, the folder is listed again.
+     * @param key a folder
+     * @param expanded true if the folder is expanded, false if it is collapsed
+     */
+    public synchronized void setExpanded(AbstractFile key, boolean expanded) {
+        if (!expanded) {
+            if (this.expanded.remove(key)) {
+                // the folder and its children may be evicted again
+                resetTrimBounds();
+                trim(null);
+            }
+            return;
+        }
+
+        this.expanded.add(key);
+        CachedDirectory cachedDir = cache.get(key);
+        AbstractFile[] children = cachedDir != null ? cachedDir.get() : null;
+        if (children != null) {
+            for (AbstractFile child : children) {
+                if (!cache.containsKey(child)) {
+                    cachedDir.invalidate();
+                    break;
+                }
+            }
+        }
+    }
+
+    private static long estimateSize(AbstractFile[] children) {
+        return ENTRY_SIZE + (children == null ? 0 : children.length * CHILD_SIZE);
+    }
+
+    /**
+     * Returns true if the given cached folder can be evicted, i.e. it is not shown by the tree and its children are
+     * not being read.
+     */
+    private boolean isEvictable(AbstractFile key, CachedDirectory cachedDir) {
+        return !expanded.contains(key)
+                && (cachedDir.getParentFolder() == null || !expanded.contains(cachedDir.getParentFolder()))
+                && !cachedDir.isReadingChildren();
+    }
+
+    private void resetTrimBounds() {
+        trimEntries = maxEntries;
+        trimSize = maxSize;
+    }
+
+    /**
+     * Evicts least recently used folders if the cache exceeds one of its bounds, until the cache is below
+     * {@link #TRIM_PERCENTAGE} of its bounds.
+     * @param keep a folder that has just been added or updated, and that must not be evicted, may be null
+     */
+    private void trim(CachedDirectory keep) {
+        if (cache.size() <= trimEntries && size <= trimSize)
+            return;
+
+        int targetEntries = (int) ((long) maxEntries * TRIM_PERCENTAGE / 100);
+        // Subtracts rather than multiplies so that a maxSize of Long.MAX_VALUE cannot overflow
+        long targetSize = maxSize - maxSize / 100 * (100 - TRIM_PERCENTAGE);
+        Iterator<Map.Entry<AbstractFile, CachedDirectory>> iterator = cache.entrySet().iterator();
+        while ((cache.size() > targetEntries || size > targetSize) && iterator.hasNext()) {
+            Map.Entry<AbstractFile, CachedDirectory> entry = iterator.next();
+            if (entry.getValue() != keep && isEvictable(entry.getKey(), entry.getValue())) {
+                iterator.remove();
+                size -= entry.getValue().getEstimatedSize();
+                evictionCount++;
+            }
+        }
+
+        if (cache.size() > maxEntries || size > maxSize) {
+            // the remaining folders cannot be evicted: wait for the cache to grow by as much as a trim would have
+            // freed before trying again
+            trimEntries = cache.size() + (maxEntries - targetEntries);
+            trimSize = size + (maxSize - targetSize);
+        } else {
+            resetTrimBounds();
+        }
+    }
+
+    /**
+     * Returns the number of cached folders.
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the estimated size of the cache, in bytes.
+     */
+    public synchronized long getEstimatedSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups that found a cached folder.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cached folder.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of folders that have been evicted from the cache.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DirectoryCache[entries=" + cache.size() + ", estimatedSize=" + size + ", hits=" + hitCount
+                + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+    }
 }
@@ -71,6 +71,8 @@ public class FilesTreeModel implements TreeModel, CachedDirectoryListener {
         this.sort = sort;
         cache = new DirectoryCache(filter, sort);
         cache.addCachedDirectoryListener(this);
+        if (root != null)
+            cache.setExpanded(root, true);
     }
 
     /**
@@ -85,6 +87,7 @@ public class FilesTreeModel implements TreeModel, CachedDirectoryListener {
             root = cachedRoot.getProxiedFile();
             cache.clear();
             cache.put(root, cachedRoot);
+            cache.setExpanded(root, true);
             TreePath path = new TreePath(root);
             fireTreeStructureChanged(this, path);
         });
@@ -237,6 +240,22 @@ public class FilesTreeModel implements TreeModel, CachedDirectoryListener {
         fireTreeStructureChanged(this, path);
     }
 
+    /**
+     * Marks a folder as expanded or collapsed, so that the folders shown in the tree are kept in cache.
+     * @param folder a folder of the tree
+     * @param expanded true if the folder is being expanded, false if it is being collapsed
+     */
+    public void setExpanded(AbstractFile folder, boolean expanded) {
+        cache.setExpanded(folder, expanded);
+    }
+
+    /**
+     * Returns the cache of the folders' children.
+     */
+    public DirectoryCache getCache() {
+        return cache;
+    }
+
     public void cachingStarted(AbstractFile parent) {
         cachingNum++;
         if (cachingNum == 1) {
@@ -34,10 +34,12 @@ import javax.swing.JScrollPane;
 import javax.swing.JTree;
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
+import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 
@@ -79,7 +81,7 @@ import com.mucommander.ui.theme.ThemeListener;
  */
 public class FoldersTreePanel implements TreeSelectionListener,
 							LocationListener, FocusListener, ThemeListener, 
-							TreeModelListener, ConfigurationListener {
+							TreeModelListener, TreeWillExpandListener, ConfigurationListener {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FoldersTreePanel.class);
 	
     /** Directory tree */
@@ -141,6 +143,7 @@ public class FoldersTreePanel implements TreeSelectionListener,
         tree.setCellRenderer(renderer);
 
         tree.addTreeSelectionListener(this);
+        tree.addTreeWillExpandListener(this);
         tree.addFocusListener(this);
 
         // add a popup menu
@@ -397,6 +400,17 @@ public class FoldersTreePanel implements TreeSelectionListener,
         }
     }
 
+    // - TreeWillExpandListener code -------------------------------------------
+    // -------------------------------------------------------------------------
+
+    public void treeWillExpand(TreeExpansionEvent event) {
+        model.setExpanded((AbstractFile) event.getPath().getLastPathComponent(), true);
+    }
+
+    public void treeWillCollapse(TreeExpansionEvent event) {
+        model.setExpanded((AbstractFile) event.getPath().getLastPathComponent(), false);
+    }
+
     public JPanel getPanel() {
         return panel;
     }
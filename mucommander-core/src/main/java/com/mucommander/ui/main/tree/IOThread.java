@@ -58,8 +58,8 @@ public class IOThread extends Thread {
         
         while (!interrupted()) {
             lastActionTime = System.currentTimeMillis(); 
-            while (queue.size() > 0) {
-                Runnable task = queue.remove(0);
+            Runnable task;
+            while ((task = poll()) != null) {
                 try {
                     task.run();
                 } catch (Exception e) {
@@ -78,6 +78,16 @@ public class IOThread extends Thread {
         
     }
     
+    /**
+     * Removes the next task from the queue, the queue may be shared with other threads.
+     * @return the next task, null if the queue is empty
+     */
+    private Runnable poll() {
+        synchronized (queue) {
+            return queue.isEmpty() ? null : queue.remove(0);
+        }
+    }
+
     /**
      * Checks if current thread is blocked. This is done by checking if 
      * last action time is smaller than block threshold.
@@ -25,9 +25,12 @@ package com.mucommander.ui.main.tree;
 public class TreeIOThreadManager extends AbstractIOThreadManager {
 
     public final static TreeIOThreadManager instance = new TreeIOThreadManager();
+
+    /** number of folders that are read concurrently */
+    private final static int NB_THREADS = 3;
     
     private TreeIOThreadManager() {
-        super("TreeIOThreadManager", 5000);
+        super("TreeIOThreadManager", 5000, NB_THREADS);
     }
     
     public static TreeIOThreadManager getInstance() {
@@ -0,0 +1,106 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test case for {@link StartupTaskGraph}.
+ */
+public class StartupTaskGraphTest {
+
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testIndependentPhasesRunConcurrently() throws InterruptedException {
+        StartupTaskGraph startup = new StartupTaskGraph(executor);
+        // Each phase waits for the other one, so they only end if they run at the same time
+        CountDownLatch latch = new CountDownLatch(2);
+        Runnable phase = () -> {
+            latch.countDown();
+            try {
+                Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        CompletableFuture<Void> first = startup.submit("first", phase);
+        CompletableFuture<Void> second = startup.submit("second", phase);
+        startup.await(10, TimeUnit.SECONDS);
+
+        Assert.assertTrue(first.isDone());
+        Assert.assertTrue(second.isDone());
+        Assert.assertEquals(latch.getCount(), 0);
+    }
+
+    @Test
+    public void testDependencies() throws InterruptedException {
+        StartupTaskGraph startup = new StartupTaskGraph(executor);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> commands = startup.submit("commands", () -> order.add("commands"));
+        CompletableFuture<Void> failing = startup.submit("failing", () -> {
+            order.add("failing");
+            throw new IllegalStateException();
+        });
+        CompletableFuture<Void> actions = startup.submit("actions", () -> order.add("actions"), commands, failing);
+        startup.submit("keymap", () -> order.add("keymap"), actions);
+        startup.submit("toolbar", () -> order.add("toolbar"), actions);
+        startup.await(10, TimeUnit.SECONDS);
+
+        // Phases run after their dependencies, even failed ones
+        Assert.assertEquals(order.size(), 5);
+        Assert.assertTrue(order.indexOf("actions") > order.indexOf("commands"));
+        Assert.assertTrue(order.indexOf("actions") > order.indexOf("failing"));
+        Assert.assertTrue(order.indexOf("keymap") > order.indexOf("actions"));
+        Assert.assertTrue(order.indexOf("toolbar") > order.indexOf("actions"));
+    }
+
+    @Test
+    public void testReport() throws InterruptedException {
+        StartupTaskGraph startup = new StartupTaskGraph(executor);
+        startup.run("Loading configuration", () -> {});
+        startup.submit("Loading bookmarks", () -> {});
+        startup.await(10, TimeUnit.SECONDS);
+
+        String report = startup.getReport();
+        Assert.assertTrue(report.indexOf("Loading configuration") >= 0);
+        Assert.assertTrue(report.indexOf("Loading bookmarks") > report.indexOf("Loading configuration"));
+        Assert.assertTrue(report.contains("Total:"));
+    }
+}
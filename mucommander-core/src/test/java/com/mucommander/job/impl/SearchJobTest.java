@@ -0,0 +1,142 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.util.FileSet;
+
+/**
+ * Test case for {@link SearchJob}.
+ */
+public class SearchJobTest {
+
+    private Path tempFolder;
+
+    @BeforeMethod
+    public void createTempFolder() throws IOException {
+        tempFolder = Files.createTempDirectory("SearchJobTest");
+    }
+
+    @AfterMethod
+    public void deleteTempFolder() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempFolder)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private void createFile(String path) throws IOException {
+        Path file = tempFolder.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.createFile(file);
+    }
+
+    private static SearchJob createJob() {
+        SearchJob job = new SearchJob(null, new FileSet());
+        job.setDepth(0);
+        job.setListFilter(AbstractFile::isDirectory);
+        job.setListener(null);
+        return job;
+    }
+
+    private static Set<String> getFoundNames(SearchJob job) {
+        Set<String> names = new TreeSet<>();
+        for (AbstractFile file : job.getFindings())
+            names.add(file.getName());
+        return names;
+    }
+
+    @Test
+    public void testFindingsNotifiedWhileSearching() throws Exception {
+        createFile("a");
+        createFile("b/x");
+        createFile("c/y");
+
+        CountDownLatch notified = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        SearchJob job = createJob();
+        job.setFileMatcher(file -> {
+            try {
+                switch (file.getName()) {
+                case "x":
+                    // Found shortly after the first file, while the listener must not be notified again yet
+                    Thread.sleep(50);
+                    return true;
+                case "y":
+                    // The search goes on until the files found before have been notified
+                    return proceed.await(10, TimeUnit.SECONDS);
+                default:
+                    return !file.isDirectory();
+                }
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        job.setListener(() -> {
+            if (job.getFindings().size() == 2)
+                notified.countDown();
+        });
+
+        Thread search = new Thread(() -> job.processFile(FileFactory.getFile(tempFolder.toString()), null));
+        search.start();
+        try {
+            assertTrue(notified.await(5, TimeUnit.SECONDS));
+        } finally {
+            proceed.countDown();
+            search.join();
+        }
+
+        assertEquals(getFoundNames(job), new TreeSet<>(Arrays.asList("a", "x", "y")));
+    }
+
+    @Test
+    public void testFailingMatchSkipsFile() throws IOException {
+        createFile("a");
+        createFile("bad");
+        createFile("sub/b");
+
+        SearchJob job = createJob();
+        job.setFileMatcher(file -> {
+            if (file.getName().equals("bad"))
+                throw new IllegalStateException("cannot match " + file);
+            return !file.isDirectory();
+        });
+
+        job.processFile(FileFactory.getFile(tempFolder.toString()), null);
+
+        assertEquals(getFoundNames(job), new TreeSet<>(Arrays.asList("a", "b")));
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListResourceBundle;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.ProxyFile;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.core.desktop.DesktopManager;
+import com.mucommander.desktop.DefaultDesktopAdapter;
+import com.mucommander.desktop.DesktopInitialisationException;
+import com.mucommander.job.FileJobAction;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.dialog.DialogAction;
+
+/**
+ * Test case for {@link TransferFileJob}.
+ */
+public class TransferFileJobTest {
+
+    /** A size that spans several chunks of a local copy */
+    private final static int LARGE_FILE_SIZE = 8 * 1024 * 1024 + 12345;
+
+    private Path tempFolder;
+
+    static {
+        // Copies go through the desktop adapter once the file has been transferred
+        DesktopManager.registerAdapter(new DefaultDesktopAdapter());
+        try {
+            DesktopManager.init(false);
+        }
+        catch (DesktopInitialisationException e) {
+            throw new RuntimeException(e);
+        }
+
+        // Errors are reported with the keys of their messages
+        Translator.init(new EmptyBundle(), new EmptyBundle(), Collections.emptyList());
+    }
+
+    private static class EmptyBundle extends ListResourceBundle {
+        @Override
+        protected Object[][] getContents() {
+            return new Object[0][];
+        }
+    }
+
+    /**
+     * A job that copies the files the test asks for, and records the errors it would report to the user.
+     */
+    static class TestJob extends TransferFileJob {
+
+        /** Messages of the errors reported to the user */
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        /** Top-level files that were unmarked */
+        final List<AbstractFile> unmarkedFiles = Collections.synchronizedList(new ArrayList<>());
+
+        TestJob(AbstractFile... files) {
+            super(null, null, toFileSet(files));
+        }
+
+        private static FileSet toFileSet(AbstractFile... files) {
+            FileSet fileSet = new FileSet();
+            fileSet.addAll(files);
+            return fileSet;
+        }
+
+        @Override
+        protected boolean processFile(AbstractFile file, Object recurseParams) {
+            return true;
+        }
+
+        @Override
+        protected boolean hasFolderChangedImpl(AbstractFile folder) {
+            return false;
+        }
+
+        @Override
+        protected DialogAction showErrorDialog(String title, String message, List<DialogAction> actionChoices) {
+            errors.add(message);
+            return FileJobAction.SKIP;
+        }
+
+        @Override
+        protected void unmarkFile(AbstractFile file) {
+            unmarkedFiles.add(file);
+        }
+    }
+
+    /**
+     * Counts the streams that are open at the same time.
+     */
+    static class StreamCounter {
+        private final AtomicInteger openStreams = new AtomicInteger();
+        private final AtomicInteger maxOpenStreams = new AtomicInteger();
+
+        void opened() {
+            maxOpenStreams.accumulateAndGet(openStreams.incrementAndGet(), Math::max);
+        }
+
+        void closed() {
+            openStreams.decrementAndGet();
+        }
+
+        int getMaxOpenStreams() {
+            return maxOpenStreams.get();
+        }
+    }
+
+    /**
+     * A local file that is copied with a stream rather than by the kernel, and whose stream is slow to start so that
+     * the copies of several such files overlap.
+     */
+    static class SlowFile extends ProxyFile {
+        private final StreamCounter counter;
+
+        SlowFile(AbstractFile file, StreamCounter counter) {
+            super(file);
+            this.counter = counter;
+        }
+
+        @Override
+        public Object getUnderlyingFileObject() {
+            return null;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            InputStream in = file.getInputStream();
+            counter.opened();
+            return new FilterInputStream(in) {
+                private boolean started;
+                private boolean closed;
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (!started) {
+                        started = true;
+                        try {
+                            Thread.sleep(100);
+                        }
+                        catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                    return super.read(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        counter.closed();
+                    }
+                    super.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * A file that cannot be read.
+     */
+    static class UnreadableFile extends ProxyFile {
+
+        UnreadableFile(AbstractFile file) {
+            super(file);
+        }
+
+        @Override
+        public Object getUnderlyingFileObject() {
+            return null;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            throw new IOException("cannot read " + file);
+        }
+    }
+
+    @BeforeMethod
+    public void createTempFolder() throws IOException {
+        tempFolder = Files.createTempDirectory("TransferFileJobTest");
+    }
+
+    @AfterMethod
+    public void deleteTempFolder() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempFolder)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private AbstractFile createFile(String name, byte[] data) throws IOException {
+        return FileFactory.getFile(Files.write(tempFolder.resolve(name), data).toString());
+    }
+
+    private AbstractFile getFile(String name) {
+        return FileFactory.getFile(tempFolder.resolve(name).toString());
+    }
+
+    private byte[] readFile(String name) throws IOException {
+        return Files.readAllBytes(tempFolder.resolve(name));
+    }
+
+    @Test
+    public void testCopyLocalFile() throws IOException, FileTransferException {
+        byte[] data = randomBytes(LARGE_FILE_SIZE);
+        AbstractFile source = createFile("source", data);
+        TestJob job = new TestJob(source);
+
+        job.copyFile(source, getFile("dest"), false);
+
+        assertTrue(Arrays.equals(readFile("dest"), data));
+        assertEquals(job.getCurrentFileByteCount(), data.length);
+        assertEquals(job.getCurrentFileSkippedByteCount(), 0);
+    }
+
+    @Test
+    public void testCopyLocalFileReplacesDestination() throws IOException, FileTransferException {
+        byte[] data = randomBytes(1000);
+        AbstractFile source = createFile("source", data);
+        createFile("dest", randomBytes(5000));
+
+        new TestJob(source).copyFile(source, getFile("dest"), false);
+
+        assertTrue(Arrays.equals(readFile("dest"), data));
+    }
+
+    @Test
+    public void testAppendLocalFile() throws IOException, FileTransferException {
+        byte[] data = randomBytes(LARGE_FILE_SIZE);
+        AbstractFile source = createFile("source", data);
+        int existing = 1024 * 1024 + 17;
+        createFile("dest", Arrays.copyOf(data, existing));
+        TestJob job = new TestJob(source);
+
+        job.copyFile(source, getFile("dest"), true);
+
+        assertTrue(Arrays.equals(readFile("dest"), data));
+        assertEquals(job.getCurrentFileByteCount(), data.length);
+        assertEquals(job.getCurrentFileSkippedByteCount(), existing);
+    }
+
+    @Test
+    public void testCopyFileReportingNoSize() throws IOException, FileTransferException {
+        // Files in /proc report a size of 0 but do have contents
+        Path procFile = Paths.get("/proc/version");
+        if (!Files.isReadable(procFile))
+            return;
+
+        AbstractFile source = FileFactory.getFile(procFile.toString());
+        assertEquals(source.getSize(), 0);
+
+        new TestJob(source).copyFile(source, getFile("dest"), false);
+
+        byte[] expected = Files.readAllBytes(procFile);
+        assertTrue(expected.length > 0);
+        assertTrue(Arrays.equals(readFile("dest"), expected));
+    }
+
+    @Test
+    public void testCopyEmptyFile() throws IOException, FileTransferException {
+        AbstractFile source = createFile("source", new byte[0]);
+
+        new TestJob(source).copyFile(source, getFile("dest"), false);
+
+        assertEquals(readFile("dest").length, 0);
+    }
+
+    @Test
+    public void testConcurrentTransfers() throws IOException {
+        int nbFiles = 6;
+        StreamCounter counter = new StreamCounter();
+        AbstractFile[] sources = new AbstractFile[nbFiles];
+        long totalSize = 0;
+        for (int i = 0; i < nbFiles; i++) {
+            byte[] data = randomBytes(100000 + i * 1000);
+            sources[i] = new SlowFile(createFile("source" + i, data), counter);
+            totalSize += data.length;
+        }
+        TestJob job = new TestJob(sources);
+        job.setConcurrentTransfers(2);
+
+        for (int i = 0; i < nbFiles; i++)
+            assertTrue(job.tryCopyFileConcurrently(sources[i], getFile("dest" + i), false, "error"));
+        job.fileProcessed(job.files.elementAt(0), true);
+        job.waitForAsyncProcessing();
+
+        assertEquals(counter.getMaxOpenStreams(), 2);
+        for (int i = 0; i < nbFiles; i++)
+            assertTrue(Arrays.equals(readFile("dest" + i), readFile("source" + i)));
+        // The bytes of each transfer are accounted once it is over
+        assertEquals(job.getTotalByteCount(), totalSize);
+        assertEquals(job.getTotalSkippedByteCount(), 0);
+        assertEquals(job.getCurrentFileByteCount(), 0);
+        assertTrue(job.errors.isEmpty());
+        assertEquals(job.unmarkedFiles, Collections.singletonList(job.files.elementAt(0)));
+    }
+
+    @Test
+    public void testConcurrentTransferFailure() throws IOException {
+        byte[] data = randomBytes(1000);
+        AbstractFile source = createFile("source", data);
+        AbstractFile unreadable = new UnreadableFile(createFile("unreadable", data));
+        TestJob job = new TestJob(source);
+        job.setConcurrentTransfers(2);
+
+        assertTrue(job.tryCopyFileConcurrently(source, getFile("dest"), false, "error"));
+        assertTrue(job.tryCopyFileConcurrently(unreadable, getFile("dest2"), false, "error"));
+        job.fileProcessed(job.files.elementAt(0), true);
+        job.waitForAsyncProcessing();
+
+        assertTrue(Arrays.equals(readFile("dest"), data));
+        assertEquals(job.errors, Collections.singletonList("cannot_read_file"));
+        assertEquals(job.getTotalByteCount(), data.length);
+        // The file is not unmarked as one of its transfers failed
+        assertTrue(job.unmarkedFiles.isEmpty());
+    }
+}
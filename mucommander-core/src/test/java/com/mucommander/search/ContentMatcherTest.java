@@ -0,0 +1,122 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.search;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test case for {@link ContentMatcher}.
+ */
+public class ContentMatcherTest {
+
+    private static boolean matches(ContentMatcher matcher, byte[] contents) throws IOException {
+        return matcher.matches(new ByteArrayInputStream(contents));
+    }
+
+    private static boolean matches(ContentMatcher matcher, String contents) throws IOException {
+        return matches(matcher, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns <code>length</code> bytes of filler with the given text at the given offset.
+     */
+    private static byte[] createContents(int length, String text, int offset) {
+        byte[] contents = new byte[length];
+        Arrays.fill(contents, (byte) '.');
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, contents, offset, bytes.length);
+        return contents;
+    }
+
+    @Test
+    public void testLiteral() throws IOException {
+        ContentMatcher matcher = ContentMatcher.create("needle", true, false);
+        assertTrue(matches(matcher, "a needle in a haystack"));
+        assertTrue(matches(matcher, "needle"));
+        assertFalse(matches(matcher, "a Needle in a haystack"));
+        assertFalse(matches(matcher, "needl"));
+        assertFalse(matches(matcher, ""));
+
+        // Special characters are not interpreted
+        matcher = ContentMatcher.create("a.c", true, false);
+        assertTrue(matches(matcher, "xa.cx"));
+        assertFalse(matches(matcher, "xabcx"));
+    }
+
+    @Test
+    public void testCaseInsensitive() throws IOException {
+        ContentMatcher matcher = ContentMatcher.create("NeEdLe", false, false);
+        assertTrue(matches(matcher, "a needle in a haystack"));
+        assertTrue(matches(matcher, "A NEEDLE IN A HAYSTACK"));
+        assertFalse(matches(matcher, "a noodle in a haystack"));
+
+        // Non-ASCII text is decoded with the default charset
+        Charset charset = Charset.defaultCharset();
+        if (charset.newEncoder().canEncode("é")) {
+            matcher = ContentMatcher.create("ÉCOLE", false, false);
+            assertTrue(matches(matcher, "une école".getBytes(charset)));
+            assertFalse(matches(matcher, "une ecole".getBytes(charset)));
+        }
+    }
+
+    @Test
+    public void testMatchAcrossBuffers() throws IOException {
+        ContentMatcher matcher = ContentMatcher.create("needle", true, false);
+        for (int offset = 65530; offset <= 65536; offset++)
+            assertTrue(matches(matcher, createContents(200000, "needle", offset)));
+        assertFalse(matches(matcher, createContents(200000, "needl", 65533)));
+    }
+
+    @Test
+    public void testRegex() throws IOException {
+        ContentMatcher matcher = ContentMatcher.create("ne+dle\\d", true, true);
+        assertTrue(matches(matcher, "a neeedle1 in a haystack"));
+        assertFalse(matches(matcher, "a needle in a haystack"));
+
+        // Matches do not span lines
+        matcher = ContentMatcher.create("needle.*haystack", false, true);
+        assertTrue(matches(matcher, "a NEEDLE in a haystack"));
+        assertFalse(matches(matcher, "a needle\nin a haystack"));
+
+        matcher = ContentMatcher.create("^needle$", true, true);
+        assertTrue(matches(matcher, createContents(200000, "\nneedle\n", 65530)));
+    }
+
+    @Test
+    public void testMaxBytes() throws IOException {
+        byte[] contents = createContents(1000, "needle", 500);
+        for (boolean regex : new boolean[] { false, true }) {
+            ContentMatcher matcher = ContentMatcher.create("needle", true, regex);
+            matcher.setMaxBytes(506);
+            assertTrue(matches(matcher, contents));
+            matcher.setMaxBytes(505);
+            assertFalse(matches(matcher, contents));
+            matcher.setMaxBytes(0);
+            assertTrue(matches(matcher, contents));
+        }
+    }
+}
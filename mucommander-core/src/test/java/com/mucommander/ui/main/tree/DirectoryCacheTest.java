@@ -0,0 +1,218 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.main.tree;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.DummyFile;
+import com.mucommander.commons.file.FileURL;
+
+/**
+ * Test case for {@link DirectoryCache}: folders are evicted in least-recently-used order once one of the bounds of
+ * the cache is exceeded, except for the folders shown by the tree.
+ */
+public class DirectoryCacheTest {
+
+    private static AbstractFile folder(String path) throws IOException {
+        return new DummyFile(FileURL.getFileURL(path));
+    }
+
+    private static AbstractFile[] folders(String prefix, int count) throws IOException {
+        AbstractFile[] folders = new AbstractFile[count];
+        for (int i = 0; i < count; i++) {
+            folders[i] = folder(prefix + i);
+        }
+        return folders;
+    }
+
+    private static void put(DirectoryCache cache, AbstractFile... folders) {
+        for (AbstractFile folder : folders) {
+            cache.put(folder, new CachedDirectory(folder, cache));
+        }
+    }
+
+    /**
+     * Lists the given children in the given folder, as the tree does once it has read them.
+     */
+    private static void putChildren(DirectoryCache cache, AbstractFile parent, AbstractFile... children) {
+        for (AbstractFile child : children) {
+            cache.getOrAdd(child).setParentFolder(parent);
+        }
+        CachedDirectory cachedParent = cache.getOrAdd(parent);
+        cachedParent.setLsCache(children, 0);
+        cache.childrenCached(cachedParent);
+    }
+
+    /**
+     * Returns the estimated size of a cached folder whose children have not been read.
+     */
+    private static long getEntrySize() throws IOException {
+        DirectoryCache cache = new DirectoryCache(null, null, 10, Long.MAX_VALUE);
+        put(cache, folder("/entry"));
+        return cache.getEstimatedSize();
+    }
+
+    private static void assertCached(DirectoryCache cache, AbstractFile... folders) {
+        for (AbstractFile folder : folders) {
+            assertNotNull(cache.get(folder));
+        }
+    }
+
+    private static void assertEvicted(DirectoryCache cache, AbstractFile... folders) {
+        for (AbstractFile folder : folders) {
+            assertNull(cache.get(folder));
+        }
+    }
+
+    @Test
+    public void testEvictionOrder() throws IOException {
+        DirectoryCache cache = new DirectoryCache(null, null, 10, Long.MAX_VALUE);
+        AbstractFile[] folders = folders("/folder", 12);
+        put(cache, Arrays.copyOf(folders, 10));
+        assertEquals(cache.size(), 10);
+        assertEquals(cache.getEvictionCount(), 0);
+
+        // Accessing a folder makes it the most recently used one
+        assertCached(cache, folders[0]);
+
+        // Exceeding the bound trims the cache to 90% of it
+        put(cache, folders[10]);
+        assertEquals(cache.size(), 9);
+        assertEquals(cache.getEvictionCount(), 2);
+        assertEvicted(cache, folders[1], folders[2]);
+        assertCached(cache, folders[0], folders[3], folders[10]);
+
+        put(cache, folders[11]);
+        assertEquals(cache.size(), 10);
+        assertEquals(cache.getEvictionCount(), 2);
+    }
+
+    @Test
+    public void testSizeBound() throws IOException {
+        long entrySize = getEntrySize();
+        DirectoryCache cache = new DirectoryCache(null, null, 100, 10 * entrySize);
+        AbstractFile[] folders = folders("/folder", 11);
+        put(cache, folders);
+
+        assertEquals(cache.size(), 9);
+        assertEquals(cache.getEstimatedSize(), 9 * entrySize);
+        assertEvicted(cache, folders[0], folders[1]);
+        assertCached(cache, folders[2], folders[10]);
+    }
+
+    @Test
+    public void testChildrenAccounted() throws IOException {
+        long entrySize = getEntrySize();
+        DirectoryCache cache = new DirectoryCache(null, null, 100, 100 * entrySize);
+        AbstractFile parent = folder("/parent");
+        AbstractFile[] children = folders("/parent/child", 5);
+        putChildren(cache, parent, children);
+
+        long sizeWithChildren = cache.getEstimatedSize();
+        assertTrue(sizeWithChildren > 6 * entrySize);
+
+        // Removing the parent removes its children as well
+        cache.removeWithChildren(parent);
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getEstimatedSize(), 0);
+    }
+
+    @Test
+    public void testExpandedFoldersKept() throws IOException {
+        DirectoryCache cache = new DirectoryCache(null, null, 10, Long.MAX_VALUE);
+        AbstractFile root = folder("/root");
+        AbstractFile[] children = folders("/root/child", 4);
+        putChildren(cache, root, children);
+        cache.setExpanded(root, true);
+        AbstractFile expanded = folder("/expanded");
+        put(cache, expanded);
+        cache.setExpanded(expanded, true);
+
+        // Only the other folders are evicted, however old the expanded folders and their children are
+        AbstractFile[] others = folders("/other", 20);
+        put(cache, others);
+        assertCached(cache, root, expanded);
+        assertCached(cache, children);
+        assertEvicted(cache, others[0], others[10]);
+        assertCached(cache, others[19]);
+        assertTrue(cache.size() <= 10);
+
+        // Collapsed folders and their children can be evicted again
+        cache.setExpanded(root, false);
+        put(cache, folders("/another", 10));
+        assertEvicted(cache, root);
+        assertEvicted(cache, children);
+        assertCached(cache, expanded);
+    }
+
+    @Test
+    public void testExpandedFoldersExceedingBounds() throws IOException {
+        DirectoryCache cache = new DirectoryCache(null, null, 2, Long.MAX_VALUE);
+        AbstractFile[] folders = folders("/folder", 4);
+        for (AbstractFile folder : folders) {
+            put(cache, folder);
+            cache.setExpanded(folder, true);
+        }
+
+        // The cache exceeds its bounds rather than evicting folders shown by the tree
+        assertEquals(cache.size(), 4);
+        assertEquals(cache.getEvictionCount(), 0);
+    }
+
+    @Test
+    public void testTrimPutOffWhilePinned() throws IOException {
+        DirectoryCache cache = new DirectoryCache(null, null, 100, Long.MAX_VALUE);
+        AbstractFile[] pinned = folders("/pinned", 101);
+        for (AbstractFile folder : pinned) {
+            put(cache, folder);
+            cache.setExpanded(folder, true);
+        }
+
+        // Trimming is not attempted again until the cache has grown by as much as a trim would have freed
+        AbstractFile[] others = folders("/other", 11);
+        put(cache, Arrays.copyOf(others, 10));
+        assertEquals(cache.size(), 111);
+        assertEquals(cache.getEvictionCount(), 0);
+
+        put(cache, others[10]);
+        assertEquals(cache.size(), 102);
+        assertEquals(cache.getEvictionCount(), 10);
+        assertCached(cache, others[10]);
+
+        // Collapsing a folder makes it evictable, the cache is trimmed right away
+        for (AbstractFile folder : pinned) {
+            cache.setExpanded(folder, false);
+        }
+        assertEquals(cache.size(), 100);
+        assertEvicted(cache, pinned[0], others[10]);
+
+        AbstractFile another = folder("/another");
+        put(cache, another);
+        assertEquals(cache.size(), 90);
+        assertCached(cache, another);
+    }
+}
@@ -25,6 +25,7 @@ import com.mucommander.commons.file.archive.ArchiveEntryIterator;
 import com.mucommander.commons.file.archive.SingleArchiveEntryIterator;
 
 import org.apache.tools.bzip2.CBZip2InputStream;
+import org.apache.tools.bzip2.ParallelBZip2InputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -83,7 +84,8 @@ public class Bzip2ArchiveFile extends AbstractROArchiveFile {
         try {
             InputStream in = getInputStream();
 
-            // Skips the 2 magic bytes 'BZ', as required by CBZip2InputStream. Quoted from CBZip2InputStream's Javadoc:
+            // Skips the 2 magic bytes 'BZ', as required by CBZip2InputStream and ParallelBZip2InputStream. Quoted from
+            // CBZip2InputStream's Javadoc:
             // "Although BZip2 headers are marked with the magic 'Bz'. this constructor expects the next byte in the
             // stream to be the first one after the magic.  Thus callers have to skip the first two bytes. Otherwise
             // this constructor will throw an exception."
@@ -92,6 +94,12 @@ public class Bzip2ArchiveFile extends AbstractROArchiveFile {
             in.read();
             in.read();
 
+            // Blocks are decompressed concurrently when there are several processors. ParallelBZip2InputStream reads
+            // the compressed stream in large chunks, it does not need to be buffered.
+            int nbProcessors = Runtime.getRuntime().availableProcessors();
+            if (nbProcessors > 1)
+                return new ParallelBZip2InputStream(in, nbProcessors);
+
             // Quoted from CBZip2InputStream's Javadoc:
             // "CBZip2InputStream reads bytes from the compressed source stream via the single byte {@link java.io.InputStream#read()
             // read()} method exclusively. Thus you should consider to use a buffered source stream."
@@ -23,6 +23,8 @@ import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.file.archive.AbstractROArchiveFile;
 import com.mucommander.commons.file.archive.ArchiveEntry;
 import com.mucommander.commons.file.archive.ArchiveEntryIterator;
+import com.mucommander.commons.io.BoundedInputStream;
+import com.mucommander.commons.io.CounterInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.slf4j.Logger;
@@ -45,6 +47,12 @@ import java.io.InputStream;
 public class TarArchiveFile extends AbstractROArchiveFile {
     private static final Logger LOGGER = LoggerFactory.getLogger(TarArchiveFile.class);
 
+    /** Offsets of the entries' data, null until all entries have been iterated once */
+    private volatile TarEntryIndex entryIndex;
+
+    /** Cache key of {@link #entryIndex}, used to detect if the archive has changed since the index was built */
+    private volatile String entryIndexKey;
+
     /**
      * Creates a TarArchiveFile on of the given file.
      *
@@ -55,13 +63,46 @@ public class TarArchiveFile extends AbstractROArchiveFile {
     }
 
 
+    /**
+     * Returns the key under which the entry index of this archive, in its current state, is cached.
+     */
+    private String getEntryIndexKey() {
+        return TarEntryIndex.getCacheKey(getURL().toString(false), getSize(), getDate());
+    }
+
+    /**
+     * Returns the entry index that matches the current state of this archive, <code>null</code> if the archive's
+     * entries have not been indexed yet.
+     */
+    private TarEntryIndex getEntryIndex() {
+        String key = getEntryIndexKey();
+        if(key.equals(entryIndexKey))
+            return entryIndex;
+
+        // The archive may have been indexed by another instance
+        TarEntryIndex index = TarEntryIndex.getCached(key);
+        if(index!=null) {
+            entryIndex = index;
+            entryIndexKey = key;
+        }
+
+        return index;
+    }
+
+
     ////////////////////////////////////////
     // AbstractArchiveFile implementation //
     ////////////////////////////////////////
 
     @Override
     public ArchiveEntryIterator getEntryIterator() throws IOException, UnsupportedFileOperationException {
-        return new TarEntryIterator(new TarArchiveInputStream(getInputStream()));
+        String key = getEntryIndexKey();
+        CounterInputStream cin = new CounterInputStream(getInputStream());
+        return new TarEntryIterator(new TarArchiveInputStream(cin), cin.getCounter(), index -> {
+            entryIndex = index;
+            entryIndexKey = key;
+            TarEntryIndex.cache(key, index);
+        });
     }
 
 
@@ -90,6 +131,15 @@ public class TarArchiveFile extends AbstractROArchiveFile {
             // This is not the one, look for the entry from the beginning of the archive
         }
 
+        // Seek straight to the entry's data if its offset is known. For compressed archives the data still has to be
+        // inflated up to that offset, but the headers of the preceding entries are not parsed.
+        TarEntryIndex index = getEntryIndex();
+        if(index!=null) {
+            long dataOffset = index.getDataOffset(entry.getPath());
+            if(dataOffset>=0)
+                return new BoundedInputStream(getInputStream(dataOffset), entry.getSize(), false);
+        }
+
         TarArchiveInputStream tin = new TarArchiveInputStream(getInputStream());
         TarArchiveEntry tarEntry;
         String targetPath = entry.getPath();
@@ -0,0 +1,99 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.tar;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Maps the entries of a TAR archive to the offset at which their data starts within the (uncompressed) archive.
+ * An index is built while iterating through the archive's entries, and allows an entry's contents to be read later
+ * on without parsing the headers of the entries that precede it.
+ *
+ * <p>Indexes are also kept in a small process-wide cache keyed by the archive's location, size and date, so that
+ * an archive which is browsed again does not need to be scanned to locate its entries.</p>
+ */
+class TarEntryIndex {
+
+    /** Maximum number of archive indexes kept in the cache */
+    private final static int CACHE_CAPACITY = 16;
+
+    /** Recently built indexes, evicted in least-recently-used order */
+    private final static Map<String, TarEntryIndex> CACHE = new LinkedHashMap<String, TarEntryIndex>(CACHE_CAPACITY, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TarEntryIndex> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    /** Entry name -> offset of the entry's data */
+    private final Map<String, Long> dataOffsets = new HashMap<>();
+
+    /**
+     * Records the offset at which the data of the given entry starts.
+     *
+     * @param entryName name of the entry, as stored in the TAR header
+     * @param dataOffset offset of the entry's data within the uncompressed archive
+     */
+    void put(String entryName, long dataOffset) {
+        dataOffsets.put(entryName, dataOffset);
+    }
+
+    /**
+     * Returns the offset at which the data of the given entry starts, <code>-1</code> if the entry is not indexed.
+     *
+     * @param entryName name of the entry, as stored in the TAR header
+     * @return the offset of the entry's data within the uncompressed archive, -1 if unknown
+     */
+    long getDataOffset(String entryName) {
+        Long offset = dataOffsets.get(entryName);
+        return offset==null?-1:offset;
+    }
+
+    /**
+     * Returns the cache key for an archive with the given location, size and date.
+     */
+    static String getCacheKey(String location, long size, long date) {
+        return location+'#'+size+'#'+date;
+    }
+
+    /**
+     * Returns the cached index for the given key, <code>null</code> if there is none.
+     *
+     * @param key the cache key, as returned by {@link #getCacheKey(String, long, long)}
+     * @return the cached index for the given key, <code>null</code> if there is none
+     */
+    static TarEntryIndex getCached(String key) {
+        synchronized(CACHE) {
+            return CACHE.get(key);
+        }
+    }
+
+    /**
+     * Adds the given index to the cache, replacing any previous index with the same key.
+     *
+     * @param key the cache key, as returned by {@link #getCacheKey(String, long, long)}
+     * @param index the index to cache
+     */
+    static void cache(String key, TarEntryIndex index) {
+        synchronized(CACHE) {
+            CACHE.put(key, index);
+        }
+    }
+}
@@ -21,10 +21,12 @@ import com.mucommander.commons.file.PermissionBits;
 import com.mucommander.commons.file.SimpleFilePermissions;
 import com.mucommander.commons.file.archive.ArchiveEntry;
 import com.mucommander.commons.file.archive.ArchiveEntryIterator;
+import com.mucommander.commons.io.ByteCounter;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 
 import java.io.IOException;
+import java.util.function.Consumer;
 
 /**
  * An <code>ArchiveEntryIterator</code> that iterates through a {@link TarArchiveInputStream}.
@@ -39,6 +41,15 @@ class TarEntryIterator implements ArchiveEntryIterator {
     /** The current entry, where the TarArchiveInputStream is currently positioned */
     private ArchiveEntry currentEntry;
 
+    /** Counts the bytes read from the archive, null if entries are not indexed */
+    private ByteCounter counter;
+
+    /** Index of the entries' data offsets, populated as entries are iterated */
+    private TarEntryIndex index;
+
+    /** Notified with the index once all entries have been iterated */
+    private Consumer<TarEntryIndex> indexListener;
+
 
     /**
      * Creates a new TarEntryIterator that iterates through the entries of the given {@link TarArchiveInputStream}.
@@ -50,6 +61,24 @@ class TarEntryIterator implements ArchiveEntryIterator {
         this.tin = tin;
     }
 
+    /**
+     * Creates a new TarEntryIterator that iterates through the entries of the given {@link TarArchiveInputStream}
+     * and records the offset of each entry's data. The given counter must count the bytes read from the stream the
+     * <code>TarArchiveInputStream</code> reads from. Once the last entry has been reached, the resulting index is
+     * passed to <code>indexListener</code>.
+     *
+     * @param tin the TarArchiveInputStream to iterate through
+     * @param counter counts the bytes read from the uncompressed archive
+     * @param indexListener notified with the index once all entries have been iterated
+     * @throws IOException if an error occurred while fetching the first entry
+     */
+    TarEntryIterator(TarArchiveInputStream tin, ByteCounter counter, Consumer<TarEntryIndex> indexListener) throws IOException {
+        this.tin = tin;
+        this.counter = counter;
+        this.index = new TarEntryIndex();
+        this.indexListener = indexListener;
+    }
+
     /**
      * Returns the {@link TarArchiveInputStream} instance that was used to create this object.
      *
@@ -97,8 +126,18 @@ class TarEntryIterator implements ArchiveEntryIterator {
     private ArchiveEntry getNextEntry() throws IOException {
         TarArchiveEntry entry = tin.getNextTarEntry();
 
-        if(entry==null)
+        if(entry==null) {
+            if(index!=null) {
+                indexListener.accept(index);
+                index = null;
+            }
             return null;
+        }
+
+        // The stream is now positioned at the beginning of the entry's data. Sparse entries can't be read as a
+        // contiguous block of data, so they are left out of the index.
+        if(index!=null && !entry.isSparse())
+            index.put(entry.getName(), counter.getByteCount());
 
         return createArchiveEntry(entry);
     }
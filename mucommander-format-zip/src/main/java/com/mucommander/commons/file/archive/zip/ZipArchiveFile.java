@@ -118,6 +118,9 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
         com.mucommander.commons.file.archive.zip.provider.ZipEntry zipEntry = new com.mucommander.commons.file.archive.zip.provider.ZipEntry(path);
         zipEntry.setMethod(ZipConstants.DEFLATED);
         zipEntry.setTime(System.currentTimeMillis());
+        // The size lets the local file header be written in the Zip64 format if the entry may exceed 4GB
+        if(!isDirectory && entry.getSize()>=0)
+            zipEntry.setSize(entry.getSize());
         zipEntry.setUnixMode(SimpleFilePermissions.padPermissions(entry.getPermissions(), isDirectory
                 ? FilePermissions.DEFAULT_DIRECTORY_PERMISSIONS
                         : FilePermissions.DEFAULT_FILE_PERMISSIONS).getIntValue());
@@ -0,0 +1,86 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.commons.file.archive.zip.provider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import com.mucommander.commons.io.ParallelDeflaterOutputStream;
+
+/**
+ * ParallelDeflatedOutputStream compresses data using the DEFLATED compression method on several threads, with a
+ * {@link ParallelDeflaterOutputStream}. The entry's data is compressed in blocks that form a single regular DEFLATE
+ * stream, readable by any Zip implementation.
+ *
+ * <p>The <code>Deflater</code> passed to the constructor is not used: each block is compressed by a deflater of the
+ * <code>ParallelDeflaterOutputStream</code>.</p>
+ */
+public class ParallelDeflatedOutputStream extends DeflatedOutputStream {
+
+    /** Compresses the data on several threads and writes it to the underlying stream */
+    private final ParallelDeflaterOutputStream pdos;
+
+    /**
+     * Creates a new <code>ParallelDeflatedOutputStream</code> that writes compressed data to the given
+     * <code>OutputStream</code> and automatically updates the supplied CRC32 checksum.
+     *
+     * @param out the OutputStream where the compressed data is sent to
+     * @param deflater the Deflater of the Zip stream, unused
+     * @param buf the buffer of the Zip stream, unused
+     * @param level the compression level
+     * @param nbThreads the maximum number of blocks that are compressed concurrently
+     */
+    public ParallelDeflatedOutputStream(OutputStream out, Deflater deflater, byte buf[], int level, int nbThreads) {
+        super(out, deflater, buf);
+
+        pdos = new ParallelDeflaterOutputStream(out, level, nbThreads);
+    }
+
+    @Override
+    public void finishDeflate() throws IOException {
+        pdos.finish();
+    }
+
+
+    /////////////////////////////////////////
+    // ZipEntryOutputStream implementation //
+    /////////////////////////////////////////
+
+    @Override
+    public long getTotalIn() {
+        return pdos.getBytesRead();
+    }
+
+    @Override
+    public long getTotalOut() {
+        return pdos.getBytesWritten();
+    }
+
+
+    /////////////////////////////////
+    // OutputStream implementation //
+    /////////////////////////////////
+
+    @Override
+    public void write(byte[] b, int offset, int length) throws IOException {
+        pdos.write(b, offset, length);
+        crc.update(b, offset, length);
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.zip.provider;
+
+import java.util.zip.ZipException;
+
+/**
+ * Zip64 extended information extra field (header ID 0x0001), which holds the sizes and local file header offset of
+ * an entry when they do not fit in the 32-bit fields of the local and central file headers.
+ *
+ * <p>The fields that the extra field contains depend on the header it is part of: in a local file header, it always
+ * contains both the uncompressed and compressed sizes. In a central file header, it contains only the values whose
+ * 32-bit field is set to <code>0xFFFFFFFF</code>, in the following order: uncompressed size, compressed size, local
+ * file header offset. As the data of the field alone is not enough to tell them apart, it is kept as-is by
+ * {@link #parseFromLocalFileData(byte[], int, int)} and interpreted by
+ * {@link #parseFromCentralDirectoryData(boolean, boolean, boolean)}.</p>
+ *
+ * <p>This field is not kept in the list of extra fields of a {@link ZipEntry}: it is created by
+ * {@link ZipOutputStream} from the entry's attributes whenever a header is written.</p>
+ */
+public class Zip64ExtraField implements ZipExtraField {
+
+    /** Header ID of the Zip64 extended information extra field */
+    public static final ZipShort ID = new ZipShort(0x0001);
+
+    /** Length of the data of this field in a local file header */
+    static final int LOCAL_FILE_DATA_LENGTH = 16;
+
+    /** Uncompressed size of the entry, -1 if not present in this field */
+    private long size = -1;
+
+    /** Compressed size of the entry, -1 if not present in this field */
+    private long compressedSize = -1;
+
+    /** Offset of the local file header of the entry, -1 if not present in this field */
+    private long headerOffset = -1;
+
+    /** The data of this field as read from the archive */
+    private byte[] rawData;
+
+    /** No-arg constructor */
+    public Zip64ExtraField() {
+    }
+
+    /**
+     * Creates a new field with the given values, -1 for the values that are not part of the central directory data.
+     *
+     * @param size the uncompressed size of the entry
+     * @param compressedSize the compressed size of the entry
+     * @param headerOffset the offset of the local file header of the entry
+     */
+    public Zip64ExtraField(long size, long compressedSize, long headerOffset) {
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.headerOffset = headerOffset;
+    }
+
+    /**
+     * Returns the uncompressed size of the entry, -1 if this field does not contain it.
+     *
+     * @return the uncompressed size of the entry, -1 if this field does not contain it
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the compressed size of the entry, -1 if this field does not contain it.
+     *
+     * @return the compressed size of the entry, -1 if this field does not contain it
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * Returns the offset of the local file header of the entry, -1 if this field does not contain it.
+     *
+     * @return the offset of the local file header of the entry, -1 if this field does not contain it
+     */
+    public long getHeaderOffset() {
+        return headerOffset;
+    }
+
+    /**
+     * Interprets the data read by {@link #parseFromLocalFileData(byte[], int, int)} as the data of a central file
+     * header, which contains the values whose 32-bit field is set to <code>0xFFFFFFFF</code>.
+     *
+     * @param hasSize <code>true</code> if the uncompressed size field of the central file header is 0xFFFFFFFF
+     * @param hasCompressedSize <code>true</code> if the compressed size field of the central file header is 0xFFFFFFFF
+     * @param hasHeaderOffset <code>true</code> if the local header offset field of the central file header is 0xFFFFFFFF
+     * @throws ZipException if the field is too short to contain the given values
+     */
+    public void parseFromCentralDirectoryData(boolean hasSize, boolean hasCompressedSize, boolean hasHeaderOffset) throws ZipException {
+        int expectedLength = 8 * ((hasSize?1:0) + (hasCompressedSize?1:0) + (hasHeaderOffset?1:0));
+        if (rawData == null || rawData.length < expectedLength)
+            throw new ZipException("Zip64 extra field is too short");
+
+        int off = 0;
+        size = -1;
+        if (hasSize) {
+            size = ZipEightByteInteger.getValue(rawData, off);
+            off += 8;
+        }
+
+        compressedSize = -1;
+        if (hasCompressedSize) {
+            compressedSize = ZipEightByteInteger.getValue(rawData, off);
+            off += 8;
+        }
+
+        headerOffset = hasHeaderOffset ? ZipEightByteInteger.getValue(rawData, off) : -1;
+    }
+
+
+    ///////////////////////////////////
+    // ZipExtraField implementation  //
+    ///////////////////////////////////
+
+    public ZipShort getHeaderId() {
+        return ID;
+    }
+
+    public ZipShort getLocalFileDataLength() {
+        return new ZipShort(LOCAL_FILE_DATA_LENGTH);
+    }
+
+    public ZipShort getCentralDirectoryLength() {
+        return new ZipShort(getCentralDirectoryData().length);
+    }
+
+    /**
+     * Returns the uncompressed and compressed sizes, 0 if they are not known yet.
+     */
+    public byte[] getLocalFileDataData() {
+        byte[] data = new byte[LOCAL_FILE_DATA_LENGTH];
+        ZipEightByteInteger.getBytes(Math.max(size, 0), data, 0);
+        ZipEightByteInteger.getBytes(Math.max(compressedSize, 0), data, 8);
+        return data;
+    }
+
+    /**
+     * Returns the values of this field that are not -1.
+     */
+    public byte[] getCentralDirectoryData() {
+        byte[] data = new byte[8 * ((size>=0?1:0) + (compressedSize>=0?1:0) + (headerOffset>=0?1:0))];
+        int off = 0;
+        if (size >= 0) {
+            ZipEightByteInteger.getBytes(size, data, off);
+            off += 8;
+        }
+        if (compressedSize >= 0) {
+            ZipEightByteInteger.getBytes(compressedSize, data, off);
+            off += 8;
+        }
+        if (headerOffset >= 0)
+            ZipEightByteInteger.getBytes(headerOffset, data, off);
+        return data;
+    }
+
+    /**
+     * Keeps the given data, which is interpreted by {@link #parseFromCentralDirectoryData(boolean, boolean, boolean)}.
+     */
+    public void parseFromLocalFileData(byte[] data, int offset, int length) throws ZipException {
+        rawData = new byte[length];
+        System.arraycopy(data, offset, rawData, 0, length);
+
+        // In a local file header, the field contains both sizes
+        if (length >= LOCAL_FILE_DATA_LENGTH) {
+            size = ZipEightByteInteger.getValue(rawData, 0);
+            compressedSize = ZipEightByteInteger.getValue(rawData, 8);
+        }
+    }
+}
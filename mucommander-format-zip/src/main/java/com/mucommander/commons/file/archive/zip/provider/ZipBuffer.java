@@ -33,4 +33,7 @@ public class ZipBuffer {
 
     /**  2-byte buffer that can hold a Zip long value */
     byte[] longBuffer = new byte[4];
+
+    /**  8-byte buffer that can hold a Zip64 value */
+    byte[] eightByteBuffer = new byte[8];
 }
@@ -53,6 +53,11 @@ public interface ZipConstants {
      * */
     public static final long MAX_ZIP32_SIZE = 4294967295l;
 
+    /**
+     * Maximum number of entries of a Zip32 file, i.e. (2^16)-1.
+     */
+    public static final int MAX_ZIP32_ENTRIES = 65535;
+
     /**
      * Size of write buffers
      */
@@ -82,4 +87,14 @@ public interface ZipConstants {
      * End of central dir signature
      */
     static final byte[] EOCD_SIG = ZipLong.getBytes(0X06054B50L);
+
+    /**
+     * Zip64 end of central dir signature
+     */
+    static final byte[] ZIP64_EOCD_SIG = ZipLong.getBytes(0X06064B50L);
+
+    /**
+     * Zip64 end of central dir locator signature
+     */
+    static final byte[] ZIP64_EOCD_LOCATOR_SIG = ZipLong.getBytes(0X07064B50L);
 }
@@ -391,10 +391,10 @@ public class ZipEntry implements Cloneable {
      * Sets the uncompressed size of the entry data.
      *
      * @param size the uncompressed size in bytes
-     * @throws IllegalArgumentException if the specified size is less than 0 or greater than 0xFFFFFFFF bytes
+     * @throws IllegalArgumentException if the specified size is less than 0
      */
     public void setSize(long size) {
-        if(!isValidUnsignedInt(size))
+        if(size<0)
 	        throw new IllegalArgumentException("Invalid entry size");
 
 	    this.size = size;
@@ -416,7 +416,7 @@ public class ZipEntry implements Cloneable {
      * @param csize the compressed size to set to
      */
     public void setCompressedSize(long csize) {
-        if(!isValidUnsignedInt(csize))
+        if(csize<0)
 	        throw new IllegalArgumentException("Invalid entry size");
 
         this.compressedSize = csize;
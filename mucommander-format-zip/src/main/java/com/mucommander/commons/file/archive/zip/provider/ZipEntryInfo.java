@@ -41,6 +41,9 @@ final class ZipEntryInfo {
     /** <code>true</code> if this entry has a data descriptor in the Zip file */
     boolean hasDataDescriptor;
 
+    /** <code>true</code> if the local file header has a Zip64 extra field, which is its last extra field */
+    boolean hasZip64LocalExtra;
+
     /** The encoding used for filename and comment fields */
     String encoding;
 
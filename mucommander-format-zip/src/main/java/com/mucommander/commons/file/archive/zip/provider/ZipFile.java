@@ -25,6 +25,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Vector;
@@ -81,6 +83,10 @@ public class ZipFile implements ZipConstants {
     /** The currently opened RandomAccessInputStream to the zip file (may be null) */
     private RandomAccessOutputStream raos;
 
+    /** Stream shared by the entry streams that are open at the same time, if the zip file supports concurrent
+     * positional reads (may be null) */
+    private ReadStream sharedReadStream;
+
     /** Contains ZipEntry instances corresponding to the archive's entries, in the order they were found in the archive. */
     private Vector<ZipEntry> entries = new Vector<ZipEntry>();
 
@@ -266,17 +272,20 @@ public class ZipFile implements ZipConstants {
         if (entryInfo == null)
             throw new ZipException("Unknown entry: "+ze.getName());
 
-        openRead();
-        RandomAccessInputStream entryIn = this.rais;
+        ReadStream readStream = acquireReadStream();
+        BoundedInputStream bis;
+        try {
+            // If data offset is -1 (not calculated yet), calculate it now
+            if (entryInfo.dataOffset == -1)
+                calculateDataOffset(entryInfo, readStream.rais);
 
-        // If data offset is -1 (not calculated yet), calculate it now
-        if (entryInfo.dataOffset == -1)
-            calculateDataOffset(entryInfo);
+            bis = new BoundedInputStream(readStream, entryInfo.dataOffset, ze.getCompressedSize());
+        }
+        catch(IOException e) {
+            releaseReadStream(readStream);
+            throw e;
+        }
 
-        this.rais = null;
-        
-        long start = entryInfo.dataOffset;
-        BoundedInputStream bis = new BoundedInputStream(entryIn, start, ze.getCompressedSize());
         switch (ze.getMethod()) {
             case ZipConstants.STORED:
                 return bis;
@@ -284,6 +293,7 @@ public class ZipFile implements ZipConstants {
                 bis.addDummy();
                 return new InflaterInputStream(bis, new Inflater(true));
             default:
+                bis.close();
                 throw new ZipException("Found unsupported compression method "
                                        + ze.getMethod());
         }
@@ -378,7 +388,7 @@ public class ZipFile implements ZipConstants {
 
                     // If data offset is -1 (not calculated yet), calculate it now
                     if (entryInfo.dataOffset == -1)
-                        calculateDataOffset(entryInfo);
+                        calculateDataOffset(entryInfo, rais);
 
                     // Zero out all bytes of the local file header+data for the deleted entry
                     // Note: the data descriptor (if any) is not erased, this would require some extra check and it is
@@ -456,11 +466,11 @@ public class ZipFile implements ZipConstants {
             final ZipEntryInfo entryInfo = new ZipEntryInfo();
             entryInfo.encoding = UTF_8;   // Always use UTF-8 for new entries
             entryInfo.headerOffset = centralDirectoryStart;
+            entry.setEntryInfo(entryInfo);
             entryInfo.dataOffset = entryInfo.headerOffset +
                                      ZipOutputStream.writeLocalFileHeader(entry, raos, entryInfo.encoding, false, zipBuffer);
 
             // Add the new entry to the internal lists
-            entry.setEntryInfo(entryInfo);
             entries.add(entry);
             nameMap.put(entry.getName(), entry);
 
@@ -609,7 +619,7 @@ public class ZipFile implements ZipConstants {
 
             // If data offset is -1 (not calculated yet), calculate it now
             if (currentEntryInfo.dataOffset == -1)
-                calculateDataOffset(currentEntryInfo);
+                calculateDataOffset(currentEntryInfo, rais);
 
             if(currentEntryInfo.headerOffset>0) {
                 StreamUtils.copyChunk(rais, raos, currentEntryInfo.headerOffset, 0, (currentEntryInfo.dataOffset- currentEntryInfo.headerOffset)+currentEntry.getCompressedSize());
@@ -630,14 +640,14 @@ public class ZipFile implements ZipConstants {
 
                 // If data offset is -1 (not calculated yet), calculate it now
                 if (currentEntryInfo.dataOffset == -1)
-                    calculateDataOffset(currentEntryInfo);
+                    calculateDataOffset(currentEntryInfo, rais);
 
                 // Calculate the offset to the end of the previous entry based on its data offset and compressed size
                 // and taking into account a potential data descriptor
                 long previousCompressedSize = previousEntry.getCompressedSize();
                 long previousEntryEnd = previousEntryInfo.dataOffset+previousCompressedSize;
                 if(previousEntryInfo.hasDataDescriptor)
-                    previousEntryEnd += 16;
+                    previousEntryEnd += ZipOutputStream.getDataDescriptorLength(previousEntry);
 
                 // Tests if there is some unused space between the 2 entries
                 if(previousEntryEnd < currentEntryInfo.headerOffset) {
@@ -691,13 +701,14 @@ public class ZipFile implements ZipConstants {
 
     /**
      * Calulcates the data offset of the entry which starts at the given ZipEntryInfo.headerOffset and stores the result
-     * in ZipEntryInfo.dataOffset. After calling this method, the RandomAccessInputStream will be positionned at the
-     * beginning of the filename field.
+     * in ZipEntryInfo.dataOffset. The local file header is read with positional reads, which do not change the offset
+     * of the given stream.
      *
      * @param entryInfo the ZipEntryInfo object in which to store the data offset
+     * @param in the stream to read the local file header from
      * @throws IOException if an unexpected I/O error occurred
      */
-    private void calculateDataOffset(ZipEntryInfo entryInfo) throws IOException {
+    private static void calculateDataOffset(ZipEntryInfo entryInfo, RandomAccessInputStream in) throws IOException {
         // Skip the following fields:
         //  local file header signature     4 bytes
         //  version needed to extract       2 bytes
@@ -711,21 +722,74 @@ public class ZipFile implements ZipConstants {
         // Total nb of bytes to skip:      26
 
         long dataOffset = entryInfo.headerOffset + 26;
-        rais.seek(dataOffset);
 
-        // Advance the offset of the filename field's length (plus the filename length field: 2 bytes)
-        byte[] b = new byte[2];
-        rais.readFully(b);
-        dataOffset += 2 + ZipShort.getValue(b);
+        // Read the filename field's length and the extra field's length (2 bytes each)
+        byte[] b = new byte[4];
+        in.readFully(dataOffset, b, 0, 4);
 
-        // Advance the offset of the extra field's length (plus the extra field length field: 2 bytes)
-        rais.readFully(b);
-        dataOffset += 2 + ZipShort.getValue(b);
+        // Advance the offset of both fields' lengths, plus the length fields themselves
+        dataOffset += 4 + ZipShort.getValue(b, 0) + ZipShort.getValue(b, 2);
 
         entryInfo.dataOffset = dataOffset;
     }
 
 
+    /**
+     * Returns a stream to read the contents of an entry from. If the zip file supports concurrent positional reads,
+     * the same stream is shared by all the entry streams that are open at the same time, rather than opening the file
+     * for each entry. The stream must be given back to {@link #releaseReadStream(ReadStream)} once it is not needed
+     * anymore.
+     *
+     * @return a stream to read the contents of an entry from
+     * @throws IOException if the zip file could not be opened
+     */
+    private synchronized ReadStream acquireReadStream() throws IOException {
+        if (sharedReadStream != null) {
+            sharedReadStream.users++;
+            return sharedReadStream;
+        }
+
+        RandomAccessInputStream entryIn = file.getRandomAccessInputStream();
+        if (!entryIn.isConcurrentReadSupported())
+            return new ReadStream(entryIn, false);
+
+        sharedReadStream = new ReadStream(entryIn, true);
+        return sharedReadStream;
+    }
+
+    /**
+     * Gives back a stream returned by {@link #acquireReadStream()}, closing it if no other entry stream uses it.
+     *
+     * @param readStream the stream that is not needed anymore
+     * @throws IOException if the stream could not be closed
+     */
+    private synchronized void releaseReadStream(ReadStream readStream) throws IOException {
+        if (--readStream.users > 0)
+            return;
+
+        if (readStream == sharedReadStream)
+            sharedReadStream = null;
+
+        readStream.rais.close();
+    }
+
+    /**
+     * Replaces a shared stream whose underlying channel was closed, e.g. because a thread reading from it was
+     * interrupted. The broken stream is not shared anymore, and is closed once released by all its users.
+     *
+     * @param readStream the broken stream
+     * @return a stream to read the contents of an entry from
+     * @throws IOException if the zip file could not be opened
+     */
+    private synchronized ReadStream replaceReadStream(ReadStream readStream) throws IOException {
+        if (readStream == sharedReadStream)
+            sharedReadStream = null;
+
+        releaseReadStream(readStream);
+        return acquireReadStream();
+    }
+
+
     /** Combined length of all constant-size fields of the Central File Header */
     private static final int CFH_LEN =
         /* version made by                 */ 2
@@ -868,6 +932,9 @@ public class ZipFile implements ZipConstants {
             rais.readFully(extra);
             ze.setExtra(extra);
 
+            // Sizes and offset that do not fit in their 32-bit field are in the Zip64 extra field
+            readZip64ExtraField(ze, entryInfo);
+
             // Read comment bytes
             byte[] comment = new byte[commentLen];
             rais.readFully(comment);
@@ -924,6 +991,42 @@ public class ZipFile implements ZipConstants {
         }
     }
 
+    /**
+     * Reads the values of the given entry whose central file header field is set to <code>0xFFFFFFFF</code> from
+     * the entry's Zip64 extra field, if it has one. The Zip64 extra field is removed from the entry's extra fields,
+     * as it is recreated from the entry's values whenever its headers are written.
+     *
+     * @param ze the entry whose extra fields have been set
+     * @param entryInfo the entry's info, holding the local file header offset
+     * @throws ZipException if the Zip64 extra field is invalid
+     */
+    private static void readZip64ExtraField(ZipEntry ze, ZipEntryInfo entryInfo) throws ZipException {
+        Zip64ExtraField zip64Field = null;
+        for (ZipExtraField field : ze.getExtraFields()) {
+            if (field instanceof Zip64ExtraField)
+                zip64Field = (Zip64ExtraField)field;
+        }
+
+        if (zip64Field == null)
+            return;
+
+        ze.removeExtraField(Zip64ExtraField.ID);
+
+        boolean hasSize = ze.getSize()==MAX_ZIP32_SIZE;
+        boolean hasCompressedSize = ze.getCompressedSize()==MAX_ZIP32_SIZE;
+        boolean hasHeaderOffset = entryInfo.headerOffset==MAX_ZIP32_SIZE;
+        zip64Field.parseFromCentralDirectoryData(hasSize, hasCompressedSize, hasHeaderOffset);
+
+        if (hasSize)
+            ze.setSize(zip64Field.getSize());
+
+        if (hasCompressedSize)
+            ze.setCompressedSize(zip64Field.getCompressedSize());
+
+        if (hasHeaderOffset)
+            entryInfo.headerOffset = zip64Field.getHeaderOffset();
+    }
+
     /**
      * Sets the given filename in the ZipEntry.
      *
@@ -1002,10 +1105,115 @@ public class ZipFile implements ZipConstants {
         /* the central dir                 */ + 2
         /* size of the central directory   */ + 4;
 
+    /** Size of the Zip64 End Of Central Directory Locator, which precedes the End Of Central Directory record */
+    private static final int ZIP64_EOCD_LOCATOR_SIZE =
+        /* zip64 end of central dir locator*/
+        /* signature                       */ 4
+        /* number of the disk with the     */
+        /* start of the zip64 end of       */
+        /* central directory               */ + 4
+        /* relative offset of the zip64    */
+        /* end of central directory record */ + 8
+        /* total number of disks           */ + 4;
+
+    private static final int ZIP64_EOCD_LOCATION_OFFSET =
+        /* zip64 end of central dir locator*/
+        /* signature                       */ 4
+        /* number of the disk with the     */
+        /* start of the zip64 end of       */
+        /* central directory               */ + 4;
+
+    /** Size of the Zip64 End Of Central Directory record (no extensible data) */
+    private static final int ZIP64_EOCD_SIZE =
+        /* zip64 end of central dir        */
+        /* signature                       */ 4
+        /* size of zip64 end of central    */
+        /* directory record                */ + 8
+        /* version made by                 */ + 2
+        /* version needed to extract       */ + 2
+        /* number of this disk             */ + 4
+        /* number of the disk with the     */
+        /* start of the central directory  */ + 4
+        /* total number of entries in the  */
+        /* central directory on this disk  */ + 8
+        /* total number of entries in the  */
+        /* central directory               */ + 8
+        /* size of the central directory   */ + 8
+        /* offset of start of central      */
+        /* directory with respect to       */
+        /* the starting disk number        */ + 8;
+
+    private static final int ZIP64_CFD_LOCATOR_OFFSET =
+        /* zip64 end of central dir        */
+        /* signature                       */ 4
+        /* size of zip64 end of central    */
+        /* directory record                */ + 8
+        /* version made by                 */ + 2
+        /* version needed to extract       */ + 2
+        /* number of this disk             */ + 4
+        /* number of the disk with the     */
+        /* start of the central directory  */ + 4
+        /* total number of entries in the  */
+        /* central directory on this disk  */ + 8
+        /* total number of entries in the  */
+        /* central directory               */ + 8
+        /* size of the central directory   */ + 8;
+
+    /**
+     * Returns <code>true</code> if the given bytes contain the given signature at the specified offset.
+     *
+     * @param b the bytes to test
+     * @param off offset of the signature in the bytes
+     * @param signature the signature to look for
+     * @return true if the bytes contain the signature at the specified offset
+     */
+    private static boolean hasSignature(byte[] b, int off, byte[] signature) {
+        return b[off]==signature[0] && b[off+1]==signature[1] && b[off+2]==signature[2] && b[off+3]==signature[3];
+    }
+
+    /**
+     * Returns the offset to the central directory start stored in the Zip64 end of central dir record, if the end
+     * of central dir record is preceded by a Zip64 end of central dir locator.
+     *
+     * @param buf the bytes read at the end of the file
+     * @param eocdOff offset of the end of central dir record in <code>buf</code>
+     * @param eocdOffset offset of the end of central dir record in the file
+     * @return the offset to the central directory start, or -1 if this file has no Zip64 end of central dir record
+     * @throws IOException if an I/O error occurs
+     * @throws ZipException if the Zip64 end of central dir record is invalid
+     */
+    private long getZip64CentralDirectoryOffset(byte[] buf, int eocdOff, long eocdOffset) throws IOException, ZipException {
+        if (eocdOffset<ZIP64_EOCD_LOCATOR_SIZE)
+            return -1;
+
+        // The locator is usually part of the bytes read already
+        byte[] locator = new byte[ZIP64_EOCD_LOCATOR_SIZE];
+        if (eocdOff>=ZIP64_EOCD_LOCATOR_SIZE) {
+            System.arraycopy(buf, eocdOff-ZIP64_EOCD_LOCATOR_SIZE, locator, 0, ZIP64_EOCD_LOCATOR_SIZE);
+        }
+        else {
+            rais.seek(eocdOffset-ZIP64_EOCD_LOCATOR_SIZE);
+            rais.readFully(locator);
+        }
+
+        if (!hasSignature(locator, 0, ZIP64_EOCD_LOCATOR_SIG))
+            return -1;
+
+        byte[] zip64Eocd = new byte[ZIP64_EOCD_SIZE];
+        rais.seek(ZipEightByteInteger.getValue(locator, ZIP64_EOCD_LOCATION_OFFSET));
+        rais.readFully(zip64Eocd);
+
+        if (!hasSignature(zip64Eocd, 0, ZIP64_EOCD_SIG))
+            throw new ZipException("Invalid Zip64 stream (Zip64 EOCD signature not found)");
+
+        return ZipEightByteInteger.getValue(zip64Eocd, ZIP64_CFD_LOCATOR_OFFSET);
+    }
+
     /**
      * Searches for the end of central dir record, parses
      * it and positions the stream at the first central directory
-     * record.
+     * record. If the end of central dir record is preceded by a Zip64 end of central dir locator, the offset to the
+     * central directory is read from the Zip64 end of central dir record.
      *
      * @throws IOException if an I/O error occurs
      * @throws ZipException if the end of central directory signature could not be found. This can be interpreted as the
@@ -1050,6 +1258,7 @@ public class ZipFile implements ZipConstants {
             }
 
             // Parse the offset to the central directory start
+            long zip64CdStart = getZip64CentralDirectoryOffset(buf, off, length-bufLen+off);
             off += CFD_LOCATOR_OFFSET;
             byte[] cdStart = new byte[4];
             System.arraycopy(buf, off, cdStart, 0, 4);
@@ -1070,7 +1279,7 @@ public class ZipFile implements ZipConstants {
             comment = getString(commentBytes, defaultEncoding!=null?defaultEncoding:EncodingDetector.detectEncoding(commentBytes));
 
             // Seek to the start of the central directory
-            rais.seek(ZipLong.getValue(cdStart));
+            rais.seek(zip64CdStart==-1?ZipLong.getValue(cdStart):zip64CdStart);
         }
         finally {
             BufferPool.releaseByteArray(buf);
@@ -1107,37 +1316,58 @@ public class ZipFile implements ZipConstants {
     // Inner classes //
     ///////////////////
     
+    /**
+     * A stream to the zip file that is used to read the contents of entries, and the number of entry streams that
+     * use it.
+     */
+    private static class ReadStream {
+
+        private final RandomAccessInputStream rais;
+
+        /** Whether the stream is read by several entry streams, with positional reads */
+        private final boolean shared;
+
+        private int users = 1;
+
+        ReadStream(RandomAccessInputStream rais, boolean shared) {
+            this.rais = rais;
+            this.shared = shared;
+        }
+    }
+
     /**
      * InputStream that delegates requests to the underlying RandomAccessFile, making sure that only bytes from a
      * certain range can be read.
+     *
+     * <p>The bytes are read with positional reads if the underlying stream is shared with other entry streams, so
+     * that entries can be read concurrently without a shared file pointer. Otherwise, the stream is used by this
+     * entry stream only and is read sequentially.</p>
      */
-    private static class BoundedInputStream extends InputStream {
+    private class BoundedInputStream extends InputStream {
 
-        private final RandomAccessInputStream rais;
+        private ReadStream readStream;
 
         private long remaining;
         private long loc;
         private boolean addDummyByte = false;
+        private byte[] singleByte;
+        private boolean closed;
 
-        BoundedInputStream(RandomAccessInputStream rais, long start, long remaining) {
-            this.rais = rais;
+        BoundedInputStream(ReadStream readStream, long start, long remaining) throws IOException {
+            this.readStream = readStream;
             this.remaining = remaining;
             loc = start;
+
+            if (!readStream.shared)
+                readStream.rais.seek(start);
         }
 
         @Override
         public int read() throws IOException {
-            if (remaining-- <= 0) {
-                if (addDummyByte) {
-                    addDummyByte = false;
-                    return 0;
-                }
-                return -1;
-            }
-            synchronized (rais) {
-                rais.seek(loc++);
-                return rais.read();
-            }
+            if (singleByte == null)
+                singleByte = new byte[1];
+
+            return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
         }
 
         @Override
@@ -1158,11 +1388,7 @@ public class ZipFile implements ZipConstants {
             if (len > remaining) {
                 len = (int) remaining;
             }
-            int ret;
-            synchronized (rais) {
-                rais.seek(loc);
-                ret = rais.read(b, off, len);
-            }
+            int ret = readStream.shared ? readShared(b, off, len) : readStream.rais.read(b, off, len);
             if (ret > 0) {
                 loc += ret;
                 remaining -= ret;
@@ -1170,9 +1396,27 @@ public class ZipFile implements ZipConstants {
             return ret;
         }
 
+        private int readShared(byte[] b, int off, int len) throws IOException {
+            try {
+                return readStream.rais.read(loc, b, off, len);
+            }
+            catch(ClosedChannelException e) {
+                if (closed || e instanceof ClosedByInterruptException || Thread.currentThread().isInterrupted())
+                    throw e;
+
+                // Another thread was interrupted while reading from the shared stream, which closed the underlying
+                // channel: switch to a new stream
+                readStream = replaceReadStream(readStream);
+                return readStream.rais.read(loc, b, off, len);
+            }
+        }
+
         @Override
         public void close() throws IOException {
-            rais.close();
+            if (!closed) {
+                closed = true;
+                releaseReadStream(readStream);
+            }
         }
 
         /**
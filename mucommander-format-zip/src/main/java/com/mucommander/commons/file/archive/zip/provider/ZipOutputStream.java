@@ -19,11 +19,13 @@
 package com.mucommander.commons.file.archive.zip.provider;
 
 import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.ParallelDeflaterOutputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Vector;
 import java.util.zip.Deflater;
 import java.util.zip.ZipException;
@@ -61,6 +63,9 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     /** Compression method zip entries */
     private int method = DEFLATED;
 
+    /** Maximum number of blocks of a DEFLATED entry that are compressed concurrently */
+    private int nbCompressionThreads = 1;
+
     /** Deflater instance that is used to compress DEFLATED entries */
     protected Deflater deflater = new Deflater(level, true);
 
@@ -103,6 +108,12 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     /** 2056 as ZipShort */
     private static final byte[] SHORT_2056 = ZipShort.getBytes(2056);
 
+    /** 45 as ZipShort, the version needed to extract Zip64 entries */
+    private static final byte[] SHORT_45 = ZipShort.getBytes(45);
+
+    /** 0xFFFFFFFF as ZipLong, signals that the value is stored in a Zip64 field */
+    private static final byte[] LONG_ZIP64_MAGIC = ZipLong.getBytes(MAX_ZIP32_SIZE);
+
 
     /**
      * The underlying stream this ZipOutputStream writes zip-compressed data to.
@@ -237,9 +248,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         if (entry.getMethod() == DEFLATED) {
             ((DeflatedOutputStream)zeos).finishDeflate();
 
-            entry.setSize(adjustToLong(zeos.getTotalIn()));
-            long compressedSize = adjustToLong(zeos.getTotalOut());
-            entry.setCompressedSize(compressedSize);
+            entry.setSize(zeos.getTotalIn());
+            entry.setCompressedSize(zeos.getTotalOut());
             entry.setCrc(crc);
         }
         else {      // Method is STORED
@@ -254,13 +264,26 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // the correct CRC and compressed/uncompressed sizes
         if (!useDataDescriptor) {
             RandomAccessOutputStream raos = (RandomAccessOutputStream)out;
+            ZipEntryInfo entryInfo = entry.getEntryInfo();
+
+            // The local file header cannot be enlarged anymore to hold a Zip64 extra field
+            if (!entryInfo.hasZip64LocalExtra && hasZip64Sizes(entry))
+                throw new ZipException("Entry is larger than its declared size: "+entry.getName());
 
             long save = raos.getOffset();
 
-            raos.seek(entry.getEntryInfo().headerOffset + 14);
+            raos.seek(entryInfo.headerOffset + 14);
             raos.write(ZipLong.getBytes(entry.getCrc(), zipBuffer.longBuffer));
-            raos.write(ZipLong.getBytes(entry.getCompressedSize(), zipBuffer.longBuffer));
-            raos.write(ZipLong.getBytes(entry.getSize(), zipBuffer.longBuffer));
+            if (entryInfo.hasZip64LocalExtra) {
+                // The sizes are in the Zip64 extra field, which is the last extra field, right before the data
+                raos.seek(entryInfo.dataOffset - Zip64ExtraField.LOCAL_FILE_DATA_LENGTH);
+                raos.write(ZipEightByteInteger.getBytes(entry.getSize(), zipBuffer.eightByteBuffer));
+                raos.write(ZipEightByteInteger.getBytes(entry.getCompressedSize(), zipBuffer.eightByteBuffer));
+            }
+            else {
+                raos.write(ZipLong.getBytes(entry.getCompressedSize(), zipBuffer.longBuffer));
+                raos.write(ZipLong.getBytes(entry.getSize(), zipBuffer.longBuffer));
+            }
             raos.seek(save);
         }
     }
@@ -296,7 +319,12 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
             deflater.reset();
             deflater.setLevel(level);
 
-            zeos = new DeflatedOutputStream(out, deflater, deflaterBuf);
+            // Entries that fit in a single block are not worth handing over to other threads
+            long size = entry.getSize();
+            if (nbCompressionThreads > 1 && (size < 0 || size > ParallelDeflaterOutputStream.DEFAULT_BLOCK_SIZE))
+                zeos = new ParallelDeflatedOutputStream(out, deflater, deflaterBuf, level, nbCompressionThreads);
+            else
+                zeos = new DeflatedOutputStream(out, deflater, deflaterBuf);
         }
         else {
             zeos = new StoredOutputStream(out);
@@ -333,6 +361,19 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         this.level = level;
     }
 
+    /**
+     * Sets the maximum number of threads that compress DEFLATED entries, for subsequent entries. With more than one
+     * thread, entries that are larger than a {@link ParallelDeflaterOutputStream#DEFAULT_BLOCK_SIZE block} or whose
+     * size is not known are compressed in blocks, concurrently.
+     *
+     * <p>Default is 1, i.e. entries are compressed on the thread that writes them.</p>
+     *
+     * @param nbCompressionThreads the maximum number of threads that compress an entry
+     */
+    public void setCompressionThreads(int nbCompressionThreads) {
+        this.nbCompressionThreads = Math.max(1, nbCompressionThreads);
+    }
+
     /**
      * Sets the default compression method for subsequent entries.
      *
@@ -347,6 +388,9 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     /**
      * Writes the local file header entry.
      *
+     * <p>The header has a Zip64 extra field if the entry may be 4GB or larger. The entry's {@link ZipEntryInfo} must
+     * be set.</p>
+     *
      * @param ze the entry to write
      * @param out the OutputStream to write the header to
      * @param encoding the encoding to use for writing the entry's filename. If UTF-8 is used, the general purpose bit
@@ -363,9 +407,12 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
         int zipMethod = ze.getMethod();
 
+        boolean zip64 = isZip64LocalExtraRequired(ze, useDataDescriptor);
+        ze.getEntryInfo().hasZip64LocalExtra = zip64;
+
         // version needed to extract
         // general purpose bit flag
-        writeVersionAndGPBF(out, encoding, useDataDescriptor);
+        writeVersionAndGPBF(out, encoding, useDataDescriptor, zip64);
         // nbWritten += 4;
 
         // compression method
@@ -382,7 +429,15 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
         // this information is not known at this stage so it will be set after the data has been written,
         // either in the data descriptor (if used), or here by seeking (requires random access)
-        out.write(LONG_TRIPLE_0);   // 12 zero bytes
+        if (zip64) {
+            // sizes are in the Zip64 extra field
+            out.write(LONG_0);
+            out.write(LONG_ZIP64_MAGIC);
+            out.write(LONG_ZIP64_MAGIC);
+        }
+        else {
+            out.write(LONG_TRIPLE_0);   // 12 zero bytes
+        }
         // written += 12;
 
         // file name length
@@ -391,7 +446,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // written += 2;
 
         // extra field length
-        byte[] extra = ze.getLocalFileDataExtra();
+        byte[] extra = ExtraFieldUtils.mergeLocalExtraFields(getExtraFields(ze, zip64?new Zip64ExtraField(0, 0, -1):null));
         out.write(ZipShort.getBytes(extra.length, zipBuffer.shortBuffer));
         // written += 2;
 
@@ -412,21 +467,99 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     /**
      * Writes the data descriptor, using the CRC, compressed and uncompressed size attributes contained in the
      * given ZipEntry.
-     * The length of the field is returned, it is always 16 bytes.
+     * The length of the field is returned, see {@link #getDataDescriptorLength(ZipEntry)}.
      *
      * @param ze the entry for which to write the data descriptor
      * @param out the OutputStream where to write the data descriptor to
      * @param zipBuffer a ZipBuffer instance used to convert integer values to Zip variants
-     * @return the number of bytes that were written, i.e. the size of the data descriptor (16 bytes)
+     * @return the number of bytes that were written, i.e. the size of the data descriptor (16 or 24 bytes)
      * @throws IOException if an I/O error occurred
      */
     protected static long writeDataDescriptor(ZipEntry ze, OutputStream out, ZipBuffer zipBuffer) throws IOException {
         out.write(DD_SIG);
         out.write(ZipLong.getBytes(ze.getCrc(), zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(ze.getCompressedSize(), zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(ze.getSize(), zipBuffer.longBuffer));
 
-        return 16;
+        long length = getDataDescriptorLength(ze);
+        if (length == 24) {
+            out.write(ZipEightByteInteger.getBytes(ze.getCompressedSize(), zipBuffer.eightByteBuffer));
+            out.write(ZipEightByteInteger.getBytes(ze.getSize(), zipBuffer.eightByteBuffer));
+        }
+        else {
+            out.write(ZipLong.getBytes(ze.getCompressedSize(), zipBuffer.longBuffer));
+            out.write(ZipLong.getBytes(ze.getSize(), zipBuffer.longBuffer));
+        }
+
+        return length;
+    }
+
+    /**
+     * Returns the length of the data descriptor of the given entry: 24 bytes if the sizes are stored as Zip64 values,
+     * i.e. if the local file header has a Zip64 extra field or if a size is 4GB or larger, 16 bytes otherwise.
+     *
+     * @param ze the entry
+     * @return the length of the data descriptor of the given entry
+     */
+    static long getDataDescriptorLength(ZipEntry ze) {
+        ZipEntryInfo entryInfo = ze.getEntryInfo();
+        return (entryInfo!=null && entryInfo.hasZip64LocalExtra) || hasZip64Sizes(ze) ? 24 : 16;
+    }
+
+    /**
+     * Returns <code>true</code> if the uncompressed or compressed size of the given entry does not fit in a 32-bit
+     * Zip field.
+     *
+     * @param ze the entry
+     * @return true if a size of the entry must be stored as a Zip64 value
+     */
+    static boolean hasZip64Sizes(ZipEntry ze) {
+        return ze.getSize()>=MAX_ZIP32_SIZE || ze.getCompressedSize()>=MAX_ZIP32_SIZE;
+    }
+
+    /**
+     * Returns <code>true</code> if the local file header of the given entry needs a Zip64 extra field, that is if the
+     * entry's size is known and the entry may be 4GB or larger once compressed. If the size is not known and the
+     * local file header is rewritten after the data (no data descriptor), the field is added in case the entry turns
+     * out to be that large, as the header cannot be enlarged at that point.
+     *
+     * @param ze the entry
+     * @param useDataDescriptor true if a data descriptor is used for the entry
+     * @return true if the local file header of the entry needs a Zip64 extra field
+     */
+    private static boolean isZip64LocalExtraRequired(ZipEntry ze, boolean useDataDescriptor) {
+        if (ze.isDirectory())
+            return false;
+
+        long size = ze.getSize();
+        if (size < 0)
+            return !useDataDescriptor;
+
+        // Incompressible data gets slightly larger when deflated (same bound as zlib's deflateBound)
+        if (ze.getMethod() != STORED)
+            size += (size >> 12) + (size >> 14) + (size >> 25) + 13;
+
+        return size >= MAX_ZIP32_SIZE;
+    }
+
+    /**
+     * Returns the extra fields to write for the given entry: its own extra fields, followed by the given Zip64 extra
+     * field if it is not <code>null</code>.
+     *
+     * @param ze the entry
+     * @param zip64Field the Zip64 extra field of the header, <code>null</code> if it has none
+     * @return the extra fields to write for the given entry
+     */
+    private static ZipExtraField[] getExtraFields(ZipEntry ze, Zip64ExtraField zip64Field) {
+        // A Zip64 extra field that the entry was created with (java.util.zip) is not kept, it would be outdated
+        ZipExtraField[] fields = Arrays.stream(ze.getExtraFields())
+                .filter(field -> !(field instanceof Zip64ExtraField))
+                .toArray(ZipExtraField[]::new);
+
+        if (zip64Field == null)
+            return fields;
+
+        fields = Arrays.copyOf(fields, fields.length+1);
+        fields[fields.length-1] = zip64Field;
+        return fields;
     }
 
     /**
@@ -458,6 +591,17 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      * @return the number of bytes that were written, i.e. the size of the central file header 
      */
     protected static long writeCentralFileHeader(ZipEntry ze, OutputStream out, String encoding, long localFileHeaderOffset, boolean useDataDescriptor, ZipBuffer zipBuffer) throws IOException {
+        // Values that do not fit in their 32-bit field are stored in the Zip64 extra field
+        long size = ze.getSize();
+        long compressedSize = ze.getCompressedSize();
+        boolean zip64Size = size>=MAX_ZIP32_SIZE;
+        boolean zip64CompressedSize = compressedSize>=MAX_ZIP32_SIZE;
+        boolean zip64Offset = localFileHeaderOffset>=MAX_ZIP32_SIZE;
+        Zip64ExtraField zip64Field = zip64Size || zip64CompressedSize || zip64Offset
+                ? new Zip64ExtraField(zip64Size?size:-1, zip64CompressedSize?compressedSize:-1, zip64Offset?localFileHeaderOffset:-1)
+                : null;
+        ZipEntryInfo entryInfo = ze.getEntryInfo();
+
         out.write(CFH_SIG);
         // nbWritten += 4;
 
@@ -467,7 +611,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
         // version needed to extract
         // general purpose bit flag
-        writeVersionAndGPBF(out, encoding, useDataDescriptor);
+        writeVersionAndGPBF(out, encoding, useDataDescriptor, zip64Field!=null || (entryInfo!=null && entryInfo.hasZip64LocalExtra));
         // nbWritten += 4;
 
         // compression method
@@ -482,8 +626,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // compressed length
         // uncompressed length
         out.write(ZipLong.getBytes(ze.getCrc(), zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(ze.getCompressedSize(), zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(ze.getSize(), zipBuffer.longBuffer));
+        out.write(zip64CompressedSize?LONG_ZIP64_MAGIC:ZipLong.getBytes(compressedSize, zipBuffer.longBuffer));
+        out.write(zip64Size?LONG_ZIP64_MAGIC:ZipLong.getBytes(size, zipBuffer.longBuffer));
         // nbWritten += 12;
 
         // file name length
@@ -492,7 +636,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // nbWritten += 2;
 
         // extra field length
-        byte[] extra = ze.getCentralDirectoryExtra();
+        byte[] extra = ExtraFieldUtils.mergeCentralExtraFields(getExtraFields(ze, zip64Field));
         out.write(ZipShort.getBytes(extra.length, zipBuffer.shortBuffer));
         // nbWritten += 2;
 
@@ -518,7 +662,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // nbWritten += 4;
 
         // relative offset of LFH
-        out.write(ZipLong.getBytes(localFileHeaderOffset, zipBuffer.longBuffer));
+        out.write(zip64Offset?LONG_ZIP64_MAGIC:ZipLong.getBytes(localFileHeaderOffset, zipBuffer.longBuffer));
         // nbWritten += 4;
 
         long nbWritten = 46;
@@ -545,10 +689,11 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      * @param out the OutputStream to write the fields to
      * @param encoding the encoding used for writing the filename and optional comment
      * @param useDataDescriptor true if a data descriptor is used for the entry
+     * @param zip64 true if the entry has a Zip64 extra field
      * @return the number of bytes that were written, i.e. 4
      * @throws IOException if an I/O error occurred
      */
-    protected static long writeVersionAndGPBF(OutputStream out, String encoding, boolean useDataDescriptor) throws IOException {
+    protected static long writeVersionAndGPBF(OutputStream out, String encoding, boolean useDataDescriptor, boolean zip64) throws IOException {
         boolean isUTF8 = isUTF8(encoding);
 
         // General purpose bit flag :
@@ -556,8 +701,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // Bit 3 signals a data descriptor is used
 
         if (useDataDescriptor) {
-            // requires version 2 as we are going to store length info in the data descriptor
-            out.write(SHORT_20);
+            // requires version 2 as we are going to store length info in the data descriptor, 4.5 for Zip64
+            out.write(zip64?SHORT_45:SHORT_20);
 
             // General purpose bit flag
             out.write(isUTF8?
@@ -567,7 +712,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         }
         else {
             // Version
-            out.write(SHORT_10);
+            out.write(zip64?SHORT_45:SHORT_10);
 
             // General purpose bit flag
             out.write(isUTF8?
@@ -581,7 +726,9 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
 
     /**
-     * Writes the end of the central directory record.
+     * Writes the end of the central directory record. If the number of entries, or the length or location of the
+     * central directory do not fit in the record, it is preceded by a Zip64 end of central directory record and
+     * locator. The record must be written right after the central directory.
      *
      * @param out the OutputStream to write the end of the central directory record to
      * @param nbEntries number of entries the Zip file contains
@@ -595,19 +742,22 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     protected static void writeCentralDirectoryEnd(OutputStream out, int nbEntries, long cdLength, long cdOffset, String comment, String encoding, ZipBuffer zipBuffer)
             throws IOException {
 
+        if (nbEntries>=MAX_ZIP32_ENTRIES || cdLength>=MAX_ZIP32_SIZE || cdOffset>=MAX_ZIP32_SIZE)
+            writeZip64CentralDirectoryEnd(out, nbEntries, cdLength, cdOffset, zipBuffer);
+
         out.write(EOCD_SIG);
 
         // disk numbers
         out.write(LONG_0);      // 2x SHORT_0
 
-        // number of entries
-        ZipShort.getBytes(nbEntries, zipBuffer.shortBuffer);
+        // number of entries, values that do not fit are in the Zip64 end of central directory record
+        ZipShort.getBytes(Math.min(nbEntries, MAX_ZIP32_ENTRIES), zipBuffer.shortBuffer);
         out.write(zipBuffer.shortBuffer);
         out.write(zipBuffer.shortBuffer);
 
         // length and location of CD
-        out.write(ZipLong.getBytes(cdLength, zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(cdOffset, zipBuffer.longBuffer));
+        out.write(ZipLong.getBytes(Math.min(cdLength, MAX_ZIP32_SIZE), zipBuffer.longBuffer));
+        out.write(ZipLong.getBytes(Math.min(cdOffset, MAX_ZIP32_SIZE), zipBuffer.longBuffer));
 
         // ZIP file comment
         byte[] data = getBytes(comment, encoding);
@@ -615,6 +765,54 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         out.write(data);
     }
 
+    /**
+     * Writes the Zip64 end of the central directory record, followed by the Zip64 end of central directory locator.
+     * The record must be written right after the central directory.
+     *
+     * @param out the OutputStream to write the records to
+     * @param nbEntries number of entries the Zip file contains
+     * @param cdLength length (in bytes) of the central directory record
+     * @param cdOffset offset from the beginning of the Zip file to the start of the central directory record
+     * @param zipBuffer a ZipBuffer instance used to convert integer values to Zip variants
+     * @throws IOException if an I/O error occurred
+     */
+    private static void writeZip64CentralDirectoryEnd(OutputStream out, int nbEntries, long cdLength, long cdOffset, ZipBuffer zipBuffer)
+            throws IOException {
+
+        out.write(ZIP64_EOCD_SIG);
+
+        // size of the record, not including the signature and this field
+        out.write(ZipEightByteInteger.getBytes(44, zipBuffer.eightByteBuffer));
+
+        // version made by, version needed to extract
+        out.write(SHORT_45);
+        out.write(SHORT_45);
+
+        // disk numbers
+        out.write(LONG_0);
+        out.write(LONG_0);
+
+        // number of entries
+        ZipEightByteInteger.getBytes(nbEntries, zipBuffer.eightByteBuffer);
+        out.write(zipBuffer.eightByteBuffer);
+        out.write(zipBuffer.eightByteBuffer);
+
+        // length and location of CD
+        out.write(ZipEightByteInteger.getBytes(cdLength, zipBuffer.eightByteBuffer));
+        out.write(ZipEightByteInteger.getBytes(cdOffset, zipBuffer.eightByteBuffer));
+
+        out.write(ZIP64_EOCD_LOCATOR_SIG);
+
+        // disk number of the Zip64 end of central directory record
+        out.write(LONG_0);
+
+        // location of the Zip64 end of central directory record, right after the CD
+        out.write(ZipEightByteInteger.getBytes(cdOffset + cdLength, zipBuffer.eightByteBuffer));
+
+        // total number of disks
+        out.write(ZipLong.getBytes(1, zipBuffer.longBuffer));
+    }
+
     /**
      * Retrieve the bytes for the given String in the encoding set for
      * this Stream.
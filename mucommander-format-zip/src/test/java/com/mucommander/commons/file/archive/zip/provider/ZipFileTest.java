@@ -0,0 +1,308 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.zip.provider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+
+/**
+ * Test case for reading entries of a {@link ZipFile}, in particular several entries at the same time, and for Zip64
+ * archives.
+ */
+public class ZipFileTest {
+
+    private static final int NB_ENTRIES = 16;
+
+    /** More entries than the end of central directory record can hold */
+    private static final int NB_ZIP64_ENTRIES = ZipConstants.MAX_ZIP32_ENTRIES + 10;
+
+    private AbstractFile file;
+
+    private final List<byte[]> contents = new ArrayList<>();
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        file = FileFactory.getTemporaryFile(getClass().getName() + ".zip", true);
+
+        Random random = new Random(0);
+        try (java.util.zip.ZipOutputStream zout = new java.util.zip.ZipOutputStream(file.getOutputStream())) {
+            for (int i = 0; i < NB_ENTRIES; i++) {
+                // Compressible and incompressible data, stored and deflated
+                byte[] data = new byte[100000 + 5000 * i];
+                if (i % 2 == 0) {
+                    random.nextBytes(data);
+                } else {
+                    Arrays.fill(data, (byte) i);
+                }
+                contents.add(data);
+
+                java.util.zip.ZipEntry entry = new java.util.zip.ZipEntry("entry" + i);
+                if (i % 4 == 0) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(java.util.zip.ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCrc(crc.getValue());
+                }
+                zout.putNextEntry(entry);
+                zout.write(data);
+                zout.closeEntry();
+            }
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        file.delete();
+    }
+
+    private static byte[] readEntry(ZipFile zipFile, String name, boolean byteByByte) throws IOException {
+        try (InputStream in = zipFile.getInputStream(zipFile.getEntry(name))) {
+            if (!byteByByte) {
+                return in.readAllBytes();
+            }
+
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                out.write(b);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    public void testReadEntries() throws IOException {
+        ZipFile zipFile = new ZipFile(file);
+        for (int i = 0; i < NB_ENTRIES; i++) {
+            Assert.assertEquals(readEntry(zipFile, "entry" + i, i < 2), contents.get(i));
+        }
+    }
+
+    @Test
+    public void testReadEntriesConcurrently() throws Exception {
+        ZipFile zipFile = new ZipFile(file);
+
+        // Entry streams that are open at the same time, read alternately by the same thread
+        InputStream in1 = zipFile.getInputStream(zipFile.getEntry("entry1"));
+        InputStream in2 = zipFile.getInputStream(zipFile.getEntry("entry2"));
+        byte[] b1 = new byte[contents.get(1).length];
+        byte[] b2 = new byte[contents.get(2).length];
+        for (int off1 = 0, off2 = 0; off1 < b1.length || off2 < b2.length; ) {
+            if (off1 < b1.length) {
+                off1 += in1.read(b1, off1, Math.min(1000, b1.length - off1));
+            }
+            if (off2 < b2.length) {
+                off2 += in2.read(b2, off2, Math.min(777, b2.length - off2));
+            }
+        }
+        in1.close();
+        in2.close();
+        Assert.assertEquals(b1, contents.get(1));
+        Assert.assertEquals(b2, contents.get(2));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int round = 0; round < 4; round++) {
+                for (int i = 0; i < NB_ENTRIES; i++) {
+                    String name = "entry" + i;
+                    futures.add(executor.submit(() -> readEntry(zipFile, name, false)));
+                }
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertEquals(futures.get(i).get(), contents.get(i % NB_ENTRIES));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static byte[] getContents(int i) {
+        return ("contents" + i).getBytes();
+    }
+
+    @Test
+    public void testWriteZip64() throws IOException {
+        AbstractFile zip64File = FileFactory.getTemporaryFile(getClass().getName() + "-zip64.zip", true);
+        try {
+            try (ZipOutputStream zout = new ZipOutputStream(zip64File.getOutputStream())) {
+                for (int i = 0; i < NB_ZIP64_ENTRIES; i++) {
+                    zout.putNextEntry(new ZipEntry("entry" + i));
+                    zout.write(getContents(i));
+                }
+            }
+
+            try (java.util.zip.ZipFile javaZipFile = new java.util.zip.ZipFile(zip64File.getAbsolutePath())) {
+                Assert.assertEquals(javaZipFile.size(), NB_ZIP64_ENTRIES);
+                int i = NB_ZIP64_ENTRIES - 1;
+                Assert.assertEquals(javaZipFile.getInputStream(javaZipFile.getEntry("entry" + i)).readAllBytes(), getContents(i));
+            }
+
+            ZipFile zipFile = new ZipFile(zip64File);
+            Assert.assertEquals(zipFile.getNbEntries(), NB_ZIP64_ENTRIES);
+            for (int i = 0; i < NB_ZIP64_ENTRIES; i += 997) {
+                Assert.assertEquals(readEntry(zipFile, "entry" + i, false), getContents(i));
+            }
+        } finally {
+            zip64File.delete();
+        }
+    }
+
+    @Test
+    public void testModifyZip64() throws IOException {
+        AbstractFile zip64File = FileFactory.getTemporaryFile(getClass().getName() + "-zip64.zip", true);
+        try {
+            try (java.util.zip.ZipOutputStream zout = new java.util.zip.ZipOutputStream(zip64File.getOutputStream())) {
+                for (int i = 0; i < NB_ZIP64_ENTRIES; i++) {
+                    zout.putNextEntry(new java.util.zip.ZipEntry("entry" + i));
+                    zout.write(getContents(i));
+                }
+            }
+
+            ZipFile zipFile = new ZipFile(zip64File);
+            Assert.assertEquals(zipFile.getNbEntries(), NB_ZIP64_ENTRIES);
+            int last = NB_ZIP64_ENTRIES - 1;
+            Assert.assertEquals(readEntry(zipFile, "entry" + last, false), getContents(last));
+
+            // The size of the added entry is not known, its local file header has room for Zip64 sizes
+            byte[] addedContents = new byte[100000];
+            new Random(0).nextBytes(addedContents);
+            ZipEntry addedEntry = new ZipEntry("added");
+            addedEntry.setMethod(ZipConstants.DEFLATED);
+            try (OutputStream out = zipFile.addEntry(addedEntry)) {
+                out.write(addedContents);
+            }
+
+            // Streaming readers get the sizes from the local file header, which deleting an entry zeroes out
+            try (java.util.zip.ZipInputStream zin = new java.util.zip.ZipInputStream(zip64File.getInputStream())) {
+                java.util.zip.ZipEntry entry;
+                while ((entry = zin.getNextEntry()) != null && !entry.getName().equals("added")) {
+                }
+                Assert.assertNotNull(entry);
+                Assert.assertEquals(zin.readAllBytes(), addedContents);
+            }
+
+            zipFile.deleteEntry(zipFile.getEntry("entry0"));
+
+            zipFile = new ZipFile(zip64File);
+            Assert.assertEquals(zipFile.getNbEntries(), NB_ZIP64_ENTRIES);
+            Assert.assertNull(zipFile.getEntry("entry0"));
+            Assert.assertEquals(readEntry(zipFile, "added", false), addedContents);
+            Assert.assertEquals(readEntry(zipFile, "entry" + last, false), getContents(last));
+
+            try (java.util.zip.ZipFile javaZipFile = new java.util.zip.ZipFile(zip64File.getAbsolutePath())) {
+                Assert.assertEquals(javaZipFile.size(), NB_ZIP64_ENTRIES);
+                Assert.assertEquals(javaZipFile.getInputStream(javaZipFile.getEntry("added")).readAllBytes(), addedContents);
+            }
+        } finally {
+            zip64File.delete();
+        }
+    }
+
+    @Test
+    public void testWriteParallel() throws IOException {
+        AbstractFile parallelFile = FileFactory.getTemporaryFile(getClass().getName() + "-parallel.zip", true);
+        try {
+            try (ZipOutputStream zout = new ZipOutputStream(parallelFile.getOutputStream())) {
+                zout.setCompressionThreads(4);
+                for (int i = 0; i < NB_ENTRIES; i++) {
+                    // Entries of known size are compressed in parallel if they span several blocks
+                    ZipEntry entry = new ZipEntry("entry" + i);
+                    if (i % 2 == 0)
+                        entry.setSize(contents.get(i).length);
+                    zout.putNextEntry(entry);
+                    zout.write(contents.get(i));
+                }
+                ZipEntry largeEntry = new ZipEntry("large");
+                zout.putNextEntry(largeEntry);
+                for (int i = 0; i < NB_ENTRIES; i++)
+                    zout.write(contents.get(i));
+            }
+
+            ByteArrayOutputStream large = new ByteArrayOutputStream();
+            for (int i = 0; i < NB_ENTRIES; i++)
+                large.write(contents.get(i));
+
+            try (java.util.zip.ZipFile javaZipFile = new java.util.zip.ZipFile(parallelFile.getAbsolutePath())) {
+                for (int i = 0; i < NB_ENTRIES; i++)
+                    Assert.assertEquals(javaZipFile.getInputStream(javaZipFile.getEntry("entry" + i)).readAllBytes(), contents.get(i));
+                Assert.assertEquals(javaZipFile.getInputStream(javaZipFile.getEntry("large")).readAllBytes(), large.toByteArray());
+            }
+
+            ZipFile zipFile = new ZipFile(parallelFile);
+            Assert.assertEquals(readEntry(zipFile, "large", false), large.toByteArray());
+            Assert.assertEquals(zipFile.getEntry("large").getSize(), large.size());
+        } finally {
+            parallelFile.delete();
+        }
+    }
+
+    @Test
+    public void testZip64ExtraField() throws IOException {
+        long size = 5L << 30;
+        long compressedSize = 4L << 30;
+        long headerOffset = 6L << 30;
+
+        ZipEntry entry = new ZipEntry("large");
+        entry.setMethod(ZipConstants.DEFLATED);
+        entry.setTime(System.currentTimeMillis());
+        entry.setCrc(0);
+        entry.setSize(size);
+        entry.setCompressedSize(compressedSize);
+
+        // A central directory alone is enough to list entries
+        ZipBuffer zipBuffer = new ZipBuffer();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        long cdLength = ZipOutputStream.writeCentralFileHeader(entry, bout, ZipConstants.UTF_8, headerOffset, false, zipBuffer);
+        ZipOutputStream.writeCentralDirectoryEnd(bout, 1, cdLength, 0, "", ZipConstants.UTF_8, zipBuffer);
+
+        AbstractFile zip64File = FileFactory.getTemporaryFile(getClass().getName() + "-zip64.zip", true);
+        try {
+            try (OutputStream out = zip64File.getOutputStream()) {
+                out.write(bout.toByteArray());
+            }
+
+            ZipEntry parsedEntry = new ZipFile(zip64File).getEntry("large");
+            Assert.assertEquals(parsedEntry.getSize(), size);
+            Assert.assertEquals(parsedEntry.getCompressedSize(), compressedSize);
+            Assert.assertEquals(parsedEntry.getEntryInfo().headerOffset, headerOffset);
+            Assert.assertEquals(parsedEntry.getExtraFields().length, 0);
+        } finally {
+            zip64File.delete();
+        }
+    }
+}
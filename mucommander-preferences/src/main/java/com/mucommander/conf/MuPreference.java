@@ -78,6 +78,9 @@ public enum MuPreference {
     LIST_HIDDEN_FILES(MuPreferences.LIST_HIDDEN_FILES),
     SMB_LM_COMPATIBILITY(MuPreferences.SMB_LM_COMPATIBILITY),
     SMB_USE_EXTENDED_SECURITY(MuPreferences.SMB_USE_EXTENDED_SECURITY),
+    CONCURRENT_TRANSFERS(MuPreferences.CONCURRENT_TRANSFERS),
+    TREE_CACHE_MAX_ENTRIES(MuPreferences.TREE_CACHE_MAX_ENTRIES),
+    TREE_CACHE_MAX_SIZE(MuPreferences.TREE_CACHE_MAX_SIZE),
     SHOW_TAB_HEADER(MuPreferences.SHOW_SINGLE_TAB_HEADER),
     SET_DROP_ACTION_TO_COPY(MuPreferences.SET_DROP_ACTION_TO_COPY),
     QUICK_SEARCH_TIMEOUT(MuPreferences.QUICK_SEARCH_TIMEOUT),
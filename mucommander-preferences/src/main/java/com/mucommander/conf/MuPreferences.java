@@ -375,6 +375,30 @@ public class MuPreferences implements MuPreferencesAPI {
     public static final boolean DEFAULT_SMB_USE_EXTENDED_SECURITY = false;
 
 
+    // - Variables used for file transfers -----------------------------------
+    // -----------------------------------------------------------------------
+    /** Section containing all file transfer variables. */
+    public static final String TRANSFER_SECTION                   = "transfer";
+    /** Maximum number of files that copy jobs transfer concurrently. */
+    public static final String CONCURRENT_TRANSFERS               = TRANSFER_SECTION + '.' + "concurrent_transfers";
+    /** Default value for {@link #CONCURRENT_TRANSFERS}: files are copied one after the other. */
+    public static final int DEFAULT_CONCURRENT_TRANSFERS          = 1;
+
+
+    // - Variables used for the folders tree ---------------------------------
+    // -----------------------------------------------------------------------
+    /** Section containing all folders tree variables. */
+    public static final String TREE_SECTION                       = "tree";
+    /** Maximum number of folders whose contents are cached by the folders tree. */
+    public static final String TREE_CACHE_MAX_ENTRIES             = TREE_SECTION + '.' + "cache_max_entries";
+    /** Default value for {@link #TREE_CACHE_MAX_ENTRIES}. */
+    public static final int DEFAULT_TREE_CACHE_MAX_ENTRIES        = 5000;
+    /** Maximum estimated size of the folders tree cache, in kilobytes. */
+    public static final String TREE_CACHE_MAX_SIZE                = TREE_SECTION + '.' + "cache_max_size";
+    /** Default value for {@link #TREE_CACHE_MAX_SIZE}. */
+    public static final int DEFAULT_TREE_CACHE_MAX_SIZE           = 16 * 1024;
+
+
     private static final String ROOT_ELEMENT = "preferences";
 
     // - Instance fields -----------------------------------------------------
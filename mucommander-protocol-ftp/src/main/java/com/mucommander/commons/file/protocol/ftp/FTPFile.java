@@ -31,6 +31,7 @@ import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.commons.net.ftp.FTPListParseEngine;
 import org.apache.commons.net.ftp.FTPReply;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +42,7 @@ import java.net.SocketTimeoutException;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Date;
+import java.util.function.Consumer;
 
 
 /**
@@ -269,6 +271,44 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         }
     }
 
+    /**
+     * Initiates the listing of the specified directory like {@link #listFiles(FTPConnectionHandler, String)} does,
+     * and returns an engine that parses the directory's contents on demand. The listing is transferred by the time
+     * this method returns: the connection can be released before the entries are parsed.
+     *
+     * @param connHandler the connection handler to use for communicating with the server
+     * @param absPath absolute path to the directory to list
+     * @return an engine that parses the directory's entries
+     * @throws IOException if an error occurred while communicating with the server
+     * @throws AuthException if the user is not allowed to access this directory
+     */
+    private static FTPListParseEngine initiateListParsing(FTPConnectionHandler connHandler, String absPath) throws IOException, AuthException {
+        try {
+            // The folder is listed with CWD and LIST for the reasons explained in #listFiles
+            connHandler.ftpClient.changeWorkingDirectory(absPath);
+            // Throw an IOException if server replied with an error
+            connHandler.checkServerReply();
+
+            FTPListParseEngine engine = connHandler.ftpClient.initiateListParsing();
+            // Throw an IOException if server replied with an error
+            connHandler.checkServerReply();
+
+            return engine;
+        }
+        // This exception is not an IOException and needs to be caught and thrown back as an IOException
+        catch(org.apache.commons.net.ftp.parser.ParserInitializationException e) {
+            LOGGER.info("ParserInitializationException caught", e);
+            throw new IOException();
+        }
+        catch(IOException e) {
+            // Checks if the IOException corresponds to a socket error and in that case, closes the connection
+            connHandler.checkSocketException(e);
+
+            // Throw back the IOException
+            throw e;
+        }
+    }
+
 
     /////////////////////////////////////////////
     // ConnectionHandlerFactory implementation //
@@ -567,6 +607,42 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         if(files==null || files.length==0)
             return new AbstractFile[] {};
 
+        return createChildren(files);
+    }
+
+    /**
+     * Overridden to parse and create the children in batches. Note that FTP servers send the whole listing at once:
+     * the listing is transferred before the first batch is passed, but the connection is released at that point and
+     * the consumer does not wait for all entries to be parsed.
+     */
+    @Override
+    public void lsBatches(Consumer<AbstractFile[]> batchConsumer) throws IOException {
+        // Retrieve a ConnectionHandler and lock it
+        FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(this, fileURL, true);
+        FTPListParseEngine engine;
+        try {
+            // Makes sure the connection is started, if not starts it
+            connHandler.checkConnection();
+
+            engine = initiateListParsing(connHandler, absPath);
+        }
+        finally {
+            // Release the lock on the ConnectionHandler
+            connHandler.releaseLock();
+        }
+
+        while(engine.hasNext()) {
+            AbstractFile children[] = createChildren(engine.getNext(LS_BATCH_SIZE));
+            if(children.length>0)
+                batchConsumer.accept(children);
+        }
+    }
+
+    /**
+     * Creates the children of this file that correspond to the given listing entries, discarding <code>null</code>
+     * entries and the '.' and '..' files.
+     */
+    private AbstractFile[] createChildren(org.apache.commons.net.ftp.FTPFile files[]) {
         AbstractFile children[] = new AbstractFile[files.length];
         AbstractFile child;
         FileURL childURL;
@@ -589,10 +665,6 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             childURL = (FileURL)fileURL.clone();
             childURL.setPath(parentPath+childName);
 
-            // Discard '.' and '..' files
-            if(childName.equals(".") || childName.equals(".."))
-                continue;
-
             child = FileFactory.getFile(childURL, this, Collections.singletonMap("parentFtpFile", files[i]));
             children[fileCount++] = child;
         }
@@ -21,6 +21,7 @@ package com.mucommander.commons.file.protocol.s3;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.function.Consumer;
 
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
@@ -100,6 +101,11 @@ public class S3Bucket extends S3File {
         return listObjects(bucketName, "", this);
     }
 
+    @Override
+    public void lsBatches(Consumer<AbstractFile[]> batchConsumer) throws IOException {
+        listObjects(bucketName, "", this, batchConsumer);
+    }
+
     @Override
     public void delete() throws IOException {
         try {
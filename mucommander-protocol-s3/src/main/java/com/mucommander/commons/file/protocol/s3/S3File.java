@@ -19,11 +19,19 @@
 package com.mucommander.commons.file.protocol.s3;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import org.jets3t.service.Constants;
 import org.jets3t.service.S3Service;
@@ -63,6 +71,16 @@ public abstract class S3File extends ProtocolFile {
     public static String SECUTRE_HTTP = "secureHttp";
     public static String DEFAULT_BUCKET_LOCATION = "defaultBucketLocation";
 
+    /** Maximum number of keys returned by each request of a listing */
+    private final static long LISTING_PAGE_SIZE = Constants.DEFAULT_OBJECT_LIST_CHUNK_SIZE;
+
+    /** Retrieves listing pages in the background, while the previous page is being processed */
+    private final static ExecutorService LISTING_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "S3 listing");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     protected S3File(FileURL url, S3Service service) {
         super(url);
 
@@ -89,69 +107,144 @@ public abstract class S3File extends ProtocolFile {
             throw new AuthException(fileURL);
     }
     
+    /**
+     * Lists the objects and common prefixes of the given bucket that start with the given prefix, and returns them
+     * as children of the given parent. All the pages of the listing are retrieved, see
+     * {@link #listObjects(String, String, S3File, Consumer)}.
+     */
     protected AbstractFile[] listObjects(String bucketName, String prefix, S3File parent) throws IOException {
+        List<AbstractFile> children = new ArrayList<>();
+        listObjects(bucketName, prefix, parent, page -> Collections.addAll(children, page));
+
+        return children.toArray(new AbstractFile[0]);
+    }
+
+    /**
+     * Lists the objects and common prefixes of the given bucket that start with the given prefix, and passes them
+     * to the given consumer one page at a time, as children of the given parent. Pages are requested using the last
+     * key of the previous page, until the listing is complete. The next page is requested as soon as the previous one
+     * has been received, so that it is retrieved while the previous page is being processed by the consumer.
+     *
+     * @param bucketName name of the bucket to list
+     * @param prefix the key prefix of the objects to list, empty to list the bucket's root
+     * @param parent the parent of the listed files
+     * @param pageConsumer receives the files of each page, in listing order
+     * @throws IOException if the listing failed, or if the prefix does not exist
+     */
+    protected void listObjects(String bucketName, String prefix, S3File parent, Consumer<AbstractFile[]> pageConsumer) throws IOException {
+        Future<StorageObjectsChunk> nextChunk = requestChunk(bucketName, prefix, null);
         try {
-        	StorageObjectsChunk chunk = service.listObjectsChunked(bucketName, prefix, "/", Constants.DEFAULT_OBJECT_LIST_CHUNK_SIZE, null, true);
-            StorageObject objects[] = chunk.getObjects();
-            String[] commonPrefixes = chunk.getCommonPrefixes();
+            boolean firstChunk = true;
+            while(nextChunk!=null) {
+                StorageObjectsChunk chunk = getChunk(nextChunk);
 
-            if(objects.length==0 && !prefix.equals("")) {
-                // This happens only when the directory does not exist
-                throw new IOException();
-            }
+                // Request the next page before processing this one
+                String priorLastKey = chunk.getPriorLastKey();
+                nextChunk = priorLastKey==null?null:requestChunk(bucketName, prefix, priorLastKey);
 
-            AbstractFile[] children = new AbstractFile[objects.length+commonPrefixes.length];
-            FileURL childURL;
-            int i=0;
-            String objectKey;
-
-            for(StorageObject object : objects) {
-                // Discard the object corresponding to the prefix itself
-                objectKey = object.getKey();
-                if(objectKey.equals(prefix))
-                    continue;
-
-                childURL = (FileURL)fileURL.clone();
-                childURL.setPath(bucketName + "/" + objectKey);
-
-                Map<String, Object> parameters = new HashMap<>();
-                parameters.put("service", service);
-                parameters.put("object", object);
-                children[i] = FileFactory.getFile(childURL, parent, parameters);
-                i++;
-            }
+                if(firstChunk && chunk.getObjects().length==0 && !prefix.equals("")) {
+                    // This happens only when the directory does not exist
+                    throw new IOException();
+                }
+                firstChunk = false;
 
-            org.jets3t.service.model.S3Object directoryObject;
-            for(String commonPrefix : commonPrefixes) {
-                childURL = (FileURL)fileURL.clone();
-                childURL.setPath(bucketName + "/" + commonPrefix);
-
-                directoryObject = new org.jets3t.service.model.S3Object(commonPrefix);
-                // Common prefixes are not objects per se, and therefore do not have a date, content-length nor owner.
-                directoryObject.setLastModifiedDate(new Date(System.currentTimeMillis()));
-                directoryObject.setContentLength(0);
-                Map<String, Object> parameters = new HashMap<>();
-                parameters.put("service", service);
-                parameters.put("object", directoryObject);
-                children[i] = FileFactory.getFile(childURL, parent, parameters);
-                i++;
+                AbstractFile[] page = createChildren(chunk, bucketName, prefix, parent);
+                if(page.length>0)
+                    pageConsumer.accept(page);
             }
+        }
+        finally {
+            // The listing failed or was interrupted
+            if(nextChunk!=null)
+                nextChunk.cancel(true);
+        }
+    }
 
-            // Trim the array if an object was discarded.
-            // Note: Having to recreate an array sucks (puts pressure on the GC), but I haven't found a reliable way
-            // to know in advance whether the prefix will appear in the results or not.
-            if(i<children.length) {
-                AbstractFile[] childrenTrimmed = new AbstractFile[i];
-                System.arraycopy(children, 0, childrenTrimmed, 0, i);
+    /**
+     * Requests the page of the listing that follows the given key, <code>null</code> for the first page.
+     */
+    private Future<StorageObjectsChunk> requestChunk(String bucketName, String prefix, String priorLastKey) {
+        return LISTING_EXECUTOR.submit(() ->
+                service.listObjectsChunked(bucketName, prefix, "/", LISTING_PAGE_SIZE, priorLastKey, false));
+    }
 
-                return childrenTrimmed;
-            }
+    /**
+     * Waits for the given page of a listing to be retrieved and returns it.
+     */
+    private StorageObjectsChunk getChunk(Future<StorageObjectsChunk> chunk) throws IOException {
+        try {
+            return chunk.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof ServiceException)
+                throw getIOException((ServiceException)cause);
+            if(cause instanceof IOException)
+                throw (IOException)cause;
+
+            throw new IOException(cause);
+        }
+    }
 
-            return children;
+    /**
+     * Creates the files that correspond to the objects and common prefixes of the given listing page.
+     */
+    private AbstractFile[] createChildren(StorageObjectsChunk chunk, String bucketName, String prefix, S3File parent) throws IOException {
+        StorageObject objects[] = chunk.getObjects();
+        String[] commonPrefixes = chunk.getCommonPrefixes();
+
+        AbstractFile[] children = new AbstractFile[objects.length+commonPrefixes.length];
+        FileURL childURL;
+        int i=0;
+        String objectKey;
+
+        for(StorageObject object : objects) {
+            // Discard the object corresponding to the prefix itself
+            objectKey = object.getKey();
+            if(objectKey.equals(prefix))
+                continue;
+
+            childURL = (FileURL)fileURL.clone();
+            childURL.setPath(bucketName + "/" + objectKey);
+
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("service", service);
+            parameters.put("object", object);
+            children[i] = FileFactory.getFile(childURL, parent, parameters);
+            i++;
         }
-        catch(ServiceException e) {
-            throw getIOException(e);
+
+        org.jets3t.service.model.S3Object directoryObject;
+        for(String commonPrefix : commonPrefixes) {
+            childURL = (FileURL)fileURL.clone();
+            childURL.setPath(bucketName + "/" + commonPrefix);
+
+            directoryObject = new org.jets3t.service.model.S3Object(commonPrefix);
+            // Common prefixes are not objects per se, and therefore do not have a date, content-length nor owner.
+            directoryObject.setLastModifiedDate(new Date(System.currentTimeMillis()));
+            directoryObject.setContentLength(0);
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("service", service);
+            parameters.put("object", directoryObject);
+            children[i] = FileFactory.getFile(childURL, parent, parameters);
+            i++;
         }
+
+        // Trim the array if an object was discarded.
+        // Note: Having to recreate an array sucks (puts pressure on the GC), but I haven't found a reliable way
+        // to know in advance whether the prefix will appear in the results or not.
+        if(i<children.length) {
+            AbstractFile[] childrenTrimmed = new AbstractFile[i];
+            System.arraycopy(children, 0, childrenTrimmed, 0, i);
+
+            return childrenTrimmed;
+        }
+
+        return children;
     }
 
 
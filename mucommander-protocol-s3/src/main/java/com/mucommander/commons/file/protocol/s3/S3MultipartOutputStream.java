@@ -0,0 +1,413 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.protocol.s3;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.io.BufferPool;
+
+/**
+ * An <code>OutputStream</code> that uploads an object of unknown length with a multipart upload, without spooling it
+ * to a temporary file.
+ *
+ * <p>Written data is accumulated in a part buffer of fixed size, borrowed from {@link BufferPool}. Each time the
+ * buffer is full, the part is uploaded in the background while the next one is being filled; at most
+ * <code>maxConcurrentParts</code> parts are uploaded at the same time, writes block beyond that. Objects that fit in
+ * a single part are uploaded with a single request when the stream is closed, without starting a multipart upload.</p>
+ *
+ * <p>{@link #complete()} waits for all parts to be uploaded and completes the upload: the object is only created or
+ * replaced at that point. If a part fails to be uploaded, the next write or <code>complete</code> throws the error and
+ * the multipart upload is aborted. {@link #close()} without a prior call to <code>complete</code> discards the upload,
+ * just like {@link #abort()}, so that a stream closed after a failed or cancelled transfer never leaves a truncated
+ * object behind.</p>
+ *
+ * <p>A stream used where the caller has no way to call <code>complete</code>, e.g. the one returned by
+ * {@link S3Object#getOutputStream()}, can be set to {@link #setCompleteOnClose(boolean) complete the upload on close}
+ * instead, unless a write failed before that.</p>
+ *
+ * <p>Requests are carried out by an {@link UploadTarget}, which allows the stream to be used with any S3-compatible
+ * service.</p>
+ *
+ * @param <P> the type of the receipts returned for uploaded parts
+ */
+class S3MultipartOutputStream<P> extends OutputStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(S3MultipartOutputStream.class);
+
+    /** Default size of a part, S3 requires all parts but the last one to be at least 5MB */
+    final static int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+
+    /** Default maximum number of parts that are uploaded concurrently */
+    final static int DEFAULT_MAX_CONCURRENT_PARTS = 4;
+
+    /** Maximum number of parts of a multipart upload */
+    private final static int MAX_PARTS = 10000;
+
+    /** Uploads parts in the background */
+    private final static ExecutorService UPLOAD_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "S3 part upload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final UploadTarget<P> target;
+    private final int partSize;
+
+    /** Runs the part uploads */
+    private final ExecutorService executor;
+
+    /** Bounds the number of parts that are being uploaded */
+    private final Semaphore uploadSlots;
+
+    /** The part being filled, null once the stream is closed */
+    private byte[] buffer;
+
+    /** Number of bytes in the part being filled */
+    private int count;
+
+    /** Parts that have been submitted for upload, in part number order */
+    private final List<Part> parts = new ArrayList<>();
+
+    /** True once the multipart upload has been started */
+    private boolean uploadStarted;
+
+    /** Error that occurred while uploading a part, null if none */
+    private volatile IOException uploadError;
+
+    /** True if {@link #close()} completes the upload rather than aborting it */
+    private boolean completeOnClose;
+
+    /** True once a write has failed, the upload can then only be aborted */
+    private boolean writeFailed;
+
+    /**
+     * Requests that upload an object, either in a single request or with a multipart upload.
+     *
+     * @param <P> the type of the receipts returned for uploaded parts
+     */
+    interface UploadTarget<P> {
+
+        /**
+         * Uploads the whole object in a single request.
+         */
+        void putObject(byte[] data, int length) throws IOException;
+
+        /**
+         * Starts a multipart upload. Called before the first part is uploaded.
+         */
+        void startUpload() throws IOException;
+
+        /**
+         * Uploads the given part, possibly concurrently with other parts, and returns its receipt.
+         *
+         * @param partNumber the part's number, starting at 1
+         */
+        P uploadPart(int partNumber, byte[] data, int length) throws IOException;
+
+        /**
+         * Completes the multipart upload with the given parts, in part number order.
+         */
+        void completeUpload(List<P> parts) throws IOException;
+
+        /**
+         * Aborts the multipart upload, discarding the parts that were uploaded.
+         */
+        void abortUpload() throws IOException;
+    }
+
+
+    /**
+     * Creates a new stream that uploads to the given target, using the default part size and number of concurrent
+     * parts.
+     */
+    S3MultipartOutputStream(UploadTarget<P> target) {
+        this(target, DEFAULT_PART_SIZE, DEFAULT_MAX_CONCURRENT_PARTS);
+    }
+
+    S3MultipartOutputStream(UploadTarget<P> target, int partSize, int maxConcurrentParts) {
+        this(target, partSize, maxConcurrentParts, UPLOAD_EXECUTOR);
+    }
+
+    S3MultipartOutputStream(UploadTarget<P> target, int partSize, int maxConcurrentParts, ExecutorService executor) {
+        this.target = target;
+        this.partSize = partSize;
+        this.executor = executor;
+        this.uploadSlots = new Semaphore(maxConcurrentParts);
+        this.buffer = BufferPool.getByteArray(partSize);
+    }
+
+    /**
+     * Sets whether {@link #close()} completes the upload, as {@link #complete()} would, rather than aborting it.
+     * Even then, the upload is aborted on close if a write failed.
+     */
+    synchronized void setCompleteOnClose(boolean completeOnClose) {
+        this.completeOnClose = completeOnClose;
+    }
+
+    /**
+     * Throws an IOException if the stream is closed or if a part failed to be uploaded.
+     */
+    private void checkState() throws IOException {
+        if(buffer==null)
+            throw new IOException("Stream closed");
+
+        IOException e = uploadError;
+        if(e!=null)
+            throw e;
+    }
+
+    /**
+     * Submits the current part for upload and starts filling a new one.
+     */
+    private void uploadPart() throws IOException {
+        if(parts.size()==MAX_PARTS)
+            throw new IOException("Object too large: maximum number of parts reached");
+
+        if(!uploadStarted) {
+            target.startUpload();
+            uploadStarted = true;
+        }
+
+        try {
+            uploadSlots.acquire();
+        }
+        catch(InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+
+        Part part = new Part(parts.size()+1, buffer, count);
+        buffer = BufferPool.getByteArray(partSize);
+        count = 0;
+
+        part.future = executor.submit(part);
+        parts.add(part);
+    }
+
+    /**
+     * Waits for all parts to be uploaded and returns their receipts, in part number order.
+     */
+    private List<P> waitForParts() throws IOException {
+        List<P> receipts = new ArrayList<>(parts.size());
+        for(Part part : parts) {
+            try {
+                receipts.add(part.future.get());
+            }
+            catch(InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            catch(ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException?(IOException)cause:new IOException(cause);
+            }
+        }
+
+        return receipts;
+    }
+
+    /**
+     * Releases the part buffer, returns <code>false</code> if the stream was already closed.
+     */
+    private boolean releaseBuffer() {
+        if(buffer==null)
+            return false;
+
+        BufferPool.releaseByteArray(buffer);
+        buffer = null;
+        return true;
+    }
+
+    /**
+     * Discards this stream's data: the parts that are being uploaded are cancelled and the multipart upload, if any,
+     * is aborted. This method has no effect if the stream is already closed.
+     *
+     * @throws IOException if the multipart upload could not be aborted
+     */
+    public synchronized void abort() throws IOException {
+        if(!releaseBuffer())
+            return;
+
+        abortUpload();
+    }
+
+    private void abortUpload() throws IOException {
+        for(Part part : parts) {
+            part.future.cancel(true);
+            // Parts that were cancelled before they started would otherwise never give their buffer back
+            if(part.claim())
+                part.release();
+        }
+
+        if(uploadStarted)
+            target.abortUpload();
+    }
+
+    /**
+     * Uploads the remaining data and completes the upload, creating or replacing the object. The stream is closed
+     * afterwards. If the upload cannot be completed, it is aborted and the object is left untouched.
+     *
+     * @throws IOException if the stream is already closed or if the upload could not be completed
+     */
+    public synchronized void complete() throws IOException {
+        try {
+            checkState();
+
+            if(!uploadStarted) {
+                // The object fits in a single part
+                target.putObject(buffer, count);
+            }
+            else {
+                if(count>0)
+                    uploadPart();
+
+                target.completeUpload(waitForParts());
+            }
+        }
+        catch(IOException e) {
+            if(buffer!=null) {
+                try {
+                    abortUpload();
+                }
+                catch(IOException e2) {
+                    LOGGER.info("Failed to abort multipart upload", e2);
+                }
+            }
+
+            throw e;
+        }
+        finally {
+            releaseBuffer();
+        }
+    }
+
+
+    /////////////////////////////////
+    // OutputStream implementation //
+    /////////////////////////////////
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        try {
+            checkState();
+
+            buffer[count++] = (byte)b;
+            if(count==partSize)
+                uploadPart();
+        }
+        catch(IOException e) {
+            writeFailed = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        try {
+            checkState();
+
+            while(len>0) {
+                int nbBytes = Math.min(len, partSize-count);
+                System.arraycopy(b, off, buffer, count, nbBytes);
+                count += nbBytes;
+                off += nbBytes;
+                len -= nbBytes;
+
+                if(count==partSize)
+                    uploadPart();
+            }
+        }
+        catch(IOException e) {
+            writeFailed = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the stream. Unless {@link #complete()} has been called before, the upload is aborted and the object is
+     * left untouched, or completed if the stream was {@link #setCompleteOnClose(boolean) set to do so} and no write
+     * failed. This method has no effect if the stream is already closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(buffer==null)
+            return;
+
+        if(completeOnClose && !writeFailed)
+            complete();
+        else
+            abort();
+    }
+
+
+    /**
+     * A part submitted for upload. The part's buffer is released by whoever claims the part first: the upload task
+     * when it starts, or {@link #abortUpload()} if the part was cancelled before that.
+     */
+    private class Part implements Callable<P> {
+        private final int partNumber;
+        private final byte[] data;
+        private final int length;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private Future<P> future;
+
+        private Part(int partNumber, byte[] data, int length) {
+            this.partNumber = partNumber;
+            this.data = data;
+            this.length = length;
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        private void release() {
+            BufferPool.releaseByteArray(data);
+            uploadSlots.release();
+        }
+
+        @Override
+        public P call() throws IOException {
+            if(!claim())
+                return null;
+
+            try {
+                return target.uploadPart(partNumber, data, length);
+            }
+            catch(IOException e) {
+                LOGGER.info("Failed to upload part {}", partNumber, e);
+                uploadError = e;
+                throw e;
+            }
+            finally {
+                release();
+            }
+        }
+    }
+}
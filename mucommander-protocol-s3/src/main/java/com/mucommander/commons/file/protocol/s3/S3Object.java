@@ -18,13 +18,18 @@
 
 package com.mucommander.commons.file.protocol.s3;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
+import java.util.function.Consumer;
 
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
 import org.jets3t.service.ServiceException;
+import org.jets3t.service.model.MultipartPart;
+import org.jets3t.service.model.MultipartUpload;
 import org.jets3t.service.model.StorageObject;
 import org.jets3t.service.model.StorageOwner;
 import org.slf4j.Logger;
@@ -33,14 +38,10 @@ import org.slf4j.LoggerFactory;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AuthException;
 import com.mucommander.commons.file.FileAttributes;
-import com.mucommander.commons.file.FileFactory;
-import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.FilePermissions;
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.commons.file.SimpleFilePermissions;
 import com.mucommander.commons.file.SyncedFileAttributes;
-import com.mucommander.commons.file.UnsupportedFileOperation;
-import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.FileTransferError;
 import com.mucommander.commons.io.FileTransferException;
@@ -155,6 +156,11 @@ public class S3Object extends S3File {
         return listObjects(bucketName, getObjectKey(true), this);
     }
 
+    @Override
+    public void lsBatches(Consumer<AbstractFile[]> batchConsumer) throws IOException {
+        listObjects(bucketName, getObjectKey(true), this, batchConsumer);
+    }
+
     @Override
     public void mkdir() throws IOException {
         if(exists())
@@ -259,63 +265,28 @@ public class S3Object extends S3File {
         return new S3ObjectRandomAccessInputStream();
     }
 
+    /**
+     * Returns an <code>OutputStream</code> that uploads the object as it is written, with a multipart upload. The
+     * object is created or replaced when the stream is closed, unless a write failed, in which case the upload is
+     * aborted and the object left untouched.
+     */
     @Override
-    @UnsupportedFileOperation
-    public OutputStream getOutputStream() throws UnsupportedFileOperationException {
-        throw new UnsupportedFileOperationException(FileOperation.WRITE_FILE);
+    public OutputStream getOutputStream() {
+        S3MultipartOutputStream<MultipartPart> out = createUploadOutputStream();
+        out.setCompleteOnClose(true);
+        return out;
+    }
 
-        // This stream is broken: close has no way to know if the transfer went through entirely. If it didn't
-        // (close was called before the end of the input stream), the partially copied file will still be transferred
-        // to S3, when it shouldn't.
+    /**
+     * Creates a stream that uploads this object with a multipart upload, see {@link S3MultipartOutputStream}.
+     */
+    private S3MultipartOutputStream<MultipartPart> createUploadOutputStream() {
+        // Update local attributes temporarily
+        atts.setExists(true);
+        atts.setSize(0);
+        atts.setDirectory(false);
 
-//        final AbstractFile tempFile = FileFactory.getTemporaryFile(false);
-//        final OutputStream tempOut = tempFile.getOutputStream();
-//
-//        // Update local attributes temporarily
-//        atts.setExists(true);
-//        atts.setSize(0);
-//        atts.setDirectory(false);
-//
-//        // Return an OutputStream to a temporary file that will be copied to the S3 object when the stream is closed.
-//        // The object's length has to be declared in the PUT request's headers and this is the only way to do so.
-//        return new FilteredOutputStream(tempOut) {
-//            @Override
-//            public void close() throws IOException {
-//                tempOut.close();
-//
-//                InputStream tempIn = tempFile.getInputStream();
-//                try {
-//                    long tempFileSize = tempFile.getSize();
-//
-//                    org.jets3t.service.model.S3Object object = new org.jets3t.service.model.S3Object(getObjectKey(false));
-//                    object.setDataInputStream(tempIn);
-//                    object.setContentLength(tempFileSize);
-//
-//                    // Transfer to S3 and update local file attributes
-//                    atts.setAttributes(service.putObject(bucketName, object));
-//                    atts.setExists(true);
-//                    atts.updateExpirationDate();
-//                }
-//                catch(S3ServiceException e) {
-//                    throw getIOException(e);
-//                }
-//                finally {
-//                    try {
-//                        tempIn.close();
-//                    }
-//                    catch(IOException e) {
-//                        // Do not re-throw the exception to prevent exceptions caught in the catch block from being replaced
-//                    }
-//
-//                    try {
-//                        tempFile.delete();
-//                    }
-//                    catch(IOException e) {
-//                        // Do not re-throw the exception to prevent exceptions caught in the catch block from being replaced
-//                    }
-//                }
-//            }
-//        };
+        return new S3MultipartOutputStream<>(new MultipartUploadTarget());
     }
 
 
@@ -332,56 +303,31 @@ public class S3Object extends S3File {
 
         // TODO: compute md5 ?
 
-        // If the length is known, we can upload the object directly without having to go through the tedious process
-        // of copying the stream to a temporary file.
-        if(length>=0) {
+        // If the length is known, we can upload the object directly in a single request
+        if(length>=0 && length<=MAX_OBJECT_SIZE) {
             putObject(in, length);
         }
         else {
-            // Copy the stream to a temporary file so that we can know the object's length, which has to be declared
-            // in the PUT request's headers (that is before the transfer is started).
-            final AbstractFile tempFile;
-            final OutputStream tempOut;
-            try {
-                tempFile = FileFactory.getTemporaryFile(false);
-                tempOut = tempFile.getOutputStream();
-            }
-            catch(IOException e) {
-                throw new FileTransferException(FileTransferError.OPENING_DESTINATION);
-            }
-
+            // The length is unknown or too large for a single PUT request: upload the stream in parts as it is read
+            S3MultipartOutputStream<MultipartPart> out = createUploadOutputStream();
             try {
-                // Copy the stream to the temporary file
-                try {
-                    StreamUtils.copyStream(in, tempOut, IO_BUFFER_SIZE);
-                }
-                finally {
-                    // Close the stream even if copyStream() threw an IOException
-                    try {
-                        tempOut.close();
-                    }
-                    catch(IOException e) {
-                        // Do not re-throw the exception to prevent swallowing the exception thrown in the try block
-                    }
-                }
+                StreamUtils.copyStream(in, out, IO_BUFFER_SIZE);
 
-                InputStream tempIn;
+                // The object is only created once the whole stream has been copied
                 try {
-                    tempIn = tempFile.getInputStream();
+                    out.complete();
                 }
                 catch(IOException e) {
-                    throw new FileTransferException(FileTransferError.OPENING_SOURCE);
+                    throw new FileTransferException(FileTransferError.WRITING_DESTINATION);
                 }
-
-                putObject(tempIn, tempFile.getSize());
             }
             finally {
-                // Delete the temporary file, no matter what.
+                // Aborts the upload if it was not completed
                 try {
-                    tempFile.delete();
+                    out.close();
                 }
                 catch(IOException e) {
-                    // Do not re-throw the exception to prevent exceptions caught in the catch block from being replaced
+                    LOGGER.info("Failed to abort multipart upload", e);
                 }
             }
         }
@@ -391,6 +337,67 @@ public class S3Object extends S3File {
     // Inner classes //
     ///////////////////
 
+    /**
+     * Uploads this object on behalf of {@link S3MultipartOutputStream}.
+     */
+    private class MultipartUploadTarget implements S3MultipartOutputStream.UploadTarget<MultipartPart> {
+
+        private MultipartUpload upload;
+
+        @Override
+        public void putObject(byte[] data, int length) throws IOException {
+            S3Object.this.putObject(new ByteArrayInputStream(data, 0, length), length);
+        }
+
+        @Override
+        public void startUpload() throws IOException {
+            try {
+                upload = service.multipartStartUpload(bucketName, new org.jets3t.service.model.S3Object(getObjectKey(false)));
+            }
+            catch(S3ServiceException e) {
+                throw getIOException(e);
+            }
+        }
+
+        @Override
+        public MultipartPart uploadPart(int partNumber, byte[] data, int length) throws IOException {
+            org.jets3t.service.model.S3Object part = new org.jets3t.service.model.S3Object(getObjectKey(false));
+            part.setDataInputStream(new ByteArrayInputStream(data, 0, length));
+            part.setContentLength(length);
+
+            try {
+                return service.multipartUploadPart(upload, partNumber, part);
+            }
+            catch(S3ServiceException e) {
+                throw getIOException(e);
+            }
+        }
+
+        @Override
+        public void completeUpload(List<MultipartPart> parts) throws IOException {
+            try {
+                service.multipartCompleteUpload(upload, parts);
+            }
+            catch(S3ServiceException e) {
+                throw getIOException(e);
+            }
+
+            // Retrieve the attributes of the new object
+            atts.updateAttributes();
+            atts.updateExpirationDate();
+        }
+
+        @Override
+        public void abortUpload() throws IOException {
+            try {
+                service.multipartAbortUpload(upload);
+            }
+            catch(S3ServiceException e) {
+                throw getIOException(e);
+            }
+        }
+    }
+
     /**
      * Provides random read access to an S3 object by using GET Range requests with a start offset and no end.
      * The connection is closed and a new one opened when seeking is required.
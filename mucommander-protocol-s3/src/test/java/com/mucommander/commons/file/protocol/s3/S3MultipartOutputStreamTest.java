@@ -0,0 +1,308 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.protocol.s3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.io.BufferPool;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Runs tests on {@link S3MultipartOutputStream}, against an in-memory stand-in for an S3 service.
+ */
+public class S3MultipartOutputStreamTest {
+
+    private final static int PART_SIZE = 1024;
+
+    /**
+     * Stores uploaded objects in memory, as an S3 service would.
+     */
+    private static class InMemoryTarget implements S3MultipartOutputStream.UploadTarget<Integer> {
+        private final Map<Integer, byte[]> uploadedParts = new ConcurrentHashMap<>();
+        private final int failingPart;
+        private byte[] object;
+        private boolean started;
+        private boolean aborted;
+
+        private InMemoryTarget(int failingPart) {
+            this.failingPart = failingPart;
+        }
+
+        @Override
+        public void putObject(byte[] data, int length) {
+            object = Arrays.copyOf(data, length);
+        }
+
+        @Override
+        public void startUpload() {
+            started = true;
+        }
+
+        @Override
+        public Integer uploadPart(int partNumber, byte[] data, int length) throws IOException {
+            if(partNumber==failingPart)
+                throw new IOException("part "+partNumber);
+
+            uploadedParts.put(partNumber, Arrays.copyOf(data, length));
+            return partNumber;
+        }
+
+        @Override
+        public void completeUpload(List<Integer> parts) throws IOException {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            for(int i=0; i<parts.size(); i++) {
+                assertEquals((int)parts.get(i), i+1);
+                bout.write(uploadedParts.get(parts.get(i)));
+            }
+            object = bout.toByteArray();
+        }
+
+        @Override
+        public void abortUpload() {
+            aborted = true;
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testSinglePart() throws IOException {
+        InMemoryTarget target = new InMemoryTarget(-1);
+        byte[] data = randomBytes(PART_SIZE/2);
+
+        S3MultipartOutputStream<Integer> out = new S3MultipartOutputStream<>(target, PART_SIZE, 2);
+        out.write(data);
+        out.complete();
+        out.close();
+
+        assertFalse(target.started);
+        assertTrue(Arrays.equals(target.object, data));
+    }
+
+    @Test
+    public void testMultipleParts() throws IOException {
+        InMemoryTarget target = new InMemoryTarget(-1);
+        byte[] data = randomBytes(PART_SIZE*10+123);
+
+        S3MultipartOutputStream<Integer> out = new S3MultipartOutputStream<>(target, PART_SIZE, 3);
+        // Write in chunks that do not line up with parts
+        for(int off=0; off<data.length; off+=700)
+            out.write(data, off, Math.min(700, data.length-off));
+        out.write(42);
+        out.complete();
+
+        byte[] expected = Arrays.copyOf(data, data.length+1);
+        expected[data.length] = 42;
+        assertTrue(target.started);
+        assertFalse(target.aborted);
+        assertTrue(Arrays.equals(target.object, expected));
+    }
+
+    @Test
+    public void testFailedPartAbortsUpload() throws IOException {
+        InMemoryTarget target = new InMemoryTarget(2);
+        S3MultipartOutputStream<Integer> out = new S3MultipartOutputStream<>(target, PART_SIZE, 2);
+
+        try {
+            out.write(randomBytes(PART_SIZE*4));
+            out.complete();
+            fail();
+        }
+        catch(IOException e) {
+            // Expected
+        }
+
+        out.close();
+        assertTrue(target.aborted);
+        assertNull(target.object);
+    }
+
+    @Test
+    public void testAbort() throws IOException {
+        InMemoryTarget target = new InMemoryTarget(-1);
+        S3MultipartOutputStream<Integer> out = new S3MultipartOutputStream<>(target, PART_SIZE, 2);
+        out.write(randomBytes(PART_SIZE*2));
+        out.abort();
+        out.close();
+
+        assertTrue(target.aborted);
+        assertNull(target.object);
+    }
+
+    @Test
+    public void testCloseWithoutCompleting() throws IOException {
+        // Single part: nothing must be uploaded
+        InMemoryTarget target = new InMemoryTarget(-1);
+        S3MultipartOutputStream<Integer> out = new S3MultipartOutputStream<>(target, PART_SIZE, 2);
+        out.write(randomBytes(PART_SIZE/2));
+        out.close();
+
+        assertFalse(target.started);
+        assertNull(target.object);
+
+        // Multiple parts: the upload must be aborted rather than completed
+        target = new InMemoryTarget(-1);
+        out = new S3MultipartOutputStream<>(target, PART_SIZE, 2);
+        out.write(randomBytes(PART_SIZE*3+10));
+        out.close();
+
+        assertTrue(target.aborted);
+        assertNull(target.object);
+
+        // The stream is closed, completing it must fail
+        try {
+            out.complete();
+            fail();
+        }
+        catch(IOException e) {
+            // Expected
+        }
+        assertNull(target.object);
+    }
+
+    @Test
+    public void testCompleteOnClose() throws IOException {
+        // Single part
+        InMemoryTarget target = new InMemoryTarget(-1);
+        byte[] data = randomBytes(PART_SIZE/2);
+        S3MultipartOutputStream<Integer> out = new S3MultipartOutputStream<>(target, PART_SIZE, 2);
+        out.setCompleteOnClose(true);
+        out.write(data);
+        out.close();
+
+        assertFalse(target.started);
+        assertTrue(Arrays.equals(target.object, data));
+
+        // Multiple parts
+        target = new InMemoryTarget(-1);
+        data = randomBytes(PART_SIZE*5+10);
+        out = new S3MultipartOutputStream<>(target, PART_SIZE, 2);
+        out.setCompleteOnClose(true);
+        out.write(data);
+        out.close();
+        // Closing twice has no effect
+        out.close();
+
+        assertTrue(target.started);
+        assertFalse(target.aborted);
+        assertTrue(Arrays.equals(target.object, data));
+    }
+
+    @Test
+    public void testCompleteOnCloseFailedPart() throws IOException {
+        InMemoryTarget target = new InMemoryTarget(2);
+        S3MultipartOutputStream<Integer> out = new S3MultipartOutputStream<>(target, PART_SIZE, 4);
+        out.setCompleteOnClose(true);
+        out.write(randomBytes(PART_SIZE*3));
+
+        // The upload cannot be completed, it is aborted instead
+        try {
+            out.close();
+            fail();
+        }
+        catch(IOException e) {
+            // Expected
+        }
+
+        assertTrue(target.aborted);
+        assertNull(target.object);
+    }
+
+    @Test
+    public void testCompleteOnCloseFailedWrite() throws IOException, InterruptedException {
+        InMemoryTarget target = new InMemoryTarget(1);
+        S3MultipartOutputStream<Integer> out = new S3MultipartOutputStream<>(target, PART_SIZE, 2);
+        out.setCompleteOnClose(true);
+        out.write(randomBytes(PART_SIZE));
+
+        // Keep writing until the failure of the first part is reported
+        long deadline = System.currentTimeMillis()+10000;
+        try {
+            while(System.currentTimeMillis()<deadline) {
+                out.write(42);
+                Thread.sleep(1);
+            }
+            fail();
+        }
+        catch(IOException e) {
+            // Expected
+        }
+
+        // The caller closes the stream after the failed write: the upload is aborted rather than completed
+        out.close();
+        assertTrue(target.aborted);
+        assertNull(target.object);
+    }
+
+    @Test
+    public void testAbortReleasesPendingParts() throws Exception {
+        // Parts of a size that no other test uses, so that the pooled ones can be counted
+        int partSize = PART_SIZE+7;
+        BufferPool.BufferFactory factory = new BufferPool.ByteArrayFactory();
+        InMemoryTarget target = new InMemoryTarget(-1);
+
+        // Keep the only upload thread busy so that the parts are still queued when the upload is aborted
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch proceed = new CountDownLatch(1);
+        executor.submit(() -> {
+            proceed.await();
+            return null;
+        });
+
+        try {
+            int pooledBuffers = BufferPool.getBufferCount(factory);
+
+            S3MultipartOutputStream<Integer> out = new S3MultipartOutputStream<>(target, partSize, 3, executor);
+            out.write(randomBytes(partSize*2));
+            out.close();
+
+            // The two queued parts and the part being filled are back in the pool
+            assertEquals(BufferPool.getBufferCount(factory), pooledBuffers+3);
+        }
+        finally {
+            proceed.countDown();
+            executor.shutdown();
+        }
+
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(target.aborted);
+        assertTrue(target.uploadedParts.isEmpty());
+        assertNull(target.object);
+    }
+}
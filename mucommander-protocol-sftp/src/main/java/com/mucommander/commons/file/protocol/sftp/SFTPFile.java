@@ -23,9 +23,11 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -398,12 +400,9 @@ public class SFTPFile extends ProtocolFile {
             return new AbstractFile[] {};
 
         AbstractFile children[] = new AbstractFile[nbFiles];
-        FileURL childURL;
         String filename;
         int fileCount = 0;
-        String parentPath = fileURL.getPath();
-        if(!parentPath .endsWith(SEPARATOR))
-            parentPath  += SEPARATOR;
+        String parentPath = getChildrenParentPath();
 
         // Fill AbstractFile array and discard '.' and '..' files
         for (LsEntry file : files) {
@@ -412,10 +411,7 @@ public class SFTPFile extends ProtocolFile {
             if (filename.equals(".") || filename.equals(".."))
                 continue;
 
-            childURL = (FileURL) fileURL.clone();
-            childURL.setPath(parentPath + filename);
-
-            children[fileCount++] = FileFactory.getFile(childURL, this, Collections.singletonMap("attributes", new SFTPFileAttributes(childURL, file.getAttrs())));
+            children[fileCount++] = createChild(parentPath, file);
         }
 
         // Create new array of the exact file count
@@ -428,6 +424,62 @@ public class SFTPFile extends ProtocolFile {
         return children;
     }
 
+    /**
+     * Overridden to pass the children to the consumer as the server sends their entries, instead of waiting for the
+     * whole directory to be listed. Like {@link #ls()}, errors are logged and end the listing.
+     */
+    @Override
+    public void lsBatches(Consumer<AbstractFile[]> batchConsumer) throws IOException {
+        String parentPath = getChildrenParentPath();
+        List<AbstractFile> batch = new ArrayList<AbstractFile>(LS_BATCH_SIZE);
+        try (SFTPConnectionHandler connHandler = (SFTPConnectionHandler)ConnectionPool.getConnectionHandler(connHandlerFactory, fileURL, true)) {
+            // Makes sure the connection is started, if not starts it
+            connHandler.checkConnection();
+
+            connHandler.channelSftp.ls(absPath, entry -> {
+                String filename = entry.getFilename();
+                // Discard '.' and '..' files, dunno why these are returned
+                if (!filename.equals(".") && !filename.equals("..")) {
+                    try {
+                        batch.add(createChild(parentPath, entry));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (batch.size() == LS_BATCH_SIZE) {
+                        batchConsumer.accept(batch.toArray(new AbstractFile[0]));
+                        batch.clear();
+                    }
+                }
+                return ChannelSftp.LsEntrySelector.CONTINUE;
+            });
+        } catch (Exception e) {
+            LOGGER.error("failed to ls {}", getURL());
+        }
+
+        if (!batch.isEmpty())
+            batchConsumer.accept(batch.toArray(new AbstractFile[0]));
+    }
+
+    /**
+     * Returns the path of this file with a trailing separator, to which children filenames are appended.
+     */
+    private String getChildrenParentPath() {
+        String parentPath = fileURL.getPath();
+        if(!parentPath.endsWith(SEPARATOR))
+            parentPath += SEPARATOR;
+        return parentPath;
+    }
+
+    /**
+     * Creates the child of this file that corresponds to the given directory entry.
+     */
+    private AbstractFile createChild(String parentPath, LsEntry file) throws IOException {
+        FileURL childURL = (FileURL) fileURL.clone();
+        childURL.setPath(parentPath + file.getFilename());
+
+        return FileFactory.getFile(childURL, this, Collections.singletonMap("attributes", new SFTPFileAttributes(childURL, file.getAttrs())));
+    }
+
 
     @Override
     public void mkdir() throws IOException {
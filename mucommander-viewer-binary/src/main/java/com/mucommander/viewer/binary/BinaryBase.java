@@ -82,6 +82,8 @@ class BinaryBase {
     protected final BinarySearchService binarySearchService;
     protected final BinarySearchService.SearchStatusListener searchStatusListener;
     protected SearchParameters lastSearchParameters;
+    /** Progress of the running search in percent, -1 if no search is running */
+    private volatile int searchProgress = -1;
 
     protected JMenu editMenu;
     protected JMenu viewMenu;
@@ -111,6 +113,7 @@ class BinaryBase {
         searchStatusListener = new BinarySearchService.SearchStatusListener() {
             @Override
             public void setStatus(BinarySearchService.FoundMatches foundMatches) {
+                searchProgress = -1;
                 updateFindStatus();
 
                 if (foundMatches.getMatchesCount() == 0) {
@@ -120,8 +123,29 @@ class BinaryBase {
 
             @Override
             public void clearStatus() {
+                searchProgress = 0;
                 updateFindStatus();
             }
+
+            @Override
+            public void setProgress(long searchedBytes, long totalBytes) {
+                int percent = (int) (searchedBytes * 100 / Math.max(totalBytes, 1));
+                if (searchProgress >= 0 && percent != searchProgress) {
+                    searchProgress = percent;
+                    SwingUtilities.invokeLater(() -> {
+                        // The search may be done by now
+                        if (searchProgress >= 0) {
+                            binaryComponent.setStatusText("Searching: " + percent + "%");
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public boolean isCancelled() {
+                // Stops searching once the viewer is closed
+                return !binaryComponent.isDisplayable();
+            }
         };
         initMenuBars();
     }
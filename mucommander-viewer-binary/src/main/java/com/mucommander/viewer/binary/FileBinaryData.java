@@ -16,9 +16,19 @@
  */
 package com.mucommander.viewer.binary;
 
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,32 +39,66 @@ import org.exbin.auxiliary.binary_data.BinaryData;
 import org.exbin.auxiliary.binary_data.paged.PagedData;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.io.RandomAccess;
 import com.mucommander.commons.io.StreamUtils;
+import com.mucommander.commons.runtime.OsFamily;
 
 /**
  * Class for direct binary access to abstract file.
+ *
+ * <p>Local files are mapped in memory, by regions of {@link #MAPPED_REGION_SIZE} bytes that are mapped when first
+ * accessed. Other files are read by pages of {@link #PAGE_SIZE} bytes, and the most recently used pages are cached.
+ * Pages are read from a random access stream if the file supports it, and several pages are read at once when
+ * the file is read sequentially.</p>
+ *
+ * <p>Mapped regions are only released once garbage collected. As a mapped file cannot be modified or deleted on
+ * Windows, files are not mapped there. If a mapped file grows, it is read through a page cache from then on. Its size
+ * is read again when a read falls past its last known size or faults because it was truncated.</p>
  */
 @ParametersAreNonnullByDefault
 public class FileBinaryData implements BinaryData {
 
     public static final String BROKEN_ABSTRACT_FILE = "Broken abstract file";
     public static final int PAGE_SIZE = 4096;
+    /** Default maximum number of cached pages, for files that are not mapped in memory */
+    public static final int DEFAULT_MAX_CACHED_PAGES = 1024;
+    /** Maximum number of pages read at once, when the file is read sequentially */
+    public static final int MAX_READ_AHEAD_PAGES = 64;
+    /** Size of the regions in which local files are mapped in memory */
+    public static final int MAPPED_REGION_SIZE = 64 * 1024 * 1024;
 
     private final AbstractFile file;
+    private final int maxCachedPages;
 
-    private InputStream cacheInputStream = null;
-    private long cachePosition = 0;
-    private final DataPage[] cachePages = new DataPage[] { new DataPage(), new DataPage() };
-    private int nextCachePage = 0;
+    /** Provides the data, replaced by a page cache if mapping the file fails */
+    private volatile DataSource source;
 
     public FileBinaryData(AbstractFile file) {
+        this(file, DEFAULT_MAX_CACHED_PAGES);
+    }
+
+    /**
+     * Creates binary data that reads the given file.
+     *
+     * @param file the file to read
+     * @param maxCachedPages maximum number of pages kept in memory, if the file is not mapped in memory
+     */
+    public FileBinaryData(AbstractFile file, int maxCachedPages) {
         this.file = file;
+        this.maxCachedPages = Math.max(2, maxCachedPages);
+
+        Object underlyingFile = file.getUnderlyingFileObject();
+        if (underlyingFile instanceof File && !OsFamily.WINDOWS.isCurrent()) {
+            source = new MappedSource(((File) underlyingFile).toPath());
+        } else {
+            source = new PageCacheSource();
+        }
     }
 
     @Override
     public boolean isEmpty() {
-        return file.getSize() > 0;
+        return file.getSize() <= 0;
     }
 
     @Override
@@ -63,81 +107,50 @@ public class FileBinaryData implements BinaryData {
     }
 
     @Override
-    public synchronized byte getByte(long position) {
-        long pageIndex = position / PAGE_SIZE;
-        int pageOffset = (int) (position % PAGE_SIZE);
-
-        if (cachePages[0].pageIndex == pageIndex) {
-            return cachePages[0].page[pageOffset];
-        }
-        if (cachePages[1].pageIndex == pageIndex) {
-            return cachePages[1].page[pageOffset];
+    public byte getByte(long position) {
+        while (true) {
+            DataSource source = this.source;
+            try {
+                return source.getByte(position);
+            } catch (IOException e) {
+                handleFailure(source, e);
+            }
         }
-        int usedPage = loadPage(pageIndex);
-        return cachePages[usedPage].page[pageOffset];
     }
 
     @Nonnull
     @Override
     public BinaryData copy() {
-        return new FileBinaryData(file);
+        return new FileBinaryData(file, maxCachedPages);
     }
 
     @Nonnull
     @Override
-    public synchronized BinaryData copy(long startFrom, long length) {
-        long pageIndex = startFrom / PAGE_SIZE;
-        int pageOffset = (int) (startFrom % PAGE_SIZE);
-
+    public BinaryData copy(long startFrom, long length) {
         PagedData data = new PagedData();
+        byte[] buffer = new byte[(int) Math.min(length, PAGE_SIZE)];
         long dataPosition = 0;
         while (length > 0) {
-            int pageLength = length > PAGE_SIZE - pageOffset ? PAGE_SIZE - pageOffset : (int) length;
-            copyTo(data, dataPosition, pageIndex, pageOffset, pageLength);
-            pageIndex++;
-            pageOffset = 0;
-            dataPosition += pageLength;
-            length -= pageLength;
+            int chunkLength = (int) Math.min(length, buffer.length);
+            copyToArray(startFrom + dataPosition, buffer, 0, chunkLength);
+            data.insert(dataPosition, buffer, 0, chunkLength);
+            dataPosition += chunkLength;
+            length -= chunkLength;
         }
 
         return data;
     }
 
-    private void copyTo(PagedData data, long dataPosition, long pageIndex, int pageOffset, int pageLength) {
-        if (cachePages[0].pageIndex == pageIndex) {
-            data.insert(dataPosition, cachePages[0].page, pageOffset, pageLength);
-        } else if (cachePages[1].pageIndex == pageIndex) {
-            data.insert(dataPosition, cachePages[1].page, pageOffset, pageLength);
-        } else {
-            int usedPage = loadPage(pageIndex);
-            data.insert(dataPosition, cachePages[usedPage].page, pageOffset, pageLength);
-        }
-    }
-
     @Override
-    public synchronized void copyToArray(long startFrom, byte[] target, int offset, int length) {
-        long pageIndex = startFrom / PAGE_SIZE;
-        int pageOffset = (int) (startFrom % PAGE_SIZE);
-
-        int dataPosition = offset;
-        while (length > 0) {
-            int pageLength = Math.min(length, PAGE_SIZE - pageOffset);
-            copyTo(target, dataPosition, pageIndex, pageOffset, pageLength);
-            pageIndex++;
-            pageOffset = 0;
-            dataPosition += pageLength;
-            length -= pageLength;
-        }
-    }
-
-    private void copyTo(byte[] data, int dataPosition, long pageIndex, int pageOffset, int pageLength) {
-        if (cachePages[0].pageIndex == pageIndex) {
-            System.arraycopy(cachePages[0].page, pageOffset, data, dataPosition, pageLength);
-        } else if (cachePages[1].pageIndex == pageIndex) {
-            System.arraycopy(cachePages[1].page, pageOffset, data, dataPosition, pageLength);
-        } else {
-            int usedPage = loadPage(pageIndex);
-            System.arraycopy(cachePages[usedPage].page, pageOffset, data, dataPosition, pageLength);
+    public void copyToArray(long startFrom, byte[] target, int offset, int length) {
+        while (true) {
+            DataSource source = this.source;
+            try {
+                source.copyToArray(startFrom, target, offset, length);
+                return;
+            } catch (IOException e) {
+                handleFailure(source, e);
+            }
         }
     }
 
@@ -163,80 +176,339 @@ public class FileBinaryData implements BinaryData {
         resetCache();
     }
 
+    /**
+     * Releases the pages, mapped regions and stream used to read the file. They are recreated when the file is
+     * accessed again.
+     */
     public void resetCache() {
-        if (cacheInputStream != null) {
-            try {
-                cacheInputStream.close();
-            } catch (IOException ex) {
-                Logger.getLogger(FileBinaryData.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            cacheInputStream = null;
+        source.reset();
+    }
+
+    public void close() {
+        resetCache();
+    }
+
+    /**
+     * Called when the given source failed to read the file: if the file could not be mapped in memory or changed
+     * since it was mapped, it is read through a page cache from now on, otherwise the file is broken or the position
+     * is out of the file.
+     */
+    private synchronized void handleFailure(DataSource failedSource, IOException e) {
+        if (!(failedSource instanceof MappedSource) || e instanceof EOFException) {
+            throw new IllegalStateException(BROKEN_ABSTRACT_FILE, e);
         }
 
-        cachePages[0].pageIndex = -1;
-        cachePages[1].pageIndex = -1;
+        if (source == failedSource) {
+            Logger.getLogger(FileBinaryData.class.getName()).log(Level.FINE, "Failed to read mapped file, using a page cache", e);
+            failedSource.reset();
+            source = new PageCacheSource();
+        }
     }
 
-    public synchronized void close() {
-        resetCache();
+    /**
+     * Reads the data of the file.
+     */
+    private interface DataSource {
+
+        byte getByte(long position) throws IOException;
+
+        void copyToArray(long startFrom, byte[] target, int offset, int length) throws IOException;
+
+        void reset();
     }
 
-    @Nonnull
-    private InputStream getInputStream(long position) throws IOException {
-        if (cacheInputStream != null && position == cachePosition) {
-            return cacheInputStream;
-        } else if (cacheInputStream != null && cacheInputStream instanceof RandomAccess) {
-            ((RandomAccess) cacheInputStream).seek(position);
-            cachePosition = position;
-        } else if (cacheInputStream != null && position > cachePosition) {
-            StreamUtils.skipFully(cacheInputStream, position - cachePosition);
-            cachePosition = position;
-        } else {
-            if (cacheInputStream != null) {
-                cacheInputStream.close();
+    /**
+     * Reads a local file mapped in memory. Regions are mapped when first accessed and remain mapped until
+     * {@link #reset()} is called, reads do not lock. Reads fail with an I/O error other than {@link EOFException}
+     * if the file grew since it was mapped, or was truncated while being read. The size of the file is cached, so a
+     * read of data that was truncated before the size is read again faults: in compiled code, the resulting
+     * {@link InternalError} may be raised later on rather than by the read.
+     */
+    private static class MappedSource implements DataSource {
+        private final Path path;
+        /** Mapped regions of the file, null until the file is opened */
+        private volatile AtomicReferenceArray<ByteBuffer> regions;
+        /** Last known size of the file, -1 until it is read */
+        private volatile long size = -1;
+
+        private MappedSource(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public byte getByte(long position) throws IOException {
+            checkSize(position, 1);
+            ByteBuffer region = getRegion(position);
+            int regionOffset = (int) (position % MAPPED_REGION_SIZE);
+            if (regionOffset >= region.limit()) {
+                throw readPastEnd(position);
             }
-            cacheInputStream = file.getInputStream();
-            if (cacheInputStream instanceof RandomAccess) {
-                ((RandomAccess) cacheInputStream).seek(position);
-            } else {
-                StreamUtils.skipFully(cacheInputStream, position);
+            try {
+                return region.get(regionOffset);
+            } catch (InternalError e) {
+                throw truncated(position, e);
+            }
+        }
+
+        @Override
+        public void copyToArray(long startFrom, byte[] target, int offset, int length) throws IOException {
+            checkSize(startFrom, length);
+            while (length > 0) {
+                int regionOffset = (int) (startFrom % MAPPED_REGION_SIZE);
+                // Read from a duplicate so that concurrent reads do not change each other's position
+                ByteBuffer region = getRegion(startFrom).duplicate();
+                int regionLength = Math.min(length, region.limit() - regionOffset);
+                if (regionLength <= 0) {
+                    throw readPastEnd(startFrom);
+                }
+                region.position(regionOffset);
+                try {
+                    region.get(target, offset, regionLength);
+                } catch (InternalError e) {
+                    throw truncated(startFrom, e);
+                }
+                startFrom += regionLength;
+                offset += regionLength;
+                length -= regionLength;
+            }
+        }
+
+        /**
+         * Checks that the given bytes are in the file. The size of the file is only read again when the bytes are past
+         * its last known size.
+         */
+        private void checkSize(long position, int length) throws IOException {
+            if (position < 0) {
+                throw new EOFException();
+            }
+            if (position + length > size && position + length > (size = Files.size(path))) {
+                throw new EOFException();
             }
-            cachePosition = position;
         }
 
-        return cacheInputStream;
+        private ByteBuffer getRegion(long position) throws IOException {
+            AtomicReferenceArray<ByteBuffer> regions = this.regions;
+            long index = position / MAPPED_REGION_SIZE;
+            ByteBuffer region;
+            if (regions == null || index >= regions.length() || (region = regions.get((int) index)) == null) {
+                region = mapRegion(index);
+            }
+            return region;
+        }
+
+        private synchronized ByteBuffer mapRegion(long index) throws IOException {
+            // Mapped regions remain valid after the channel is closed
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (regions == null) {
+                    long nbRegions = (channel.size() + MAPPED_REGION_SIZE - 1) / MAPPED_REGION_SIZE;
+                    regions = new AtomicReferenceArray<>((int) nbRegions);
+                }
+                if (index < 0 || index >= regions.length()) {
+                    throw readPastEnd(index * MAPPED_REGION_SIZE);
+                }
+
+                ByteBuffer region = regions.get((int) index);
+                if (region == null) {
+                    long start = index * MAPPED_REGION_SIZE;
+                    long size = Math.min(MAPPED_REGION_SIZE, channel.size() - start);
+                    if (size <= 0) {
+                        throw readPastEnd(start);
+                    }
+                    region = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+                    regions.set((int) index, region);
+                }
+                return region;
+            }
+        }
+
+        /**
+         * Returns the error for a read at the given position, after the end of the mapped data: the file may have
+         * grown since it was mapped.
+         */
+        private IOException readPastEnd(long position) throws IOException {
+            if (position >= 0 && Files.size(path) > position) {
+                return new IOException("File grew since it was mapped: " + path);
+            }
+            return new EOFException();
+        }
+
+        /**
+         * Returns the error for a read at the given position that faulted as the file was truncated after its size was
+         * checked, and reads the size of the file again.
+         */
+        private IOException truncated(long position, InternalError e) throws IOException {
+            if ((size = Files.size(path)) <= position) {
+                return new EOFException();
+            }
+            return new IOException("File was truncated since it was mapped: " + path, e);
+        }
+
+        @Override
+        public void reset() {
+            // Mappings are released once the regions are garbage collected
+            regions = null;
+            size = -1;
+        }
     }
 
-    private int loadPage(long pageIndex) {
-        int usedPage = nextCachePage;
-        long position = pageIndex * PAGE_SIZE;
-        long dataSize = getDataSize();
-        try {
-            InputStream inputStream = getInputStream(position);
-
-            int done = 0;
-            int remains = position + PAGE_SIZE > dataSize ? (int) (dataSize - position) : PAGE_SIZE;
-            while (remains > 0) {
-                int copied = inputStream.read(cachePages[usedPage].page, done, remains);
-                if (copied < 0) {
-                    throw new IllegalStateException(BROKEN_ABSTRACT_FILE);
+    /**
+     * Reads pages of the file from a stream, and caches the most recently used pages.
+     */
+    private class PageCacheSource implements DataSource {
+        private final boolean randomAccess = file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE);
+        private final int maxReadAheadPages = Math.max(1, Math.min(MAX_READ_AHEAD_PAGES, maxCachedPages / 2));
+        private final Map<Long, DataPage> pages = new LinkedHashMap<Long, DataPage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, DataPage> eldest) {
+                return size() > maxCachedPages;
+            }
+        };
+        /** Last accessed page, which can be read without locking as pages are immutable */
+        private volatile DataPage lastPage;
+
+        private InputStream inputStream;
+        private long streamPosition;
+        /** Index of the page that follows the last loaded pages, to detect sequential reads */
+        private long nextPageIndex = -1;
+        /** Number of pages to read at the next sequential read */
+        private int readAheadPages = 1;
+
+        @Override
+        public byte getByte(long position) throws IOException {
+            DataPage page = getPage(position / PAGE_SIZE);
+            int pageOffset = (int) (position % PAGE_SIZE);
+            if (pageOffset >= page.length) {
+                throw new EOFException();
+            }
+            return page.page[pageOffset];
+        }
+
+        @Override
+        public void copyToArray(long startFrom, byte[] target, int offset, int length) throws IOException {
+            long pageIndex = startFrom / PAGE_SIZE;
+            int pageOffset = (int) (startFrom % PAGE_SIZE);
+            while (length > 0) {
+                DataPage page = getPage(pageIndex);
+                int pageLength = Math.min(length, page.length - pageOffset);
+                if (pageLength <= 0) {
+                    throw new EOFException();
                 }
-                cachePosition += copied;
-                remains -= copied;
-                done += copied;
+                System.arraycopy(page.page, pageOffset, target, offset, pageLength);
+                pageIndex++;
+                pageOffset = 0;
+                offset += pageLength;
+                length -= pageLength;
             }
+        }
 
-            cachePages[usedPage].pageIndex = pageIndex;
-            nextCachePage = 1 - nextCachePage;
-        } catch (IOException e) {
-            throw new IllegalStateException(BROKEN_ABSTRACT_FILE, e);
+        private DataPage getPage(long pageIndex) throws IOException {
+            DataPage page = lastPage;
+            if (page != null && page.pageIndex == pageIndex) {
+                return page;
+            }
+
+            synchronized (this) {
+                page = pages.get(pageIndex);
+                if (page == null) {
+                    page = loadPages(pageIndex);
+                }
+                lastPage = page;
+                return page;
+            }
+        }
+
+        /**
+         * Loads the given page, and the next ones if the file is read sequentially.
+         */
+        private DataPage loadPages(long pageIndex) throws IOException {
+            long dataSize = getDataSize();
+            long position = pageIndex * PAGE_SIZE;
+            if (position < 0 || position >= dataSize) {
+                throw new EOFException();
+            }
+
+            // Read more pages at once as long as pages are read sequentially
+            readAheadPages = pageIndex == nextPageIndex ? Math.min(readAheadPages * 2, maxReadAheadPages) : 1;
+            long nbPages = Math.min(readAheadPages, (dataSize - position + PAGE_SIZE - 1) / PAGE_SIZE);
+
+            DataPage firstPage = null;
+            long index = pageIndex;
+            try {
+                InputStream inputStream = getInputStream(position);
+                while (index < pageIndex + nbPages && (firstPage == null || !pages.containsKey(index))) {
+                    DataPage page = new DataPage(index, (int) Math.min(PAGE_SIZE, dataSize - index * PAGE_SIZE));
+                    StreamUtils.readFully(inputStream, page.page, 0, page.length);
+                    streamPosition += page.length;
+                    pages.put(index, page);
+                    if (firstPage == null) {
+                        firstPage = page;
+                    }
+                    index++;
+                }
+            } catch (IOException e) {
+                // The position of the stream is unknown
+                closeInputStream();
+                if (firstPage == null) {
+                    throw e;
+                }
+            }
+            nextPageIndex = index;
+
+            return firstPage;
         }
 
-        return usedPage;
+        @Nonnull
+        private InputStream getInputStream(long position) throws IOException {
+            if (inputStream != null && position == streamPosition) {
+                return inputStream;
+            } else if (inputStream instanceof RandomAccess) {
+                ((RandomAccess) inputStream).seek(position);
+            } else if (inputStream != null && position > streamPosition) {
+                StreamUtils.skipFully(inputStream, position - streamPosition);
+            } else {
+                closeInputStream();
+                inputStream = randomAccess ? file.getRandomAccessInputStream() : file.getInputStream();
+                if (inputStream instanceof RandomAccess) {
+                    ((RandomAccess) inputStream).seek(position);
+                } else {
+                    StreamUtils.skipFully(inputStream, position);
+                }
+            }
+            streamPosition = position;
+
+            return inputStream;
+        }
+
+        private void closeInputStream() {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ex) {
+                    Logger.getLogger(FileBinaryData.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                inputStream = null;
+            }
+        }
+
+        @Override
+        public synchronized void reset() {
+            closeInputStream();
+            pages.clear();
+            lastPage = null;
+            nextPageIndex = -1;
+            readAheadPages = 1;
+        }
     }
 
     private static class DataPage {
-        long pageIndex = -1;
-        byte[] page = new byte[PAGE_SIZE];
+        final long pageIndex;
+        /** Number of bytes of the page, less than the page size for the last page of the file */
+        final int length;
+        final byte[] page = new byte[PAGE_SIZE];
+
+        DataPage(long pageIndex, int length) {
+            this.pageIndex = pageIndex;
+            this.length = length;
+        }
     }
 }
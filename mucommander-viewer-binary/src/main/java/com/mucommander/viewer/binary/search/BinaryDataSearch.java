@@ -0,0 +1,357 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.viewer.binary.search;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.exbin.auxiliary.binary_data.BinaryData;
+
+/**
+ * Searches binary data for a byte pattern using the Boyer-Moore-Horspool algorithm.
+ *
+ * <p>Data is read in large blocks through {@link BinaryData#copyToArray(long, byte[], int, int)} rather than byte by
+ * byte. When an executor is given, large data is split into segments that are searched concurrently; consecutive
+ * segments overlap by the length of the pattern minus one byte, so that matches that span two segments are found.</p>
+ *
+ * <p>Bytes can be compared through a folding table, e.g. to ignore the case of the characters of a single-byte
+ * charset: a byte <code>b</code> of the data matches a byte <code>p</code> of the pattern if
+ * <code>folding[b] == folding[p]</code>.</p>
+ */
+@ParametersAreNonnullByDefault
+class BinaryDataSearch {
+
+    /** Size of the blocks data is read by */
+    static final int BLOCK_SIZE = 1 << 20;
+    /** Minimum size of the segments searched concurrently */
+    static final long MIN_SEGMENT_SIZE = 16L << 20;
+
+    private final byte[] pattern;
+    private final byte[] folding;
+    /** Boyer-Moore-Horspool shift for each value of the (folded) last byte of the window */
+    private final int[] shifts = new int[256];
+
+    /**
+     * Creates a search for the given pattern.
+     *
+     * @param pattern the bytes to search for, not empty
+     * @param folding table that maps each byte value to the value it is compared with, null to compare bytes as-is
+     */
+    BinaryDataSearch(byte[] pattern, @Nullable byte[] folding) {
+        if (pattern.length == 0) {
+            throw new IllegalArgumentException("Empty search pattern");
+        }
+        if (folding == null) {
+            folding = getIdentityFolding();
+        }
+        this.folding = folding;
+        this.pattern = new byte[pattern.length];
+        for (int i = 0; i < pattern.length; i++) {
+            this.pattern[i] = folding[pattern[i] & 0xff];
+        }
+
+        int lastIndex = pattern.length - 1;
+        for (int i = 0; i < 256; i++) {
+            shifts[i] = pattern.length;
+        }
+        for (int i = 0; i < lastIndex; i++) {
+            shifts[this.pattern[i] & 0xff] = lastIndex - i;
+        }
+    }
+
+    /**
+     * Returns a search for the bytes of the given text in the given charset, or null if the text cannot be searched
+     * byte by byte in this charset and must be searched character by character.
+     *
+     * @param text the text to search for, in lower case if the case is ignored
+     * @param charset the charset of the data
+     * @param matchCase whether the case of characters matters
+     */
+    @Nullable
+    static BinaryDataSearch forText(String text, Charset charset, boolean matchCase) {
+        if (!charset.canEncode() || !charset.newEncoder().canEncode(text)) {
+            return null;
+        }
+        // Charsets that encode a byte order mark or shift sequences do not encode a text as the sum of its characters
+        if ("aa".getBytes(charset).length != 2 * "a".getBytes(charset).length) {
+            return null;
+        }
+
+        byte[] pattern = text.getBytes(charset);
+        if (matchCase) {
+            return new BinaryDataSearch(pattern, null);
+        }
+
+        byte[] folding = getIdentityFolding();
+        if (charset.newEncoder().maxBytesPerChar() == 1) {
+            // Each byte is a character: fold the bytes of the characters that have a lower case
+            for (int i = 0; i < 256; i++) {
+                String character = new String(new byte[] { (byte) i }, charset);
+                if (character.length() != 1 || character.charAt(0) == '\uFFFD') {
+                    continue;
+                }
+                byte[] lowerCase = character.toLowerCase().getBytes(charset);
+                if (lowerCase.length == 1 && new String(lowerCase, charset).equals(character.toLowerCase())) {
+                    folding[i] = lowerCase[0];
+                }
+            }
+        } else if (charset.equals(StandardCharsets.UTF_8) && text.chars().allMatch(c -> c < 0x80)) {
+            // ASCII bytes are always ASCII characters in UTF-8, and other characters cannot match the text
+            for (int i = 'A'; i <= 'Z'; i++) {
+                folding[i] = (byte) Character.toLowerCase(i);
+            }
+        } else {
+            return null;
+        }
+        return new BinaryDataSearch(pattern, folding);
+    }
+
+    private static byte[] getIdentityFolding() {
+        byte[] folding = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            folding[i] = (byte) i;
+        }
+        return folding;
+    }
+
+    int getPatternLength() {
+        return pattern.length;
+    }
+
+    /**
+     * Returns the positions of the first matches found from the given position, in the given direction: matches that
+     * start at or after the position in ascending order when searching forward, matches that start at or before it
+     * in descending order when searching backward.
+     *
+     * @param data the data to search
+     * @param position the position to search from
+     * @param backward whether to search backward
+     * @param maxMatches the maximum number of matches to return
+     * @param executor the executor in which segments are searched, null to search in the current thread only
+     * @param parallelism the number of threads of the executor
+     * @param listener notified of the progress, and asked whether the search is cancelled
+     * @return the positions of the matches
+     * @throws CancellationException if the search was cancelled
+     */
+    List<Long> search(BinaryData data, long position, boolean backward, int maxMatches,
+            @Nullable ExecutorService executor, int parallelism, BinarySearchService.SearchStatusListener listener) {
+        long lastStart = data.getDataSize() - pattern.length;
+        long from = backward ? 0 : Math.max(position, 0);
+        long to = backward ? Math.min(position, lastStart) : lastStart;
+        if (from > to || maxMatches <= 0) {
+            return Collections.emptyList();
+        }
+
+        // Split the range of the start positions of matches into segments
+        long range = to - from + 1;
+        int nbSegments = 1;
+        if (executor != null && parallelism > 1 && range >= 2 * MIN_SEGMENT_SIZE) {
+            nbSegments = (int) Math.min(parallelism * 4L, range / MIN_SEGMENT_SIZE);
+        }
+        long segmentSize = (range + nbSegments - 1) / nbSegments;
+        List<Segment> segments = new ArrayList<>(nbSegments);
+        for (long start = from; start <= to; start += segmentSize) {
+            segments.add(new Segment(start, Math.min(start + segmentSize - 1, to)));
+        }
+        if (backward) {
+            // Segments that are closer to the start position are searched first
+            Collections.reverse(segments);
+        }
+
+        SearchState state = new SearchState(backward, maxMatches, from, to, range, listener);
+        if (segments.size() == 1) {
+            segments.get(0).search(data, state);
+        } else {
+            List<Future<?>> futures = new ArrayList<>(segments.size());
+            for (Segment segment : segments) {
+                futures.add(executor.submit(() -> segment.search(data, state)));
+            }
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                state.cancelled = true;
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            } catch (ExecutionException e) {
+                state.cancelled = true;
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        // Segments are in search order, and so are the matches of each segment
+        List<Long> matches = new ArrayList<>();
+        for (Segment segment : segments) {
+            for (long match : segment.matches) {
+                if (matches.size() == maxMatches) {
+                    return matches;
+                }
+                matches.add(match);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * State shared by the segments of a search.
+     */
+    private static class SearchState {
+        private final boolean backward;
+        private final int maxMatches;
+        private final long totalBytes;
+        private final BinarySearchService.SearchStatusListener listener;
+        private final AtomicLong searchedBytes = new AtomicLong();
+        /**
+         * Bound beyond which matches are not needed anymore, because enough matches were found by one segment before
+         * it in search order: the highest start position when searching forward, the lowest one backward.
+         */
+        private final AtomicLong bound;
+        private volatile boolean cancelled;
+
+        private SearchState(boolean backward, int maxMatches, long from, long to, long totalBytes,
+                BinarySearchService.SearchStatusListener listener) {
+            this.backward = backward;
+            this.maxMatches = maxMatches;
+            this.totalBytes = totalBytes;
+            this.listener = listener;
+            bound = new AtomicLong(backward ? from : to);
+        }
+
+        private void checkCancelled() {
+            if (cancelled || listener.isCancelled() || Thread.currentThread().isInterrupted()) {
+                cancelled = true;
+                throw new CancellationException();
+            }
+        }
+
+        private void segmentFull(long lastMatch) {
+            if (backward) {
+                bound.accumulateAndGet(lastMatch, Math::max);
+            } else {
+                bound.accumulateAndGet(lastMatch, Math::min);
+            }
+        }
+
+        private void searched(long bytes) {
+            listener.setProgress(searchedBytes.addAndGet(bytes), totalBytes);
+        }
+    }
+
+    /**
+     * A range of start positions of matches, searched by a single thread.
+     */
+    private class Segment {
+        private final long start;
+        private final long end;
+        /** Matches found in the segment, in search order */
+        private final ArrayDeque<Long> matches = new ArrayDeque<>();
+
+        private Segment(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        private void search(BinaryData data, SearchState state) {
+            int patternLength = pattern.length;
+            byte[] buffer = new byte[(int) Math.min(BLOCK_SIZE, end - start + 1) + patternLength - 1];
+            long position = start;
+            while (position <= end) {
+                state.checkCancelled();
+
+                // Skip the positions whose matches cannot be among the first ones anymore
+                long bound = state.bound.get();
+                if (state.backward) {
+                    position = Math.max(position, bound);
+                } else if (position > bound) {
+                    break;
+                }
+                if (position > end) {
+                    break;
+                }
+
+                int length = (int) Math.min(buffer.length, end + patternLength - position);
+                data.copyToArray(position, buffer, 0, length);
+                if (scan(buffer, length, position, state)) {
+                    break;
+                }
+                int windows = length - patternLength + 1;
+                position += windows;
+                state.searched(windows);
+            }
+        }
+
+        /**
+         * Scans the given block, whose first byte is at the given position in the data.
+         *
+         * @return true if enough matches were found by this segment
+         */
+        private boolean scan(byte[] buffer, int length, long blockPosition, SearchState state) {
+            int lastIndex = pattern.length - 1;
+            int index = 0;
+            while (index <= length - pattern.length) {
+                byte last = folding[buffer[index + lastIndex] & 0xff];
+                if (last == pattern[lastIndex]) {
+                    int i = lastIndex - 1;
+                    while (i >= 0 && folding[buffer[index + i] & 0xff] == pattern[i]) {
+                        i--;
+                    }
+                    if (i < 0 && addMatch(blockPosition + index, state)) {
+                        return true;
+                    }
+                }
+                index += shifts[last & 0xff];
+            }
+            return false;
+        }
+
+        private boolean addMatch(long match, SearchState state) {
+            if (state.backward) {
+                // Only the matches closest to the end of the segment are kept, closest first
+                matches.addFirst(match);
+                if (matches.size() > state.maxMatches) {
+                    matches.removeLast();
+                }
+                if (matches.size() == state.maxMatches) {
+                    state.segmentFull(matches.getLast());
+                }
+                return false;
+            }
+
+            matches.addLast(match);
+            if (matches.size() == state.maxMatches) {
+                state.segmentFull(match);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -42,6 +42,24 @@ public interface BinarySearchService {
         void setStatus(FoundMatches foundMatches);
 
         void clearStatus();
+
+        /**
+         * Reports the progress of a running search. May be called from search threads.
+         *
+         * @param searchedBytes number of bytes searched so far
+         * @param totalBytes number of bytes to search
+         */
+        default void setProgress(long searchedBytes, long totalBytes) {
+        }
+
+        /**
+         * Returns whether the running search must stop. May be called from search threads.
+         *
+         * @return true to cancel the search
+         */
+        default boolean isCancelled() {
+            return false;
+        }
     }
 
     public static class FoundMatches {
@@ -19,22 +19,55 @@ package com.mucommander.viewer.binary.search;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.annotation.ParametersAreNonnullByDefault;
+import javax.swing.SwingUtilities;
 import org.exbin.auxiliary.binary_data.BinaryData;
 import org.exbin.auxiliary.binary_data.EditableBinaryData;
 import org.exbin.bined.CodeAreaUtils;
 import org.exbin.bined.highlight.swing.HighlightCodeAreaPainter;
 import org.exbin.bined.swing.basic.CodeArea;
 
+import com.mucommander.viewer.binary.FileBinaryData;
+
 /**
  * Binary search service.
  */
 @ParametersAreNonnullByDefault
 public class BinarySearchServiceImpl implements BinarySearchService {
 
+    private static final Logger LOGGER = Logger.getLogger(BinarySearchServiceImpl.class.getName());
+
+    /** Maximum number of matches highlighted by a search */
+    private static final int MAX_MATCHES = 100;
+    /** Number of threads that search the segments of large files */
+    private static final int SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+    /** Runs the searches in background, one at a time */
+    private static final ExecutorService SEARCH_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "BinarySearch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Searches the segments of large files */
+    private static final ExecutorService SEGMENT_EXECUTOR = Executors.newFixedThreadPool(SEARCH_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "BinarySearchSegment");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final CodeArea codeArea;
+    /** Search running in background, accessed from the event dispatch thread only */
+    private Future<?> runningSearch;
+    /** Identifier of the last search started, accessed from the event dispatch thread only */
+    private int lastSearchId;
 
     public BinarySearchServiceImpl(CodeArea codeArea) {
         this.codeArea = codeArea;
@@ -44,6 +77,7 @@ public class BinarySearchServiceImpl implements BinarySearchService {
     public void performFind(SearchParameters searchParameters, SearchStatusListener searchStatusListener) {
         HighlightCodeAreaPainter painter = (HighlightCodeAreaPainter) codeArea.getPainter();
         SearchCondition condition = searchParameters.getCondition();
+        cancelSearch();
         searchStatusListener.clearStatus();
         if (condition.isEmpty()) {
             painter.clearMatches();
@@ -72,7 +106,14 @@ public class BinarySearchServiceImpl implements BinarySearchService {
 
         switch (condition.getSearchMode()) {
         case TEXT: {
-            searchForText(searchParameters, searchStatusListener);
+            BinaryDataSearch search = BinaryDataSearch.forText(searchParameters.isMatchCase() ?
+                    condition.getSearchText() : condition.getSearchText().toLowerCase(),
+                    codeArea.getCharset(), searchParameters.isMatchCase());
+            if (search == null) {
+                searchForText(searchParameters, searchStatusListener);
+            } else {
+                search(search, searchParameters.getStartPosition(), searchParameters, searchStatusListener);
+            }
             break;
         }
         case BINARY: {
@@ -90,45 +131,83 @@ public class BinarySearchServiceImpl implements BinarySearchService {
     private void searchForBinaryData(SearchParameters searchParameters, SearchStatusListener searchStatusListener) {
         HighlightCodeAreaPainter painter = (HighlightCodeAreaPainter) codeArea.getPainter();
         SearchCondition condition = searchParameters.getCondition();
+        boolean backward = searchParameters.getSearchDirection() == SearchParameters.SearchDirection.BACKWARD;
         long position = codeArea.getCaretPosition().getDataPosition();
         HighlightCodeAreaPainter.SearchMatch currentMatch = painter.getCurrentMatch();
 
         if (currentMatch != null) {
             if (currentMatch.getPosition() == position) {
-                position++;
+                position += backward ? -1 : 1;
             }
             painter.clearMatches();
         } else if (!searchParameters.isSearchFromCursor()) {
-            position = 0;
+            position = searchParameters.getStartPosition();
         }
 
-        BinaryData searchData = condition.getBinaryData();
+        BinaryData searchData = Objects.requireNonNull(condition.getBinaryData());
+        byte[] pattern = new byte[(int) searchData.getDataSize()];
+        searchData.copyToArray(0, pattern, 0, pattern.length);
+        search(new BinaryDataSearch(pattern, null), position, searchParameters, searchStatusListener);
+    }
+
+    /**
+     * Searches the content of the code area from the given position. Files opened in the viewer are searched in
+     * background threads, split into segments searched concurrently; other data, e.g. the in-memory data of the
+     * editor that could be modified while searching, is searched in the current thread.
+     */
+    private void search(BinaryDataSearch search, long position, SearchParameters searchParameters,
+            SearchStatusListener searchStatusListener) {
         BinaryData data = codeArea.getContentData();
+        boolean backward = searchParameters.getSearchDirection() == SearchParameters.SearchDirection.BACKWARD;
+        int maxMatches = searchParameters.isMultipleMatches() ? MAX_MATCHES : 1;
 
-        List<HighlightCodeAreaPainter.SearchMatch> foundMatches = new ArrayList<>();
+        if (!(data instanceof FileBinaryData)) {
+            List<Long> matches = search.search(data, position, backward, maxMatches, null, 1, searchStatusListener);
+            showMatches(matches, search.getPatternLength(), searchStatusListener);
+            return;
+        }
 
-        long dataSize = data.getDataSize();
-        while (position < dataSize - searchData.getDataSize()) {
-            int matchLength = 0;
-            while (matchLength < searchData.getDataSize()) {
-                if (data.getByte(position + matchLength) != searchData.getByte(matchLength)) {
-                    break;
-                }
-                matchLength++;
+        int searchId = ++lastSearchId;
+        runningSearch = SEARCH_EXECUTOR.submit(() -> {
+            try {
+                List<Long> matches = search.search(data, position, backward, maxMatches,
+                        SEGMENT_EXECUTOR, SEARCH_THREADS, searchStatusListener);
+                showSearchResult(searchId, matches, search.getPatternLength(), searchStatusListener);
+            } catch (CancellationException e) {
+                LOGGER.fine("Search cancelled");
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Search failed", e);
+                // Complete the status of the failed search, which would otherwise remain in progress
+                showSearchResult(searchId, Collections.emptyList(), search.getPatternLength(), searchStatusListener);
             }
+        });
+    }
 
-            if (matchLength == searchData.getDataSize()) {
-                HighlightCodeAreaPainter.SearchMatch match = new HighlightCodeAreaPainter.SearchMatch();
-                match.setPosition(position);
-                match.setLength(searchData.getDataSize());
-                foundMatches.add(match);
-
-                if (foundMatches.size() == 100 || !searchParameters.isMultipleMatches()) {
-                    break;
-                }
+    /**
+     * Shows the matches of a search that ran in background, in the event dispatch thread.
+     */
+    private void showSearchResult(int searchId, List<Long> matches, int matchLength,
+            SearchStatusListener searchStatusListener) {
+        SwingUtilities.invokeLater(() -> {
+            // Ignore the matches of a search that was cancelled or replaced by a newer one
+            if (searchId == lastSearchId) {
+                runningSearch = null;
+                showMatches(matches, matchLength, searchStatusListener);
             }
+        });
+    }
 
-            position++;
+    /**
+     * Highlights the given matches, and reveals the first one.
+     */
+    private void showMatches(List<Long> matchPositions, int matchLength, SearchStatusListener searchStatusListener) {
+        HighlightCodeAreaPainter painter = (HighlightCodeAreaPainter) codeArea.getPainter();
+        List<HighlightCodeAreaPainter.SearchMatch> foundMatches = new ArrayList<>(matchPositions.size());
+        for (long matchPosition : matchPositions) {
+            HighlightCodeAreaPainter.SearchMatch match = new HighlightCodeAreaPainter.SearchMatch();
+            match.setPosition(matchPosition);
+            match.setLength(matchLength);
+            foundMatches.add(match);
         }
 
         painter.setMatches(foundMatches);
@@ -142,7 +221,19 @@ public class BinarySearchServiceImpl implements BinarySearchService {
     }
 
     /**
-     * Performs search by text/characters.
+     * Cancels the search running in background, if any.
+     */
+    private void cancelSearch() {
+        lastSearchId++;
+        if (runningSearch != null) {
+            runningSearch.cancel(true);
+            runningSearch = null;
+        }
+    }
+
+    /**
+     * Performs search by text/characters, character by character. Used for the charsets and texts
+     * {@link BinaryDataSearch#forText(String, Charset, boolean)} cannot search byte by byte.
      */
     private void searchForText(SearchParameters searchParameters, SearchStatusListener searchStatusListener) {
         HighlightCodeAreaPainter painter = (HighlightCodeAreaPainter) codeArea.getPainter();
@@ -271,6 +362,7 @@ public class BinarySearchServiceImpl implements BinarySearchService {
 
     @Override
     public void clearMatches() {
+        cancelSearch();
         HighlightCodeAreaPainter painter = (HighlightCodeAreaPainter) codeArea.getPainter();
         painter.clearMatches();
     }
@@ -0,0 +1,189 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.viewer.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.DummyFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.ProxyFile;
+
+/**
+ * Test case for {@link FileBinaryData}: the data read must be the same whether the file is mapped in memory or read
+ * through the page cache.
+ */
+public class FileBinaryDataTest {
+
+    /** Size of the test file, which does not end on a page boundary */
+    private static final int SIZE = FileBinaryData.PAGE_SIZE * 100 + 123;
+
+    private AbstractFile file;
+
+    private byte[] contents;
+
+    /**
+     * A file that is not a local file, but has random access.
+     */
+    private static class RemoteFile extends ProxyFile {
+        RemoteFile(AbstractFile file) {
+            super(file);
+        }
+
+        @Override
+        public Object getUnderlyingFileObject() {
+            return null;
+        }
+    }
+
+    /**
+     * A file that can only be read sequentially.
+     */
+    private class SequentialFile extends DummyFile {
+        SequentialFile() throws IOException {
+            super(FileURL.getFileURL("/sequential"));
+        }
+
+        @Override
+        public long getSize() {
+            return contents.length;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(contents);
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        contents = new byte[SIZE];
+        new Random(SIZE).nextBytes(contents);
+        file = FileFactory.getTemporaryFile(getClass().getName(), true);
+        try (OutputStream out = file.getOutputStream()) {
+            out.write(contents);
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        file.delete();
+    }
+
+    private void assertSameContents(FileBinaryData data) {
+        Assert.assertEquals(data.getDataSize(), SIZE);
+        Assert.assertFalse(data.isEmpty());
+
+        // Sequential reads
+        for (int i = 0; i < SIZE; i++)
+            Assert.assertEquals(data.getByte(i), contents[i]);
+
+        // Random reads, backwards and across pages
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            int position = random.nextInt(SIZE);
+            Assert.assertEquals(data.getByte(position), contents[position]);
+        }
+        for (int i = SIZE - 1; i >= 0; i -= 997)
+            Assert.assertEquals(data.getByte(i), contents[i]);
+
+        byte[] target = new byte[FileBinaryData.PAGE_SIZE * 3];
+        data.copyToArray(SIZE - target.length + 5, target, 5, target.length - 5);
+        for (int i = 5; i < target.length; i++)
+            Assert.assertEquals(target[i], contents[SIZE - target.length + i]);
+
+        // Data is read again after the cache was reset
+        data.resetCache();
+        Assert.assertEquals(data.getByte(SIZE - 1), contents[SIZE - 1]);
+        Assert.assertEquals(data.getByte(0), contents[0]);
+        data.close();
+    }
+
+    @Test
+    public void testMappedFile() {
+        assertSameContents(new FileBinaryData(file));
+    }
+
+    @Test
+    public void testRandomAccessFile() {
+        assertSameContents(new FileBinaryData(new RemoteFile(file), 8));
+    }
+
+    @Test
+    public void testSequentialFile() throws IOException {
+        assertSameContents(new FileBinaryData(new SequentialFile(), 8));
+    }
+
+    @Test
+    public void testMappedFileGrows() throws IOException {
+        FileBinaryData data = new FileBinaryData(file);
+        Assert.assertEquals(data.getByte(SIZE - 1), contents[SIZE - 1]);
+
+        byte[] appended = new byte[FileBinaryData.PAGE_SIZE];
+        new Random(0).nextBytes(appended);
+        try (OutputStream out = file.getAppendOutputStream()) {
+            out.write(appended);
+        }
+
+        Assert.assertEquals(data.getDataSize(), SIZE + appended.length);
+        Assert.assertEquals(data.getByte(SIZE), appended[0]);
+        Assert.assertEquals(data.getByte(SIZE + appended.length - 1), appended[appended.length - 1]);
+        Assert.assertEquals(data.getByte(0), contents[0]);
+        data.close();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testMappedFileTruncated() throws IOException {
+        FileBinaryData data = new FileBinaryData(file);
+        Assert.assertEquals(data.getByte(0), contents[0]);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.getAbsolutePath(), "rw")) {
+            raf.setLength(FileBinaryData.PAGE_SIZE);
+        }
+
+        try {
+            data.getByte(SIZE);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // The size of the file is read again
+        }
+        Assert.assertEquals(data.getByte(FileBinaryData.PAGE_SIZE - 1), contents[FileBinaryData.PAGE_SIZE - 1]);
+        // The mapped data past the new end of the file must not be read, as that would fault
+        data.getByte(SIZE - 1);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testMappedReadAfterEnd() {
+        new FileBinaryData(file).getByte(SIZE);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testCachedReadAfterEnd() {
+        new FileBinaryData(new RemoteFile(file)).getByte(SIZE);
+    }
+}
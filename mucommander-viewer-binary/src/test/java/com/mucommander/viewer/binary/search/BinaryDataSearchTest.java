@@ -0,0 +1,174 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.viewer.binary.search;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.exbin.auxiliary.binary_data.BinaryData;
+import org.exbin.auxiliary.binary_data.ByteArrayData;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test case for {@link BinaryDataSearch}: matches must be the same as the ones of a naive search, whatever the
+ * direction and whether the data is split into segments.
+ */
+public class BinaryDataSearchTest {
+
+    private static final BinarySearchService.SearchStatusListener LISTENER = new BinarySearchService.SearchStatusListener() {
+        @Override
+        public void setStatus(BinarySearchService.FoundMatches foundMatches) {
+        }
+
+        @Override
+        public void clearStatus() {
+        }
+    };
+
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the matches found by comparing the pattern at each position.
+     */
+    private static List<Long> naiveSearch(byte[] data, byte[] pattern, long position, boolean backward, int maxMatches) {
+        List<Long> matches = new ArrayList<>();
+        long start = backward ? Math.min(position, data.length - pattern.length) : position;
+        for (long i = start; i >= 0 && i <= data.length - pattern.length && matches.size() < maxMatches; i += backward ? -1 : 1) {
+            if (Arrays.equals(data, (int) i, (int) i + pattern.length, pattern, 0, pattern.length)) {
+                matches.add(i);
+            }
+        }
+        return matches;
+    }
+
+    private void assertSameMatches(byte[] data, byte[] pattern, long position, boolean backward, int maxMatches, boolean concurrent) {
+        List<Long> matches = new BinaryDataSearch(pattern, null).search(new ByteArrayData(data), position, backward,
+                maxMatches, concurrent ? executor : null, 4, LISTENER);
+        Assert.assertEquals(matches, naiveSearch(data, pattern, position, backward, maxMatches));
+    }
+
+    @Test
+    public void testSmallData() {
+        Random random = new Random(0);
+        // Few distinct bytes, so that there are many partial matches
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) random.nextInt(3);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            int length = 1 + random.nextInt(8);
+            int offset = random.nextInt(data.length - length);
+            byte[] pattern = Arrays.copyOfRange(data, offset, offset + length);
+            long position = random.nextInt(data.length);
+            boolean backward = random.nextBoolean();
+            int maxMatches = random.nextBoolean() ? 1 : 100;
+            assertSameMatches(data, pattern, position, backward, maxMatches, false);
+        }
+
+        // Matches at the very start and end of the data
+        byte[] pattern = Arrays.copyOfRange(data, data.length - 5, data.length);
+        assertSameMatches(data, pattern, 0, false, Integer.MAX_VALUE, false);
+        assertSameMatches(data, Arrays.copyOf(data, 5), data.length, true, Integer.MAX_VALUE, false);
+        // Pattern longer than the data
+        assertSameMatches(Arrays.copyOf(data, 3), Arrays.copyOf(data, 5), 0, false, 100, false);
+    }
+
+    @Test
+    public void testSegments() {
+        // Large enough to be split into segments, with matches across block and segment boundaries
+        byte[] data = new byte[(int) (5 * BinaryDataSearch.MIN_SEGMENT_SIZE + 12345)];
+        byte[] pattern = "signature".getBytes(StandardCharsets.US_ASCII);
+        Random random = new Random(1);
+        for (int i = 0; i < 300; i++) {
+            int offset = random.nextInt(data.length - pattern.length);
+            System.arraycopy(pattern, 0, data, offset, pattern.length);
+        }
+        for (int i = 1; i <= 5; i++) {
+            int offset = (int) (i * BinaryDataSearch.MIN_SEGMENT_SIZE) - 4;
+            System.arraycopy(pattern, 0, data, offset, pattern.length);
+            offset = i * BinaryDataSearch.BLOCK_SIZE - 3;
+            System.arraycopy(pattern, 0, data, offset, pattern.length);
+        }
+
+        assertSameMatches(data, pattern, 0, false, Integer.MAX_VALUE, true);
+        assertSameMatches(data, pattern, data.length, true, Integer.MAX_VALUE, true);
+        assertSameMatches(data, pattern, 0, false, 100, true);
+        assertSameMatches(data, pattern, data.length / 3, false, 1, true);
+        assertSameMatches(data, pattern, data.length, true, 100, true);
+        assertSameMatches(data, pattern, data.length / 2, true, 1, true);
+    }
+
+    @Test
+    public void testTextSearch() {
+        Charset latin1 = StandardCharsets.ISO_8859_1;
+        BinaryData data = new ByteArrayData("--ÄbC--äBc--abc".getBytes(latin1));
+
+        List<Long> matches = BinaryDataSearch.forText("äbc", latin1, false).search(data, 0, false, 100, null, 1, LISTENER);
+        Assert.assertEquals(matches, Arrays.asList(2L, 7L));
+        matches = BinaryDataSearch.forText("äBc", latin1, true).search(data, 0, false, 100, null, 1, LISTENER);
+        Assert.assertEquals(matches, Arrays.asList(7L));
+
+        data = new ByteArrayData("ABC été abc".getBytes(StandardCharsets.UTF_8));
+        matches = BinaryDataSearch.forText("abc", StandardCharsets.UTF_8, false).search(data, 0, false, 100, null, 1, LISTENER);
+        Assert.assertEquals(matches, Arrays.asList(0L, 10L));
+
+        // Searched character by character
+        Assert.assertNull(BinaryDataSearch.forText("été", StandardCharsets.UTF_8, false));
+        Assert.assertNull(BinaryDataSearch.forText("abc", StandardCharsets.UTF_16, true));
+    }
+
+    @Test(expectedExceptions = CancellationException.class)
+    public void testCancel() {
+        byte[] data = new byte[(int) (4 * BinaryDataSearch.MIN_SEGMENT_SIZE)];
+        new BinaryDataSearch(new byte[] { 1, 2, 3 }, null).search(new ByteArrayData(data), 0, false, 100, executor, 4,
+                new BinarySearchService.SearchStatusListener() {
+                    @Override
+                    public void setStatus(BinarySearchService.FoundMatches foundMatches) {
+                    }
+
+                    @Override
+                    public void clearStatus() {
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return true;
+                    }
+                });
+    }
+}
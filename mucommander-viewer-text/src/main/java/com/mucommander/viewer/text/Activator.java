@@ -31,6 +31,7 @@ import org.osgi.framework.ServiceRegistration;
 public class Activator implements BundleActivator {
 
     private ServiceRegistration<FileViewerService> viewerRegistration;
+    private ServiceRegistration<FileViewerService> largeFileViewerRegistration;
     private ServiceRegistration<FileEditorService> editorRegistration;
 
     @Override
@@ -41,11 +42,13 @@ public class Activator implements BundleActivator {
 
         viewerRegistration = context.registerService(FileViewerService.class, service, null);
         editorRegistration = context.registerService(FileEditorService.class, service, null);
+        largeFileViewerRegistration = context.registerService(FileViewerService.class, new LargeTextFileViewerService(), null);
     }
 
     @Override
     public void stop(BundleContext context) throws Exception {
         viewerRegistration.unregister();
         editorRegistration.unregister();
+        largeFileViewerRegistration.unregister();
     }
 }
@@ -0,0 +1,527 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.viewer.text;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.EncodingDetector;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.io.bom.BOM;
+import com.mucommander.commons.io.bom.BOMInputStream;
+
+/**
+ * A read-only text file that is accessed by line without being loaded in memory, used by {@link LargeTextViewer}.
+ *
+ * <p>The file is read at random positions, through a <code>FileChannel</code> for local files and through a
+ * {@link RandomAccessInputStream} otherwise. A sparse index of the lines, that records the offset of every
+ * {@link #LINES_PER_CHECKPOINT}th line, is built by {@link #index(BooleanSupplier)}; the offset of other lines is
+ * found by scanning from the previous checkpoint. The index can be extended as the file grows.</p>
+ *
+ * <p>Lines are decoded on demand. Lines longer than {@link #MAX_LINE_LENGTH} bytes are truncated, both when they are
+ * read and when they are searched.</p>
+ */
+class LargeTextDocument implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LargeTextDocument.class);
+
+    /** Number of lines between two offsets recorded in the index */
+    static final int LINES_PER_CHECKPOINT = 1024;
+
+    /** Size of the blocks the file is read by */
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    /** Maximum number of bytes of a line that are read */
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final AbstractFile file;
+
+    /** Channel on the file if it is a local file, null otherwise */
+    private final FileChannel channel;
+
+    /** Stream on the file if it is not a local file, null otherwise */
+    private final RandomAccessInputStream randomAccessInputStream;
+
+    private final Charset charset;
+
+    /** Offset at which the text starts, after the byte-order mark if any */
+    private final int textStart;
+
+    /** Bytes of a line feed in the charset of the file */
+    private final byte[] lineFeed;
+
+    /** Offsets of the lines whose number is a multiple of {@link #LINES_PER_CHECKPOINT} */
+    private long[] checkpoints = new long[64];
+
+    private int nbCheckpoints;
+
+    /** Number of lines found so far */
+    private long lineCount = 1;
+
+    /** Offset up to which the file has been indexed */
+    private long indexedSize;
+
+    /**
+     * A match of a search.
+     */
+    static class Match {
+        final long line;
+        final int start;
+        final int end;
+
+        Match(long line, int start, int end) {
+            this.line = line;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Opens the given file for reading.
+     *
+     * @param file the file to read, which must support random access
+     * @param encoding the encoding of the file, null to detect it from the first bytes of the file
+     * @throws IOException if the file could not be opened
+     */
+    LargeTextDocument(AbstractFile file, String encoding) throws IOException {
+        this.file = file;
+        Object underlyingFile = file.getUnderlyingFileObject();
+        if (underlyingFile instanceof File) {
+            channel = FileChannel.open(((File) underlyingFile).toPath(), StandardOpenOption.READ);
+            randomAccessInputStream = null;
+        } else {
+            channel = null;
+            randomAccessInputStream = file.getRandomAccessInputStream();
+        }
+
+        try {
+            byte[] firstBytes = new byte[(int) Math.min(EncodingDetector.MAX_RECOMMENDED_BYTE_SIZE, getSize())];
+            int length = read(0, firstBytes, 0, firstBytes.length);
+            firstBytes = Arrays.copyOf(firstBytes, Math.max(length, 0));
+
+            BOM bom = new BOMInputStream(new ByteArrayInputStream(firstBytes)).getBOM();
+            if (encoding == null) {
+                encoding = bom != null ? bom.getEncoding() : detectEncoding(firstBytes);
+            }
+            // If the given encoding is invalid (null or not supported), default to "UTF-8"
+            charset = encoding != null && Charset.isSupported(encoding) ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            textStart = bom != null && Charset.forName(bom.getEncoding()).equals(charset) ? bom.getSignature().length : 0;
+
+            // The size of a code unit is what the encoding of one more character adds, which skips a byte-order mark
+            byte[] oneLineFeed = "\n".getBytes(charset);
+            int unitSize = "\n\n".getBytes(charset).length - oneLineFeed.length;
+            lineFeed = Arrays.copyOfRange(oneLineFeed, oneLineFeed.length - unitSize, oneLineFeed.length);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+
+        checkpoints[nbCheckpoints++] = textStart;
+        indexedSize = textStart;
+    }
+
+    /**
+     * Detects the encoding of the given bytes. 7-bit text detected as ISO-8859-1 is considered UTF-8, as
+     * {@link TextViewer} does.
+     */
+    private static String detectEncoding(byte[] bytes) {
+        String encoding = EncodingDetector.detectEncoding(bytes);
+        if ("ISO-8859-1".equalsIgnoreCase(encoding)) {
+            boolean is8bit = false;
+            for (byte b : bytes) {
+                if ((b & 0x80) != 0) {
+                    is8bit = true;
+                    break;
+                }
+            }
+            if (!is8bit) {
+                encoding = "UTF-8";
+            }
+        }
+        return encoding;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    AbstractFile getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the current size of the file.
+     *
+     * @return the current size of the file
+     * @throws IOException if the size could not be retrieved
+     */
+    long getSize() throws IOException {
+        if (channel != null) {
+            return channel.size();
+        }
+        synchronized (randomAccessInputStream) {
+            return randomAccessInputStream.getLength();
+        }
+    }
+
+    /**
+     * Reads bytes at the given position of the file, fewer than requested only if the end of the file is reached.
+     *
+     * @return the number of bytes read, -1 if the position is at or after the end of the file
+     */
+    private int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        if (channel != null) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, offset, length);
+            while (byteBuffer.hasRemaining()) {
+                int read = channel.read(byteBuffer, position + total);
+                if (read < 0) {
+                    break;
+                }
+                total += read;
+            }
+        } else {
+            synchronized (randomAccessInputStream) {
+                randomAccessInputStream.seek(position);
+                while (total < length) {
+                    int read = randomAccessInputStream.read(buffer, offset + total, length - total);
+                    if (read < 0) {
+                        break;
+                    }
+                    total += read;
+                }
+            }
+        }
+        return total == 0 && length > 0 ? -1 : total;
+    }
+
+    ////////////
+    // Index  //
+    ////////////
+
+    /**
+     * Indexes the lines of the part of the file that is not indexed yet, up to the current end of the file.
+     * Must not be called by several threads at once.
+     *
+     * @param cancelled tells whether indexing must stop
+     * @return true if new bytes were indexed
+     * @throws IOException if the file could not be read
+     */
+    boolean index(BooleanSupplier cancelled) throws IOException {
+        long position = getIndexedSize();
+        long size = getSize();
+        int unitSize = lineFeed.length;
+        byte[] buffer = new byte[BLOCK_SIZE];
+        boolean indexed = false;
+        while (position < size && !cancelled.getAsBoolean()) {
+            int length = read(position, buffer, 0, (int) Math.min(buffer.length, size - position));
+            // A character that is not entirely written yet is indexed with the next bytes
+            length -= Math.max(length, 0) % unitSize;
+            if (length <= 0) {
+                break;
+            }
+
+            synchronized (this) {
+                for (int i = indexOfLineFeed(buffer, 0, length); i >= 0; i = indexOfLineFeed(buffer, i + unitSize, length)) {
+                    if (lineCount % LINES_PER_CHECKPOINT == 0) {
+                        addCheckpoint(position + i + unitSize);
+                    }
+                    lineCount++;
+                }
+                indexedSize = position + length;
+            }
+            position += length;
+            indexed = true;
+        }
+        return indexed;
+    }
+
+    private void addCheckpoint(long offset) {
+        if (nbCheckpoints == checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+        }
+        checkpoints[nbCheckpoints++] = offset;
+    }
+
+    /**
+     * Returns the index of the first line feed in the given part of the buffer, -1 if there is none. The part must
+     * start at the beginning of a character.
+     */
+    private int indexOfLineFeed(byte[] buffer, int from, int to) {
+        if (lineFeed.length == 1) {
+            byte lf = lineFeed[0];
+            for (int i = from; i < to; i++) {
+                if (buffer[i] == lf) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        for (int i = from; i <= to - lineFeed.length; i += lineFeed.length) {
+            int j = 0;
+            while (j < lineFeed.length && buffer[i + j] == lineFeed[j]) {
+                j++;
+            }
+            if (j == lineFeed.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of lines found so far. Lines below this number can be read even if the file is not fully
+     * indexed yet.
+     *
+     * @return the number of lines found so far
+     */
+    synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the offset up to which the file has been indexed.
+     *
+     * @return the offset up to which the file has been indexed
+     */
+    synchronized long getIndexedSize() {
+        return indexedSize;
+    }
+
+    //////////////////
+    // Line access  //
+    //////////////////
+
+    /**
+     * Returns a reader positioned at the beginning of the given line.
+     */
+    private LineReader getLineReader(long line) throws IOException {
+        long checkpointLine;
+        long offset;
+        long limit;
+        synchronized (this) {
+            if (line < 0 || line >= lineCount) {
+                throw new IllegalArgumentException("Line " + line + " out of range [0, " + lineCount + "[");
+            }
+            int checkpoint = (int) (line / LINES_PER_CHECKPOINT);
+            checkpointLine = (long) checkpoint * LINES_PER_CHECKPOINT;
+            offset = checkpoints[checkpoint];
+            limit = indexedSize;
+        }
+
+        LineReader reader = new LineReader(offset, limit);
+        for (long l = checkpointLine; l < line; l++) {
+            reader.readLine(false);
+        }
+        return reader;
+    }
+
+    /**
+     * Reads consecutive lines, without their line separator.
+     *
+     * @param firstLine the number of the first line to read, starting at 0
+     * @param count the maximum number of lines to read
+     * @return the lines, fewer than requested if the end of the indexed part of the file is reached
+     * @throws IOException if the file could not be read
+     */
+    List<String> readLines(long firstLine, int count) throws IOException {
+        LineReader reader = getLineReader(firstLine);
+        List<String> lines = new ArrayList<>(count);
+        String line;
+        while (lines.size() < count && (line = reader.readLine(true)) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * Finds the next match of the given pattern in the lines of the file.
+     *
+     * @param pattern the pattern to search for, matched against each line
+     * @param line the line to start searching from
+     * @param column the column to start searching from: matches that start at or after it are found when searching
+     *        forward, matches that start before it when searching backward
+     * @param forward whether to search forward or backward
+     * @param cancelled tells whether searching must stop
+     * @return the match, null if there is none or if searching was cancelled
+     * @throws IOException if the file could not be read
+     */
+    Match find(Pattern pattern, long line, int column, boolean forward, BooleanSupplier cancelled) throws IOException {
+        return forward ? findForward(pattern, line, column, cancelled) : findBackward(pattern, line, column, cancelled);
+    }
+
+    private Match findForward(Pattern pattern, long line, int column, BooleanSupplier cancelled) throws IOException {
+        LineReader reader = getLineReader(line);
+        Matcher matcher = pattern.matcher("");
+        String text;
+        for (long l = line; (text = reader.readLine(true)) != null; l++) {
+            if (l % LINES_PER_CHECKPOINT == 0 && cancelled.getAsBoolean()) {
+                return null;
+            }
+            matcher.reset(text);
+            int from = l == line ? Math.min(column, text.length()) : 0;
+            if (matcher.find(from)) {
+                return new Match(l, matcher.start(), matcher.end());
+            }
+        }
+        return null;
+    }
+
+    private Match findBackward(Pattern pattern, long line, int column, BooleanSupplier cancelled) throws IOException {
+        Matcher matcher = pattern.matcher("");
+        // Lines are searched forward from checkpoint to checkpoint, from the last checkpoint before the line
+        for (long checkpointLine = line / LINES_PER_CHECKPOINT * LINES_PER_CHECKPOINT; checkpointLine >= 0; checkpointLine -= LINES_PER_CHECKPOINT) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            LineReader reader = getLineReader(checkpointLine);
+            Match lastMatch = null;
+            String text;
+            for (long l = checkpointLine; l <= line && (text = reader.readLine(true)) != null; l++) {
+                matcher.reset(text);
+                int from = 0;
+                while (from <= text.length() && matcher.find(from) && (l < line || matcher.start() < column)) {
+                    lastMatch = new Match(l, matcher.start(), matcher.end());
+                    from = matcher.end() > matcher.start() ? matcher.end() : matcher.start() + 1;
+                }
+            }
+            if (lastMatch != null) {
+                return lastMatch;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (channel != null) {
+                channel.close();
+            } else if (randomAccessInputStream != null) {
+                randomAccessInputStream.close();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Error while closing " + file, e);
+        }
+    }
+
+    /**
+     * Reads the lines of the file sequentially from a given offset.
+     */
+    private class LineReader {
+        private final byte[] buffer = new byte[BLOCK_SIZE];
+        /** Offset in the file of the first byte of the buffer */
+        private long bufferOffset;
+        private int bufferLength;
+        private int index;
+        /** Offset up to which the file is read */
+        private final long limit;
+        private boolean endReached;
+        private byte[] lineBytes = new byte[256];
+
+        private LineReader(long offset, long limit) {
+            this.bufferOffset = offset;
+            this.limit = limit;
+        }
+
+        /**
+         * Returns the next line, or null if the end of the file was reached.
+         *
+         * @param decode whether to decode the line, or just skip it
+         * @return the line, "" when it is skipped
+         */
+        private String readLine(boolean decode) throws IOException {
+            if (endReached) {
+                return null;
+            }
+
+            int unitSize = lineFeed.length;
+            int lineLength = 0;
+            while (true) {
+                if (index >= bufferLength && !fillBuffer()) {
+                    // The last line does not end with a line feed
+                    endReached = true;
+                    break;
+                }
+                int lineFeedIndex = indexOfLineFeed(buffer, index, bufferLength);
+                int end = lineFeedIndex >= 0 ? lineFeedIndex : bufferLength;
+                if (decode) {
+                    lineLength = appendLineBytes(lineLength, end);
+                }
+                if (lineFeedIndex >= 0) {
+                    index = lineFeedIndex + unitSize;
+                    break;
+                }
+                index = bufferLength;
+            }
+
+            if (!decode) {
+                return "";
+            }
+            String line = new String(lineBytes, 0, lineLength, charset);
+            return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+        }
+
+        /**
+         * Appends the bytes of the buffer up to the given index to the current line, up to the maximum line length.
+         */
+        private int appendLineBytes(int lineLength, int end) {
+            int length = Math.min(end - index, MAX_LINE_LENGTH - lineLength);
+            if (length > 0) {
+                if (lineLength + length > lineBytes.length) {
+                    lineBytes = Arrays.copyOf(lineBytes, Math.max(lineBytes.length * 2, lineLength + length));
+                }
+                System.arraycopy(buffer, index, lineBytes, lineLength, length);
+                lineLength += length;
+            }
+            return lineLength;
+        }
+
+        /**
+         * Reads the next block of the file, returns false if the limit was reached.
+         */
+        private boolean fillBuffer() throws IOException {
+            bufferOffset += bufferLength;
+            index = 0;
+            bufferLength = 0;
+            if (bufferOffset >= limit) {
+                return false;
+            }
+            bufferLength = Math.max(read(bufferOffset, buffer, 0, (int) Math.min(buffer.length, limit - bufferOffset)), 0);
+            return bufferLength > 0;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.viewer.text;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.io.BinaryDetector;
+import com.mucommander.viewer.CanOpen;
+import com.mucommander.viewer.FileViewer;
+import com.mucommander.viewer.FileViewerService;
+
+/**
+ * <code>FileViewerService</code> implementation for creating viewers of large text files, which are read by windows
+ * of lines rather than loaded in memory.
+ */
+public class LargeTextFileViewerService implements FileViewerService {
+
+    /**
+     * Min file size for which this viewer is preferred to the regular text viewer.
+     */
+    static final long LARGE_FILE_SIZE = 16 * 1024 * 1024;
+
+    @Override
+    public String getName() {
+        return "Large text";
+    }
+
+    @Override
+    public int getOrderPriority() {
+        // Preferred to the regular text viewer for the files it can open
+        return 15;
+    }
+
+    @Override
+    public CanOpen canOpenFile(AbstractFile file) {
+        if (file.isDirectory() || file.getSize() < LARGE_FILE_SIZE
+                || !file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)) {
+            return CanOpen.NO;
+        }
+
+        try (InputStream in = file.getInputStream()) {
+            if (BinaryDetector.guessBinary(in)) {
+                return CanOpen.NO;
+            }
+        } catch (IOException e) {
+            return CanOpen.NO;
+        }
+
+        return CanOpen.YES;
+    }
+
+    @Override
+    public FileViewer createFileViewer(boolean fromSearchWithContent) {
+        return new LargeTextViewer(fromSearchWithContent);
+    }
+}
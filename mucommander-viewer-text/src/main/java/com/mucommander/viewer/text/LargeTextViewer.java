@@ -0,0 +1,786 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.viewer.text;
+
+import java.awt.BorderLayout;
+import java.awt.Container;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.AbstractAction;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.util.StringUtils;
+import com.mucommander.commons.util.ui.dialog.DialogOwner;
+import com.mucommander.commons.util.ui.dialog.DialogToolkit;
+import com.mucommander.commons.util.ui.dialog.FocusDialog;
+import com.mucommander.commons.util.ui.helper.MenuToolkit;
+import com.mucommander.commons.util.ui.helper.MnemonicHelper;
+import com.mucommander.commons.util.ui.layout.XAlignedComponentPanel;
+import com.mucommander.core.desktop.DesktopManager;
+import com.mucommander.desktop.ActionType;
+import com.mucommander.search.SearchProperty;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.dialog.InformationDialog;
+import com.mucommander.ui.encoding.EncodingListener;
+import com.mucommander.ui.encoding.EncodingMenu;
+import com.mucommander.ui.text.SelectAllOnFocusTextField;
+import com.mucommander.ui.theme.Theme;
+import com.mucommander.ui.theme.ThemeManager;
+import com.mucommander.viewer.FileViewer;
+import com.mucommander.viewer.ViewerPresenter;
+
+/**
+ * A read-only viewer for text files that are too large to be loaded in memory.
+ *
+ * <p>Lines are read through a {@link LargeTextDocument}, whose index is built in background. Only the visible lines
+ * and {@link #MARGIN_LINES} lines above and below them are loaded in the text area: the scroll bar represents the
+ * whole file, and the loaded lines are replaced when the view gets close to their boundaries. Searches run in
+ * background over the whole file, line by line.</p>
+ *
+ * <p>When following the file, the viewer checks periodically whether the file has grown, indexes the new lines and
+ * shows the end of the file, like <code>tail -f</code> does.</p>
+ */
+class LargeTextViewer implements FileViewer, EncodingListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LargeTextViewer.class);
+
+    /** Number of lines that are loaded above and below the visible lines */
+    private static final int MARGIN_LINES = 500;
+
+    /** Maximum number of characters loaded in the text area, beyond the visible lines */
+    private static final int MAX_LOADED_CHARS = 4 * 1024 * 1024;
+
+    /** Interval at which the status is refreshed and the file checked for changes, in milliseconds */
+    private static final int REFRESH_INTERVAL = 500;
+
+    /** Indexes files and searches them */
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "LargeTextViewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final boolean fromSearchWithContent;
+
+    private final JPanel ui = new JPanel(new BorderLayout());
+    private final JTextArea textArea = new JTextArea();
+    private final JScrollPane scrollPane = new JScrollPane(textArea,
+            JScrollPane.VERTICAL_SCROLLBAR_NEVER, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final JLabel statusLabel = new JLabel(" ");
+    private final Timer refreshTimer = new Timer(REFRESH_INTERVAL, e -> refresh());
+
+    private ViewerPresenter presenter;
+    private LargeTextDocument document;
+    private String encoding;
+
+    // The following fields are accessed from the event dispatch thread only
+
+    /** Indexing of the document, done once the file has been indexed up to its current end */
+    private Future<?> indexing;
+    /** Cancels the indexing of the document */
+    private AtomicBoolean indexingCancelled = new AtomicBoolean();
+    /** Last search, done once the match has been found */
+    private Future<?> search;
+    /** Cancels the running search, if any */
+    private AtomicBoolean searchCancelled = new AtomicBoolean();
+    private boolean searching;
+    /** Number of the first line loaded in the text area */
+    private long windowStart;
+    /** Number of lines loaded in the text area */
+    private int windowLineCount;
+    /** Indexed size of the document when the lines were loaded */
+    private long windowIndexedSize;
+    /** Whether the view is being changed programmatically */
+    private boolean adjusting;
+    /** Whether the end of the file is followed as it grows */
+    private boolean following;
+
+    private JMenu editMenu;
+    private JMenu viewMenu;
+
+    LargeTextViewer(boolean fromSearchWithContent) {
+        this.fromSearchWithContent = fromSearchWithContent;
+        initUI();
+    }
+
+    private void initUI() {
+        textArea.setEditable(false);
+        textArea.setMargin(new Insets(0, 3, 0, 3));
+        textArea.setForeground(ThemeManager.getCurrentColor(Theme.EDITOR_FOREGROUND_COLOR));
+        textArea.setCaretColor(ThemeManager.getCurrentColor(Theme.EDITOR_FOREGROUND_COLOR));
+        textArea.setBackground(ThemeManager.getCurrentColor(Theme.EDITOR_BACKGROUND_COLOR));
+        textArea.setSelectedTextColor(ThemeManager.getCurrentColor(Theme.EDITOR_SELECTED_FOREGROUND_COLOR));
+        textArea.setSelectionColor(ThemeManager.getCurrentColor(Theme.EDITOR_SELECTED_BACKGROUND_COLOR));
+        textArea.setFont(ThemeManager.getCurrentFont(Theme.EDITOR_FONT));
+        // The caret must stay visible even though the text area is read-only
+        textArea.getCaret().setVisible(true);
+
+        // Vertical scrolling is done through the scroll bar that represents the whole file
+        scrollPane.setWheelScrollingEnabled(false);
+        scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        textArea.addMouseWheelListener(e -> scrollBar.setValue(scrollBar.getValue() + e.getWheelRotation() * 3));
+        scrollBar.addAdjustmentListener(e -> {
+            if (!adjusting) {
+                showLine(scrollBar.getValue());
+            }
+        });
+        scrollPane.getViewport().addChangeListener(e -> {
+            if (!adjusting && document != null) {
+                viewScrolled();
+            }
+        });
+        scrollPane.getViewport().addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                if (document != null) {
+                    showLine(getTopLine());
+                }
+            }
+        });
+
+        // Moving to the beginning or the end of the text moves to the beginning or the end of the file
+        int menuMask = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        bindKey(KeyStroke.getKeyStroke(KeyEvent.VK_HOME, InputEvent.CTRL_DOWN_MASK), "fileStart", () -> goToLine(0));
+        bindKey(KeyStroke.getKeyStroke(KeyEvent.VK_END, InputEvent.CTRL_DOWN_MASK), "fileEnd", () -> goToLine(Long.MAX_VALUE));
+        if (menuMask != InputEvent.CTRL_DOWN_MASK) {
+            bindKey(KeyStroke.getKeyStroke(KeyEvent.VK_UP, menuMask), "fileStart", () -> goToLine(0));
+            bindKey(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, menuMask), "fileEnd", () -> goToLine(Long.MAX_VALUE));
+        }
+
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+        ui.add(scrollPane, BorderLayout.CENTER);
+        ui.add(scrollBar, BorderLayout.EAST);
+        ui.add(statusLabel, BorderLayout.SOUTH);
+
+        initMenuBarItems();
+    }
+
+    private void bindKey(KeyStroke keyStroke, String actionName, Runnable action) {
+        textArea.getInputMap().put(keyStroke, actionName);
+        textArea.getActionMap().put(actionName, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+
+    private void initMenuBarItems() {
+        MnemonicHelper menuItemMnemonicHelper = new MnemonicHelper();
+        editMenu = new JMenu(Translator.get("text_viewer.edit"));
+        MenuToolkit.addMenuItem(editMenu, Translator.get("text_viewer.copy"), menuItemMnemonicHelper, null, e -> textArea.copy());
+        editMenu.addSeparator();
+        MenuToolkit.addMenuItem(editMenu, Translator.get("text_viewer.find"), menuItemMnemonicHelper, DesktopManager.getActionShortcuts().getDefaultKeystroke(ActionType.Find), e -> find());
+        MenuToolkit.addMenuItem(editMenu, Translator.get("text_viewer.find_next"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), e -> findNext());
+        MenuToolkit.addMenuItem(editMenu, Translator.get("text_viewer.find_previous"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F3, KeyEvent.SHIFT_DOWN_MASK), e -> doSearch(false));
+        editMenu.addSeparator();
+        MenuToolkit.addMenuItem(editMenu, Translator.get("text_viewer.go_to_line"), menuItemMnemonicHelper,
+                KeyStroke.getKeyStroke(KeyEvent.VK_G, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()), e -> showGoToLineDialog());
+
+        viewMenu = new JMenu(Translator.get("text_viewer.view"));
+        JMenuItem followItem = MenuToolkit.addCheckBoxMenuItem(viewMenu, Translator.get("text_viewer.follow_changes"), menuItemMnemonicHelper, null, null);
+        followItem.addActionListener(e -> setFollowing(followItem.isSelected()));
+    }
+
+    ///////////////////////////////
+    // FileViewer implementation //
+    ///////////////////////////////
+
+    @Override
+    public void open(AbstractFile file) throws IOException {
+        openDocument(file, null);
+    }
+
+    private void openDocument(AbstractFile file, String encoding) throws IOException {
+        LargeTextDocument newDocument = new LargeTextDocument(file, encoding);
+        closeDocument();
+        document = newDocument;
+        this.encoding = document.getCharset().name();
+        windowStart = 0;
+        windowLineCount = 0;
+        startIndexing();
+        loadWindow(0, 0);
+        setTopLine(0);
+        textArea.setCaretPosition(0);
+        refreshTimer.start();
+    }
+
+    private void closeDocument() {
+        if (document != null) {
+            indexingCancelled.set(true);
+            searchCancelled.set(true);
+            searching = false;
+            // The file is closed once the background tasks that read it have seen the cancellation
+            LargeTextDocument oldDocument = document;
+            Future<?> oldIndexing = indexing;
+            Future<?> oldSearch = search;
+            EXECUTOR.submit(() -> {
+                awaitQuietly(oldIndexing);
+                awaitQuietly(oldSearch);
+                oldDocument.close();
+            });
+            document = null;
+            indexing = null;
+            search = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        refreshTimer.stop();
+        closeDocument();
+    }
+
+    @Override
+    public JComponent getUI() {
+        return ui;
+    }
+
+    @Override
+    public void setPresenter(ViewerPresenter presenter) {
+        this.presenter = presenter;
+    }
+
+    @Override
+    public void extendMenu(JMenuBar menuBar) {
+        EncodingMenu encodingMenu = new EncodingMenu(new DialogOwner(presenter.getWindowFrame()), encoding);
+        encodingMenu.addEncodingListener(this);
+
+        menuBar.add(editMenu);
+        menuBar.add(viewMenu);
+        menuBar.add(encodingMenu);
+    }
+
+    @Override
+    public void requestFocus() {
+        textArea.requestFocusInWindow();
+        if (fromSearchWithContent) {
+            findNext();
+        }
+    }
+
+    /////////////////////////////////////
+    // EncodingListener implementation //
+    /////////////////////////////////////
+
+    @Override
+    public void encodingChanged(Object source, String oldEncoding, String newEncoding) {
+        AbstractFile file = document.getFile();
+        long topLine = getTopLine();
+        try {
+            openDocument(file, newEncoding);
+            showLine(topLine);
+        } catch (IOException e) {
+            InformationDialog.showErrorDialog(presenter.getWindowFrame(), Translator.get("read_error"), Translator.get("file_editor.cannot_read_file", file.getName()));
+        }
+    }
+
+    //////////////
+    // Indexing //
+    //////////////
+
+    /**
+     * Indexes the lines of the file that are not indexed yet, in background.
+     */
+    private void startIndexing() {
+        LargeTextDocument document = this.document;
+        AtomicBoolean cancelled = new AtomicBoolean();
+        indexingCancelled = cancelled;
+        indexing = EXECUTOR.submit(() -> {
+            try {
+                if (document.getSize() < document.getIndexedSize()) {
+                    // The file was truncated or replaced: start over
+                    SwingUtilities.invokeLater(() -> {
+                        if (this.document == document) {
+                            reopen();
+                        }
+                    });
+                    return;
+                }
+                document.index(cancelled::get);
+            } catch (IOException e) {
+                LOGGER.info("Error while indexing " + document.getFile(), e);
+            }
+        });
+    }
+
+    private void reopen() {
+        try {
+            openDocument(document.getFile(), encoding);
+            if (following) {
+                goToLine(Long.MAX_VALUE);
+            }
+        } catch (IOException e) {
+            LOGGER.info("Error while reopening " + document.getFile(), e);
+            setFollowing(false);
+        }
+    }
+
+    /**
+     * Waits for the given background task to complete, whatever its outcome.
+     */
+    private static void awaitQuietly(Future<?> task) {
+        if (task == null) {
+            return;
+        }
+        try {
+            task.get();
+        } catch (ExecutionException | CancellationException e) {
+            LOGGER.debug("Background task failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isIndexing() {
+        return indexing != null && !indexing.isDone();
+    }
+
+    /**
+     * Called periodically: shows the lines that were indexed since the last call, and follows the file if needed.
+     */
+    private void refresh() {
+        if (document == null) {
+            return;
+        }
+
+        long indexedSize = document.getIndexedSize();
+        if (indexedSize != windowIndexedSize) {
+            updateScrollBar();
+            // Lines that are loaded may be incomplete if they were at the end of the indexed part of the file
+            if (windowStart + windowLineCount >= document.getLineCount() - 1) {
+                long topLine = getTopLine();
+                long caretLine = getCaretLine();
+                loadWindow(Math.max(0, topLine - MARGIN_LINES), topLine);
+                setCaretLine(caretLine);
+                setTopLine(topLine);
+            }
+            windowIndexedSize = indexedSize;
+        }
+
+        if (following) {
+            if (!isIndexing()) {
+                startIndexing();
+            }
+            goToLine(Long.MAX_VALUE);
+        }
+        updateStatus();
+    }
+
+    private void setFollowing(boolean following) {
+        this.following = following;
+        if (following) {
+            goToLine(Long.MAX_VALUE);
+        }
+    }
+
+    private void updateStatus() {
+        if (document == null) {
+            return;
+        }
+
+        String status = Translator.get("text_viewer.large_file.status", Long.toString(getCaretLine() + 1), Long.toString(document.getLineCount()));
+        if (isIndexing()) {
+            try {
+                long size = Math.max(document.getSize(), 1);
+                status += " - " + Translator.get("text_viewer.large_file.indexing", Long.toString(document.getIndexedSize() * 100 / size));
+            } catch (IOException e) {
+                LOGGER.debug("Error while getting the size of " + document.getFile(), e);
+            }
+        }
+        if (searching) {
+            status += " - " + Translator.get("text_viewer.large_file.searching");
+        }
+        statusLabel.setText(status);
+    }
+
+    ////////////////////
+    // Loaded window  //
+    ////////////////////
+
+    /**
+     * Returns the number of lines that fit in the view.
+     */
+    private int getVisibleLines() {
+        return Math.max(1, scrollPane.getViewport().getExtentSize().height / getLineHeight());
+    }
+
+    private int getLineHeight() {
+        return Math.max(1, textArea.getFontMetrics(textArea.getFont()).getHeight());
+    }
+
+    /**
+     * Returns the number of the first visible line.
+     */
+    private long getTopLine() {
+        int y = scrollPane.getViewport().getViewPosition().y - textArea.getInsets().top;
+        return windowStart + Math.max(0, y) / getLineHeight();
+    }
+
+    /**
+     * Scrolls the view so that the given line, which must be loaded, is the first visible one.
+     */
+    private void setTopLine(long line) {
+        adjusting = true;
+        try {
+            int y = (int) (line - windowStart) * getLineHeight();
+            int maxY = Math.max(0, textArea.getHeight() - scrollPane.getViewport().getExtentSize().height);
+            scrollPane.getViewport().setViewPosition(new Point(scrollPane.getViewport().getViewPosition().x, Math.min(y, maxY)));
+            updateScrollBar();
+        } finally {
+            adjusting = false;
+        }
+    }
+
+    private void updateScrollBar() {
+        boolean wasAdjusting = adjusting;
+        adjusting = true;
+        try {
+            int lineCount = (int) Math.min(document.getLineCount(), Integer.MAX_VALUE);
+            int visibleLines = Math.min(getVisibleLines(), lineCount);
+            int value = (int) Math.min(getTopLine(), lineCount - visibleLines);
+            scrollBar.setValues(value, visibleLines, 0, lineCount);
+            scrollBar.setBlockIncrement(visibleLines);
+        } finally {
+            adjusting = wasAdjusting;
+        }
+    }
+
+    /**
+     * Loads lines in the text area.
+     *
+     * @param firstLine the first line to load
+     * @param topLine the first line that will be visible, the lines up to the last visible one are always loaded
+     */
+    private void loadWindow(long firstLine, long topLine) {
+        int visibleLines = getVisibleLines();
+        List<String> lines;
+        try {
+            lines = document.readLines(firstLine, (int) (topLine - firstLine) + visibleLines + MARGIN_LINES);
+        } catch (IOException e) {
+            LOGGER.info("Error while reading " + document.getFile(), e);
+            return;
+        }
+
+        int mandatoryLines = (int) (topLine - firstLine) + visibleLines;
+        StringBuilder text = new StringBuilder();
+        int count = 0;
+        for (String line : lines) {
+            if (count >= mandatoryLines && text.length() + line.length() > MAX_LOADED_CHARS) {
+                break;
+            }
+            if (count > 0) {
+                text.append('\n');
+            }
+            text.append(line);
+            count++;
+        }
+
+        adjusting = true;
+        try {
+            windowStart = firstLine;
+            windowLineCount = count;
+            windowIndexedSize = document.getIndexedSize();
+            textArea.setText(text.toString());
+            // The new text must be laid out before the view can be moved
+            scrollPane.getViewport().validate();
+        } finally {
+            adjusting = false;
+        }
+    }
+
+    /**
+     * Shows the given line at the top of the view, loading lines if needed.
+     */
+    private void showLine(long line) {
+        if (document == null) {
+            return;
+        }
+
+        long lineCount = document.getLineCount();
+        int visibleLines = getVisibleLines();
+        line = Math.max(0, Math.min(line, lineCount - visibleLines));
+        long windowEnd = windowStart + windowLineCount;
+        boolean loaded = line >= windowStart && (line + visibleLines <= windowEnd || windowEnd >= lineCount);
+        if (!loaded) {
+            long caretLine = getCaretLine();
+            loadWindow(Math.max(0, line - MARGIN_LINES), line);
+            setCaretLine(caretLine);
+        }
+        setTopLine(line);
+        updateStatus();
+    }
+
+    /**
+     * Called when the view was scrolled by the text area, e.g. when the caret was moved: loads other lines when
+     * the view gets close to the boundaries of the loaded lines.
+     */
+    private void viewScrolled() {
+        updateScrollBar();
+        updateStatus();
+
+        long topLine = getTopLine();
+        long windowEnd = windowStart + windowLineCount;
+        boolean closeToStart = windowStart > 0 && topLine - windowStart < MARGIN_LINES / 2;
+        boolean closeToEnd = windowEnd < document.getLineCount() && windowEnd - (topLine + getVisibleLines()) < MARGIN_LINES / 2;
+        if (closeToStart || closeToEnd) {
+            SwingUtilities.invokeLater(() -> {
+                long caretLine = getCaretLine();
+                loadWindow(Math.max(0, topLine - MARGIN_LINES), topLine);
+                setCaretLine(caretLine);
+                setTopLine(topLine);
+            });
+        }
+    }
+
+    /**
+     * Returns the number of the line the caret is on.
+     */
+    private long getCaretLine() {
+        try {
+            return windowStart + textArea.getLineOfOffset(textArea.getCaretPosition());
+        } catch (BadLocationException e) {
+            return windowStart;
+        }
+    }
+
+    /**
+     * Moves the caret to the beginning of the given line, if it is loaded.
+     */
+    private void setCaretLine(long line) {
+        if (line >= windowStart && line < windowStart + windowLineCount) {
+            adjusting = true;
+            try {
+                textArea.setCaretPosition(textArea.getLineStartOffset((int) (line - windowStart)));
+            } catch (BadLocationException e) {
+                LOGGER.debug("Line " + line + " not loaded", e);
+            } finally {
+                adjusting = false;
+            }
+        }
+    }
+
+    /**
+     * Shows the given line and moves the caret to it.
+     *
+     * @param line the line to go to, starting at 0, past the last line to go to the last line
+     */
+    private void goToLine(long line) {
+        if (document == null) {
+            return;
+        }
+        line = Math.min(line, document.getLineCount() - 1);
+        // The line is shown in the upper part of the view, with a few lines of context above it
+        showLine(line - getVisibleLines() / 3);
+        setCaretLine(line);
+        updateStatus();
+    }
+
+    private void showGoToLineDialog() {
+        FocusDialog dialog = new FocusDialog(presenter.getWindowFrame(), Translator.get("text_viewer.go_to_line"), presenter.getWindowFrame());
+        Container contentPane = dialog.getContentPane();
+        XAlignedComponentPanel panel = new XAlignedComponentPanel(5);
+        JTextField lineField = new SelectAllOnFocusTextField(Long.toString(getCaretLine() + 1));
+        panel.addRow(Translator.get("text_viewer.go_to_line.line") + ":", lineField, 10);
+        contentPane.add(panel, BorderLayout.CENTER);
+
+        JButton okButton = new JButton(Translator.get("ok"));
+        JButton cancelButton = new JButton(Translator.get("cancel"));
+        contentPane.add(DialogToolkit.createOKCancelPanel(okButton, cancelButton, dialog.getRootPane(), e -> {
+            Object source = e.getSource();
+            if (source == okButton || source == lineField) {
+                try {
+                    goToLine(Math.max(0, Long.parseLong(lineField.getText().trim()) - 1));
+                } catch (NumberFormatException ex) {
+                    Toolkit.getDefaultToolkit().beep();
+                }
+            }
+            dialog.dispose();
+        }), BorderLayout.SOUTH);
+        lineField.addActionListener(e -> okButton.doClick());
+        dialog.setInitialFocusComponent(lineField);
+        dialog.showDialog();
+        textArea.requestFocusInWindow();
+    }
+
+    ////////////
+    // Search //
+    ////////////
+
+    private void find() {
+        FindDialog findDialog = new FindDialog(presenter.getWindowFrame(), false);
+        if (findDialog.wasValidated()) {
+            String searchString = findDialog.getSearchString();
+            if (!StringUtils.isNullOrEmpty(searchString)) {
+                SearchProperty.SEARCH_TEXT.setValue(searchString);
+                SearchProperty.TEXT_CASESENSITIVE.setValue(findDialog.getCaseSensitivity());
+                SearchProperty.TEXT_MATCH_REGEX.setValue(findDialog.getRegexMatch());
+                SearchProperty.TEXT_WHOLE_WORDS.setValue(findDialog.isWholeWords());
+                SearchProperty.TEXT_SEARCH_FORWARD.setValue(findDialog.isForwardDirection());
+
+                doSearch(findDialog.isForwardDirection());
+            }
+        }
+    }
+
+    private void findNext() {
+        if (StringUtils.isNullOrEmpty(SearchProperty.SEARCH_TEXT.getValue())) {
+            find();
+        } else {
+            doSearch(true);
+        }
+    }
+
+    /**
+     * Searches the file from the caret in background, once it is indexed, and selects the match. The search wraps
+     * around the file, as it does in {@link TextEditorImpl}.
+     */
+    private void doSearch(boolean forward) {
+        String searchString = SearchProperty.SEARCH_TEXT.getValue();
+        if (StringUtils.isNullOrEmpty(searchString) || document == null) {
+            return;
+        }
+
+        Pattern pattern;
+        try {
+            String regex = SearchProperty.TEXT_MATCH_REGEX.getBoolValue() ? searchString : Pattern.quote(searchString);
+            if (SearchProperty.TEXT_WHOLE_WORDS.getBoolValue()) {
+                regex = "\\b(?:" + regex + ")\\b";
+            }
+            pattern = Pattern.compile(regex, SearchProperty.TEXT_CASESENSITIVE.getBoolValue() ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } catch (PatternSyntaxException e) {
+            LOGGER.error("Error while running search", e);
+            beep();
+            return;
+        }
+
+        // Search after the current selection when searching forward, before it when searching backward
+        long line;
+        int column;
+        try {
+            int offset = forward ? textArea.getSelectionEnd() : textArea.getSelectionStart();
+            int lineInWindow = textArea.getLineOfOffset(offset);
+            line = windowStart + lineInWindow;
+            column = offset - textArea.getLineStartOffset(lineInWindow);
+        } catch (BadLocationException e) {
+            line = windowStart;
+            column = 0;
+        }
+
+        searchCancelled.set(true);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        searchCancelled = cancelled;
+        searching = true;
+        updateStatus();
+
+        LargeTextDocument document = this.document;
+        Future<?> currentIndexing = indexing;
+        long startLine = line;
+        int startColumn = column;
+        search = EXECUTOR.submit(() -> {
+            LargeTextDocument.Match match = null;
+            try {
+                // Lines can only be searched once they are indexed
+                if (currentIndexing != null) {
+                    currentIndexing.get();
+                }
+                match = document.find(pattern, startLine, startColumn, forward, cancelled::get);
+                if (match == null && !cancelled.get()) {
+                    match = forward ?
+                            document.find(pattern, 0, 0, true, cancelled::get) :
+                            document.find(pattern, document.getLineCount() - 1, Integer.MAX_VALUE, false, cancelled::get);
+                }
+            } catch (IOException | ExecutionException e) {
+                LOGGER.info("Error while searching " + document.getFile(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (CancellationException e) {
+                return;
+            }
+
+            LargeTextDocument.Match foundMatch = match;
+            SwingUtilities.invokeLater(() -> {
+                if (!cancelled.get()) {
+                    searching = false;
+                    showMatch(foundMatch);
+                }
+            });
+        });
+    }
+
+    private void showMatch(LargeTextDocument.Match match) {
+        if (match == null) {
+            beep();
+            updateStatus();
+            return;
+        }
+
+        goToLine(match.line);
+        try {
+            int lineInWindow = (int) (match.line - windowStart);
+            int lineStart = textArea.getLineStartOffset(lineInWindow);
+            int lineEnd = textArea.getLineEndOffset(lineInWindow);
+            textArea.select(Math.min(lineStart + match.start, lineEnd), Math.min(lineStart + match.end, lineEnd));
+        } catch (BadLocationException e) {
+            LOGGER.debug("Match not loaded", e);
+        }
+        updateStatus();
+    }
+
+    private static void beep() {
+        // The beep is played from another thread so as not to lock the event thread, see TextEditorImpl
+        new Thread(Toolkit.getDefaultToolkit()::beep).start();
+    }
+}
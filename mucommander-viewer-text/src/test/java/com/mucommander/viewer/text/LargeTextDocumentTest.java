@@ -0,0 +1,137 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.viewer.text;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+
+/**
+ * Test case for {@link LargeTextDocument}.
+ */
+public class LargeTextDocumentTest {
+
+    private AbstractFile file;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        file = FileFactory.getTemporaryFile(getClass().getName(), true);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        file.delete();
+    }
+
+    private void write(String text, Charset charset, boolean append) throws IOException {
+        try (OutputStream out = append ? file.getAppendOutputStream() : file.getOutputStream()) {
+            out.write(text.getBytes(charset));
+        }
+    }
+
+    private static List<String> getLines(int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // Lines of various lengths, some of them long enough to span several blocks
+            lines.add(i % 1000 == 999 ? "x".repeat(1000 + i) : "line " + i + " é");
+        }
+        return lines;
+    }
+
+    private void assertLines(LargeTextDocument document, List<String> lines) throws IOException {
+        Assert.assertEquals(document.getLineCount(), lines.size());
+        for (int line : new int[] { 0, 1, 1023, 1024, 1025, 2999, 5000, lines.size() - 1 }) {
+            Assert.assertEquals(document.readLines(line, 3), lines.subList(line, Math.min(line + 3, lines.size())));
+        }
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, StandardCharsets.UTF_16 }) {
+            List<String> lines = getLines(5001);
+            write(String.join("\r\n", lines), charset, false);
+
+            try (LargeTextDocument document = new LargeTextDocument(file, charset.name())) {
+                Assert.assertTrue(document.index(() -> false));
+                assertLines(document, lines);
+            }
+        }
+    }
+
+    @Test
+    public void testDetectEncoding() throws IOException {
+        write("\uFEFFfirst line\nsecond line ü\n", StandardCharsets.UTF_16BE, false);
+        try (LargeTextDocument document = new LargeTextDocument(file, null)) {
+            Assert.assertEquals(document.getCharset(), StandardCharsets.UTF_16BE);
+            document.index(() -> false);
+            Assert.assertEquals(document.readLines(0, 10), List.of("first line", "second line ü", ""));
+        }
+    }
+
+    @Test
+    public void testGrowingFile() throws IOException {
+        write("first\nsecond", StandardCharsets.UTF_8, false);
+        try (LargeTextDocument document = new LargeTextDocument(file, "UTF-8")) {
+            document.index(() -> false);
+            Assert.assertEquals(document.readLines(0, 10), List.of("first", "second"));
+            Assert.assertFalse(document.index(() -> false));
+
+            write(" line\nthird\n", StandardCharsets.UTF_8, true);
+            Assert.assertTrue(document.index(() -> false));
+            Assert.assertEquals(document.readLines(1, 10), List.of("second line", "third", ""));
+        }
+    }
+
+    @Test
+    public void testFind() throws IOException {
+        List<String> lines = getLines(5001);
+        write(String.join("\n", lines), StandardCharsets.UTF_8, false);
+        try (LargeTextDocument document = new LargeTextDocument(file, "UTF-8")) {
+            document.index(() -> false);
+            Pattern pattern = Pattern.compile("line 4\\d{3} ");
+
+            LargeTextDocument.Match match = document.find(pattern, 10, 0, true, () -> false);
+            Assert.assertEquals(match.line, 4000);
+            Assert.assertEquals(match.start, 0);
+            Assert.assertEquals(match.end, 10);
+            match = document.find(pattern, 4000, 1, true, () -> false);
+            Assert.assertEquals(match.line, 4001);
+
+            match = document.find(pattern, 5000, 0, false, () -> false);
+            Assert.assertEquals(match.line, 4998);
+            match = document.find(pattern, 4000, 0, false, () -> false);
+            Assert.assertNull(match);
+            match = document.find(pattern, 4000, 1, false, () -> false);
+            Assert.assertEquals(match.line, 4000);
+
+            Assert.assertNull(document.find(pattern, 0, 0, true, () -> true));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.sevenzipjbindings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.archive.ArchiveEntry;
+import com.mucommander.commons.file.archive.ArchiveEntryIterator;
+
+import net.sf.sevenzipjbinding.ExtractAskMode;
+import net.sf.sevenzipjbinding.ExtractOperationResult;
+import net.sf.sevenzipjbinding.IArchiveExtractCallback;
+import net.sf.sevenzipjbinding.ICryptoGetTextPassword;
+import net.sf.sevenzipjbinding.ISequentialOutStream;
+import net.sf.sevenzipjbinding.SevenZipException;
+
+/**
+ * Iterates over a set of entries of an archive while they are extracted in a single call to
+ * {@link net.sf.sevenzipjbinding.IInArchive#extract(int[], boolean, IArchiveExtractCallback)}, so that a solid block
+ * is decoded once for all the entries it contains rather than once per entry.
+ *
+ * <p>The extraction runs in a separate thread and writes the contents of each regular file entry to an
+ * {@link ExtractionPipe}, which is returned by {@link #getInputStream(ArchiveEntry)} while the entry is the current
+ * one. Entries are returned in the order of their index in the archive, which is the order they are extracted in.
+ * When moving to the next entry, the rest of the current entry is skipped.</p>
+ */
+class BatchExtractionIterator implements ArchiveEntryIterator, IArchiveExtractCallback, ICryptoGetTextPassword {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchExtractionIterator.class);
+
+    private final List<ArchiveEntry> entries;
+    /** Pipes of the regular file entries, by index in the archive */
+    private final Map<Integer, ExtractionPipe> pipes = new HashMap<>();
+    private final String password;
+
+    /** Index of the next entry to return in the list of entries */
+    private int nextEntryIndex;
+    /** Pipe of the entry last returned by {@link #nextEntry()}, null if it is not a regular file or was read already */
+    private ExtractionPipe currentPipe;
+    private ArchiveEntry currentEntry;
+
+    /** Pipe of the entry being extracted, accessed by the extracting thread only */
+    private ExtractionPipe extractedPipe;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates an iterator over the given entries and starts extracting them with the given archive handle, which is
+     * released once the extraction is over.
+     *
+     * @param entries the entries to iterate over
+     * @param handle a handle of the archive
+     * @param password the password of the archive, <code>null</code> if it has none
+     * @param executor the executor in which entries are extracted
+     */
+    BatchExtractionIterator(List<ArchiveEntry> entries, InArchiveCache.Handle handle, String password, Executor executor) {
+        this.entries = new ArrayList<>(entries);
+        this.entries.sort(Comparator.comparingInt(entry -> (Integer) entry.getEntryObject()));
+        this.password = password;
+
+        int[] indices = this.entries.stream()
+                .filter(entry -> !entry.isDirectory())
+                .mapToInt(entry -> (Integer) entry.getEntryObject())
+                .toArray();
+        for (int index : indices) {
+            pipes.put(index, new ExtractionPipe(true));
+        }
+
+        executor.execute(() -> extract(handle, indices));
+    }
+
+    private void extract(InArchiveCache.Handle handle, int[] indices) {
+        IOException failure = null;
+        try {
+            handle.inArchive.extract(indices, false, this);
+        } catch (SevenZipException e) {
+            if (!closed) {
+                LOGGER.warn("failed to extract entries from archive: " + e.getMessage());
+                LOGGER.debug("failed to extract entries from archive", e);
+            }
+            failure = e;
+        } finally {
+            // Do not leave readers waiting for entries that were not extracted
+            for (ExtractionPipe pipe : pipes.values()) {
+                pipe.finish(failure != null ? failure : new IOException("Entry was not extracted"));
+            }
+            InArchiveCache.release(handle, failure == null);
+        }
+    }
+
+    /**
+     * Returns a stream to read the contents of the given entry if it is the entry last returned by
+     * {@link #nextEntry()}, and its contents have not been read already.
+     *
+     * @param entry the entry to read
+     * @return a stream to read the contents of the entry, <code>null</code> if the entry must be extracted on its own
+     */
+    InputStream getInputStream(ArchiveEntry entry) {
+        if (entry != currentEntry || currentPipe == null) {
+            return null;
+        }
+
+        InputStream in = currentPipe;
+        // A second attempt to read the entry cannot rewind the pipe
+        currentPipe = null;
+        return in;
+    }
+
+    /////////////////////////////////////////
+    // ArchiveEntryIterator implementation //
+    /////////////////////////////////////////
+
+    @Override
+    public ArchiveEntry nextEntry() {
+        ExtractionPipe previousPipe = currentEntry == null ? null : pipes.get((Integer) currentEntry.getEntryObject());
+        if (previousPipe != null) {
+            // Skip the rest of the previous entry
+            previousPipe.close();
+        }
+
+        if (nextEntryIndex == entries.size()) {
+            currentEntry = null;
+            currentPipe = null;
+            return null;
+        }
+
+        currentEntry = entries.get(nextEntryIndex++);
+        currentPipe = pipes.get((Integer) currentEntry.getEntryObject());
+        return currentEntry;
+    }
+
+    @Override
+    public void close() {
+        // Once all entries have been iterated, the extraction only skips the rest of the last ones and the archive
+        // handle can be reused
+        if (currentEntry == null && nextEntryIndex == entries.size()) {
+            return;
+        }
+
+        closed = true;
+        for (ExtractionPipe pipe : pipes.values()) {
+            pipe.cancel();
+        }
+    }
+
+    ////////////////////////////////////////////
+    // IArchiveExtractCallback implementation //
+    ////////////////////////////////////////////
+
+    @Override
+    public ISequentialOutStream getStream(int index, ExtractAskMode extractAskMode) throws SevenZipException {
+        checkClosed();
+        extractedPipe = extractAskMode == ExtractAskMode.EXTRACT ? pipes.get(index) : null;
+        return extractedPipe;
+    }
+
+    @Override
+    public void prepareOperation(ExtractAskMode extractAskMode) {
+    }
+
+    @Override
+    public void setOperationResult(ExtractOperationResult extractOperationResult) {
+        if (extractedPipe != null) {
+            extractedPipe.finish(extractOperationResult == ExtractOperationResult.OK
+                    ? null
+                    : new IOException("failed to extract entry: " + extractOperationResult));
+            extractedPipe = null;
+        }
+    }
+
+    @Override
+    public void setTotal(long total) {
+    }
+
+    @Override
+    public void setCompleted(long complete) throws SevenZipException {
+        // Called regularly, also while decoding entries that are not extracted
+        checkClosed();
+    }
+
+    private void checkClosed() throws SevenZipException {
+        if (closed) {
+            throw new SevenZipException("Extraction cancelled");
+        }
+    }
+
+    ///////////////////////////////////////////
+    // ICryptoGetTextPassword implementation //
+    ///////////////////////////////////////////
+
+    @Override
+    public String cryptoGetTextPassword() {
+        return password == null ? "" : password;
+    }
+}
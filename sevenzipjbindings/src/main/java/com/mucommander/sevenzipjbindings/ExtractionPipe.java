@@ -0,0 +1,173 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.sevenzipjbindings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+
+import net.sf.sevenzipjbinding.ISequentialOutStream;
+import net.sf.sevenzipjbinding.SevenZipException;
+
+/**
+ * Passes the contents of an entry from the thread that extracts it, which writes to this pipe as an
+ * {@link ISequentialOutStream}, to the thread that reads it from this pipe as an <code>InputStream</code>.
+ *
+ * <p>At most {@link #MAX_PENDING_CHUNKS} chunks of data are buffered: the extracting thread waits for the reader when
+ * it gets ahead of it. When the reader closes the pipe before the end of the entry, the rest of the entry is either
+ * skipped, for an entry that is part of a batch extraction, or the extraction is aborted.</p>
+ */
+class ExtractionPipe extends InputStream implements ISequentialOutStream {
+
+    /** Maximum number of chunks of data written by the extracting thread and not read yet */
+    private static final int MAX_PENDING_CHUNKS = 16;
+
+    /** Whether the rest of the entry is skipped rather than the extraction aborted when the pipe is closed */
+    private final boolean skippable;
+
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    /** Chunk being read, null if the next one has not been polled yet */
+    private byte[] chunk;
+    private int chunkOffset;
+
+    private boolean finished;
+    private IOException failure;
+    private boolean closed;
+    private boolean cancelled;
+
+    /**
+     * Creates a new pipe.
+     *
+     * @param skippable whether the rest of the entry is skipped rather than the extraction aborted when the pipe is
+     * closed before the end of the entry
+     */
+    ExtractionPipe(boolean skippable) {
+        this.skippable = skippable;
+    }
+
+    /**
+     * Signals the reader that the entry has been entirely written, or that it could not be extracted.
+     *
+     * @param failure the reason why the entry could not be extracted, <code>null</code> if it was extracted
+     */
+    synchronized void finish(IOException failure) {
+        if (!finished) {
+            finished = true;
+            this.failure = failure;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Closes this pipe and makes the extracting thread abort the extraction the next time it writes to it.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        close();
+    }
+
+    /////////////////////////////////////////
+    // ISequentialOutStream implementation //
+    /////////////////////////////////////////
+
+    @Override
+    public synchronized int write(byte[] data) throws SevenZipException {
+        try {
+            while (chunks.size() >= MAX_PENDING_CHUNKS && !closed) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SevenZipException("Extraction interrupted");
+        }
+
+        if (closed) {
+            if (cancelled || !skippable) {
+                throw new SevenZipException("Extraction cancelled");
+            }
+        } else {
+            // SevenZipJBinding allocates a new array for each chunk, so that it does not need to be copied
+            chunks.add(data);
+            notifyAll();
+        }
+        return data.length;
+    }
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (chunk == null) {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            chunk = chunks.poll();
+            if (chunk != null) {
+                chunkOffset = 0;
+                // Let the extracting thread write the next chunk
+                notifyAll();
+            } else if (finished) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return -1;
+            } else {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+
+        int nbRead = Math.min(len, chunk.length - chunkOffset);
+        System.arraycopy(chunk, chunkOffset, b, off, nbRead);
+        chunkOffset += nbRead;
+        if (chunkOffset == chunk.length) {
+            chunk = null;
+        }
+        return nbRead;
+    }
+
+    @Override
+    public synchronized int available() {
+        return chunk == null ? 0 : chunk.length - chunkOffset;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        chunks.clear();
+        chunk = null;
+        notifyAll();
+    }
+}
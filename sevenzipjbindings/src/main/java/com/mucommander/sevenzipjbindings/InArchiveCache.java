@@ -0,0 +1,219 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.sevenzipjbindings;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.sevenzipjbinding.IInArchive;
+
+/**
+ * Keeps a few open {@link IInArchive} handles, so that listing an archive and then previewing or extracting its
+ * entries does not reopen and parse the archive each time.
+ *
+ * <p>Handles are keyed by the path and date of the archive, and by the password it was opened with. A handle is used
+ * by a single thread at a time: {@link #acquire(String, long, String, Opener)} takes it out of the cache, and
+ * {@link #release(Handle, boolean)} puts it back. Handles that have not been used for {@link #IDLE_TIMEOUT}
+ * milliseconds are closed, so that archives are not kept open longer than necessary.</p>
+ */
+final class InArchiveCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InArchiveCache.class);
+
+    /** Maximum number of handles kept open */
+    static final int MAX_SIZE = 4;
+
+    /** Number of milliseconds after which an unused handle is closed */
+    static final long IDLE_TIMEOUT = 10000;
+
+    /** Cached handles, from the least recently to the most recently released one */
+    private static final Map<Key, Handle> HANDLES = new LinkedHashMap<>();
+
+    private static final ScheduledExecutorService CLEANER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "InArchiveCache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Whether a task that closes idle handles is scheduled */
+    private static boolean cleanupScheduled;
+
+    private InArchiveCache() {
+    }
+
+    /**
+     * Opens an archive when there is no cached handle for it.
+     */
+    interface Opener {
+        IInArchive open() throws IOException;
+    }
+
+    /**
+     * Returns a cached handle of the given archive, or a handle opened with the given opener if there is none.
+     * The handle must be given back to {@link #release(Handle, boolean)} once it is not used anymore.
+     *
+     * @param path the path of the archive
+     * @param date the date of the archive
+     * @param password the password of the archive, <code>null</code> if it has none
+     * @param opener opens the archive if there is no cached handle for it
+     * @return a handle of the archive
+     * @throws IOException if the archive could not be opened
+     */
+    static Handle acquire(String path, long date, String password, Opener opener) throws IOException {
+        Key key = new Key(path, date, password);
+        synchronized (HANDLES) {
+            Handle handle = HANDLES.remove(key);
+            if (handle != null) {
+                return handle;
+            }
+        }
+        return new Handle(key, opener.open());
+    }
+
+    /**
+     * Gives back a handle returned by {@link #acquire(String, long, String, Opener)}. The handle is cached if it can be
+     * reused, closed otherwise, e.g. if an error occurred while it was used.
+     *
+     * @param handle the handle that is not used anymore
+     * @param reusable whether the handle can be reused
+     */
+    static void release(Handle handle, boolean reusable) {
+        List<Handle> evictedHandles = new ArrayList<>();
+        if (reusable) {
+            synchronized (HANDLES) {
+                // Handles of older versions of the archive are not needed anymore, nor a handle of the same version
+                // that was released meanwhile
+                Iterator<Handle> iterator = HANDLES.values().iterator();
+                while (iterator.hasNext()) {
+                    Handle cachedHandle = iterator.next();
+                    if (cachedHandle.key.path.equals(handle.key.path)) {
+                        iterator.remove();
+                        evictedHandles.add(cachedHandle);
+                    }
+                }
+
+                handle.releaseTime = System.currentTimeMillis();
+                HANDLES.put(handle.key, handle);
+
+                iterator = HANDLES.values().iterator();
+                while (HANDLES.size() > MAX_SIZE) {
+                    evictedHandles.add(iterator.next());
+                    iterator.remove();
+                }
+
+                if (!cleanupScheduled) {
+                    cleanupScheduled = true;
+                    CLEANER.schedule(() -> closeIdleHandles(System.currentTimeMillis()), IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+                }
+            }
+        } else {
+            evictedHandles.add(handle);
+        }
+
+        evictedHandles.forEach(Handle::close);
+    }
+
+    /**
+     * Closes the handles that have not been used for {@link #IDLE_TIMEOUT} milliseconds at the given time, and
+     * schedules the next cleanup if handles remain.
+     *
+     * @param now the current time, in milliseconds
+     */
+    static void closeIdleHandles(long now) {
+        List<Handle> idleHandles = new ArrayList<>();
+        synchronized (HANDLES) {
+            long nextCleanupDelay = IDLE_TIMEOUT;
+            Iterator<Handle> iterator = HANDLES.values().iterator();
+            while (iterator.hasNext()) {
+                Handle handle = iterator.next();
+                long idleTime = now - handle.releaseTime;
+                if (idleTime >= IDLE_TIMEOUT) {
+                    iterator.remove();
+                    idleHandles.add(handle);
+                } else {
+                    nextCleanupDelay = Math.min(nextCleanupDelay, IDLE_TIMEOUT - idleTime);
+                }
+            }
+
+            cleanupScheduled = !HANDLES.isEmpty();
+            if (cleanupScheduled) {
+                CLEANER.schedule(() -> closeIdleHandles(System.currentTimeMillis()), nextCleanupDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        idleHandles.forEach(Handle::close);
+    }
+
+    /**
+     * An open archive, and the key it is cached with.
+     */
+    static class Handle {
+        private final Key key;
+        final IInArchive inArchive;
+        private long releaseTime;
+
+        private Handle(Key key, IInArchive inArchive) {
+            this.key = key;
+            this.inArchive = inArchive;
+        }
+
+        private void close() {
+            try {
+                inArchive.close();
+            } catch (IOException e) {
+                LOGGER.debug("failed to close archive " + key.path, e);
+            }
+        }
+    }
+
+    private static class Key {
+        private final String path;
+        private final long date;
+        private final String password;
+
+        private Key(String path, long date, String password) {
+            this.path = path;
+            this.date = date;
+            this.password = password;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return path.equals(key.path) && date == key.date && Objects.equals(password, key.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, date, password);
+        }
+    }
+}
@@ -23,6 +23,8 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
@@ -33,16 +35,15 @@ import com.mucommander.commons.file.archive.AbstractROArchiveFile;
 import com.mucommander.commons.file.archive.ArchiveEntry;
 import com.mucommander.commons.file.archive.ArchiveEntryIterator;
 import com.mucommander.commons.file.archive.WrapperArchiveEntryIterator;
-import com.mucommander.commons.util.CircularByteBuffer;
 import com.mucommander.commons.util.StringUtils;
 import com.mucommander.sevenzipjbindings.multivolume.InArchiveWrapper;
 import com.mucommander.sevenzipjbindings.multivolume.SevenZipMultiVolumeCallbackHandler;
 import com.mucommander.sevenzipjbindings.multivolume.SevenZipRarMultiVolumeCallbackHandler;
 
 import net.sf.sevenzipjbinding.ArchiveFormat;
+import net.sf.sevenzipjbinding.ExtractOperationResult;
 import net.sf.sevenzipjbinding.IInArchive;
 import net.sf.sevenzipjbinding.IInStream;
-import net.sf.sevenzipjbinding.ISequentialOutStream;
 import net.sf.sevenzipjbinding.PropID;
 import net.sf.sevenzipjbinding.SevenZip;
 import net.sf.sevenzipjbinding.SevenZipException;
@@ -58,7 +59,13 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
 
     private static final String MULTI_PART_7Z_EXT = ".7z.001";
 
-    protected IInArchive inArchive;
+    /** Threads in which entries are extracted, writing their contents to the streams they are read from */
+    private static final ExecutorService EXTRACTION_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "SevenZipExtraction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private ArchiveFormat sevenZipJBindingFormat;
 
     private final byte[] formatSignature;
@@ -83,35 +90,41 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
      * @throws IOException in case the file cannot be opened or its signature differs from the specified signature
      */
     public SevenZipJBindingROArchiveFile check() throws IOException {
-        openInArchive();
+        // The handle is kept open for the listing of the archive that usually follows
+        InArchiveCache.release(acquireInArchive(), true);
         return this;
     }
 
+    /**
+     * Returns a handle of the archive, reusing a cached one if the archive was opened recently. The handle must be
+     * given back to {@link InArchiveCache#release(InArchiveCache.Handle, boolean)} once it is not used anymore.
+     */
+    private InArchiveCache.Handle acquireInArchive() throws IOException {
+        return InArchiveCache.acquire(file.getAbsolutePath(), file.getDate(), password, this::openInArchive);
+    }
+
     private IInArchive openInArchive() throws IOException {
-        if (inArchive == null) {
-            boolean multiPartRar = MULTI_PART_RAR_PATTERN.matcher(file.getName()).find();
-            boolean multiPartSevenZip = file.getName().toLowerCase().endsWith(MULTI_PART_7Z_EXT);
-
-            if (multiPartRar) {
-                SevenZipRarMultiVolumeCallbackHandler handler = new SevenZipRarMultiVolumeCallbackHandler(formatSignature, password);
-                IInStream firstStream = handler.getStream(file.getAbsolutePath());
-                IInArchive tmpInArchive = SevenZip.openInArchive(sevenZipJBindingFormat, firstStream, handler);
-                inArchive = new InArchiveWrapper(tmpInArchive, handler);
-            } else if (multiPartSevenZip) {
-                SevenZipMultiVolumeCallbackHandler handler = new SevenZipMultiVolumeCallbackHandler(formatSignature, file, password);
-                IInArchive tmpInArchive = SevenZip.openInArchive(sevenZipJBindingFormat, new VolumedArchiveInStream(handler));
-                if (isEnc(tmpInArchive) && password == null) {
-                    // Throwing this exception to trigger password dialog
-                    throw new IOException(String.format("Password protected file but password is null [file = %s]", file.getName()));
-                }
-                inArchive = new InArchiveWrapper(tmpInArchive, handler);
-            } else {
-                SignatureCheckedRandomAccessFile in = new SignatureCheckedRandomAccessFile(file, formatSignature);
-                IInArchive tmpInArchive = SevenZip.openInArchive(sevenZipJBindingFormat, in, password);
-                inArchive = new InArchiveWrapper(tmpInArchive, in);
+        boolean multiPartRar = MULTI_PART_RAR_PATTERN.matcher(file.getName()).find();
+        boolean multiPartSevenZip = file.getName().toLowerCase().endsWith(MULTI_PART_7Z_EXT);
+
+        if (multiPartRar) {
+            SevenZipRarMultiVolumeCallbackHandler handler = new SevenZipRarMultiVolumeCallbackHandler(formatSignature, password);
+            IInStream firstStream = handler.getStream(file.getAbsolutePath());
+            IInArchive tmpInArchive = SevenZip.openInArchive(sevenZipJBindingFormat, firstStream, handler);
+            return new InArchiveWrapper(tmpInArchive, handler);
+        } else if (multiPartSevenZip) {
+            SevenZipMultiVolumeCallbackHandler handler = new SevenZipMultiVolumeCallbackHandler(formatSignature, file, password);
+            IInArchive tmpInArchive = SevenZip.openInArchive(sevenZipJBindingFormat, new VolumedArchiveInStream(handler));
+            if (isEnc(tmpInArchive) && password == null) {
+                // Throwing this exception to trigger password dialog
+                throw new IOException(String.format("Password protected file but password is null [file = %s]", file.getName()));
             }
+            return new InArchiveWrapper(tmpInArchive, handler);
+        } else {
+            SignatureCheckedRandomAccessFile in = new SignatureCheckedRandomAccessFile(file, formatSignature);
+            IInArchive tmpInArchive = SevenZip.openInArchive(sevenZipJBindingFormat, in, password);
+            return new InArchiveWrapper(tmpInArchive, in);
         }
-        return inArchive;
     }
 
     private boolean isEnc(IInArchive archive) {
@@ -133,66 +146,70 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
 
     @Override
     public ArchiveEntryIterator getEntryIterator() throws IOException {
+        InArchiveCache.Handle handle = acquireInArchive();
+        boolean listed = false;
         try {
-            try (IInArchive sevenZipFile = openInArchive()) {
-                int nbEntries = sevenZipFile.getNumberOfItems();
-                List<ArchiveEntry> entries = new ArrayList<>();
-                for (int i = 0; i < nbEntries; i++) {
-                    entries.add(createArchiveEntry(i, sevenZipFile));
-                }
-                return new WrapperArchiveEntryIterator(entries.iterator());
+            IInArchive sevenZipFile = handle.inArchive;
+            int nbEntries = sevenZipFile.getNumberOfItems();
+            List<ArchiveEntry> entries = new ArrayList<>();
+            for (int i = 0; i < nbEntries; i++) {
+                entries.add(createArchiveEntry(i, sevenZipFile));
             }
+            listed = true;
+            return new WrapperArchiveEntryIterator(entries.iterator());
         } catch (SevenZipException e) {
             LOGGER.warn("failed to list archive: " + e.getMessage());
             LOGGER.debug("failed to list archive", e);
             throw new IOException(e);
         } finally {
-            if (inArchive != null) {
-                inArchive.close();
-            }
-            inArchive = null;
+            InArchiveCache.release(handle, listed);
         }
     }
 
+    /**
+     * Returns <code>true</code>: entries can be extracted in a single call to
+     * {@link IInArchive#extract(int[], boolean, net.sf.sevenzipjbinding.IArchiveExtractCallback)}, which decodes each
+     * solid block once rather than once per entry.
+     */
+    @Override
+    public boolean isBatchExtractionSupported() {
+        return true;
+    }
+
     @Override
-    public InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) {
-        final CircularByteBuffer cbb = new CircularByteBuffer(CircularByteBuffer.INFINITE_SIZE);
-        new Thread(() -> {
-            synchronized (SevenZipJBindingROArchiveFile.this) {
-                try {
-                    try (IInArchive sevenZipFile = openInArchive()) {
-                        ISequentialOutStream outStream = data -> {
-                            try {
-                                cbb.getOutputStream().write(data);
-                            } catch (IOException e) {
-                                throw new SevenZipException(e);
-                            }
-                            return data.length; // Return amount of proceed data
-                        };
-                        sevenZipFile.extractSlow((Integer) entry.getEntryObject(), outStream, password);
-                    }
-                } catch (IOException e) {
-                    LOGGER.warn("failed to extract entry from archive: " + e.getMessage());
-                    LOGGER.debug("failed to extract entry from archive", e);
-
-                    try {
-                        // Close input stream to make sure reader thread will be notified
-                        cbb.getInputStream().close();
-                    } catch (IOException e2) {
-                        LOGGER.debug("failed to close input stream", e2);
-                    }
-                } finally {
-                    try {
-                        cbb.getOutputStream().close();
-                    } catch (IOException e) {
-                        LOGGER.info("Error in closing outputstream: " + e.getMessage());
-                    }
-                    inArchive = null;
-                }
+    public ArchiveEntryIterator getEntryIterator(List<ArchiveEntry> entries) throws IOException {
+        return new BatchExtractionIterator(entries, acquireInArchive(), password, EXTRACTION_EXECUTOR);
+    }
+
+    @Override
+    public InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException {
+        if (entryIterator instanceof BatchExtractionIterator) {
+            InputStream in = ((BatchExtractionIterator) entryIterator).getInputStream(entry);
+            if (in != null) {
+                return in;
+            }
+        }
+
+        InArchiveCache.Handle handle = acquireInArchive();
+        ExtractionPipe pipe = new ExtractionPipe(false);
+        EXTRACTION_EXECUTOR.execute(() -> {
+            boolean extracted = false;
+            try {
+                ExtractOperationResult result = handle.inArchive.extractSlow((Integer) entry.getEntryObject(), pipe, password);
+                extracted = true;
+                pipe.finish(result == ExtractOperationResult.OK
+                        ? null
+                        : new IOException("failed to extract entry: " + result));
+            } catch (SevenZipException e) {
+                LOGGER.warn("failed to extract entry from archive: " + e.getMessage());
+                LOGGER.debug("failed to extract entry from archive", e);
+                pipe.finish(e);
+            } finally {
+                InArchiveCache.release(handle, extracted);
             }
-        }).start();
+        });
 
-        return cbb.getInputStream();
+        return pipe;
     }
 
     /**
@@ -0,0 +1,245 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.sevenzipjbindings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import net.sf.sevenzipjbinding.SevenZipException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * This class is a TestNG test case for {@link ExtractionPipe}.
+ */
+public class ExtractionPipeTest {
+
+    /** Maximum number of chunks buffered by the pipe */
+    private static final int MAX_PENDING_CHUNKS = 16;
+
+    private static byte[] chunk(int index) {
+        byte[] chunk = new byte[100 + index];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) (index + i);
+        }
+        return chunk;
+    }
+
+    /**
+     * Writes the given chunk to the pipe on another thread.
+     */
+    private static CompletableFuture<Integer> writeAsync(ExtractionPipe pipe, byte[] data) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return pipe.write(data);
+            } catch (SevenZipException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * Asserts that the given write is blocked, waiting for the reader.
+     */
+    private static void assertBlocked(CompletableFuture<Integer> write) throws InterruptedException {
+        Thread.sleep(200);
+        assertFalse(write.isDone());
+    }
+
+    /**
+     * Tests that chunks written by one thread are read in order by another one.
+     */
+    @Test
+    public void testTransfer() throws Exception {
+        ExtractionPipe pipe = new ExtractionPipe(false);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 100; i++) {
+            expected.write(chunk(i));
+        }
+
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try {
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(pipe.write(chunk(i)), chunk(i).length);
+                }
+            } catch (SevenZipException e) {
+                throw new RuntimeException(e);
+            }
+            pipe.finish(null);
+        });
+
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] buffer = new byte[77];
+        int nbRead;
+        while ((nbRead = pipe.read(buffer, 0, buffer.length)) != -1) {
+            read.write(buffer, 0, nbRead);
+        }
+        writer.get(10, TimeUnit.SECONDS);
+
+        assertEquals(read.toByteArray(), expected.toByteArray());
+        assertEquals(pipe.read(), -1);
+    }
+
+    /**
+     * Tests that the extracting thread waits for the reader once {@link #MAX_PENDING_CHUNKS} chunks are pending.
+     */
+    @Test
+    public void testBackpressure() throws Exception {
+        ExtractionPipe pipe = new ExtractionPipe(false);
+        for (int i = 0; i < MAX_PENDING_CHUNKS; i++) {
+            pipe.write(chunk(i));
+        }
+
+        CompletableFuture<Integer> write = writeAsync(pipe, chunk(MAX_PENDING_CHUNKS));
+        assertBlocked(write);
+
+        // Reading part of a chunk takes it out of the pending ones
+        assertEquals(pipe.read(), chunk(0)[0] & 0xFF);
+        assertEquals(write.get(10, TimeUnit.SECONDS).intValue(), chunk(MAX_PENDING_CHUNKS).length);
+
+        // The partly read chunk is not pending anymore either
+        write = writeAsync(pipe, chunk(MAX_PENDING_CHUNKS + 1));
+        assertBlocked(write);
+        byte[] buffer = new byte[chunk(0).length - 1];
+        assertEquals(pipe.read(buffer, 0, buffer.length), buffer.length);
+        assertBlocked(write);
+        assertEquals(pipe.read(), chunk(1)[0] & 0xFF);
+        write.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Tests that closing a skippable pipe lets the extracting thread skip the rest of the entry, without waiting.
+     */
+    @Test
+    public void testCloseSkippable() throws Exception {
+        ExtractionPipe pipe = new ExtractionPipe(true);
+        for (int i = 0; i < MAX_PENDING_CHUNKS; i++) {
+            pipe.write(chunk(i));
+        }
+        CompletableFuture<Integer> write = writeAsync(pipe, chunk(MAX_PENDING_CHUNKS));
+        assertBlocked(write);
+
+        pipe.close();
+        assertEquals(write.get(10, TimeUnit.SECONDS).intValue(), chunk(MAX_PENDING_CHUNKS).length);
+        for (int i = 0; i < 2 * MAX_PENDING_CHUNKS; i++) {
+            assertEquals(pipe.write(chunk(i)), chunk(i).length);
+        }
+
+        try {
+            pipe.read();
+            fail();
+        } catch (IOException e) {
+            // The pipe is closed
+        }
+    }
+
+    /**
+     * Tests that closing a pipe that is not skippable aborts the extraction, even if the extracting thread is
+     * waiting for the reader.
+     */
+    @Test(expectedExceptions = SevenZipException.class)
+    public void testCloseNotSkippable() throws Exception {
+        ExtractionPipe pipe = new ExtractionPipe(false);
+        for (int i = 0; i < MAX_PENDING_CHUNKS; i++) {
+            pipe.write(chunk(i));
+        }
+        CompletableFuture<Integer> write = writeAsync(pipe, chunk(MAX_PENDING_CHUNKS));
+        assertBlocked(write);
+
+        pipe.close();
+        try {
+            write.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getCause() instanceof SevenZipException);
+        }
+        pipe.write(chunk(0));
+    }
+
+    /**
+     * Tests that cancelling a skippable pipe aborts the extraction.
+     */
+    @Test(expectedExceptions = SevenZipException.class)
+    public void testCancelSkippable() throws Exception {
+        ExtractionPipe pipe = new ExtractionPipe(true);
+        pipe.write(chunk(0));
+        pipe.cancel();
+        pipe.write(chunk(1));
+    }
+
+    /**
+     * Tests that the failure the extraction finished with is raised to the reader, once the chunks written before
+     * have been read.
+     */
+    @Test
+    public void testFailure() throws Exception {
+        ExtractionPipe pipe = new ExtractionPipe(false);
+        pipe.write(chunk(0));
+        IOException failure = new IOException("CRC error");
+        pipe.finish(failure);
+        // Only the first outcome counts
+        pipe.finish(null);
+
+        byte[] buffer = new byte[chunk(0).length];
+        assertEquals(pipe.read(buffer, 0, buffer.length), buffer.length);
+        assertEquals(buffer, chunk(0));
+        for (int i = 0; i < 2; i++) {
+            try {
+                pipe.read();
+                fail();
+            } catch (IOException e) {
+                assertSame(e, failure);
+            }
+        }
+    }
+
+    /**
+     * Tests that a reader waiting for data is woken up when the extraction fails.
+     */
+    @Test
+    public void testFailureWhileWaiting() throws Exception {
+        ExtractionPipe pipe = new ExtractionPipe(false);
+        CompletableFuture<Integer> read = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pipe.read();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(read.isDone());
+
+        IOException failure = new IOException("Wrong password");
+        pipe.finish(failure);
+        try {
+            read.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(e.getCause().getCause(), failure);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.sevenzipjbindings;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.sf.sevenzipjbinding.IInArchive;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * This class is a TestNG test case for {@link InArchiveCache}. Archives are not actually opened: the handles hold
+ * fake {@link IInArchive} instances that only record whether they were closed.
+ */
+public class InArchiveCacheTest {
+
+    /** Archives opened by the test and not closed yet */
+    private final Set<IInArchive> openArchives = new HashSet<>();
+
+    /** Number of archives opened by the test */
+    private int nbOpened;
+
+    @BeforeMethod
+    @AfterMethod
+    public void clearCache() {
+        // Closes all cached handles, as if they had been idle for long
+        InArchiveCache.closeIdleHandles(Long.MAX_VALUE);
+        openArchives.clear();
+        nbOpened = 0;
+    }
+
+    private IInArchive openArchive() {
+        IInArchive[] archive = new IInArchive[1];
+        archive[0] = (IInArchive) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {IInArchive.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "close":
+                        openArchives.remove(archive[0]);
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        openArchives.add(archive[0]);
+        nbOpened++;
+        return archive[0];
+    }
+
+    private InArchiveCache.Handle acquire(String path, long date, String password) throws IOException {
+        return InArchiveCache.acquire(path, date, password, this::openArchive);
+    }
+
+    private boolean isOpen(InArchiveCache.Handle handle) {
+        return openArchives.contains(handle.inArchive);
+    }
+
+    /**
+     * Tests that a released handle is reused for the same archive, date and password only.
+     */
+    @Test
+    public void testReuse() throws IOException {
+        InArchiveCache.Handle handle = acquire("/archive.7z", 1, null);
+        InArchiveCache.release(handle, true);
+        assertTrue(isOpen(handle));
+
+        InArchiveCache.Handle reused = acquire("/archive.7z", 1, null);
+        assertSame(reused, handle);
+        assertEquals(nbOpened, 1);
+
+        // The handle is in use, another one is opened
+        InArchiveCache.Handle other = acquire("/archive.7z", 1, null);
+        assertNotSame(other, handle);
+        assertEquals(nbOpened, 2);
+
+        InArchiveCache.Handle encrypted = acquire("/archive.7z", 1, "secret");
+        assertNotSame(encrypted, handle);
+        assertEquals(nbOpened, 3);
+    }
+
+    /**
+     * Tests that a handle which cannot be reused is closed rather than cached.
+     */
+    @Test
+    public void testNotReusable() throws IOException {
+        InArchiveCache.Handle handle = acquire("/archive.7z", 1, null);
+        InArchiveCache.release(handle, false);
+        assertFalse(isOpen(handle));
+
+        assertNotSame(acquire("/archive.7z", 1, null), handle);
+        assertEquals(nbOpened, 2);
+    }
+
+    /**
+     * Tests that the least recently released handles are closed once more than {@link InArchiveCache#MAX_SIZE}
+     * handles are cached.
+     */
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        InArchiveCache.Handle[] handles = new InArchiveCache.Handle[InArchiveCache.MAX_SIZE + 2];
+        for (int i = 0; i < InArchiveCache.MAX_SIZE; i++) {
+            handles[i] = acquire("/archive" + i + ".7z", 1, null);
+            InArchiveCache.release(handles[i], true);
+        }
+
+        // Using the first handle again makes it the most recently used one
+        assertSame(acquire("/archive0.7z", 1, null), handles[0]);
+        InArchiveCache.release(handles[0], true);
+
+        for (int i = InArchiveCache.MAX_SIZE; i < handles.length; i++) {
+            handles[i] = acquire("/archive" + i + ".7z", 1, null);
+            InArchiveCache.release(handles[i], true);
+        }
+
+        assertTrue(isOpen(handles[0]));
+        assertFalse(isOpen(handles[1]));
+        assertFalse(isOpen(handles[2]));
+        for (int i = 3; i < handles.length; i++) {
+            assertTrue(isOpen(handles[i]));
+        }
+        assertEquals(openArchives.size(), InArchiveCache.MAX_SIZE);
+    }
+
+    /**
+     * Tests that releasing a handle closes the cached handles of other versions of the same archive.
+     */
+    @Test
+    public void testOtherVersionsEvicted() throws IOException {
+        InArchiveCache.Handle oldHandle = acquire("/archive.7z", 1, null);
+        InArchiveCache.Handle otherArchive = acquire("/other.7z", 1, null);
+        InArchiveCache.release(oldHandle, true);
+        InArchiveCache.release(otherArchive, true);
+
+        InArchiveCache.Handle newHandle = acquire("/archive.7z", 2, null);
+        // The old version remains cached as long as the new one is in use
+        assertTrue(isOpen(oldHandle));
+        InArchiveCache.release(newHandle, true);
+
+        assertFalse(isOpen(oldHandle));
+        assertTrue(isOpen(newHandle));
+        assertTrue(isOpen(otherArchive));
+        assertSame(acquire("/archive.7z", 2, null), newHandle);
+        assertSame(acquire("/other.7z", 1, null), otherArchive);
+    }
+
+    /**
+     * Tests that handles are closed once they have not been used for {@link InArchiveCache#IDLE_TIMEOUT}
+     * milliseconds.
+     */
+    @Test
+    public void testIdleEviction() throws IOException {
+        InArchiveCache.Handle handle = acquire("/archive.7z", 1, null);
+        InArchiveCache.release(handle, true);
+
+        InArchiveCache.closeIdleHandles(System.currentTimeMillis());
+        assertTrue(isOpen(handle));
+
+        InArchiveCache.closeIdleHandles(System.currentTimeMillis() + InArchiveCache.IDLE_TIMEOUT);
+        assertFalse(isOpen(handle));
+        assertNotSame(acquire("/archive.7z", 1, null), handle);
+    }
+}
@@ -57,6 +57,9 @@ public class Configuration {
     public String commands;
     @Parameter(names={"-w", "--fail-on-warnings"}, description="Quits when a warning is encountered during")
     public boolean fatalWarnings;
+    // Allows users to track how long it takes to start.
+    @Parameter(names={"--startup-profile"}, description="Print the time and memory taken by each startup phase")
+    public boolean startupProfile;
     // Allows users to tweak how keymaps are loaded.
     @Parameter(names={"-k", "--keymap"}, description="Load keymap from FILE")
     public String keymap;
@@ -85,6 +88,7 @@ public class Configuration {
         set.add(toEntry("mucommander.extensions", extensions));
         set.add(toEntry("mucommander.commands", commands));
         set.add(toEntry("mucommander.fatalWarnings", Boolean.toString(fatalWarnings)));
+        set.add(toEntry("mucommander.startupProfile", Boolean.toString(startupProfile)));
         set.add(toEntry("mucommander.keymap", keymap));
         set.add(toEntry("mucommander.preferences", preferences));
         set.add(toEntry("mucommander.shellHistory", shellHistory));
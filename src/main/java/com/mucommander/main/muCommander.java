@@ -297,6 +297,7 @@ public class muCommander {
                         "com.apple.eawt," +
                         "com.apple.eio," +
                         "com.sun.image.codec.jpeg," +
+                        "com.sun.management," +
                         "sun.awt.image," +
                         "sun.awt.image.codec," +
                         "com.apple.laf," +